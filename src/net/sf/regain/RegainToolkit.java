@@ -58,6 +58,7 @@ import java.util.StringTokenizer;
 import jcifs.smb.SmbFile;
 import net.sf.regain.util.io.PathFilenamePair;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.WhitespaceAnalyzer;
 import org.apache.lucene.analysis.de.GermanAnalyzer;
@@ -84,6 +85,12 @@ public class RegainToolkit {
   /** The field name where the access control groups are stored */
   public static final String FIELD_ACCESS_CONTROL_GROUPS = "groups";
 
+  /**
+   * The field name of the numeric last-modified time (in milliseconds). The
+   * field "last-modified" holds the same date as day string for displaying.
+   */
+  public static final String FIELD_MODIFIED = "modified";
+
   /**
    * Gibt an, ob die Worte, die der Analyzer identifiziert ausgegeben werden
    * sollen.
@@ -627,13 +634,15 @@ public class RegainToolkit {
       throw new RegainException("Analyzer class not found: " + analyzerClassName, exc);
     }
 
-    // Extract stopword 'Set'. Since lucene 3.x
-    Set<String> stopWordSet = new HashSet<String>();
-    stopWordSet.addAll(Arrays.asList(stopWordList));
-
     // Create an instance
     Analyzer analyzer;
     if ((stopWordList != null) && (stopWordList.length != 0)) {
+      // Extract stopword 'Set'. Since lucene 3.x
+      // NOTE: The analyzers copy a CharArraySet without converting the words
+      //       again, and the filters check the tokens without creating Strings
+      CharArraySet stopWordSet = new CharArraySet(getLuceneVersion(),
+          Arrays.asList(stopWordList), false);
+
       // Copy
       Constructor<?> ctor;
       try {
@@ -1574,8 +1583,13 @@ public class RegainToolkit {
    * An analyzer that changes a document in lowercase before delivering
    * it to a nested analyzer. For the field "groups" an analyzer is used that
    * only tokenizes the input without stemming the tokens.
+   * <p>
+   * {@link #reusableTokenStream(String, Reader)} reuses the token streams of
+   * the nested analyzers and the LowercasingReader for each thread. Lucene
+   * uses it for indexing, so tokenizer and filters are not created again for
+   * every field of every document.
    */
-  private static class WrapperAnalyzer extends Analyzer {
+  private static final class WrapperAnalyzer extends Analyzer {
 
     /** The analyzer to use for a field that shouldn't be stemmed. */
     private Analyzer mNoStemmingAnalyzer;
@@ -1605,20 +1619,62 @@ public class RegainToolkit {
      */
     @Override
     public TokenStream tokenStream(String fieldName, Reader reader) {
-      boolean useStemming = true;
-      // NOTE: For security reasons we explicitely check for the groups field
-      //       and don't use the mUntokenizedFieldNames for this implicitely
-      if (fieldName.equals(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS) || mUntokenizedFieldNames.contains(fieldName)) {
-        useStemming = false;
-      }
-
-      if (useStemming) {
+      if (useStemming(fieldName)) {
         Reader lowercasingReader = new LowercasingReader(reader);
         return mNestedAnalyzer.tokenStream(fieldName, lowercasingReader);
       } else {
         return mNoStemmingAnalyzer.tokenStream(fieldName, reader);
       }
     }
+
+    /**
+     * Gets a TokenStream which tokenizes all the text in the provided
+     * Reader. The TokenStream is reused by the next call of the same thread.
+     *
+     * @throws IOException If resetting the reused TokenStream failed.
+     */
+    @Override
+    public TokenStream reusableTokenStream(String fieldName, Reader reader)
+      throws IOException
+    {
+      if (! useStemming(fieldName)) {
+        return mNoStemmingAnalyzer.reusableTokenStream(fieldName, reader);
+      }
+
+      // NOTE: The nested analyzer keeps its token streams for each thread
+      //       itself. We only have to keep the LowercasingReader.
+      LowercasingReader lowercasingReader = (LowercasingReader) getPreviousTokenStream();
+      if (lowercasingReader == null) {
+        lowercasingReader = new LowercasingReader(reader);
+        setPreviousTokenStream(lowercasingReader);
+      } else {
+        lowercasingReader.setNestedReader(reader);
+      }
+      return mNestedAnalyzer.reusableTokenStream(fieldName, lowercasingReader);
+    }
+
+    /**
+     * Gets whether the nested analyzer should be used for a field.
+     *
+     * @param fieldName The name of the field.
+     * @return Whether the nested analyzer should be used.
+     */
+    private boolean useStemming(String fieldName) {
+      // NOTE: For security reasons we explicitely check for the groups field
+      //       and don't use the mUntokenizedFieldNames for this implicitely
+      return ! (fieldName.equals(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS)
+          || mUntokenizedFieldNames.contains(fieldName));
+    }
+
+    /**
+     * Closes the nested analyzers.
+     */
+    @Override
+    public void close() {
+      super.close();
+      mNestedAnalyzer.close();
+      mNoStemmingAnalyzer.close();
+    }
   } // inner class WrapperAnalyzer
 
   // inner class LowercasingReader
@@ -1642,6 +1698,17 @@ public class RegainToolkit {
       mNestedReader = nestedReader;
     }
 
+    /**
+     * Setzt den eingebetteten Reader, damit der LowercasingReader
+     * wiederverwendet werden kann.
+     *
+     * @param nestedReader Der Reader, von dem die Daten kommen, die in
+     *        Kleinschreibung gewandelt werden sollen.
+     */
+    public void setNestedReader(Reader nestedReader) {
+      mNestedReader = nestedReader;
+    }
+
     /**
      * Schlieï¿½t den eingebetteten Reader.
      *
@@ -229,6 +229,28 @@ public class XmlToolkit {
   }
 
 
+  /**
+   * Extrahiert den Text eines Knotens, wandelt ihn in ein long und gibt das
+   * Ergebnis zurück.
+   *
+   * @param node Der Knoten, dessen Text zurückgeben werden soll.
+   *
+   * @return Der Text des Knotens als long.
+   * @throws RegainException Falls der Knoten keinen Text hat oder falls der
+   *         Text keine Ganzzahl ist.
+   */
+  public static long getTextAsLong(Node node) throws RegainException {
+    String asString = getText(node, true, true);
+    try {
+      return Long.parseLong(asString);
+    }
+    catch (NumberFormatException exc) {
+      throw new RegainException("Value of node '" + node.getNodeName() +
+          "' must be an integer: '" + asString + "'", exc);
+    }
+  }
+
+
   /**
    * Extrahiert den Text eines Knotens, wandelt ihn in ein double und gibt das
    * Ergebnis zurück.
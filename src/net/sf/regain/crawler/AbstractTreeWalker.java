@@ -0,0 +1,369 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lists directories for the crawler and lists their sub directories in
+ * advance.
+ * <p>
+ * While the crawler works on its job list, the sub directories of a listed
+ * directory are listed in advance by a fork/join pool. So whole subtrees are
+ * walked in parallel, which hides the latency of network file systems where
+ * metadata round-trips dominate the crawl time. The number of listings held in
+ * advance is limited in order to keep the memory bounded.
+ * <p>
+ * Subclasses only implement how one directory is read.
+ *
+ * @param <K> The type identifying a directory (e.g. a path or an URL).
+ * @param <E> The type of the children of a listed directory.
+ * @see FileTreeWalker
+ * @see SmbTreeWalker
+ * @author Til Schneider, www.murfman.de
+ */
+public abstract class AbstractTreeWalker<K, E extends AbstractTreeWalker.Entry<K>> {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(AbstractTreeWalker.class);
+
+  /**
+   * Decides whether a directory should be listed in advance.
+   * <p>
+   * NOTE: The filter is called by the threads of the fork/join pool, so it
+   * must be thread safe.
+   */
+  public interface DirectoryFilter {
+
+    /**
+     * Decides whether a directory should be listed in advance.
+     *
+     * @param url The URL of the directory.
+     * @return Whether the directory should be listed in advance.
+     */
+    public boolean shouldBeListed(String url);
+
+  }
+
+  /**
+   * A child of a listed directory.
+   *
+   * @param <K> The type identifying a directory.
+   */
+  public static class Entry<K> {
+
+    /** The key of the child. Used for listing the child if it is a directory. */
+    private K mKey;
+    /** The URL of the child. */
+    private String mUrl;
+    /**
+     * The attributes of the child. Is <code>null</code> if they could not be
+     * read.
+     */
+    private BasicFileAttributes mAttributes;
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param key The key of the child.
+     * @param url The URL of the child.
+     * @param attributes The attributes of the child. May be <code>null</code>.
+     */
+    protected Entry(K key, String url, BasicFileAttributes attributes) {
+      mKey = key;
+      mUrl = url;
+      mAttributes = attributes;
+    }
+
+    /**
+     * Gets the key of the child.
+     *
+     * @return The key of the child.
+     */
+    public K getKey() {
+      return mKey;
+    }
+
+    /**
+     * Gets the URL of the child.
+     *
+     * @return The URL of the child.
+     */
+    public String getUrl() {
+      return mUrl;
+    }
+
+    /**
+     * Gets the attributes of the child.
+     *
+     * @return The attributes of the child or <code>null</code> if they could
+     *         not be read.
+     */
+    public BasicFileAttributes getAttributes() {
+      return mAttributes;
+    }
+
+    /**
+     * Gets whether the child is a directory.
+     *
+     * @return Whether the child is a directory.
+     */
+    public boolean isDirectory() {
+      return (mAttributes != null) && mAttributes.isDirectory();
+    }
+
+  }
+
+  /** The pool listing the directories in advance. Is null if disabled. */
+  private ForkJoinPool mPool;
+
+  /** The listings that were started in advance. */
+  private ConcurrentHashMap<K, ListingTask> mListingMap;
+
+  /** The number of listings that were started in advance but not taken yet. */
+  private AtomicInteger mListingCount;
+
+  /** The maximum number of listings that may be held in advance. */
+  private int mMaxListingCount;
+
+  /** The filter deciding which directories are listed in advance. */
+  private DirectoryFilter mFilter;
+
+
+  /**
+   * Creates a new instance of AbstractTreeWalker.
+   *
+   * @param threadCount The number of threads listing directories in advance.
+   *        If &lt;= 0 the directories are only listed when they are requested.
+   * @param maxListingCount The maximum number of listings that may be held in
+   *        advance.
+   * @param filter The filter deciding which directories are listed in advance.
+   */
+  protected AbstractTreeWalker(int threadCount, int maxListingCount,
+    DirectoryFilter filter)
+  {
+    mFilter = filter;
+    mMaxListingCount = maxListingCount;
+    mListingMap = new ConcurrentHashMap<K, ListingTask>();
+    mListingCount = new AtomicInteger();
+
+    if ((threadCount > 0) && (maxListingCount > 0)) {
+      mPool = new ForkJoinPool(threadCount);
+    }
+  }
+
+
+  /**
+   * Reads the children of a directory and their attributes.
+   * <p>
+   * NOTE: This method is called by the threads of the fork/join pool, so it
+   * must be thread safe.
+   *
+   * @param dir The directory to read.
+   * @return The children of the directory.
+   * @throws Exception If the directory could not be read.
+   */
+  protected abstract List<E> readDirectory(K dir) throws Exception;
+
+
+  /**
+   * Lists the children of a directory.
+   * <p>
+   * If the directory was already listed in advance, the result of this listing
+   * is taken. Otherwise the directory is listed now.
+   *
+   * @param dir The directory to list.
+   * @return The children of the directory.
+   * @throws RegainException If the directory could not be listed.
+   */
+  public List<E> listDirectory(K dir) throws RegainException {
+    ListingTask task = mListingMap.remove(dir);
+    if (task != null) {
+      mListingCount.decrementAndGet();
+      task.join();
+    } else {
+      task = new ListingTask(dir);
+      if (mPool != null) {
+        mPool.invoke(task);
+      } else {
+        task.compute();
+      }
+    }
+
+    if (task.mError != null) {
+      throw new RegainException("Listing directory failed. Maybe no access " +
+          "rights for: " + dir, task.mError);
+    }
+    return task.mEntryList;
+  }
+
+
+  /**
+   * Throws away the listing of a directory that was made in advance. Should be
+   * called for directories that won't be crawled.
+   * <p>
+   * The listings of the sub directories that were started by this listing are
+   * thrown away, too. Otherwise they would keep their place in advance forever.
+   *
+   * @param dir The directory.
+   */
+  public void discard(K dir) {
+    ListingTask task = mListingMap.remove(dir);
+    if (task != null) {
+      mListingCount.decrementAndGet();
+      task.discard();
+    }
+  }
+
+
+  /**
+   * Gets the number of listings that were started in advance but not taken or
+   * thrown away yet.
+   *
+   * @return The number of listings held in advance.
+   */
+  public int getListingCount() {
+    return mListingCount.get();
+  }
+
+
+  /**
+   * Stops all listings and frees the resources.
+   */
+  public void close() {
+    if (mPool != null) {
+      mPool.shutdownNow();
+      mPool = null;
+    }
+    mListingMap.clear();
+    mListingCount.set(0);
+  }
+
+
+  /**
+   * Lists one directory and starts listing its sub directories in advance.
+   */
+  private class ListingTask extends RecursiveAction {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The directory to list. */
+    private K mDir;
+    /** The children of the directory. Is set when the task is done. */
+    private List<E> mEntryList;
+    /** The error that occurred while listing. May be <code>null</code>. */
+    private Exception mError;
+    /**
+     * The listings of the sub directories this task started in advance.
+     * Access is synchronized on the task.
+     */
+    private ArrayList<ListingTask> mSubTaskList;
+    /** Whether the listing was thrown away. */
+    private boolean mCancelled;
+
+    /**
+     * Creates a new instance of ListingTask.
+     *
+     * @param dir The directory to list.
+     */
+    ListingTask(K dir) {
+      mDir = dir;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        mEntryList = readDirectory(mDir);
+      } catch (Exception exc) {
+        mError = exc;
+        return;
+      }
+
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Listed " + mEntryList.size() + " entries of " + mDir);
+      }
+
+      if (mPool == null) {
+        // Listing in advance is disabled
+        return;
+      }
+
+      // List the sub directories in advance
+      for (E entry : mEntryList) {
+        if (entry.isDirectory() && mFilter.shouldBeListed(entry.getUrl())) {
+          synchronized (this) {
+            if (mCancelled) {
+              // This listing was thrown away -> Its sub directories won't be
+              // crawled either
+              break;
+            }
+            if (mListingCount.incrementAndGet() > mMaxListingCount) {
+              // We have enough listings in advance
+              mListingCount.decrementAndGet();
+              break;
+            }
+
+            ListingTask subTask = new ListingTask(entry.getKey());
+            if (mListingMap.putIfAbsent(entry.getKey(), subTask) == null) {
+              if (mSubTaskList == null) {
+                mSubTaskList = new ArrayList<ListingTask>();
+              }
+              mSubTaskList.add(subTask);
+              subTask.fork();
+            } else {
+              mListingCount.decrementAndGet();
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Marks this listing as thrown away and throws away the listings of the
+     * sub directories that were started by it and not taken yet.
+     */
+    synchronized void discard() {
+      mCancelled = true;
+      if (mSubTaskList != null) {
+        for (ListingTask subTask : mSubTaskList) {
+          if (mListingMap.remove(subTask.mDir, subTask)) {
+            mListingCount.decrementAndGet();
+            subTask.discard();
+          }
+        }
+        mSubTaskList = null;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.ArchiveIndexingSettings;
+import net.sf.regain.crawler.document.DocumentFactory;
+import net.sf.regain.crawler.document.IndexFieldSchema;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.document.SpillOutputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+
+/**
+ * Indexes the entries of archives (like zip or jar files) as documents of
+ * their own.
+ * <p>
+ * The entries are read from a stream of the archive and prepared by the
+ * {@link DocumentFactory} like any other document. Only entries that are too
+ * large to be kept in memory are written into a temporary file. An entry gets the URL of the archive followed by "!/" and the
+ * entry name (e.g. <code>file:///data/a.zip!/dir/x.pdf</code>). Archives
+ * inside an archive are indexed recursively up to the configured depth.
+ * <p>
+ * The CRC of an entry is stored in its index entry. When a changed archive is
+ * indexed again, the entries having the same CRC are kept and not prepared
+ * again. Entries that are no longer in the archive are removed from the index.
+ * If not all entries could be read (because a limit was reached or reading
+ * failed) the old entries are kept.
+ *
+ * @see ArchiveIndexingSettings
+ * @author Til Schneider, www.murfman.de
+ */
+public class ArchiveIndexer {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(ArchiveIndexer.class);
+
+  /** The name of the field holding the CRC of an archive entry. */
+  public static final String ENTRY_CRC_FIELD = "archive-entry-crc";
+
+  /**
+   * The name of the field holding the URL of the (outermost) archive an entry
+   * comes from.
+   */
+  public static final String ARCHIVE_URL_FIELD = "archive-url";
+
+  /** The separator between the URL of an archive and the name of an entry. */
+  private static final String ENTRY_SEPARATOR = "!/";
+
+  /** The mime types of the archives whose entries are indexed. */
+  private static final String[] ARCHIVE_MIME_TYPES = {
+    "application/zip",
+    "application/java-archive",
+    "application/x-java-webarchive",
+    "application/x-java-enterprisearchive"
+  };
+
+  /** The settings. */
+  private ArchiveIndexingSettings mSettings;
+
+  /** The IndexWriterManager to add the entries to. */
+  private IndexWriterManager mIndexWriterManager;
+
+  /** The DocumentFactory that prepares the entries. */
+  private DocumentFactory mDocumentFactory;
+
+
+  /**
+   * Creates a new instance of ArchiveIndexer.
+   *
+   * @param settings The settings.
+   * @param indexWriterManager The IndexWriterManager to add the entries to.
+   * @param documentFactory The DocumentFactory that prepares the entries.
+   */
+  public ArchiveIndexer(ArchiveIndexingSettings settings,
+    IndexWriterManager indexWriterManager, DocumentFactory documentFactory)
+  {
+    mSettings = settings;
+    mIndexWriterManager = indexWriterManager;
+    mDocumentFactory = documentFactory;
+  }
+
+
+  /**
+   * Gets whether documents of a mime type are archives whose entries are
+   * indexed.
+   *
+   * @param mimeType The mime type to check. May be <code>null</code>.
+   * @return Whether the mime type is an archive type.
+   */
+  public static boolean isArchive(String mimeType) {
+    if (mimeType != null) {
+      for (String archiveMimeType : ARCHIVE_MIME_TYPES) {
+        if (archiveMimeType.equals(mimeType)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Indexes the entries of an archive. Does nothing if the document is no
+   * archive.
+   *
+   * @param rawDocument The archive. Its mime type must already be detected.
+   * @param errorLogger The error logger to use for logging errors.
+   * @throws RegainException If reading the index failed.
+   */
+  public void indexEntries(RawDocument rawDocument, ErrorLogger errorLogger)
+    throws RegainException
+  {
+    if (! isArchive(rawDocument.getMimeType())) {
+      return;
+    }
+
+    String archiveUrl = rawDocument.getUrl();
+    ArchiveState state = new ArchiveState(archiveUrl,
+        mIndexWriterManager.getArchiveEntryDocs(archiveUrl));
+
+    InputStream in = null;
+    try {
+      in = rawDocument.getContentAsStream();
+      indexEntries(in, archiveUrl, rawDocument.getLastModified(), 1, state,
+          errorLogger);
+    }
+    catch (IOException exc) {
+      state.mIncomplete = true;
+      errorLogger.logError("Reading the entries of archive " + archiveUrl
+          + " failed", exc, false);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+
+    // Remove the entries that are not in the archive any more
+    // NOTE: If not all entries were read, we don't know which entries are
+    //       gone. In this case the old entries are kept.
+    if (! state.mIncomplete) {
+      state.mObsoleteEntryDocList.addAll(state.mOldEntryDocMap.values());
+    }
+    if (! state.mObsoleteEntryDocList.isEmpty()) {
+      mIndexWriterManager.removeArchiveEntries(state.mObsoleteEntryDocList);
+    }
+  }
+
+
+  /**
+   * Indexes the entries of an archive.
+   *
+   * @param in The stream to read the archive from. Will not be closed.
+   * @param archiveUrl The URL of the archive.
+   * @param archiveLastModified The last-modified date of the archive. Used for
+   *        entries that have none.
+   * @param depth The nesting depth of the archive's entries.
+   * @param state The state of the outermost archive.
+   * @param errorLogger The error logger to use for logging errors.
+   * @throws IOException If reading the archive failed.
+   * @throws RegainException If reading the index failed.
+   */
+  private void indexEntries(InputStream in, String archiveUrl,
+    Date archiveLastModified, int depth, ArchiveState state,
+    ErrorLogger errorLogger)
+    throws IOException, RegainException
+  {
+    ZipInputStream zipIn = new ZipInputStream(in);
+    ZipEntry entry;
+    while (! state.mIncomplete && ((entry = zipIn.getNextEntry()) != null)) {
+      if (entry.isDirectory()) {
+        continue;
+      }
+
+      if (state.mEntryCount >= mSettings.getMaxEntryCount()) {
+        stopArchive(state, "entries");
+        break;
+      }
+      state.mEntryCount++;
+
+      String entryUrl = archiveUrl + ENTRY_SEPARATOR + entry.getName();
+      Document oldDoc = state.mOldEntryDocMap.remove(entryUrl);
+
+      // Keep the index entry if the entry didn't change
+      if ((oldDoc != null) && (entry.getCrc() != -1)
+        && Long.toHexString(entry.getCrc()).equals(oldDoc.get(ENTRY_CRC_FIELD)))
+      {
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Archive entry is unchanged: " + entryUrl);
+        }
+        keepNestedEntries(entryUrl, state);
+        state.mTotalBytes += Math.max(entry.getSize(), 0);
+        continue;
+      }
+
+      // Read the entry
+      // NOTE: Large entries are written into a temporary file, so an entry
+      //       never needs more heap than a downloaded document.
+      long maxBytes = mSettings.getMaxTotalBytes() - state.mTotalBytes;
+      if (entry.getSize() > maxBytes) {
+        stopArchive(state, "bytes");
+        break;
+      }
+      SpillOutputStream content = new SpillOutputStream(
+          RawDocument.getMaxContentSizeInMemory(), getFileExtension(entry.getName()));
+      RawDocument entryDocument = null;
+      try {
+        CRC32 crc = new CRC32();
+        long length = readEntry(zipIn, content, crc, maxBytes);
+        if (length == -1) {
+          stopArchive(state, "bytes");
+          break;
+        }
+        state.mTotalBytes += length;
+
+        String crcAsString = Long.toHexString(crc.getValue());
+        if ((oldDoc != null) && crcAsString.equals(oldDoc.get(ENTRY_CRC_FIELD))) {
+          // The CRC was not in the entry's header, but the entry didn't change
+          keepNestedEntries(entryUrl, state);
+          continue;
+        }
+
+        // Index the entry
+        Date lastModified = (entry.getTime() == -1) ? archiveLastModified : new Date(entry.getTime());
+        entryDocument = RawDocument.createArchiveEntry(entryUrl, archiveUrl,
+            content, lastModified);
+        Document doc = mDocumentFactory.createDocument(entryDocument, errorLogger);
+        if (doc != null) {
+          IndexFieldSchema fieldSchema = mDocumentFactory.getFieldSchema();
+          fieldSchema.addField(doc, ENTRY_CRC_FIELD, crcAsString);
+          fieldSchema.addField(doc, ARCHIVE_URL_FIELD, state.mArchiveUrl);
+          mIndexWriterManager.addDocument(doc, (int) Math.min(length, Integer.MAX_VALUE));
+        }
+        if (oldDoc != null) {
+          // The old version is replaced
+          state.mObsoleteEntryDocList.add(oldDoc);
+        }
+
+        // Index the entries of nested archives
+        if ((depth < mSettings.getMaxDepth())
+          && isArchive(entryDocument.getMimeType()))
+        {
+          InputStream nestedIn = entryDocument.getContentAsStream();
+          try {
+            indexEntries(nestedIn, entryUrl, lastModified, depth + 1, state,
+                errorLogger);
+          }
+          catch (IOException exc) {
+            state.mIncomplete = true;
+            errorLogger.logError("Reading the entries of archive " + entryUrl
+                + " failed", exc, false);
+          }
+          finally {
+            nestedIn.close();
+          }
+        }
+      }
+      finally {
+        if (entryDocument != null) {
+          entryDocument.dispose();
+        } else {
+          content.dispose();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Reads the content of the current entry of an archive.
+   *
+   * @param zipIn The stream of the archive.
+   * @param out The stream to write the content to. Will be closed.
+   * @param crc The checksum to update with the content.
+   * @param maxBytes The maximum number of bytes to read.
+   * @return The length of the entry or -1 if the entry has more than
+   *         <code>maxBytes</code> bytes.
+   * @throws IOException If reading failed.
+   */
+  private long readEntry(ZipInputStream zipIn, OutputStream out, CRC32 crc,
+    long maxBytes)
+    throws IOException
+  {
+    byte[] buffer = new byte[8192];
+    long length = 0;
+    int len;
+    while ((len = zipIn.read(buffer)) != -1) {
+      length += len;
+      if (length > maxBytes) {
+        return -1;
+      }
+      crc.update(buffer, 0, len);
+      out.write(buffer, 0, len);
+    }
+    out.close();
+    return length;
+  }
+
+
+  /**
+   * Gets the file extension of an entry. Is used for the temporary file if
+   * the entry is too large to be kept in memory.
+   *
+   * @param entryName The name of the entry.
+   * @return The file extension (e.g. ".pdf") or an empty String.
+   */
+  private String getFileExtension(String entryName) {
+    String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+    int lastDot = fileName.lastIndexOf('.');
+    if ((lastDot == -1) || (fileName.length() - lastDot >= 6)) {
+      return "";
+    }
+    return fileName.substring(lastDot);
+  }
+
+
+  /**
+   * Keeps the index entries of an unchanged nested archive.
+   *
+   * @param entryUrl The URL of the unchanged entry.
+   * @param state The state of the outermost archive.
+   */
+  private void keepNestedEntries(String entryUrl, ArchiveState state) {
+    String prefix = entryUrl + ENTRY_SEPARATOR;
+    Iterator<String> iter = state.mOldEntryDocMap.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().startsWith(prefix)) {
+        iter.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Stops indexing the entries of an archive because a limit was reached.
+   *
+   * @param state The state of the outermost archive.
+   * @param limitName The name of the limit.
+   */
+  private void stopArchive(ArchiveState state, String limitName) {
+    mLog.warn("Archive " + state.mArchiveUrl + " has too many " + limitName
+        + ". The remaining entries are not indexed");
+    state.mIncomplete = true;
+  }
+
+
+  /**
+   * The state of indexing an archive, including its nested archives.
+   */
+  private static class ArchiveState {
+
+    /** The URL of the outermost archive. */
+    private String mArchiveUrl;
+
+    /**
+     * The index entries of the archive entries from the last crawl. The URL is
+     * the key. Entries that are found in the archive are removed.
+     */
+    private HashMap<String, Document> mOldEntryDocMap;
+
+    /** The index entries that should be removed. */
+    private ArrayList<Document> mObsoleteEntryDocList;
+
+    /** The number of entries processed so far. */
+    private int mEntryCount;
+
+    /** The number of uncompressed bytes processed so far. */
+    private long mTotalBytes;
+
+    /**
+     * Whether not all entries were read, because a limit was reached or
+     * reading failed.
+     */
+    private boolean mIncomplete;
+
+
+    /**
+     * Creates a new instance of ArchiveState.
+     *
+     * @param archiveUrl The URL of the outermost archive.
+     * @param oldEntryDocMap The index entries of the archive entries from the
+     *        last crawl.
+     */
+    public ArchiveState(String archiveUrl, HashMap<String, Document> oldEntryDocMap) {
+      mArchiveUrl = archiveUrl;
+      mOldEntryDocMap = oldEntryDocMap;
+      mObsoleteEntryDocList = new ArrayList<Document>();
+    }
+
+  }
+
+}
@@ -27,6 +27,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URLEncoder;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -54,6 +56,9 @@ import net.sf.regain.crawler.config.WhiteListEntry;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.plugin.CrawlerPluginFactory;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
+import net.sf.regain.util.metrics.MetricSource;
+import net.sf.regain.util.metrics.Metrics;
+import net.sf.regain.util.metrics.MetricsCollector;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
 import org.apache.regexp.RE;
@@ -72,7 +77,7 @@ import org.apache.regexp.RESyntaxException;
  *
  * @author Til Schneider, www.murfman.de
  */
-public class Crawler implements ErrorLogger {
+public class Crawler implements ErrorLogger, MetricSource {
 
   /** The logger for this class. */
   private static Logger mLog = Logger.getLogger(Crawler.class);
@@ -86,6 +91,18 @@ public class Crawler implements ErrorLogger {
   /** Die Liste der noch zu bearbeitenden Jobs. */
   private LinkedList<CrawlerJob> mJobList;
 
+  /**
+   * The maximum number of directories that are listed in advance by the
+   * {@link FileTreeWalker}.
+   */
+  private static final int MAX_PREFETCHED_DIRECTORIES = 500;
+
+  /** Lists the directories of the file system. Is only set while crawling. */
+  private FileTreeWalker mFileTreeWalker;
+
+  /** Lists the directories of Windows shares. Is only set while crawling. */
+  private SmbTreeWalker mSmbTreeWalker;
+
   /** The number of occured errors. */
   private int mErrorCount;
 
@@ -157,6 +174,7 @@ public class Crawler implements ErrorLogger {
     mFatalErrorCount = 0;
 
     RawDocument.setHttpTimeoutSecs(config.getHttpTimeoutSecs());
+    RawDocument.setMaxContentSizeInMemory(config.getMaxContentSizeInMemory());
 
     mHtmlParserUrlPatternArr = config.getHtmlParserUrlPatterns();
     if(mHtmlParserUrlPatternArr.length > 0) {
@@ -187,6 +205,38 @@ public class Crawler implements ErrorLogger {
   }
 
 
+  /**
+   * Adds the current state of the crawler to the metrics.
+   *
+   * @param collector The collector to add the metrics to.
+   */
+  @Override
+  public void collectMetrics(MetricsCollector collector) {
+    collector.addGauge("regain_crawler_queued_jobs",
+        "The number of jobs waiting in the crawler queue", mJobList.size());
+    collector.addCounter("regain_crawler_finished_jobs_total",
+        "The number of jobs the crawler finished", getFinishedJobCount());
+    collector.addCounter("regain_crawler_errors_total",
+        "The number of errors (fatal and non-fatal)", mErrorCount);
+    collector.addCounter("regain_crawler_fatal_errors_total",
+        "The number of fatal errors", mFatalErrorCount);
+    collector.addCounter("regain_crawler_dead_links_total",
+        "The number of dead links found", mDeadlinkList.size());
+
+    long currentJobTime = getCurrentJobTime();
+    if (currentJobTime != -1) {
+      collector.addGauge("regain_crawler_current_job_seconds",
+          "The time the crawler is already working on the current job",
+          currentJobTime / 1000.0);
+    }
+
+    IndexWriterManager mng = mIndexWriterManager;
+    if (mng != null) {
+      mng.collectMetrics(collector);
+    }
+  }
+
+
   /**
    * Gets the number of processed documents.
    *
@@ -297,6 +347,32 @@ public class Crawler implements ErrorLogger {
    */
   private void addJob(String url, String sourceUrl, boolean shouldBeParsed,
     boolean shouldBeIndexed, String sourceLinkText)
+  {
+    addJob(url, sourceUrl, shouldBeParsed, shouldBeIndexed, sourceLinkText, null);
+  }
+
+
+  /**
+   * Analysiert die URL und entscheidet, ob sie bearbeitet werden soll oder nicht.
+   * <p>
+   * Wenn ja, dann wird ein neuer Job erzeugt und der Job-Liste hinzugefÃ¼gt.
+   *
+   * @param url Die URL des zu prÃ¼fenden Jobs.
+   * @param sourceUrl Die URL des Dokuments in der die URL des zu prÃ¼fenden Jobs
+   *        gefunden wurde.
+   * @param shouldBeParsed Gibt an, ob die URL geparst werden soll.
+   * @param shouldBeIndexed Gibt an, ob die URL indiziert werden soll.
+   * @param sourceLinkText Der Text des Links in dem die URL gefunden wurde. Ist
+   *        <code>null</code>, falls die URL nicht in einem Link (also einem
+   *        a-Tag) gefunden wurde oder wenn aus sonstigen GrÃ¼nden kein Link-Text
+   *        vorhanden ist.
+   * @param fileAttributes The file attributes that were read when the parent
+   *        directory was listed. May be <code>null</code>.
+   * @return Whether the URL is (or already was) accepted.
+   */
+  private boolean addJob(String url, String sourceUrl, boolean shouldBeParsed,
+    boolean shouldBeIndexed, String sourceLinkText,
+    BasicFileAttributes fileAttributes)
   {
     mLog.debug("Try to add " + url + " referer " + sourceUrl + " as a new crawler job.");
 
@@ -358,7 +434,8 @@ public class Crawler implements ErrorLogger {
         }
 
         CrawlerJob job = new CrawlerJob(url, sourceUrl, sourceLinkText,
-                                      shouldBeParsed, shouldBeIndexed);
+                                      shouldBeParsed, shouldBeIndexed,
+                                      fileAttributes);
         pluginManager.eventAcceptURL(url, job);
 
         // NOTE: This is a little trick: We put documents that aren't parsed at
@@ -377,7 +454,10 @@ public class Crawler implements ErrorLogger {
           mLog.debug("Ignoring URL: " + url + " in page: " + sourceUrl);
         }
       }
+      return accepted;
     }
+
+    return alreadyAccepted;
   }
 
 
@@ -396,6 +476,7 @@ public class Crawler implements ErrorLogger {
     String[] onlyEntriesArr)
   {
     mLog.info("Starting crawling ...");
+    Metrics.registerSource("crawler", this);
     pluginManager.eventStartCrawling(this);
     mShouldPause = false;
 
@@ -427,6 +508,20 @@ public class Crawler implements ErrorLogger {
 	    // Create the UrlChecker
 	    mUrlChecker = new UrlChecker(whiteList, mConfiguration.getBlackList());
 
+	    // Create the FileTreeWalker. It lists only directories in advance that
+	    // will be parsed.
+	    AbstractTreeWalker.DirectoryFilter directoryFilter
+	      = new AbstractTreeWalker.DirectoryFilter() {
+	        public boolean shouldBeListed(String url) {
+	          return mUrlChecker.isUrlAccepted(url).getShouldBeParsed();
+	        }
+	      };
+	    mFileTreeWalker = new FileTreeWalker(
+	      mConfiguration.getFileTreeWalkerThreadCount(),
+	      MAX_PREFETCHED_DIRECTORIES, directoryFilter);
+	    mSmbTreeWalker = new SmbTreeWalker(
+	      mConfiguration.getFileTreeWalkerThreadCount(),
+	      MAX_PREFETCHED_DIRECTORIES, directoryFilter, accountPasswordStore);
 
 	    // Add the start URLs
 	    mLog.info("Read start-URLs from config");
@@ -449,8 +544,24 @@ public class Crawler implements ErrorLogger {
 	        // file system: Check whether this is a directory
 	        try {
 	          File file = RegainToolkit.urlToFile(url);
+	          BasicFileAttributes fileAttributes = mCurrentJob.getFileAttributes();
+	          if (fileAttributes != null) {
+	            // The attributes were read when the parent directory was listed
+	            // -> No need to ask the file system again
+	            if (fileAttributes.isDirectory()) {
+	              if (shouldBeParsed) {
+	                parseDirectory(file);
+	              } else {
+	                mFileTreeWalker.discard(file.toPath());
+	              }
+
+	              // A directory can't be indexed -> continue
+	              mCrawlerJobProfiler.stopMeasuring(0);
+	              continue;
+	            }
+	          }
 	          // Check whether the file is readable.
-	          if (!file.canRead()) {
+	          else if (!file.canRead()) {
 	            mCrawlerJobProfiler.abortMeasuring();
 	            mLog.debug("File rights: canRead: " + file.canRead() +
 	                    " canExecute: " + file.canExecute() +
@@ -477,25 +588,39 @@ public class Crawler implements ErrorLogger {
 	      } else if (url.startsWith("smb://")) {
 	        // Windows share: Check whether this is a directory
 	        try {
-	          SmbFile smbFile = RegainToolkit.urlToSmbFile(
-	            CrawlerToolkit.replaceAuthenticationValuesInURL(url,
-	            CrawlerToolkit.findAuthenticationValuesForURL(url, accountPasswordStore)));
-	          // Check whether the file is readable.
-	          if (!smbFile.canRead()) {
-	            mCrawlerJobProfiler.abortMeasuring();
-	            logError("File is not readable: '" + url + "'", null, false);
-	            continue;
-	          } else if (smbFile.isDirectory()) {
-	            // This IS a directory -> Add all child files as Jobs
-	            if (shouldBeParsed) {
-	              parseSmbDirectory(smbFile);
+	          BasicFileAttributes fileAttributes = mCurrentJob.getFileAttributes();
+	          if (fileAttributes != null) {
+	            // The attributes were read when the parent directory was listed
+	            // -> No need to ask the server again
+	            if (fileAttributes.isDirectory()) {
+	              if (shouldBeParsed) {
+	                parseSmbDirectory(url);
+	              } else {
+	                mSmbTreeWalker.discard(url);
+	              }
+
+	              // A directory can't be indexed -> continue
+	              mCrawlerJobProfiler.stopMeasuring(0);
+	              continue;
 	            }
+	          } else {
+	            SmbFile smbFile = mSmbTreeWalker.getSmbFile(url);
+	            // Check whether the file is readable.
+	            if (!smbFile.canRead()) {
+	              mCrawlerJobProfiler.abortMeasuring();
+	              logError("File is not readable: '" + url + "'", null, false);
+	              continue;
+	            } else if (smbFile.isDirectory()) {
+	              // This IS a directory -> Add all child files as Jobs
+	              if (shouldBeParsed) {
+	                parseSmbDirectory(url);
+	              }
 
-	            // A directory can't be indexed -> continue
-	            mCrawlerJobProfiler.stopMeasuring(0);
-	            continue;
+	              // A directory can't be indexed -> continue
+	              mCrawlerJobProfiler.stopMeasuring(0);
+	              continue;
+	            }
 	          }
-
 	        }
 	        catch (Throwable thr) {
 	          mCrawlerJobProfiler.abortMeasuring();
@@ -540,7 +665,8 @@ public class Crawler implements ErrorLogger {
 	      try {
 	        rawDocument = new RawDocument(url, mCurrentJob.getSourceUrl(),
 	          mCurrentJob.getSourceLinkText(),
-	          CrawlerToolkit.findAuthenticationValuesForURL(url, accountPasswordStore));
+	          CrawlerToolkit.findAuthenticationValuesForURL(url, accountPasswordStore),
+	          mCurrentJob.getFileAttributes());
 
 	      } catch (RedirectException exc) {
 	        String redirectUrl = exc.getRedirectUrl();
@@ -691,6 +817,15 @@ public class Crawler implements ErrorLogger {
 	    }
     }
     finally {
+	    Metrics.unregisterSource("crawler");
+	    if (mFileTreeWalker != null) {
+	      mFileTreeWalker.close();
+	      mFileTreeWalker = null;
+	    }
+	    if (mSmbTreeWalker != null) {
+	      mSmbTreeWalker.close();
+	      mSmbTreeWalker = null;
+	    }
 	    pluginManager.eventFinishCrawling(this);
 	    mLog.info("... Finished crawling\n");
     }
@@ -743,6 +878,7 @@ public class Crawler implements ErrorLogger {
       mLog.error("Dead link: '" + job.getUrl() + "'. Found in '" + job.getSourceUrl()
                  + "'", exc);
       mDeadlinkList.add(new Object[] { job.getUrl(), job.getSourceUrl() });
+      invalidateDirectoryFingerprint(job);
     } else {
       logError("Loading " + job.getUrl() + " failed!", exc, false);
     }
@@ -997,35 +1133,52 @@ public class Crawler implements ErrorLogger {
    * The method creates a new job for every match
    *
    * @param dir the directory to parse
-   * @throws RegainException If encoding of the found URLs failed.
+   * @throws RegainException If the directory could not be listed or encoding
+   *         of the found URLs failed.
    */
   private void parseDirectory(File dir) throws RegainException {
     // Get the URL for the directory
     String sourceUrl = RegainToolkit.fileToUrl(dir);
 
-    // Parse the directory
-    File[] childArr = dir.listFiles();
-
-    // dir.listFiles() can return null, because of "(Access denied)" / "(Zugriff verweigert)"
-	if (childArr == null) {
-		if (dir.canRead() == false) {
-			throw new RegainException("canRead() on file returned: false. Maybe no access rights for sourceURL: " + sourceUrl);
-		} else {
-			throw new RegainException("listFiles() returned: null array. Maybe no access rights for sourceURL: " + sourceUrl);
-		}
-	}
+    // Parse the directory. The attributes of the children come with the
+    // listing, so they are passed on to the jobs.
+    List<FileTreeWalker.Entry> entryList = mFileTreeWalker.listDirectory(dir.toPath());
+
+    // Check whether the files of this directory changed since the last crawl
+    boolean unchanged = false;
+    if (mIndexWriterManager != null) {
+      // NOTE: Only the files that would be indexed are part of the fingerprint.
+      //       So a changed white or black list is noticed, too.
+      ArrayList<FileTreeWalker.Entry> indexedFileList = new ArrayList<FileTreeWalker.Entry>();
+      for (FileTreeWalker.Entry entry : entryList) {
+        if ((! entry.isDirectory())
+          && mUrlChecker.isUrlAccepted(entry.getUrl()).getShouldBeIndexed())
+        {
+          indexedFileList.add(entry);
+        }
+      }
 
-    for (int childIdx = 0; childIdx < childArr.length; childIdx++) {
-      // Get the URL for the current child file
-      String url = RegainToolkit.fileToUrl(childArr[childIdx]);
+      long fingerprint = DirectoryManifest.getFingerprint(indexedFileList);
+      unchanged = mIndexWriterManager.updateDirectoryFingerprint(sourceUrl, fingerprint);
+      if (unchanged && mLog.isDebugEnabled()) {
+        mLog.debug("Skipping the files of unchanged directory: " + sourceUrl);
+      }
+    }
 
+    for (FileTreeWalker.Entry entry : entryList) {
       // Check whether this is a directory
-      if (childArr[childIdx].isDirectory()) {
+      if (entry.isDirectory()) {
         // It's a directory -> Add a parse job
-        addJob(url, sourceUrl, true, false, null);
-      } else {
+        if (! addJob(entry.getUrl(), sourceUrl, true, false, null,
+                     entry.getAttributes()))
+        {
+          // This directory won't be parsed -> Throw away its listing
+          mFileTreeWalker.discard(entry.getPath());
+        }
+      } else if (! unchanged) {
         // It's a file -> Add a index job
-        addJob(url, sourceUrl, false, true, null);
+        addJob(entry.getUrl(), sourceUrl, false, true, null,
+               entry.getAttributes());
       }
     }
   }
@@ -1034,37 +1187,29 @@ public class Crawler implements ErrorLogger {
    * Searches a samba directory for URLs, that means files and sub-directories.
    * The method creates a new job for every match
    *
-   * @param dir the directory to parse
-   * @throws RegainException If encoding of the found URLs failed.
+   * @param sourceUrl the URL of the directory to parse
+   * @throws RegainException If listing the directory failed.
    */
-  private void parseSmbDirectory(SmbFile dir) throws RegainException {
-
-    try {
-      // Get the URL for the directory
-      String sourceUrl = dir.getCanonicalPath();
-
-      // Parse the directory
-      SmbFile[] childArr = dir.listFiles();
-      for (int childIdx = 0; childIdx < childArr.length; childIdx++) {
-        // Get the URL for the current child file
-        String url = childArr[childIdx].getCanonicalPath();
-        // Remove domain, username, password
-        if (url.contains("@")) {
-          url = "smb://" + url.substring(url.indexOf("@") + 1);
-        }
-        // Check whether this is a directory
-        if (childArr[childIdx].isDirectory()) {
-          // It's a directory -> Add a parse job
-          addJob(url, sourceUrl, true, false, null);
-        } else {
-          // It's a file -> Add a index job
-          addJob(url, sourceUrl, false, true, null);
+  private void parseSmbDirectory(String sourceUrl) throws RegainException {
+    // Parse the directory. The attributes come with the listing, so they are
+    // passed to the jobs.
+    List<SmbTreeWalker.Entry> entryList = mSmbTreeWalker.listDirectory(sourceUrl);
+    for (SmbTreeWalker.Entry entry : entryList) {
+      // Check whether this is a directory
+      if (entry.isDirectory()) {
+        // It's a directory -> Add a parse job
+        if (! addJob(entry.getUrl(), sourceUrl, true, false, null,
+                     entry.getAttributes()))
+        {
+          // This directory won't be parsed -> Throw away its listing
+          mSmbTreeWalker.discard(entry.getUrl());
         }
+      } else {
+        // It's a file -> Add a index job
+        addJob(entry.getUrl(), sourceUrl, false, true, null,
+               entry.getAttributes());
       }
-    } catch( Exception ex ) {
-      throw new RegainException(ex.getMessage(), ex);
     }
-
   }
 
   /**
@@ -1209,10 +1354,26 @@ public class Crawler implements ErrorLogger {
       mLog.error("Logging error in error log of index failed", exc);
     }
 
+    invalidateDirectoryFingerprint(mCurrentJob);
+
     mErrorCount ++;
     if (fatal) {
       mFatalErrorCount++;
     }
   }
 
+
+  /**
+   * Removes the fingerprint of the directory a failed file job belongs to. So
+   * the file will be processed again the next time even if the directory
+   * didn't change.
+   *
+   * @param job The failed job. May be <code>null</code>.
+   */
+  private void invalidateDirectoryFingerprint(CrawlerJob job) {
+    if ((job != null) && (! job.shouldBeParsed()) && (mIndexWriterManager != null)) {
+      mIndexWriterManager.invalidateDirectoryFingerprint(job.getSourceUrl());
+    }
+  }
+
 }
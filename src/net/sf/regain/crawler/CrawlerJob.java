@@ -20,6 +20,8 @@
  */
 package net.sf.regain.crawler;
 
+import java.nio.file.attribute.BasicFileAttributes;
+
 /**
  * Hilfsklasse für den Crawler.
  * <p>
@@ -49,6 +51,11 @@ public class CrawlerJob {
   private boolean mShouldBeParsed;
   /** Gibt an, ob das Dokument indiziert werden soll. */
   private boolean mShouldBeIndexed;
+  /**
+   * The file attributes that were read when the parent directory was listed.
+   * Is <code>null</code> if the job is no file or the attributes are unknown.
+   */
+  private BasicFileAttributes mFileAttributes;
 
 
 
@@ -77,6 +84,29 @@ public class CrawlerJob {
   }
 
 
+  /**
+   * Creates a new CrawlerJob instance for a file whose attributes are already
+   * known.
+   *
+   * @param url The URL of the document to process.
+   * @param sourceUrl The URL of the document where the URL was found.
+   * @param sourceLinkText The text of the link where the URL was found. May be
+   *        <code>null</code>.
+   * @param shouldBeParsed Whether the document should be parsed for more URLs.
+   * @param shouldBeIndexed Whether the document should be indexed.
+   * @param fileAttributes The file attributes that were read when the parent
+   *        directory was listed. May be <code>null</code>.
+   */
+  public CrawlerJob(String url, String sourceUrl, String sourceLinkText,
+    boolean shouldBeParsed, boolean shouldBeIndexed,
+    BasicFileAttributes fileAttributes)
+  {
+    this(url, sourceUrl, sourceLinkText, shouldBeParsed, shouldBeIndexed);
+
+    mFileAttributes = fileAttributes;
+  }
+
+
 
   /**
    * Gibt die URL des zu bearbeitenden Dokuments zurück.
@@ -136,4 +166,17 @@ public class CrawlerJob {
     return mShouldBeIndexed;
   }
 
+
+
+  /**
+   * Gets the file attributes that were read when the parent directory was
+   * listed.
+   *
+   * @return The file attributes or <code>null</code> if the job is no file or
+   *         the attributes are unknown.
+   */
+  public BasicFileAttributes getFileAttributes() {
+    return mFileAttributes;
+  }
+
 }
@@ -27,15 +27,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 
+import jcifs.smb.NtlmPasswordAuthentication;
+import jcifs.smb.SmbFile;
+
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.access.AccountPasswordEntry;
 import net.sf.regain.crawler.config.CrawlerConfig;
-import net.sf.regain.util.io.HtmlEntities;
+import net.sf.regain.util.io.MarkupStripper;
 
 /**
  * Contains help methods for the crawler.
@@ -50,6 +54,15 @@ public class CrawlerToolkit {
   private static Logger mLog = Logger.getLogger(CrawlerToolkit.class);
   private static Pattern urlPatternLeft = Pattern.compile("([\\w]*://[\\w\\.:\\d-]*[^/]).*");
 
+  /**
+   * The authentications for Windows shares. The user info (account:password)
+   * is the key. Using the same authentication object for all files of a share
+   * lets jcifs reuse the authenticated session instead of negotiating a new
+   * one.
+   */
+  private static ConcurrentHashMap<String, NtlmPasswordAuthentication> mSmbAuthMap
+    = new ConcurrentHashMap<String, NtlmPasswordAuthentication>();
+
   public static String createURLFromProps(String[] parts) {
 
     StringBuilder result = new StringBuilder(32);
@@ -267,18 +280,29 @@ public class CrawlerToolkit {
    * @throws RegainException Wenn das Laden fehl schlug.
    */
   public static byte[] loadHttpDocument(String url) throws RegainException {
-    InputStream in = null;
-    ByteArrayOutputStream out = null;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    loadHttpDocument(url, out);
+    return out.toByteArray();
+  }
 
+
+  /**
+   * Loads a document from a HTTP server and writes its content into a stream.
+   * <p>
+   * The content is piped, so it is never held in memory as a whole. The
+   * stream is not closed.
+   *
+   * @param url The URL of the document to load.
+   * @param out The stream to write the content to.
+   * @throws RegainException If loading failed.
+   */
+  public static void loadHttpDocument(String url, OutputStream out)
+    throws RegainException
+  {
+    InputStream in = null;
     try {
       in = getHttpStream(new URL(url));
-
-      out = new ByteArrayOutputStream();
-
       RegainToolkit.pipe(in, out);
-
-      out.close();
-      return out.toByteArray();
     }
     catch (RedirectException exc) {
       throw exc;
@@ -290,9 +314,6 @@ public class CrawlerToolkit {
       if (in != null) {
         try { in.close(); } catch (Exception exc) {}
       }
-      if (out != null) {
-        try { out.close(); } catch (Exception exc) {}
-      }
     }
   }
 
@@ -311,22 +332,41 @@ public class CrawlerToolkit {
     }
 
     FileInputStream in = null;
-    ByteArrayOutputStream out = null;
     try {
       in = new FileInputStream(file);
-      out = new ByteArrayOutputStream((int) file.length());
 
-      RegainToolkit.pipe(in, out);
+      // NOTE: We read directly into an array of the right size. Piping into a
+      //       ByteArrayOutputStream would need the content twice in memory.
+      //       The file may change while we read it, so we read up to EOF
+      //       instead of relying on the length.
+      byte[] content = new byte[(int) file.length()];
+      int pos = 0;
+      int len;
+      while ((pos < content.length)
+          && ((len = in.read(content, pos, content.length - pos)) != -1))
+      {
+        pos += len;
+      }
+      if (pos < content.length) {
+        // The file has shrunk
+        return Arrays.copyOf(content, pos);
+      }
 
-      return out.toByteArray();
+      int next = in.read();
+      if (next != -1) {
+        // The file has grown
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 2);
+        out.write(content);
+        out.write(next);
+        RegainToolkit.pipe(in, out);
+        return out.toByteArray();
+      }
+      return content;
     }
     catch (IOException exc) {
       throw new RegainException("Loading file failed " + file.getAbsolutePath(), exc);
     }
     finally {
-      if (out != null) {
-        try { out.close(); } catch (IOException exc) {}
-      }
       if (in != null) {
         try { in.close(); } catch (IOException exc) {}
       }
@@ -563,45 +603,7 @@ public class CrawlerToolkit {
    * @return Der gewandelte Text.
    */
   public static String replaceHtmlEntities(String text) {
-    StringBuffer clean = new StringBuffer();
-
-    int offset = 0;
-    int entityStart;
-    while ((entityStart = text.indexOf('&', offset)) != -1) {
-      // Append the part since the last entity
-      String textPart = text.substring(offset, entityStart);
-      clean.append(textPart);
-
-      // Find the end of the entity
-      int entityEnd = text.indexOf(';', entityStart);
-      if (entityEnd == -1) {
-        // Syntax error: The entity doesn't end -> Forget that dirty end
-        offset = text.length();
-        break;
-      }
-
-      // Extract, decode and append the entity
-      String entity = text.substring(entityStart, entityEnd + 1);
-      String decoded;
-      try {
-        decoded = HtmlEntities.decode(entity);
-      }
-      catch (Throwable thr) {
-        // This doesn't seem to be a wellformed entity -> Leave the text as it is
-        decoded = entity;
-      }
-      clean.append(decoded);
-
-      // Get the next offset
-      offset = entityEnd + 1;
-    }
-
-    // Append the part since the last entity
-    if (offset < text.length()) {
-      clean.append(text.substring(offset, text.length()));
-    }
-
-    return clean.toString();
+    return MarkupStripper.replaceEntities(text);
   }
 
 
@@ -614,57 +616,7 @@ public class CrawlerToolkit {
    * @return Der von Tags gesüberte Text
    */
   public static String cleanFromHtmlTags(String text) {
-    StringBuffer clean = new StringBuffer(text.length());
-
-    int offset = 0;
-    int tagStart;
-    while ((tagStart = text.indexOf('<', offset)) != -1) {
-      // Extract the good part since the last tag
-      String goodPart = text.substring(offset, tagStart);
-
-      // Check whether the good part is wasted by cascaded tags
-      // Example: In the text "<!-- <br> --> Hello" "<!-- <br>" will be
-      //          detected as tag and "--> Hello" as good part.
-      //          We now have to scan the good part for a tag rest.
-      //          (In this example: "-->")
-      int tagRestEnd = goodPart.indexOf('>');
-      if (tagRestEnd != -1) {
-        goodPart = goodPart.substring(tagRestEnd + 1);
-      }
-
-      // Trim the good part
-      goodPart = goodPart.trim();
-
-      if (goodPart.length() > 0) {
-        // Replace all entities in the text and append the result
-        goodPart = replaceHtmlEntities(goodPart);
-        clean.append(goodPart);
-
-        // Append a space
-        clean.append(" ");
-      }
-
-      // Find the end of the tag
-      int tagEnd = text.indexOf('>', tagStart);
-      if (tagEnd == -1) {
-        // Syntax error: The tag doesn't end -> Forget that dirty end
-        offset = text.length();
-        break;
-      }
-
-      // Calculate the next offset
-      offset = tagEnd + 1;
-    }
-
-    // Extract the good part since the last tag, replace all entities and append
-    // the result
-    if (offset < text.length()) {
-      String goodPart = text.substring(offset, text.length()).trim();
-      goodPart = replaceHtmlEntities(goodPart);
-      clean.append(goodPart);
-    }
-
-    return clean.toString();
+    return MarkupStripper.strip(text);
   }
 
   /**
@@ -713,6 +665,43 @@ public class CrawlerToolkit {
 
   }
 
+  /**
+   * Creates the smb file for an URL with the <code>smb://</code> protocol.
+   * <p>
+   * The credentials are not put into the URL but given as a shared
+   * authentication object. So all files of a share use the same session.
+   *
+   * @param url The URL to get the smb file for.
+   * @param entry The account password entry for the URL. May be
+   *        <code>null</code>.
+   * @return The smb file.
+   * @throws RegainException If the URL is malformed.
+   */
+  public static SmbFile createSmbFile(String url, AccountPasswordEntry entry)
+    throws RegainException
+  {
+    String smbFileName = RegainToolkit.urlToSmbFileName(url);
+    try {
+      if (entry == null) {
+        return new SmbFile(smbFileName);
+      }
+
+      String userInfo = entry.getAccountName() + ":" + entry.getPassword();
+      NtlmPasswordAuthentication auth = mSmbAuthMap.get(userInfo);
+      if (auth == null) {
+        auth = new NtlmPasswordAuthentication(userInfo);
+        NtlmPasswordAuthentication otherAuth = mSmbAuthMap.putIfAbsent(userInfo, auth);
+        if (otherAuth != null) {
+          auth = otherAuth;
+        }
+      }
+      return new SmbFile(smbFileName, auth);
+    }
+    catch (MalformedURLException exc) {
+      throw new RegainException("Creating smb file failed for " + url, exc);
+    }
+  }
+
   /**
    * Extract left part of URL (protocol, host, port).
    *
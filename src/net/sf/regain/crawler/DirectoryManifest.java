@@ -0,0 +1,331 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers the state of every crawled directory of the file system.
+ * <p>
+ * For every directory a fingerprint over the names, sizes and last-modified
+ * dates of its children is stored. If a directory has the same fingerprint
+ * the next time it is crawled, none of its files changed and the files don't
+ * have to be looked up in the index again.
+ * <p>
+ * The manifest is written into the index directory, so it always belongs to
+ * the index it describes.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class DirectoryManifest {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(DirectoryManifest.class);
+
+  /**
+   * The version of the file format.
+   * <p>
+   * Version 2: Whether the entries of archives were indexed.
+   */
+  private static final int FILE_VERSION = 2;
+
+  /**
+   * The fingerprint that stands for "unknown". Directories with this
+   * fingerprint are never regarded as unchanged.
+   */
+  public static final long NO_FINGERPRINT = 0;
+
+  /** The fingerprints of the directories. The URL of a directory is the key. */
+  private HashMap<String, Long> mFingerprintMap;
+
+  /** Whether the entries of archives were indexed by the crawl. */
+  private boolean mArchiveEntriesIndexed;
+
+
+  /**
+   * Creates a new, empty instance of DirectoryManifest.
+   */
+  public DirectoryManifest() {
+    mFingerprintMap = new HashMap<String, Long>();
+  }
+
+
+  /**
+   * Loads a manifest from a file.
+   * <p>
+   * If the file does not exist or can't be read an empty manifest is returned.
+   * In this case all directories will be regarded as changed, so this is
+   * always safe.
+   *
+   * @param file The file to load.
+   * @return The loaded manifest.
+   */
+  public static DirectoryManifest load(File file) {
+    DirectoryManifest manifest = new DirectoryManifest();
+    if (! file.exists()) {
+      return manifest;
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(
+          new FileInputStream(file))));
+
+      int version = in.readInt();
+      if (version != FILE_VERSION) {
+        mLog.warn("Ignoring directory manifest with unknown version " + version
+            + ": " + file.getAbsolutePath());
+        return manifest;
+      }
+
+      manifest.mArchiveEntriesIndexed = in.readBoolean();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String url = in.readUTF();
+        long fingerprint = in.readLong();
+        manifest.mFingerprintMap.put(url, fingerprint);
+      }
+    }
+    catch (IOException exc) {
+      mLog.warn("Reading directory manifest failed. All directories will be " +
+          "crawled completely: " + file.getAbsolutePath(), exc);
+      manifest.mFingerprintMap.clear();
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+
+    return manifest;
+  }
+
+
+  /**
+   * Writes this manifest into a file.
+   *
+   * @param file The file to write to.
+   * @throws RegainException If writing failed.
+   */
+  public void write(File file) throws RegainException {
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+          new FileOutputStream(file))));
+
+      out.writeInt(FILE_VERSION);
+      out.writeBoolean(mArchiveEntriesIndexed);
+      out.writeInt(mFingerprintMap.size());
+      for (Map.Entry<String, Long> entry : mFingerprintMap.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      out.close();
+      out = null;
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing directory manifest failed: "
+          + file.getAbsolutePath(), exc);
+    }
+    finally {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Gets whether the entries of archives were indexed by the crawl this
+   * manifest belongs to.
+   *
+   * @return Whether the entries of archives were indexed.
+   */
+  public boolean getArchiveEntriesIndexed() {
+    return mArchiveEntriesIndexed;
+  }
+
+
+  /**
+   * Sets whether the entries of archives were indexed by the crawl this
+   * manifest belongs to.
+   *
+   * @param archiveEntriesIndexed Whether the entries of archives were indexed.
+   */
+  public void setArchiveEntriesIndexed(boolean archiveEntriesIndexed) {
+    mArchiveEntriesIndexed = archiveEntriesIndexed;
+  }
+
+
+  /**
+   * Gets whether a directory has the given fingerprint in this manifest.
+   *
+   * @param dirUrl The URL of the directory.
+   * @param fingerprint The current fingerprint of the directory.
+   * @return Whether the directory is unchanged.
+   */
+  public boolean isUnchanged(String dirUrl, long fingerprint) {
+    if (fingerprint == NO_FINGERPRINT) {
+      return false;
+    }
+
+    Long oldFingerprint = mFingerprintMap.get(dirUrl);
+    return (oldFingerprint != null) && (oldFingerprint.longValue() == fingerprint);
+  }
+
+
+  /**
+   * Sets the fingerprint of a directory.
+   *
+   * @param dirUrl The URL of the directory.
+   * @param fingerprint The fingerprint of the directory.
+   */
+  public void setFingerprint(String dirUrl, long fingerprint) {
+    if (fingerprint == NO_FINGERPRINT) {
+      mFingerprintMap.remove(dirUrl);
+    } else {
+      mFingerprintMap.put(dirUrl, fingerprint);
+    }
+  }
+
+
+  /**
+   * Removes a directory from the manifest. Should be called if a file of the
+   * directory could not be indexed. So the directory will be crawled
+   * completely the next time.
+   *
+   * @param dirUrl The URL of the directory.
+   */
+  public void invalidate(String dirUrl) {
+    mFingerprintMap.remove(dirUrl);
+  }
+
+
+  /**
+   * Removes a directory and all its subdirectories from the manifest. Should
+   * be called if a directory was changed, moved or deleted.
+   *
+   * @param dirUrl The URL of the directory.
+   */
+  public void invalidateTree(String dirUrl) {
+    mFingerprintMap.remove(dirUrl);
+
+    String prefix = dirUrl.endsWith("/") ? dirUrl : dirUrl + "/";
+    Iterator<String> iter = mFingerprintMap.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().startsWith(prefix)) {
+        iter.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Gets the number of directories in this manifest.
+   *
+   * @return The number of directories.
+   */
+  public int size() {
+    return mFingerprintMap.size();
+  }
+
+
+  /**
+   * Calculates the fingerprint of a directory listing.
+   * <p>
+   * The fingerprint does not depend on the order of the entries.
+   *
+   * @param entryList The entries of the directory.
+   * @return The fingerprint or {@link #NO_FINGERPRINT} if the attributes of an
+   *         entry are unknown.
+   */
+  public static long getFingerprint(List<FileTreeWalker.Entry> entryList) {
+    long fingerprint = entryList.size();
+    for (FileTreeWalker.Entry entry : entryList) {
+      BasicFileAttributes attributes = entry.getAttributes();
+      if (attributes == null) {
+        return NO_FINGERPRINT;
+      }
+
+      long hash = hash(entry.getPath().getFileName().toString());
+      hash = hash * 31 + attributes.size();
+      hash = hash * 31 + attributes.lastModifiedTime().toMillis();
+      hash = hash * 31 + (attributes.isDirectory() ? 1 : 0);
+
+      // NOTE: We mix every entry before summing up, so the sum does not depend
+      //       on the order of the entries, but entries don't cancel out.
+      fingerprint += mix(hash);
+    }
+
+    return (fingerprint == NO_FINGERPRINT) ? 1 : fingerprint;
+  }
+
+
+  /**
+   * Calculates a 64 bit hash of a String (FNV-1a).
+   *
+   * @param text The String to hash.
+   * @return The hash value.
+   */
+  private static long hash(String text) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+
+  /**
+   * Mixes the bits of a hash value (the finalizer of MurmurHash3).
+   *
+   * @param hash The hash value to mix.
+   * @return The mixed hash value.
+   */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+}
@@ -0,0 +1,489 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.CrawlerConfig;
+import net.sf.regain.crawler.config.StartUrl;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.plugin.CrawlerPluginManager;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps an existing index up to date by watching the file system.
+ * <p>
+ * All directories below the file start URLs are registered at a
+ * {@link WatchService}. The change events are collected until the file system
+ * is quiet for a moment. Then only the affected files are removed from or
+ * added to the index and the index is provided to the search mask.
+ * <p>
+ * The index is kept open by a long-lived {@link IndexWriterManager} until
+ * {@link #stop()} is called. A complete crawl is still needed for creating the
+ * index and for everything the watcher can't see (e.g. changes while the
+ * watcher didn't run or lost events).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FileChangeIndexer implements ErrorLogger {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(FileChangeIndexer.class);
+
+  /**
+   * The time in milliseconds the file system must be quiet before the
+   * collected changes are indexed.
+   */
+  private static final long QUIET_MILLIS = 2000;
+
+  /**
+   * The maximum time in milliseconds a change waits for being indexed, even if
+   * the file system isn't quiet.
+   */
+  private static final long MAX_DELAY_MILLIS = 10000;
+
+  /** The configuration with the preferences. */
+  private CrawlerConfig mConfiguration;
+
+  /** The URL checker. */
+  private UrlChecker mUrlChecker;
+
+  /** The IndexWriterManager to use for changing the index. */
+  private IndexWriterManager mIndexWriterManager;
+
+  /** The watch service. */
+  private WatchService mWatchService;
+
+  /** The watched directories. The key is the WatchKey of the directory. */
+  private HashMap<WatchKey, Path> mWatchedDirMap;
+  /** The watched directories. */
+  private HashSet<Path> mWatchedDirSet;
+
+  /** The paths that changed since the last index update. */
+  private LinkedHashSet<Path> mChangedPathSet;
+
+  /** Whether the watcher should stop as soon as possible. */
+  private volatile boolean mShouldStop;
+
+  /** Whether the watching thread was interrupted. */
+  private boolean mInterrupted;
+
+  /** Whether events were lost, so a complete crawl is needed. */
+  private boolean mNeedsFullUpdate;
+
+  /** The number of errors that occurred. */
+  private int mErrorCount;
+
+  /** The crawler plugin manager. */
+  private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
+
+
+  /**
+   * Creates a new instance of FileChangeIndexer.
+   *
+   * @param config The configuration to use.
+   */
+  public FileChangeIndexer(CrawlerConfig config) {
+    mConfiguration = config;
+    mWatchedDirMap = new HashMap<WatchKey, Path>();
+    mWatchedDirSet = new HashSet<Path>();
+    mChangedPathSet = new LinkedHashSet<Path>();
+  }
+
+
+  /**
+   * Watches the file system and updates the index until {@link #stop()} is
+   * called, the deadline is reached, events were lost or the thread is
+   * interrupted.
+   *
+   * @param deadline The time (in milliseconds) when the watching should end.
+   * @throws RegainException If the index could not be opened or the watch
+   *         service could not be created.
+   */
+  public void run(long deadline) throws RegainException {
+    mNeedsFullUpdate = false;
+    mInterrupted = false;
+
+    mUrlChecker = new UrlChecker(mConfiguration.getWhiteList(),
+      mConfiguration.getBlackList());
+
+    try {
+      mWatchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException exc) {
+      throw new RegainException("Creating watch service failed", exc);
+    }
+
+    try {
+      mIndexWriterManager = new IndexWriterManager(mConfiguration, true, false);
+      if (! mIndexWriterManager.getUpdateIndex()) {
+        // There is no index to update -> A complete crawl is needed
+        mLog.info("There is no index to keep up to date");
+        mNeedsFullUpdate = true;
+        return;
+      }
+      mIndexWriterManager.keepOldDirectoryManifest();
+
+      // Register the directories of all file start URLs
+      StartUrl[] startUrlArr = mUrlChecker.normalizeStartUrls(mConfiguration.getStartUrls());
+      for (int i = 0; i < startUrlArr.length; i++) {
+        String url = startUrlArr[i].getUrl();
+        if (url.startsWith("file://") && startUrlArr[i].getShouldBeParsed()) {
+          registerTree(RegainToolkit.urlToFile(url).toPath(), null);
+        }
+      }
+      mLog.info("Watching " + mWatchedDirMap.size() + " directories for changes");
+
+      watch(deadline);
+
+      // Index the changes that are still pending
+      if ((! mChangedPathSet.isEmpty()) && (! mNeedsFullUpdate)) {
+        updateIndex();
+      }
+    }
+    finally {
+      try {
+        mWatchService.close();
+      } catch (IOException exc) {
+        mLog.warn("Closing watch service failed", exc);
+      }
+      mWatchedDirMap.clear();
+      mWatchedDirSet.clear();
+
+      if (mIndexWriterManager != null) {
+        try {
+          if (mIndexWriterManager.getUpdateIndex()) {
+            mIndexWriterManager.removeObsoleteEntries(null);
+            mIndexWriterManager.close(false, false);
+          } else {
+            // This is a new, empty index -> Don't provide it
+            mIndexWriterManager.discard();
+          }
+        } catch (RegainException exc) {
+          logError("Finishing index failed!", exc, true);
+        }
+        mIndexWriterManager = null;
+      }
+
+      if (mInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+
+  /**
+   * Requests the watcher to stop. The index is closed and provided to the
+   * search mask.
+   */
+  public void stop() {
+    mShouldStop = true;
+  }
+
+
+  /**
+   * Gets whether events were lost or there was no index, so a complete crawl
+   * is needed.
+   *
+   * @return Whether a complete crawl is needed.
+   */
+  public boolean getNeedsFullUpdate() {
+    return mNeedsFullUpdate;
+  }
+
+
+  /**
+   * Gets the number of errors that occurred.
+   *
+   * @return The number of errors.
+   */
+  public int getErrorCount() {
+    return mErrorCount;
+  }
+
+
+  /**
+   * Collects the change events and updates the index when the file system is
+   * quiet.
+   *
+   * @param deadline The time (in milliseconds) when the watching should end.
+   */
+  private void watch(long deadline) {
+    long firstChangeTime = -1;
+    long lastChangeTime = -1;
+    while ((! mShouldStop) && (! mNeedsFullUpdate)
+      && (System.currentTimeMillis() < deadline))
+    {
+      WatchKey key;
+      try {
+        key = mWatchService.poll(mChangedPathSet.isEmpty() ? 1000 : 200,
+                                 TimeUnit.MILLISECONDS);
+      } catch (InterruptedException exc) {
+        // Stop watching. The interrupt flag is set again when the index is
+        // closed, because Lucene's file access fails on interrupted threads.
+        mInterrupted = true;
+        break;
+      }
+
+      long now = System.currentTimeMillis();
+      if (key != null) {
+        collectEvents(key);
+        if (! mChangedPathSet.isEmpty()) {
+          if (firstChangeTime == -1) {
+            firstChangeTime = now;
+          }
+          lastChangeTime = now;
+        }
+      }
+
+      if ((! mChangedPathSet.isEmpty())
+        && ((now - lastChangeTime >= QUIET_MILLIS)
+            || (now - firstChangeTime >= MAX_DELAY_MILLIS)))
+      {
+        updateIndex();
+        firstChangeTime = -1;
+        lastChangeTime = -1;
+      }
+    }
+  }
+
+
+  /**
+   * Collects the events of a watch key.
+   *
+   * @param key The watch key.
+   */
+  private void collectEvents(WatchKey key) {
+    Path dir = mWatchedDirMap.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        mLog.warn("File system events were lost. A complete index update is needed.");
+        mNeedsFullUpdate = true;
+      } else if (dir != null) {
+        Path child = dir.resolve((Path) event.context());
+        mChangedPathSet.add(child);
+      }
+    }
+
+    if (! key.reset()) {
+      // The directory is no longer accessible (e.g. it was deleted)
+      mWatchedDirSet.remove(mWatchedDirMap.remove(key));
+    }
+  }
+
+
+  /**
+   * Removes the changed files from the index, adds them again and provides the
+   * index to the search mask.
+   */
+  private void updateIndex() {
+    ArrayList<Path> changedPathList = new ArrayList<Path>(mChangedPathSet);
+    mChangedPathSet.clear();
+    mLog.info("Updating the index for " + changedPathList.size() + " changed files");
+
+    // First remove all old entries, then add the new ones. This way the index
+    // is switched between deleting and adding mode only once.
+    ArrayList<Path> fileList = new ArrayList<Path>();
+    for (Path path : changedPathList) {
+      try {
+        String url = RegainToolkit.fileToUrl(path.toFile());
+        mIndexWriterManager.invalidateDirectoryFingerprint(
+            RegainToolkit.fileToUrl(path.getParent().toFile()));
+        if (Files.isDirectory(path)) {
+          mIndexWriterManager.invalidateDirectoryTree(url);
+          if (! isWatched(path)) {
+            // This is a new directory -> Watch it and index its files
+            registerTree(path, fileList);
+          }
+        } else {
+          // The file was changed or deleted. If it was a directory all
+          // entries below are removed, too.
+          mIndexWriterManager.invalidateDirectoryTree(url);
+          mIndexWriterManager.removeFromIndex(url);
+          if (Files.isRegularFile(path)) {
+            fileList.add(path);
+          }
+        }
+      }
+      catch (Throwable thr) {
+        logError("Removing " + path + " from index failed", thr, false);
+      }
+    }
+
+    for (Path file : fileList) {
+      indexFile(file);
+    }
+
+    try {
+      mIndexWriterManager.publish();
+    }
+    catch (RegainException exc) {
+      logError("Providing the index failed", exc, false);
+    }
+  }
+
+
+  /**
+   * Adds a file to the index if it is accepted by the white and black list.
+   *
+   * @param file The file to add.
+   */
+  private void indexFile(Path file) {
+    String url = null;
+    RawDocument rawDocument = null;
+    try {
+      url = RegainToolkit.fileToUrl(file.toFile());
+      String sourceUrl = RegainToolkit.fileToUrl(file.getParent().toFile());
+      if ((! mUrlChecker.isUrlAccepted(url).getShouldBeIndexed())
+        || pluginManager.eventAskDynamicBlacklist(url, sourceUrl, null))
+      {
+        return;
+      }
+
+      // NOTE: We remove the entry here again, in case the file appeared twice
+      //       (e.g. in a new directory and as a changed file)
+      mIndexWriterManager.removeFromIndex(url);
+
+      rawDocument = new RawDocument(url, sourceUrl, null, null);
+      mIndexWriterManager.createNewIndexEntry(rawDocument, this);
+    }
+    catch (Throwable thr) {
+      logError("Indexing failed for: " + ((url == null) ? file.toString() : url), thr, false);
+    }
+    finally {
+      if (rawDocument != null) {
+        rawDocument.dispose();
+      }
+    }
+  }
+
+
+  /**
+   * Checks whether a directory is watched already.
+   *
+   * @param dir The directory to check.
+   * @return Whether the directory is watched.
+   */
+  private boolean isWatched(Path dir) {
+    return mWatchedDirSet.contains(dir);
+  }
+
+
+  /**
+   * Registers a directory and all its sub directories at the watch service.
+   *
+   * @param rootDir The directory to register.
+   * @param fileList The list where to add the files found in the directories.
+   *        Is <code>null</code> if the files should not be collected.
+   */
+  private void registerTree(Path rootDir, final List<Path> fileList) {
+    try {
+      Files.walkFileTree(rootDir, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException
+        {
+          try {
+            String url = RegainToolkit.fileToUrl(dir.toFile());
+            if (! mUrlChecker.isUrlAccepted(url).getShouldBeParsed()) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+          } catch (RegainException exc) {
+            throw new IOException("Creating URL failed for " + dir, exc);
+          }
+
+          WatchKey key = dir.register(mWatchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+          mWatchedDirMap.put(key, dir);
+          mWatchedDirSet.add(dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if ((fileList != null) && attrs.isRegularFile()) {
+            fileList.add(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          mLog.warn("Can't watch " + file + ": " + exc.getMessage());
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException exc) {
+      // NOTE: This happens e.g. if the limit of watches of the operating system
+      //       is reached. The complete crawls will keep the index up to date.
+      logError("Watching " + rootDir + " failed. Changes in this directory " +
+          "will be indexed by the next complete index update", exc, false);
+    }
+  }
+
+
+  /**
+   * Logs an error.
+   *
+   * @param msg The error message.
+   * @param thr The error. May be <code>null</code>.
+   * @param fatal Specifies whether the error was fatal.
+   */
+  @Override
+  public void logError(String msg, Throwable thr, boolean fatal) {
+    if (fatal) {
+      msg = "Fatal: " + msg;
+    }
+    mLog.error(msg, thr);
+    try {
+      if (mIndexWriterManager != null) {
+        mIndexWriterManager.logError(msg, thr);
+      }
+    }
+    catch (RegainException exc) {
+      mLog.error("Logging error in error log of index failed", exc);
+    }
+
+    mErrorCount++;
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lists the directories of the file system for the crawler.
+ * <p>
+ * Every directory is listed by {@link Files#walkFileTree} with a depth of 1.
+ * This way the attributes of every child are read exactly once (on Windows
+ * they even come with the directory listing itself). The attributes are
+ * carried in the crawler jobs, so neither the crawler nor the
+ * {@link net.sf.regain.crawler.document.RawDocument} have to ask the file
+ * system again.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FileTreeWalker extends AbstractTreeWalker<Path, FileTreeWalker.Entry> {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(FileTreeWalker.class);
+
+  /**
+   * A child of a listed directory.
+   */
+  public static class Entry extends AbstractTreeWalker.Entry<Path> {
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param path The path of the child.
+     * @param url The URL of the child.
+     * @param attributes The attributes of the child. May be <code>null</code>.
+     */
+    Entry(Path path, String url, BasicFileAttributes attributes) {
+      super(path, url, attributes);
+    }
+
+    /**
+     * Gets the path of the child.
+     *
+     * @return The path of the child.
+     */
+    public Path getPath() {
+      return getKey();
+    }
+
+  }
+
+
+  /**
+   * Creates a new instance of FileTreeWalker.
+   *
+   * @param threadCount The number of threads listing directories in advance.
+   *        If &lt;= 0 the directories are only listed when they are requested.
+   * @param maxListingCount The maximum number of listings that may be held in
+   *        advance.
+   * @param filter The filter deciding which directories are listed in advance.
+   */
+  public FileTreeWalker(int threadCount, int maxListingCount,
+    DirectoryFilter filter)
+  {
+    super(threadCount, maxListingCount, filter);
+
+    if ((threadCount > 0) && (maxListingCount > 0)) {
+      mLog.info("Walking directories with " + threadCount + " threads");
+    }
+  }
+
+
+  @Override
+  protected List<Entry> readDirectory(final Path dir) throws IOException {
+    final ArrayList<Entry> entryList = new ArrayList<Entry>();
+
+    // NOTE: We follow links the same way File.isDirectory() did
+    Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+      new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+          throws IOException
+        {
+          try {
+            entryList.add(new Entry(file, toUrl(file), attrs));
+          } catch (RegainException exc) {
+            throw new IOException("Creating URL failed for " + file, exc);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc)
+          throws IOException
+        {
+          if (file.equals(dir)) {
+            // The directory itself can't be read
+            throw exc;
+          }
+
+          // The attributes of this child can't be read (e.g. a broken link)
+          // -> Add it without attributes
+          try {
+            entryList.add(new Entry(file, toUrl(file), null));
+          } catch (RegainException urlExc) {
+            throw new IOException("Creating URL failed for " + file, urlExc);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path file, IOException exc)
+          throws IOException
+        {
+          if (exc != null) {
+            throw exc;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+    return entryList;
+  }
+
+
+  /**
+   * Gets the URL of a path.
+   *
+   * @param path The path to get the URL for.
+   * @return The URL.
+   * @throws RegainException If URL-encoding failed.
+   */
+  private static String toUrl(Path path) throws RegainException {
+    return RegainToolkit.fileNameToUrl(path.toAbsolutePath().toString());
+  }
+
+}
@@ -24,29 +24,42 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.ArchiveIndexingSettings;
 import net.sf.regain.crawler.config.CrawlerConfig;
 import net.sf.regain.crawler.config.UrlMatcher;
 import net.sf.regain.crawler.document.DocumentFactory;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
+import net.sf.regain.util.metrics.MetricsCollector;
+import net.sf.regain.util.metrics.RateMeter;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexFileNameFilter;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -100,6 +113,25 @@ public class IndexWriterManager {
    * was fully created.
    */
   private static final String BREAKPOINT_INDEX_SUBDIR = "breakpoint";
+
+  /**
+   * The name of the file in the index directory holding the
+   * {@link DirectoryManifest}.
+   * <p>
+   * NOTE: The file must not end with .txt, because those files are not copied
+   * when an index is updated.
+   */
+  private static final String DIRECTORY_MANIFEST_FILE = "directoryManifest.dat";
+  /**
+   * The version of the fields written to the index. An index having another
+   * version can't be updated, because the unchanged documents would keep the
+   * old fields.
+   * <p>
+   * Version 2: "size" and "modified" are numeric fields.
+   * Version 3: "archive-url" is indexed.
+   * Version 4: "archive-entry-crc" is indexed.
+   */
+  private static final String INDEX_FIELD_VERSION = "4";
   /**
    * Gibt an, ob die Terme sortiert in die Terme-Datei geschrieben werden soll.
    *
@@ -165,6 +197,11 @@ public class IndexWriterManager {
   private boolean mRetryFailedDocs;
   /** Die DocumentFactory, die die Inhalte für die Indizierung aufbereitet. */
   private DocumentFactory mDocumentFactory;
+  /**
+   * Indexes the entries of archives. Is <code>null</code> if only the archives
+   * themselves should be indexed.
+   */
+  private ArchiveIndexer mArchiveIndexer;
   /**
    * Das Verzeichnis, in dem der Suchindex am Ende stehen soll, wenn es keine
    * fatalen Fehler gab.
@@ -204,6 +241,12 @@ public class IndexWriterManager {
   private Profiler mAddToIndexProfiler = new Profiler("Indexed documents", "docs");
   /** The profiler for the breakpoint creation. */
   private Profiler mBreakpointProfiler = new Profiler("Created breakpoints", "breakpoints");
+  /** The profiler that measures the flushes of the IndexWriter. */
+  private Profiler mFlushProfiler = new Profiler("Index writer flushes", "flushes");
+  /** The profiler that measures the segment merges. */
+  private Profiler mMergeProfiler = new Profiler("Index merges", "merges");
+  /** Measures the number of documents added to the index per second. */
+  private RateMeter mAddToIndexRate = new RateMeter();
   /**
    * enthält die URL und den LastUpdated-String aller Dokumente, deren Eintr�ge
    * beim Abschlie�en des Index entfernt werden m�ssen.
@@ -212,6 +255,19 @@ public class IndexWriterManager {
    */
   private HashMap<String, String> mUrlsToDeleteHash;
 
+  /**
+   * The directory manifest of the old index. Is <code>null</code> if a new
+   * index is created or unchanged directories should not be skipped.
+   */
+  private DirectoryManifest mOldDirectoryManifest;
+  /** The directory manifest of the index that is created now. */
+  private DirectoryManifest mDirectoryManifest;
+  /**
+   * The URLs of the directories that didn't change since the last crawl. The
+   * entries of these directories are kept in the index.
+   */
+  private HashSet<String> mKeptDirectoryUrlSet;
+
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
 
@@ -283,6 +339,27 @@ public class IndexWriterManager {
       }
     }
 
+    // Load the directory manifest of the old index
+    boolean indexArchiveEntries = (config.getArchiveIndexingSettings() != null);
+    mDirectoryManifest = new DirectoryManifest();
+    mDirectoryManifest.setArchiveEntriesIndexed(indexArchiveEntries);
+    mKeptDirectoryUrlSet = new HashSet<String>();
+    if (updateIndex && config.getSkipUnchangedDirectories()) {
+      mOldDirectoryManifest = DirectoryManifest.load(new File(mTempIndexDir, DIRECTORY_MANIFEST_FILE));
+      mLog.info("Loaded the manifest of " + mOldDirectoryManifest.size() + " directories");
+
+      // The files of unchanged directories are not processed. So the entries
+      // of their archives would never be added if the last crawl didn't
+      // index them.
+      if (indexArchiveEntries && (mOldDirectoryManifest.size() != 0)
+        && ! mOldDirectoryManifest.getArchiveEntriesIndexed())
+      {
+        mLog.info("Ignoring the directory manifest, because the entries of " +
+            "archives were not indexed the last time");
+        mOldDirectoryManifest = null;
+      }
+    }
+
     // Check whether we have to create a new index
     boolean createNewIndex = !updateIndex;
     if (createNewIndex) {
@@ -309,6 +386,7 @@ public class IndexWriterManager {
     // Write the stopWordList and the exclusionList in a file so it can be found
     // by the search mask
     RegainToolkit.writeToFile(analyzerType, new File(mTempIndexDir, "analyzerType.txt"));
+    RegainToolkit.writeToFile(INDEX_FIELD_VERSION, new File(mTempIndexDir, "fieldVersion.txt"));
     RegainToolkit.writeListToFile(stopWordList, new File(mTempIndexDir, "stopWordList.txt"));
     RegainToolkit.writeListToFile(exclusionList, new File(mTempIndexDir, "exclusionList.txt"));
     if (untokenizedFieldNames.length != 0) {
@@ -325,6 +403,11 @@ public class IndexWriterManager {
     }
 
     mDocumentFactory = new DocumentFactory(config, mAnalysisDir);
+
+    ArchiveIndexingSettings archiveSettings = config.getArchiveIndexingSettings();
+    if (archiveSettings != null) {
+      mArchiveIndexer = new ArchiveIndexer(archiveSettings, this, mDocumentFactory);
+    }
   }
 
   /**
@@ -369,6 +452,41 @@ public class IndexWriterManager {
     return (hash == null) ? 0 : hash.size();
   }
 
+  /**
+   * Adds the state of the index writing to the metrics.
+   *
+   * @param collector The collector to add the metrics to.
+   */
+  public void collectMetrics(MetricsCollector collector) {
+    collector.addGauge("regain_index_initial_docs",
+        "The number of documents in the old index", getInitialDocCount());
+    collector.addCounter("regain_index_added_docs_total",
+        "The number of documents added to the index", getAddedDocCount());
+    collector.addGauge("regain_index_removed_docs",
+        "The number of documents that will be removed from the index",
+        getRemovedDocCount());
+    collector.addGauge("regain_index_docs_per_second",
+        "The number of documents added to the index per second (last minute)",
+        mAddToIndexRate.getRatePerSecond());
+
+    // NOTE: The IndexWriter is replaced by the crawler thread, so we use a
+    //       local pointer and ignore a writer that was closed meanwhile.
+    IndexWriter writer = mIndexWriter;
+    if (writer != null) {
+      try {
+        collector.addGauge("regain_index_writer_ram_bytes",
+            "The RAM used by the buffered documents of the IndexWriter",
+            writer.ramSizeInBytes());
+        collector.addGauge("regain_index_writer_ram_docs",
+            "The number of documents buffered in the RAM of the IndexWriter",
+            writer.numRamDocs());
+      }
+      catch (RuntimeException exc) {
+        // The writer was closed -> There are no buffered documents
+      }
+    }
+  }
+
   /**
    * Logs an error at the error log of the index.
    *
@@ -439,10 +557,13 @@ public class IndexWriterManager {
     // Close the mIndexWriter in READING_MODE and ALL_CLOSED_MODE
     if ((mode == READING_MODE) || (mode == ALL_CLOSED_MODE)) {
       if (mIndexWriter != null) {
+        mFlushProfiler.startMeasuring();
         try {
           mIndexWriter.close();
           mIndexWriter = null;
+          mFlushProfiler.stopMeasuring(0);
         } catch (IOException exc) {
+          mFlushProfiler.abortMeasuring();
           throw new RegainException("Closing IndexWriter failed", exc);
         }
       }
@@ -502,6 +623,7 @@ public class IndexWriterManager {
       iConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
     else
       iConfig.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+    iConfig.setMergeScheduler(new ProfilingMergeScheduler());
 
     IndexWriter indexWriter = new IndexWriter(mLuceneTempIndexDir, iConfig);
 
@@ -559,6 +681,19 @@ public class IndexWriterManager {
       return false;
     }
 
+    // Check the field version of the old index
+    File fieldVersionFile = new File(oldIndexDir, "fieldVersion.txt");
+    String fieldVersionOfIndex = RegainToolkit.readStringFromFile(fieldVersionFile);
+    if ((fieldVersionOfIndex == null)
+        || !INDEX_FIELD_VERSION.equals(fieldVersionOfIndex.trim()))
+    {
+      mLog.warn("Can't update index, because the index was created with " +
+              "other fields (index version: '" + fieldVersionOfIndex +
+              "', current version: '" + INDEX_FIELD_VERSION + "'). " +
+              "A complete new index will be created...");
+      return false;
+    }
+
     // Index in Arbeitsverzeichnis kopieren
     mLog.info("Updating index from " + oldIndexDir.getAbsolutePath());
     RegainToolkit.copyDirectory(oldIndexDir, mTempIndexDir, false, ".txt");
@@ -707,6 +842,16 @@ public class IndexWriterManager {
                 // The entry is up-to-date and contains text -> We are done
                 mLog.info("Index entry is already up to date (index=" + indexLastModified + "), " +
                         "(source=" + docLastModified + "): " + rawDocument.getUrl());
+
+                // Add the entries of an archive that was indexed before the
+                // entries of archives were indexed
+                if ((mArchiveIndexer != null)
+                  && ArchiveIndexer.isArchive(doc.get("mimetype"))
+                  && ! hasArchiveEntries(rawDocument.getUrl()))
+                {
+                  rawDocument.setMimeType(doc.get("mimetype"));
+                  mArchiveIndexer.indexEntries(rawDocument, errorLogger);
+                }
                 return;
               }
             }
@@ -750,17 +895,141 @@ public class IndexWriterManager {
 
     // Dokument in den Index aufnehmen
     if (doc != null) {
+      addDocument(doc, rawDocument.getLength());
+    }
 
-      mAddToIndexProfiler.startMeasuring();
+    // Add the entries if the document is an archive
+    if (mArchiveIndexer != null) {
+      mArchiveIndexer.indexEntries(rawDocument, errorLogger);
+    }
+  }
+
+  /**
+   * Adds a prepared document to the index.
+   *
+   * @param doc The document to add.
+   * @param length The length of the raw document (in bytes).
+   * @throws RegainException If adding the document failed.
+   */
+  void addDocument(Document doc, int length) throws RegainException {
+    mAddToIndexProfiler.startMeasuring();
+    try {
+      setIndexMode(WRITING_MODE);
+      pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
+      mIndexWriter.addDocument(doc);
+      mAddToIndexProfiler.stopMeasuring(length);
+      mAddToIndexRate.mark();
+    } catch (IOException exc) {
+      mAddToIndexProfiler.abortMeasuring();
+      throw new RegainException("Adding document to index failed", exc);
+    }
+  }
+
+  /**
+   * Gets the index entries of the entries of an archive (including the
+   * entries of nested archives).
+   *
+   * @param archiveUrl The URL of the archive.
+   * @return The index entries. The URL is the key. Is empty if a new index is
+   *         created.
+   * @throws RegainException If reading the index failed.
+   */
+  HashMap<String, Document> getArchiveEntryDocs(String archiveUrl)
+    throws RegainException
+  {
+    HashMap<String, Document> docMap = new HashMap<String, Document>();
+    if (! mUpdateIndex) {
+      return docMap;
+    }
+
+    setIndexMode(READING_MODE);
+    String entryPrefix = archiveUrl + "!/";
+    try {
+      // NOTE: The terms are sorted, so the entries of an archive are in a row
+      TermEnum termEnum = mIndexReader.terms(new Term("url", entryPrefix));
       try {
-        setIndexMode(WRITING_MODE);
-        pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
-        mIndexWriter.addDocument(doc);
-        mAddToIndexProfiler.stopMeasuring(rawDocument.getLength());
-      } catch (IOException exc) {
-        mAddToIndexProfiler.abortMeasuring();
-        throw new RegainException("Adding document to index failed", exc);
+        do {
+          Term term = termEnum.term();
+          if ((term == null) || (! term.field().equals("url"))
+            || (! term.text().startsWith(entryPrefix)))
+          {
+            break;
+          }
+
+          TermDocs termDocs = mIndexReader.termDocs(term);
+          try {
+            while (termDocs.next()) {
+              Document doc = mIndexReader.document(termDocs.doc());
+              if (archiveUrl.equals(doc.get(ArchiveIndexer.ARCHIVE_URL_FIELD))) {
+                docMap.put(term.text(), doc);
+              }
+            }
+          } finally {
+            termDocs.close();
+          }
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
       }
+    } catch (IOException exc) {
+      throw new RegainException("Reading the archive entries of " + archiveUrl
+          + " from index failed", exc);
+    }
+
+    return docMap;
+  }
+
+  /**
+   * Gets whether the index holds entries of an archive.
+   *
+   * @param archiveUrl The URL of the archive.
+   * @return Whether there are entries of the archive in the index.
+   * @throws RegainException If searching the index failed.
+   */
+  boolean hasArchiveEntries(String archiveUrl) throws RegainException {
+    setIndexMode(SEARCHING_MODE);
+    try {
+      return mIndexSearcher.docFreq(new Term(ArchiveIndexer.ARCHIVE_URL_FIELD, archiveUrl)) > 0;
+    } catch (IOException exc) {
+      throw new RegainException("Searching the archive entries of " + archiveUrl
+          + " failed", exc);
+    }
+  }
+
+  /**
+   * Removes obsolete versions of archive entries from the index.
+   * <p>
+   * Only the index entries having the CRC of the obsolete version are
+   * removed, so a new version of an entry that was added already is kept,
+   * even if it has the same URL and was modified on the same day.
+   *
+   * @param entryDocList The index entries of the archive entries to remove.
+   * @throws RegainException If removing failed.
+   */
+  void removeArchiveEntries(List<Document> entryDocList)
+    throws RegainException
+  {
+    setIndexMode(READING_MODE);
+    Query[] deleteQueryArr = new Query[entryDocList.size()];
+    for (int i = 0; i < deleteQueryArr.length; i++) {
+      Document doc = entryDocList.get(i);
+      pluginManager.eventDeleteIndexEntry(doc, mIndexReader);
+      mLog.info("Deleting from index: " + doc.get("url"));
+
+      BooleanQuery query = new BooleanQuery();
+      query.add(new TermQuery(new Term("url", doc.get("url"))), BooleanClause.Occur.MUST);
+      query.add(new TermQuery(new Term(ArchiveIndexer.ARCHIVE_URL_FIELD,
+          doc.get(ArchiveIndexer.ARCHIVE_URL_FIELD))), BooleanClause.Occur.MUST);
+      query.add(new TermQuery(new Term(ArchiveIndexer.ENTRY_CRC_FIELD,
+          doc.get(ArchiveIndexer.ENTRY_CRC_FIELD))), BooleanClause.Occur.MUST);
+      deleteQueryArr[i] = query;
+    }
+
+    setIndexMode(WRITING_MODE);
+    try {
+      mIndexWriter.deleteDocuments(deleteQueryArr);
+    } catch (IOException exc) {
+      throw new RegainException("Removing archive entries from index failed", exc);
     }
   }
 
@@ -843,6 +1112,12 @@ public class IndexWriterManager {
         String url = doc.get("url");
         String lastModified = doc.get("last-modified");
 
+        // Entries of archives exist as long as their archive exists
+        String fileUrl = doc.get(ArchiveIndexer.ARCHIVE_URL_FIELD);
+        if (fileUrl == null) {
+          fileUrl = url;
+        }
+
         // Prüfen, ob die URL gelöscht werden soll
         boolean shouldBeDeleted;
         if (url != null) {
@@ -852,8 +1127,13 @@ public class IndexWriterManager {
           } // Check whether all other documents should NOT be deleted
           else if ((urlChecker == null)) {
             shouldBeDeleted = false;
+          } // Check whether this document is in a directory that didn't change
+          // NOTE: This saves the file system access of shouldBeKeptInIndex()
+          else if (isInKeptDirectory(fileUrl)
+                   && urlChecker.isUrlAccepted(fileUrl).getShouldBeIndexed()) {
+            shouldBeDeleted = false;
           } // Check whether this document should be kept in the index
-          else if (urlChecker.shouldBeKeptInIndex(url)) {
+          else if (urlChecker.shouldBeKeptInIndex(fileUrl)) {
             shouldBeDeleted = false;
           } // Prüfen, ob die URL zu einem zu-verschonen-Präfix passt
           else {
@@ -884,6 +1164,94 @@ public class IndexWriterManager {
     mUrlsToDeleteHash = null;
   }
 
+  /**
+   * Sets the current fingerprint of a file system directory and checks whether
+   * the directory changed since the last crawl.
+   * <p>
+   * If the directory didn't change, all its entries are kept in the index by
+   * {@link #removeObsoleteEntries(UrlChecker)}. So the crawler doesn't have to
+   * process its files again.
+   *
+   * @param dirUrl The URL of the directory.
+   * @param fingerprint The current fingerprint of the directory.
+   * @return Whether the directory is unchanged since the last crawl.
+   * @see DirectoryManifest#getFingerprint(java.util.List)
+   */
+  public boolean updateDirectoryFingerprint(String dirUrl, long fingerprint) {
+    mDirectoryManifest.setFingerprint(dirUrl, fingerprint);
+
+    if ((mOldDirectoryManifest != null)
+      && mOldDirectoryManifest.isUnchanged(dirUrl, fingerprint))
+    {
+      mKeptDirectoryUrlSet.add(dirUrl);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Removes the fingerprint of a file system directory. Should be called if a
+   * file of the directory could not be processed, so the directory will be
+   * processed completely the next time.
+   *
+   * @param dirUrl The URL of the directory.
+   */
+  public void invalidateDirectoryFingerprint(String dirUrl) {
+    mDirectoryManifest.invalidate(dirUrl);
+  }
+
+  /**
+   * Removes the fingerprints of a file system directory and all its
+   * subdirectories.
+   *
+   * @param dirUrl The URL of the directory.
+   * @see #invalidateDirectoryFingerprint(String)
+   */
+  public void invalidateDirectoryTree(String dirUrl) {
+    mDirectoryManifest.invalidateTree(dirUrl);
+  }
+
+  /**
+   * Keeps the directory manifest of the old index. Should be called if only
+   * single files are updated instead of crawling all directories. The
+   * fingerprints of the changed directories must be removed by
+   * {@link #invalidateDirectoryFingerprint(String)}.
+   */
+  public void keepOldDirectoryManifest() {
+    DirectoryManifest oldManifest = mOldDirectoryManifest;
+    if (oldManifest == null) {
+      oldManifest = DirectoryManifest.load(new File(mTempIndexDir, DIRECTORY_MANIFEST_FILE));
+    }
+
+    // The entries of archives in unchanged directories would never be added
+    // if the old index doesn't contain them
+    boolean indexArchiveEntries = mDirectoryManifest.getArchiveEntriesIndexed();
+    if (indexArchiveEntries && ! oldManifest.getArchiveEntriesIndexed()) {
+      return;
+    }
+
+    oldManifest.setArchiveEntriesIndexed(indexArchiveEntries);
+    mDirectoryManifest = oldManifest;
+  }
+
+  /**
+   * Gets whether an URL is located in a directory that didn't change since the
+   * last crawl.
+   *
+   * @param url The URL to check.
+   * @return Whether the URL is located in an unchanged directory.
+   */
+  private boolean isInKeptDirectory(String url) {
+    if (mKeptDirectoryUrlSet.isEmpty()) {
+      return false;
+    }
+
+    int lastSlashPos = url.lastIndexOf('/');
+    return (lastSlashPos != -1)
+      && mKeptDirectoryUrlSet.contains(url.substring(0, lastSlashPos));
+  }
+
   /**
    * Goes through the index and deletes all obsolete entries.
    * <p>
@@ -1041,28 +1409,39 @@ public class IndexWriterManager {
    * @throws RegainException Wenn der Index nicht geschlossen werden konnte.
    */
   public void close(boolean putIntoQuarantine) throws RegainException {
+    close(putIntoQuarantine, true);
+  }
+
+  /**
+   * Closes the index.
+   *
+   * @param putIntoQuarantine Whether the index should be put into quarantine.
+   * @param optimize Whether the index should be optimized. If not, only the
+   *        merges the merge policy asks for are done. Incremental updates
+   *        should not optimize, because this rewrites the whole index.
+   * @throws RegainException If closing the index failed.
+   */
+  public void close(boolean putIntoQuarantine, boolean optimize)
+    throws RegainException
+  {
     // Index optimieren
     try {
       setIndexMode(WRITING_MODE);
-      mIndexWriter.optimize(); // TODO: Use maybeMerge instead?
+      if (optimize) {
+        mIndexWriter.optimize();
+      } else {
+        mIndexWriter.maybeMerge();
+      }
     } catch (IOException exc) {
       throw new RegainException("Finishing IndexWriter failed", exc);
     }
 
     // Prefetch destinct field values
-    String[] prefetchFields = mConfig.getValuePrefetchFields();
-    if (prefetchFields != null && prefetchFields.length != 0) {
-      StringBuilder msg = new StringBuilder();
-      msg.append("Prefetching destinct field values for: ");
-      for (int i = 0; i < prefetchFields.length; i++) {
-        msg.append(i != 0 ? ", " : "");
-        msg.append(prefetchFields[i]);
-      }
-      mLog.info(msg.toString());
+    prefetchFieldValues();
 
-      setIndexMode(READING_MODE);
-      RegainToolkit.readFieldValues(mIndexReader, prefetchFields, mTempIndexDir);
-    }
+    // Write the directory manifest, so the next update can skip unchanged
+    // directories
+    mDirectoryManifest.write(new File(mTempIndexDir, DIRECTORY_MANIFEST_FILE));
 
     // Prepare the final 'breakpoint'
     // NOTE: This will set the ALL_CLOSED_MODE
@@ -1108,6 +1487,193 @@ public class IndexWriterManager {
     }
   }
 
+  /**
+   * Prefetches the destinct values of the configured fields and writes them
+   * into the index directory.
+   *
+   * @throws RegainException If reading the field values failed.
+   */
+  private void prefetchFieldValues() throws RegainException {
+    String[] prefetchFields = mConfig.getValuePrefetchFields();
+    if (prefetchFields != null && prefetchFields.length != 0) {
+      StringBuilder msg = new StringBuilder();
+      msg.append("Prefetching destinct field values for: ");
+      for (int i = 0; i < prefetchFields.length; i++) {
+        msg.append(i != 0 ? ", " : "");
+        msg.append(prefetchFields[i]);
+      }
+      mLog.info(msg.toString());
+
+      setIndexMode(READING_MODE);
+      RegainToolkit.readFieldValues(mIndexReader, prefetchFields, mTempIndexDir);
+    }
+  }
+
+  /**
+   * Provides the current state of the index to the search mask without closing
+   * this IndexWriterManager.
+   * <p>
+   * The index files are hard linked (or copied if the file system doesn't
+   * support links) into the new index directory. The search mask picks it up
+   * from there. Lucene never changes an index file once it is written, so
+   * writing can go on in the working directory afterwards. All other files
+   * (like the prefetched field values or the directory manifest) and
+   * <code>segments.gen</code> are rewritten in place, so they are copied.
+   * Otherwise writing them would change the index the search mask uses.
+   *
+   * @throws RegainException If providing the index failed.
+   */
+  public void publish() throws RegainException {
+    mLog.info("Providing the current index to the search mask...");
+
+    // Remove the entries that were marked for deletion and commit all changes
+    removeObsoleteEntries();
+    prefetchFieldValues();
+    setIndexMode(ALL_CLOSED_MODE);
+    mDirectoryManifest.write(new File(mTempIndexDir, DIRECTORY_MANIFEST_FILE));
+
+    // NOTE: We link to a temp directory and rename it when we are finished.
+    File tempDir = new File(mNewIndexDir.getAbsolutePath() + "_tmp");
+    if (tempDir.exists()) {
+      RegainToolkit.deleteDirectory(tempDir);
+    }
+    if (!tempDir.mkdir()) {
+      throw new RegainException("Creating directory failed: " + tempDir.getAbsolutePath());
+    }
+
+    File[] fileArr = mTempIndexDir.listFiles();
+    if (fileArr == null) {
+      throw new RegainException("Listing working directory failed: " + mTempIndexDir.getAbsolutePath());
+    }
+    IndexFileNameFilter luceneFileFilter = IndexFileNameFilter.getFilter();
+    for (int i = 0; i < fileArr.length; i++) {
+      if (fileArr[i].isFile()) {
+        String fileName = fileArr[i].getName();
+        File targetFile = new File(tempDir, fileName);
+        boolean isWrittenOnce = luceneFileFilter.accept(mTempIndexDir, fileName)
+          && ! fileName.equals(IndexFileNames.SEGMENTS_GEN);
+        if (isWrittenOnce) {
+          try {
+            Files.createLink(targetFile.toPath(), fileArr[i].toPath());
+            continue;
+          } catch (Exception exc) {
+            // Links are not supported -> Copy the file
+          }
+        }
+        RegainToolkit.copyFile(fileArr[i], targetFile);
+      }
+    }
+
+    deleteOldIndex(mNewIndexDir);
+    if (!tempDir.renameTo(mNewIndexDir)) {
+      throw new RegainException("Renaming " + tempDir + " to " + mNewIndexDir + " failed");
+    }
+  }
+
+  /**
+   * Throws away the working index without providing it to the search mask.
+   *
+   * @throws RegainException If closing the index failed.
+   */
+  public void discard() throws RegainException {
+    mUrlsToDeleteHash = null;
+
+    // NOTE: This will set the ALL_CLOSED_MODE
+    prepareBreakpoint();
+    mDocumentFactory.close();
+
+    RegainToolkit.deleteDirectory(mTempIndexDir);
+  }
+
+  /**
+   * Removes a document from the index immediately. If the URL belongs to a
+   * directory, all documents below this directory are removed, too. If it
+   * belongs to an archive, the entries of the archive are removed.
+   * <p>
+   * Other than {@link #markForDeletion(Document)} this is safe for documents
+   * that are replaced on the same day.
+   *
+   * @param url The URL of the document or directory to remove.
+   * @return The number of removed documents.
+   * @throws RegainException If removing failed.
+   */
+  public int removeFromIndex(String url) throws RegainException {
+    setIndexMode(READING_MODE);
+
+    // Find the documents to remove
+    ArrayList<Query> deleteQueryList = new ArrayList<Query>();
+    int removedCount = 0;
+    String dirPrefix = url + "/";
+    String entryPrefix = url + "!/";
+    try {
+      // NOTE: The terms are sorted, so the entries below a directory follow
+      //       directly after the directory URL.
+      TermEnum termEnum = mIndexReader.terms(new Term("url", url));
+      try {
+        do {
+          Term term = termEnum.term();
+          if ((term == null) || (! term.field().equals("url"))
+            || (! term.text().startsWith(url)))
+          {
+            break;
+          }
+
+          boolean isArchiveEntry = term.text().startsWith(entryPrefix);
+          if (term.text().equals(url) || term.text().startsWith(dirPrefix)
+            || isArchiveEntry)
+          {
+            boolean found = false;
+            TermDocs termDocs = mIndexReader.termDocs(term);
+            try {
+              while (termDocs.next()) {
+                Document doc = mIndexReader.document(termDocs.doc());
+                if (isArchiveEntry
+                  && ! url.equals(doc.get(ArchiveIndexer.ARCHIVE_URL_FIELD)))
+                {
+                  // This is no entry of the archive, but the file of a
+                  // directory whose name ends with "!"
+                  continue;
+                }
+                pluginManager.eventDeleteIndexEntry(doc, mIndexReader);
+                mLog.info("Deleting from index: " + term.text());
+                removedCount++;
+                found = true;
+              }
+            } finally {
+              termDocs.close();
+            }
+
+            if (found) {
+              if (isArchiveEntry) {
+                BooleanQuery query = new BooleanQuery();
+                query.add(new TermQuery(term), BooleanClause.Occur.MUST);
+                query.add(new TermQuery(new Term(ArchiveIndexer.ARCHIVE_URL_FIELD, url)),
+                    BooleanClause.Occur.MUST);
+                deleteQueryList.add(query);
+              } else {
+                deleteQueryList.add(new TermQuery(term));
+              }
+            }
+          }
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
+      }
+
+      // Remove them
+      // NOTE: The IndexWriter only deletes the documents that were added before,
+      //       so a new version of the document may be added right after this.
+      if (! deleteQueryList.isEmpty()) {
+        setIndexMode(WRITING_MODE);
+        mIndexWriter.deleteDocuments(deleteQueryList.toArray(new Query[deleteQueryList.size()]));
+      }
+    } catch (IOException exc) {
+      throw new RegainException("Removing " + url + " from index failed", exc);
+    }
+
+    return removedCount;
+  }
+
   /**
    * Delets an old index directory.
    *
@@ -1240,4 +1806,30 @@ public class IndexWriterManager {
 
     return asArr.length;
   }
+
+
+  /**
+   * A merge scheduler that measures the segment merges.
+   */
+  private class ProfilingMergeScheduler extends ConcurrentMergeScheduler {
+
+    @Override
+    protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+      mMergeProfiler.startMeasuring();
+      try {
+        super.doMerge(merge);
+        mMergeProfiler.stopMeasuring(0);
+      }
+      catch (IOException exc) {
+        mMergeProfiler.abortMeasuring();
+        throw exc;
+      }
+      catch (RuntimeException exc) {
+        mMergeProfiler.abortMeasuring();
+        throw exc;
+      }
+    }
+
+  }
+
 }
@@ -24,11 +24,24 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.util.metrics.LatencyHistogram;
+import net.sf.regain.util.metrics.MetricSource;
+import net.sf.regain.util.metrics.Metrics;
+import net.sf.regain.util.metrics.MetricsCollector;
 import org.apache.log4j.Logger;
 
 /**
  * Misst die Zeit und den Datendurchsatz für einen Verarbeitungsschritt.
+ * <p>
+ * A profiler may be used by several threads at the same time. Each thread has
+ * its own running measurings, so they don't disturb each other. The results
+ * are collected in striped counters without locks. The times of the measurings
+ * are collected in a histogram of fixed size, so the percentiles (e.g. the
+ * time 99% of the documents needed at most) can be reported, too.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -40,24 +53,48 @@ public class Profiler {
   /** Eine Liste mit allen erzeugten Profilern. */
   private static List<Profiler> mProfilerList;
 
+  /**
+   * The number of stripes of the counters. Is a power of two, so a thread can
+   * find its stripe with a bit mask.
+   */
+  private static final int STRIPE_COUNT
+    = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+  /**
+   * The number of slots of a stripe. The slots are padded, so two stripes
+   * don't share a cache line.
+   */
+  private static final int STRIPE_SIZE = 8;
+  /** The slot of the total time (in nanoseconds). */
+  private static final int TOTAL_TIME_SLOT = 0;
+  /** The slot of the total number of bytes. */
+  private static final int TOTAL_BYTES_SLOT = 1;
+  /** The slot of the number of measurings. */
+  private static final int MEASURE_COUNT_SLOT = 2;
+  /** The slot of the number of aborted measurings. */
+  private static final int ABORTED_COUNT_SLOT = 3;
+
   /** Der Name. */
   private String mName;
   /** Der Einheit, die gemessen wird. */
   private String mUnit;
-  /** Die kummulierte Gesamtzeit. */
-  private long mTotalTime;
-  /** Die kummulierte Datenmenge. */
-  private long mTotalBytes;
-  /** Die Anzahl der Messungen. */
-  private int mMeasureCount;
-  /** Die Anzahl der abgebrochenen Messungen. */
-  private int mAbortedMeasureCount;
   /**
-   * Die Zeit, zu der die laufende Messung begonnen hat. Ist -1, wenn keine
-   * Messung läuft.
+   * The counters. Holds {@link #STRIPE_COUNT} stripes with
+   * {@link #STRIPE_SIZE} slots each. A thread only changes the stripe
+   * belonging to it.
    */
-  private long mMeasureStart = -1;
-
+  private AtomicLongArray mCounters;
+  /** The times of the measurings. */
+  private LatencyHistogram mHistogram;
+  /**
+   * The start times (in nanoseconds) of the measurings running in the current
+   * thread. Holds more than one if measurings are nested.
+   */
+  private ThreadLocal<MeasureStack> mMeasureStack;
+  /**
+   * The start time (in nanoseconds) of the measuring that was started last.
+   * Is -1 if it is not running any more.
+   */
+  private AtomicLong mLastMeasureStart;
 
 
   /**
@@ -73,17 +110,48 @@ public class Profiler {
     mName = name;
     mUnit = unit;
 
+    mCounters = new AtomicLongArray(STRIPE_COUNT * STRIPE_SIZE);
+    mHistogram = new LatencyHistogram();
+    mMeasureStack = new ThreadLocal<MeasureStack>() {
+      @Override
+      protected MeasureStack initialValue() {
+        return new MeasureStack();
+      }
+    };
+    mLastMeasureStart = new AtomicLong(-1);
+
     registerProfiler(this);
   }
 
 
+  /**
+   * Gets the name of the processing step measured by this profiler.
+   *
+   * @return The name.
+   */
+  public String getName() {
+    return mName;
+  }
+
+
+  /**
+   * Gets the name of the things the processing step processes, e.g.
+   * <code>docs</code>.
+   *
+   * @return The unit.
+   */
+  public String getUnit() {
+    return mUnit;
+  }
+
+
   /**
    * Gets the number of measures.
    *
    * @return The number of measures.
    */
   public int getMeasureCount() {
-    return mMeasureCount;
+    return (int) sum(MEASURE_COUNT_SLOT);
   }
 
 
@@ -93,23 +161,69 @@ public class Profiler {
    * @return The number of aborted measures.
    */
   public int getAbortedMeasureCount() {
-    return mAbortedMeasureCount;
+    return (int) sum(ABORTED_COUNT_SLOT);
+  }
+
+
+  /**
+   * Gets the total time of all completed measurings.
+   *
+   * @return The total time in nanoseconds.
+   */
+  public long getTotalTime() {
+    return sum(TOTAL_TIME_SLOT);
   }
 
 
   /**
-   * Gets the current time of the measuring running now.
+   * Gets the total number of bytes of all completed measurings.
+   *
+   * @return The total number of bytes.
+   */
+  public long getTotalBytes() {
+    return sum(TOTAL_BYTES_SLOT);
+  }
+
+
+  /**
+   * Gets the longest time of a completed measuring.
+   *
+   * @return The longest time in nanoseconds.
+   */
+  public long getMaxTime() {
+    return mHistogram.getMax();
+  }
+
+
+  /**
+   * Gets the time that a share of the completed measurings needed at most.
+   * <p>
+   * The time is taken from the histogram, so it is up to 12.5% larger than
+   * the exact time.
+   *
+   * @param share The share of the measurings, e.g. 0.99 for the time 99% of
+   *        the measurings needed at most.
+   * @return The time in nanoseconds. Is 0 if there was no measuring.
+   */
+  public long getPercentile(double share) {
+    return mHistogram.getPercentile(share);
+  }
+
+
+  /**
+   * Gets the current time of the measuring running now. If several
+   * measurings are running, the one that was started last is taken.
    *
    * @return The current measuring time in milli seconds.
    */
   public long getCurrentMeasuringTime() {
     // NOTE: We put the start time in a local variable to avoid it is changed
     //       while this method is executed.
-    long startTime = mMeasureStart;
+    long startTime = mLastMeasureStart.get();
     if (startTime == -1) {
       return -1;
     } else {
-      return System.currentTimeMillis() - startTime;
+      return (System.nanoTime() - startTime) / 1000000L;
     }
   }
 
@@ -122,6 +236,19 @@ public class Profiler {
   }
 
 
+  /**
+   * Gets the registered profilers.
+   *
+   * @return A copy of the list of the registered profilers.
+   */
+  public static synchronized List<Profiler> getRegisteredProfilers() {
+    if (mProfilerList == null) {
+      return new ArrayList<Profiler>();
+    }
+    return new ArrayList<Profiler>(mProfilerList);
+  }
+
+
   /**
    * Registriert einen Profiler.
    *
@@ -130,6 +257,7 @@ public class Profiler {
   private static synchronized void registerProfiler(Profiler profiler) {
     if (mProfilerList == null) {
       mProfilerList = new ArrayList<Profiler>();
+      Metrics.registerSource("profilers", new ProfilerMetricSource());
     }
 
     mProfilerList.add(profiler);
@@ -137,17 +265,30 @@ public class Profiler {
 
 
   /**
-   * Startet eine Messung.
+   * Removes a profiler from the registered profilers. Should be called if
+   * the measured thing is gone, e.g. if a plugin was unregistered.
+   *
+   * @param profiler The profiler to remove.
    */
-  public void startMeasuring() {
-    if (mMeasureStart != -1) {
-      mLog.warn("A profiler measuring for " + mName + " was started, although "
-        + "there is currently a measuring running!");
+  public static synchronized void unregisterProfiler(Profiler profiler) {
+    if (mProfilerList != null) {
+      mProfilerList.remove(profiler);
     }
-    mMeasureStart = System.currentTimeMillis();
   }
 
 
+  /**
+   * Startet eine Messung.
+   * <p>
+   * The measuring belongs to the current thread and must be stopped or aborted
+   * by it. Measurings may be nested.
+   */
+  public void startMeasuring() {
+    long startTime = System.nanoTime();
+    mMeasureStack.get().push(startTime);
+    mLastMeasureStart.set(startTime);
+  }
+
 
   /**
    * Stoppt eine Messung.
@@ -155,36 +296,67 @@ public class Profiler {
    * @param bytes Die Anzahl der verarbeiteten Bytes.
    */
   public void stopMeasuring(long bytes) {
-    if (mMeasureStart == -1) {
+    MeasureStack stack = mMeasureStack.get();
+    if (stack.isEmpty()) {
       mLog.warn("A profiler measuring for " + mName + " was stopped, although "
         + "there was currently no measuring running!");
     } else {
-      mTotalTime += System.currentTimeMillis() - mMeasureStart;
-      mTotalBytes += bytes;
-      mMeasureCount++;
+      long startTime = stack.pop();
+      long time = Math.max(0, System.nanoTime() - startTime);
+      mLastMeasureStart.compareAndSet(startTime, -1);
+
+      int stripeOffset = getStripeOffset();
+      mCounters.addAndGet(stripeOffset + TOTAL_TIME_SLOT, time);
+      mCounters.addAndGet(stripeOffset + TOTAL_BYTES_SLOT, bytes);
+      mCounters.incrementAndGet(stripeOffset + MEASURE_COUNT_SLOT);
 
-      mMeasureStart = -1;
+      mHistogram.record(time);
     }
   }
 
 
-
   /**
    * Bricht eine Messung ab. Eine Messung wird dann abgebrochen, wenn der
    * Verarbeitungsschritt nicht korrekt verlaufen ist, z.B. weil eine
    * Exception geworfen wurde.
    */
   public void abortMeasuring() {
-    if (mMeasureStart == -1) {
+    MeasureStack stack = mMeasureStack.get();
+    if (stack.isEmpty()) {
       mLog.warn("A profiler measuring for " + mName + " was aborted, although "
         + "there was currently no measuring running!");
     } else {
-      mMeasureStart = -1;
-      mAbortedMeasureCount++;
+      long startTime = stack.pop();
+      mLastMeasureStart.compareAndSet(startTime, -1);
+      mCounters.incrementAndGet(getStripeOffset() + ABORTED_COUNT_SLOT);
     }
   }
 
 
+  /**
+   * Gets the offset of the counter stripe of the current thread.
+   *
+   * @return The offset of the stripe in {@link #mCounters}.
+   */
+  private static int getStripeOffset() {
+    return ((int) Thread.currentThread().getId() & (STRIPE_COUNT - 1)) * STRIPE_SIZE;
+  }
+
+
+  /**
+   * Sums up a slot of all stripes.
+   *
+   * @param slot The slot to sum up.
+   * @return The sum.
+   */
+  private long sum(int slot) {
+    long sum = 0;
+    for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+      sum += mCounters.get(stripe * STRIPE_SIZE + slot);
+    }
+    return sum;
+  }
+
 
   /**
    * Gibt das Resultat der Messungen als String zurück.
@@ -193,10 +365,10 @@ public class Profiler {
    */
   public String toString() {
     // Get a current snap shot
-    long totalTime = mTotalTime;
-    long totalBytes = mTotalBytes;
-    int measureCount = mMeasureCount;
-    int abortedMeasureCount = mAbortedMeasureCount;
+    long totalTime = getTotalTime() / 1000000L;
+    long totalBytes = getTotalBytes();
+    int measureCount = getMeasureCount();
+    int abortedMeasureCount = getAbortedMeasureCount();
 
     // Calculate the results
     long averageTime = 0;
@@ -257,6 +429,18 @@ public class Profiler {
       appendLabel(buffer, "Average time", minLabelLength);
       buffer.append(RegainToolkit.toTimeString(averageTime) + lineSeparator);
 
+      appendLabel(buffer, "Median time", minLabelLength);
+      buffer.append(toTimeString(getPercentile(0.5)) + lineSeparator);
+
+      appendLabel(buffer, "95% time", minLabelLength);
+      buffer.append(toTimeString(getPercentile(0.95)) + lineSeparator);
+
+      appendLabel(buffer, "99% time", minLabelLength);
+      buffer.append(toTimeString(getPercentile(0.99)) + lineSeparator);
+
+      appendLabel(buffer, "Max time", minLabelLength);
+      buffer.append(toTimeString(getMaxTime()) + lineSeparator);
+
       appendLabel(buffer, "Average data", minLabelLength);
       buffer.append(RegainToolkit.bytesToString(averageBytes) + lineSeparator);
 
@@ -303,6 +487,26 @@ public class Profiler {
   }
 
 
+  /**
+   * Converts a time into a String. Unlike
+   * {@link RegainToolkit#toTimeString(long)} short times are shown with
+   * fractions of milli seconds.
+   *
+   * @param nanos The time in nanoseconds.
+   * @return The time as String.
+   */
+  private static String toTimeString(long nanos) {
+    if (nanos < 10000000L) {
+      NumberFormat format = NumberFormat.getInstance();
+      format.setMinimumFractionDigits(2);
+      format.setMaximumFractionDigits(2);
+      return format.format(nanos / 1000000.0) + " millis";
+    } else {
+      return RegainToolkit.toTimeString(nanos / 1000000L);
+    }
+  }
+
+
   /**
    * Gibt zurück, ob dieser Profiler genutzt wurde. Das ist der Fall, wenn
    * mindestens eine Messung durchgef�hrt wurde.
@@ -310,7 +514,7 @@ public class Profiler {
    * @return Ob dieser Profiler genutzt wurde.
    */
   public boolean wasUsed() {
-    return (mMeasureCount > 0) || (mAbortedMeasureCount > 0);
+    return (getMeasureCount() > 0) || (getAbortedMeasureCount() > 0);
   }
 
   /**
@@ -319,13 +523,11 @@ public class Profiler {
    * @return Die Resultate saemtlicher genutzter Profiler.
    */
   public static String getProfilerResults() {
-    if (mProfilerList == null) {
-      return "";
-    }
+    List<Profiler> profilerList = getRegisteredProfilers();
 
     StringBuilder buffer = new StringBuilder();
 
-    for (Iterator<Profiler> iter = mProfilerList.iterator(); iter.hasNext();) {
+    for (Iterator<Profiler> iter = profilerList.iterator(); iter.hasNext();) {
       Profiler profiler = iter.next();
 
       if (profiler.wasUsed()) {
@@ -336,4 +538,82 @@ public class Profiler {
 
     return buffer.toString();
   }
+
+
+  /**
+   * Provides the results of all registered profilers as metrics. The name of
+   * a profiler is the label "stage".
+   */
+  private static class ProfilerMetricSource implements MetricSource {
+
+    @Override
+    public void collectMetrics(MetricsCollector collector) {
+      for (Profiler profiler : getRegisteredProfilers()) {
+        String stage = profiler.getName();
+        collector.addSummary("regain_stage_duration_seconds",
+            "The time of the completed measurings of a processing step",
+            profiler.mHistogram, "stage", stage);
+        collector.addGauge("regain_stage_duration_max_seconds",
+            "The longest time of a processing step",
+            profiler.getMaxTime() / 1e9, "stage", stage);
+        collector.addCounter("regain_stage_aborted_total",
+            "The number of aborted measurings of a processing step",
+            profiler.getAbortedMeasureCount(), "stage", stage);
+        collector.addCounter("regain_stage_bytes_total",
+            "The number of bytes processed by a processing step",
+            profiler.getTotalBytes(), "stage", stage);
+      }
+    }
+
+  }
+
+
+  /**
+   * The start times of the measurings running in a thread.
+   */
+  private static class MeasureStack {
+
+    /** The start times (in nanoseconds). */
+    private long[] mStartTimeArr = new long[4];
+
+    /** The number of running measurings. */
+    private int mSize;
+
+
+    /**
+     * Gets whether there is no running measuring.
+     *
+     * @return Whether there is no running measuring.
+     */
+    public boolean isEmpty() {
+      return mSize == 0;
+    }
+
+
+    /**
+     * Adds the start time of a new measuring.
+     *
+     * @param startTime The start time (in nanoseconds).
+     */
+    public void push(long startTime) {
+      if (mSize == mStartTimeArr.length) {
+        long[] newArr = new long[mSize * 2];
+        System.arraycopy(mStartTimeArr, 0, newArr, 0, mSize);
+        mStartTimeArr = newArr;
+      }
+      mStartTimeArr[mSize++] = startTime;
+    }
+
+
+    /**
+     * Removes the start time of the measuring started last.
+     *
+     * @return The start time (in nanoseconds).
+     */
+    public long pop() {
+      return mStartTimeArr[--mSize];
+    }
+
+  }
+
 }
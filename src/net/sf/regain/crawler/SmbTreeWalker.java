@@ -0,0 +1,188 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import jcifs.smb.SmbException;
+import jcifs.smb.SmbFile;
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.access.AccountPasswordEntry;
+
+/**
+ * Lists the directories of Windows shares for the crawler.
+ * <p>
+ * The attributes jcifs gets with a directory listing (type, size and
+ * last-modified date) are kept in the entries. jcifs only caches them for a
+ * few seconds, so without this every <code>isDirectory()</code>,
+ * <code>lastModified()</code> and <code>length()</code> of a file would be a
+ * network round trip when the crawler gets to it.
+ * <p>
+ * All listings of a share use the same authenticated session (see
+ * {@link CrawlerToolkit#createSmbFile(String, AccountPasswordEntry)}).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SmbTreeWalker extends AbstractTreeWalker<String, SmbTreeWalker.Entry> {
+
+  /**
+   * A child of a listed directory. The key is the URL of the child.
+   */
+  public static class Entry extends AbstractTreeWalker.Entry<String> {
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param url The URL of the child.
+     * @param attributes The attributes of the child.
+     */
+    Entry(String url, BasicFileAttributes attributes) {
+      super(url, url, attributes);
+    }
+
+  }
+
+  /** The account password entries. The left part of the URL is the key. */
+  private Map<String, AccountPasswordEntry> mAccountPasswordStore;
+
+
+  /**
+   * Creates a new instance of SmbTreeWalker.
+   *
+   * @param threadCount The number of threads listing directories in advance.
+   *        If &lt;= 0 the directories are only listed when they are requested.
+   * @param maxListingCount The maximum number of listings that may be held in
+   *        advance.
+   * @param filter The filter deciding which directories are listed in advance.
+   * @param accountPasswordStore The account password entries. The left part of
+   *        the URL is the key.
+   */
+  public SmbTreeWalker(int threadCount, int maxListingCount,
+    DirectoryFilter filter,
+    Map<String, AccountPasswordEntry> accountPasswordStore)
+  {
+    super(threadCount, maxListingCount, filter);
+    mAccountPasswordStore = accountPasswordStore;
+  }
+
+
+  /**
+   * Gets the smb file for an URL.
+   *
+   * @param url The URL to get the smb file for.
+   * @return The smb file.
+   * @throws RegainException If the URL is malformed.
+   */
+  public SmbFile getSmbFile(String url) throws RegainException {
+    return CrawlerToolkit.createSmbFile(url,
+        CrawlerToolkit.findAuthenticationValuesForURL(url, mAccountPasswordStore));
+  }
+
+
+  @Override
+  protected List<Entry> readDirectory(String dirUrl) throws Exception {
+    SmbFile[] childArr = getSmbFile(dirUrl).listFiles();
+
+    ArrayList<Entry> entryList = new ArrayList<Entry>(childArr.length);
+    for (SmbFile child : childArr) {
+      String url = child.getCanonicalPath();
+      // Remove domain, username, password
+      if (url.contains("@")) {
+        url = "smb://" + url.substring(url.indexOf("@") + 1);
+      }
+
+      // NOTE: The attributes come with the listing, so this needs no round trip
+      entryList.add(new Entry(url, new SmbFileAttributes(child)));
+    }
+    return entryList;
+  }
+
+
+  /**
+   * The attributes of a smb file as they were read with the directory listing.
+   */
+  private static class SmbFileAttributes implements BasicFileAttributes {
+
+    /** Whether the file is a directory. */
+    private boolean mDirectory;
+    /** The size of the file. */
+    private long mSize;
+    /** The last-modified date of the file. */
+    private FileTime mLastModified;
+    /** The creation date of the file. */
+    private FileTime mCreated;
+
+    /**
+     * Creates a new instance of SmbFileAttributes.
+     *
+     * @param file The listed file.
+     * @throws SmbException If reading the attributes failed.
+     */
+    SmbFileAttributes(SmbFile file) throws SmbException {
+      mDirectory = file.isDirectory();
+      mSize = mDirectory ? 0 : file.length();
+      mLastModified = FileTime.fromMillis(file.lastModified());
+      mCreated = FileTime.fromMillis(file.createTime());
+    }
+
+    public FileTime lastModifiedTime() {
+      return mLastModified;
+    }
+
+    public FileTime lastAccessTime() {
+      return mLastModified;
+    }
+
+    public FileTime creationTime() {
+      return mCreated;
+    }
+
+    public boolean isRegularFile() {
+      return ! mDirectory;
+    }
+
+    public boolean isDirectory() {
+      return mDirectory;
+    }
+
+    public boolean isSymbolicLink() {
+      return false;
+    }
+
+    public boolean isOther() {
+      return false;
+    }
+
+    public long size() {
+      return mSize;
+    }
+
+    public Object fileKey() {
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.access;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.RawDocument;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Wraps a CrawlerAccessController and caches the groups it identifies.
+ * <p>
+ * The cache key is:
+ * <ul>
+ *   <li>the fingerprint, if the controller is a
+ *     {@link FingerprintingCrawlerAccessController},</li>
+ *   <li>the parent directory of the document, if the cache should be keyed
+ *     by directory (Only use this if all files of a directory have the same
+ *     access rights),</li>
+ *   <li>none otherwise. In this case the controller is asked for every
+ *     document.</li>
+ * </ul>
+ * The cache holds at most a configured number of keys. The least recently
+ * used key is removed first.
+ * <p>
+ * In any case the group arrays are interned: Documents with the same groups
+ * share one array instance. The arrays are checked only once. The interned
+ * arrays are bounded by the same number, the least recently used one is
+ * removed first.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class CachingCrawlerAccessController
+  implements CrawlerAccessController, Closeable
+{
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(CachingCrawlerAccessController.class);
+
+  /** The wrapped controller. */
+  private CrawlerAccessController mController;
+
+  /** Whether the cache is keyed by the parent directory of a document. */
+  private boolean mKeyByDirectory;
+
+  /** The cached groups. The key is the fingerprint or directory. */
+  private LinkedHashMap<String, String[]> mGroupCache;
+
+  /**
+   * The interned group arrays. The key is the list view of the array itself.
+   */
+  private LinkedHashMap<List<String>, String[]> mInternedGroupMap;
+
+  /** The number of group arrays that have been interned. */
+  private long mInternCount;
+
+  /** The number of lookups answered by the cache. */
+  private long mHitCount;
+
+  /** The number of lookups passed to the wrapped controller. */
+  private long mMissCount;
+
+
+  /**
+   * Creates a new instance of CachingCrawlerAccessController.
+   *
+   * @param controller The controller to wrap.
+   * @param maxSize The maximum number of keys in the cache and of interned
+   *        group arrays.
+   * @param keyByDirectory Whether the cache should be keyed by the parent
+   *        directory of a document if the controller provides no fingerprint.
+   */
+  public CachingCrawlerAccessController(CrawlerAccessController controller,
+    final int maxSize, boolean keyByDirectory)
+  {
+    mController = controller;
+    mKeyByDirectory = keyByDirectory;
+
+    mGroupCache = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+        return size() > maxSize;
+      }
+    };
+    mInternedGroupMap = new LinkedHashMap<List<String>, String[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, String[]> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+
+  /**
+   * Initializes the wrapped CrawlerAccessController.
+   *
+   * @param config The configuration.
+   * @throws RegainException If loading the config failed.
+   */
+  @Override
+  public void init(Properties config) throws RegainException {
+    mController.init(config);
+  }
+
+
+  /**
+   * Gets the names of the groups that are allowed to read the given document.
+   * <p>
+   * The returned array is shared with other documents, so it must not be
+   * changed.
+   *
+   * @param document The document to get the groups for.
+   * @return The groups that are allowed to read the given document.
+   * @throws RegainException If getting the groups failed.
+   */
+  @Override
+  public synchronized String[] getDocumentGroups(RawDocument document)
+    throws RegainException
+  {
+    String key = getCacheKey(document);
+    if (key != null) {
+      String[] groupArr = mGroupCache.get(key);
+      if (groupArr != null) {
+        mHitCount++;
+        return groupArr;
+      }
+    }
+
+    mMissCount++;
+    String[] groupArr = intern(mController.getDocumentGroups(document));
+    if (key != null) {
+      mGroupCache.put(key, groupArr);
+    }
+    return groupArr;
+  }
+
+
+  /**
+   * Gets the cache key of a document.
+   *
+   * @param document The document.
+   * @return The cache key. <code>null</code> if the groups of the document
+   *         should not be cached.
+   * @throws RegainException If getting the fingerprint failed.
+   */
+  private String getCacheKey(RawDocument document) throws RegainException {
+    if (mController instanceof FingerprintingCrawlerAccessController) {
+      return ((FingerprintingCrawlerAccessController) mController).getAclFingerprint(document);
+    }
+    if (mKeyByDirectory) {
+      String url = document.getUrl();
+      int lastSlash = url.lastIndexOf('/');
+      return (lastSlash == -1) ? null : url.substring(0, lastSlash + 1);
+    }
+    return null;
+  }
+
+
+  /**
+   * Gets the shared instance of a group array. Checks the array if it is new.
+   *
+   * @param groupArr The group array.
+   * @return The shared instance of an array with the same groups.
+   * @throws RegainException If the group array is illegal.
+   */
+  private String[] intern(String[] groupArr) throws RegainException {
+    if (groupArr == null) {
+      // checkGroupArray throws the exception
+      RegainToolkit.checkGroupArray(mController, groupArr);
+    }
+
+    List<String> key = Arrays.asList(groupArr);
+    String[] internedArr = mInternedGroupMap.get(key);
+    if (internedArr == null) {
+      RegainToolkit.checkGroupArray(mController, groupArr);
+
+      // Copy the array, so changes by the controller can't affect us
+      internedArr = groupArr.clone();
+      for (int i = 0; i < internedArr.length; i++) {
+        internedArr[i] = internedArr[i].intern();
+      }
+      mInternedGroupMap.put(Arrays.asList(internedArr), internedArr);
+      mInternCount++;
+    }
+    return internedArr;
+  }
+
+
+  /**
+   * Gets the wrapped controller.
+   *
+   * @return The wrapped controller.
+   */
+  public CrawlerAccessController getController() {
+    return mController;
+  }
+
+
+  /**
+   * Closes the wrapped controller if it is closeable.
+   *
+   * @throws IOException If closing the controller failed.
+   */
+  @Override
+  public void close() throws IOException {
+    mLog.info("Access controller cache: " + mHitCount + " hits, " + mMissCount
+        + " misses, " + mInternCount + " interned group sets");
+
+    if (mController instanceof Closeable) {
+      ((Closeable) mController).close();
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.access;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.document.RawDocument;
+
+/**
+ * A CrawlerAccessController that can tell cheaply which documents have the
+ * same groups.
+ * <p>
+ * If the crawler caches the group lookups (see
+ * {@link CachingCrawlerAccessController}), documents with the same
+ * fingerprint share one call of {@link #getDocumentGroups(RawDocument)}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public interface FingerprintingCrawlerAccessController
+  extends CrawlerAccessController
+{
+
+  /**
+   * Gets the fingerprint of the access control list of a document. Documents
+   * with the same fingerprint must have the same groups (e.g. the ID of the
+   * security descriptor of a file on an NTFS share).
+   *
+   * @param document The document to get the fingerprint for.
+   * @return The fingerprint. <code>null</code> if the groups of the document
+   *         should not be cached.
+   *
+   * @throws RegainException If getting the fingerprint failed.
+   */
+  public String getAclFingerprint(RawDocument document)
+    throws RegainException;
+
+}
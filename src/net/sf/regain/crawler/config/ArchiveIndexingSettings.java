@@ -0,0 +1,98 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.config;
+
+/**
+ * The settings for indexing the entries of archives (like zip or jar files).
+ * <p>
+ * The entries of an archive are indexed as documents of their own. Their URL
+ * is the URL of the archive followed by "!/" and the entry name (e.g.
+ * <code>file:///data/a.zip!/dir/x.pdf</code>).
+ *
+ * @see net.sf.regain.crawler.ArchiveIndexer
+ * @author Til Schneider, www.murfman.de
+ */
+public class ArchiveIndexingSettings {
+
+  /**
+   * The maximum nesting depth. 1 means only the entries of an archive are
+   * indexed, but not the entries of archives inside.
+   */
+  private int mMaxDepth;
+
+  /** The maximum number of entries indexed from one archive. */
+  private int mMaxEntryCount;
+
+  /** The maximum number of uncompressed bytes read from one archive. */
+  private long mMaxTotalBytes;
+
+
+  /**
+   * Creates a new instance of ArchiveIndexingSettings.
+   *
+   * @param maxDepth The maximum nesting depth.
+   * @param maxEntryCount The maximum number of entries indexed from one
+   *        archive.
+   * @param maxTotalBytes The maximum number of uncompressed bytes read from
+   *        one archive.
+   */
+  public ArchiveIndexingSettings(int maxDepth, int maxEntryCount,
+    long maxTotalBytes)
+  {
+    mMaxDepth = maxDepth;
+    mMaxEntryCount = maxEntryCount;
+    mMaxTotalBytes = maxTotalBytes;
+  }
+
+
+  /**
+   * Gets the maximum nesting depth. 1 means only the entries of an archive are
+   * indexed, but not the entries of archives inside.
+   *
+   * @return The maximum nesting depth.
+   */
+  public int getMaxDepth() {
+    return mMaxDepth;
+  }
+
+
+  /**
+   * Gets the maximum number of entries indexed from one archive (including
+   * the entries of nested archives).
+   *
+   * @return The maximum number of entries.
+   */
+  public int getMaxEntryCount() {
+    return mMaxEntryCount;
+  }
+
+
+  /**
+   * Gets the maximum number of uncompressed bytes read from one archive
+   * (including the entries of nested archives).
+   *
+   * @return The maximum number of bytes.
+   */
+  public long getMaxTotalBytes() {
+    return mMaxTotalBytes;
+  }
+
+}
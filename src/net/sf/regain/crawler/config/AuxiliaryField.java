@@ -1,5 +1,8 @@
 package net.sf.regain.crawler.config;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 import net.sf.regain.RegainException;
 
 import org.apache.regexp.RE;
@@ -49,6 +52,13 @@ public class AuxiliaryField {
   /** The regex that extracts the value of the field. */
   private RE mRegex;
 
+  /**
+   * The same regex compiled by java.util.regex. Unlike {@link #mRegex} it may
+   * be used by several threads at once. Is <code>null</code> if the regex
+   * can't be compiled by java.util.regex.
+   */
+  private Pattern mPattern;
+
   /** The group of the regex that contains the value. */
   private int mRegexGroup;
 
@@ -83,12 +93,42 @@ public class AuxiliaryField {
   public AuxiliaryField(SourceField sourceField, String targetFieldName, String value, boolean toLowerCase,
     RE regex, int regexGroup, boolean store, boolean index, boolean tokenize)
     throws RegainException
+  {
+    this(sourceField, targetFieldName, value, toLowerCase, regex, null,
+        regexGroup, store, index, tokenize);
+  }
+
+
+  /**
+   * Creates a new instance of AuxiliaryField.
+   *
+   * @param sourceField The source field on which to apply the regex.
+   * @param targetFieldName The name of the auxiliary field.
+   * @param value The value of the auxiliary field. If null, the value will be
+   *        extracted from the regex using the urlRegexGroup.
+   * @param toLowerCase Whether the (extracted) value should be converted to
+   *        lower case.
+   * @param regex The regex that extracts the value of the field.
+   * @param pattern The same regex compiled by java.util.regex. May be
+   *        <code>null</code>.
+   * @param regexGroup The group of the regex that contains the value.
+   * @param store Specifies whether the field value should be stored in the
+   *        index.
+   * @param index Specifies whether the field value should be indexed.
+   * @param tokenize Specifies whether the field value should be tokenized.
+   *
+   * @throws RegainException If the regex has a syntax error.
+   */
+  public AuxiliaryField(SourceField sourceField, String targetFieldName, String value, boolean toLowerCase,
+    RE regex, Pattern pattern, int regexGroup, boolean store, boolean index, boolean tokenize)
+    throws RegainException
   {
     mSourceField = sourceField;
     mTargetFieldName = targetFieldName;
     mValue = value;
     mToLowerCase = toLowerCase;
     mRegex = regex;
+    mPattern = pattern;
     mRegexGroup = regexGroup;
     mStore = store;
     mIndex = index;
@@ -96,6 +136,34 @@ public class AuxiliaryField {
   }
 
 
+  /**
+   * Compiles a regex of an auxiliary field using java.util.regex.
+   * <p>
+   * The regexes are written for the Jakarta regex. Most of them mean the same
+   * in java.util.regex, but the POSIX character classes (like
+   * <code>[:alpha:]</code>) are compiled without error to something different.
+   * Such regexes are not compiled.
+   *
+   * @param regex The regex to compile.
+   * @param caseSensitive Whether the regex is case sensitive.
+   * @return The compiled regex or <code>null</code> if the regex can't be
+   *         compiled by java.util.regex.
+   */
+  public static Pattern compilePattern(String regex, boolean caseSensitive) {
+    if (regex.indexOf("[:") != -1) {
+      return null;
+    }
+
+    int flags = caseSensitive ? 0 : (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    try {
+      return Pattern.compile(regex, flags);
+    }
+    catch (PatternSyntaxException exc) {
+      return null;
+    }
+  }
+
+
   /**
    * Returns the source field on which to apply the regex.
    *
@@ -148,6 +216,19 @@ public class AuxiliaryField {
   }
 
 
+  /**
+   * Gets the regex that extracts the value of the field compiled by
+   * java.util.regex. Unlike {@link #getRegex()} it may be used by several
+   * threads at once.
+   *
+   * @return The compiled regex or <code>null</code> if the regex can't be
+   *         compiled by java.util.regex.
+   */
+  public Pattern getPattern() {
+    return mPattern;
+  }
+
+
   /**
    * Gets the group of the regex that contains the value.
    *
@@ -20,6 +20,7 @@
  */
 package net.sf.regain.crawler.config;
 
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -52,6 +53,15 @@ public interface CrawlerConfig {
    */
   public int getMaxCycleCount();
 
+  /**
+   * Returns the number of threads listing directories of the file system and
+   * of Windows shares in advance. If 0 the directories are listed when the
+   * crawler needs them.
+   *
+   * @return The number of threads listing directories in advance.
+   */
+  public int getFileTreeWalkerThreadCount();
+
   /**
    * Gibt den Benutzernamen fï¿œr die Anmeldung beim Proxy-Server zurï¿œck. Wenn
    * kein Benutzernamen konfiguriert wurde, wird <CODE>null</CODE> zurï¿œckgegeben.
@@ -76,6 +86,58 @@ public interface CrawlerConfig {
    */
   public int getHttpTimeoutSecs();
 
+  /**
+   * Returns the maximum size of a document loaded from a Windows share or an
+   * IMAP server that is held in memory. Larger documents are written into a
+   * temporary file while they are loaded.
+   *
+   * @return The maximum size in bytes.
+   */
+  public int getMaxContentSizeInMemory();
+
+  /**
+   * Returns the file extensions whose mime type is trusted without looking
+   * at the content of the document.
+   *
+   * @return The trusted mime types. The file extension in lower case (without
+   *         the dot) is the key. Is never <code>null</code>.
+   */
+  public Map<String, String> getTrustedExtensionMap();
+
+  /**
+   * Returns the maximum time the preparation of a document may take. May be
+   * overridden for single preparators.
+   *
+   * @return The maximum time in seconds. 0 means no limit.
+   */
+  public int getPreparationTimeoutSecs();
+
+  /**
+   * Returns the maximum number of characters the preparation of a document
+   * may extract. Longer content is truncated. May be overridden for single
+   * preparators.
+   *
+   * @return The maximum number of characters. 0 means no limit.
+   */
+  public int getMaxContentLength();
+
+  /**
+   * Returns the settings of the worker processes that run preparators
+   * outside of the crawler's VM.
+   *
+   * @return The settings or <code>null</code> if all preparators run in the
+   *         crawler's VM.
+   */
+  public PreparatorWorkerSettings getPreparatorWorkerSettings();
+
+  /**
+   * Returns the settings for indexing the entries of archives.
+   *
+   * @return The settings or <code>null</code> if only the archives themselves
+   *         should be indexed.
+   */
+  public ArchiveIndexingSettings getArchiveIndexingSettings();
+
   /**
    * Returns the user agent the crawler should in order to identify at the HTTP
    * server(s). If null, the default (Java) user agent should be used.
@@ -150,6 +212,15 @@ public interface CrawlerConfig {
    */
   public boolean getWriteAnalysisFiles();
 
+  /**
+   * Gets the number of documents whose analysis files are put together into
+   * one zip archive.
+   *
+   * @return The number of documents per archive. 0 means that every analysis
+   *         file is written as file of its own.
+   */
+  public int getAnalysisDocumentsPerArchive();
+
   /**
    * Returns the interval between two breakpoint in minutes. If set to 0, no
    * breakpoints will be created.
@@ -158,6 +229,14 @@ public interface CrawlerConfig {
    */
   public int getBreakpointInterval();
 
+  /**
+   * Returns whether the files of directories that didn't change since the last
+   * crawl should be skipped when updating an index.
+   *
+   * @return Whether unchanged directories should be skipped.
+   */
+  public boolean getSkipUnchangedDirectories();
+
   /**
    * Gibt den maximalen Prozentsatz von gescheiterten Dokumenten zurï¿œck. (0..1)
    * <p>
@@ -281,6 +360,14 @@ public interface CrawlerConfig {
    */
   public AuxiliaryField[] getAuxiliaryFieldList();
 
+  /**
+   * Gets the settings of the index fields that override the defaults of the
+   * index field schema.
+   *
+   * @return The settings of the index fields. May be null.
+   */
+  public IndexFieldSettings[] getIndexFieldSettingsList();
+
   /**
    * Gets the class name of the
    * {@link net.sf.regain.crawler.access.CrawlerAccessController} to use.
@@ -309,6 +396,26 @@ public interface CrawlerConfig {
    */
   public Properties getCrawlerAccessControllerConfig();
 
+  /**
+   * Gets the maximum number of entries in the cache of the groups identified
+   * by the {@link net.sf.regain.crawler.access.CrawlerAccessController}.
+   *
+   * @return The maximum size of the cache. 0 if the groups should not be
+   *         cached.
+   * @see net.sf.regain.crawler.access.CachingCrawlerAccessController
+   */
+  public int getCrawlerAccessControllerCacheSize();
+
+  /**
+   * Gets whether the cache of the groups should be keyed by the parent
+   * directory of a document. This is only used if the
+   * {@link net.sf.regain.crawler.access.CrawlerAccessController} provides
+   * no fingerprints.
+   *
+   * @return Whether the cache should be keyed by directory.
+   */
+  public boolean getCrawlerAccessControllerCacheByDirectory();
+
   /**
    * Returns maximum amount of characters which will be copied from content to summary
    *
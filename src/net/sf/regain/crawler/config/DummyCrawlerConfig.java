@@ -20,6 +20,8 @@
  */
 package net.sf.regain.crawler.config;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -62,6 +64,16 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return -1;
   }
 
+  /**
+   * Returns the number of threads listing file system directories in advance.
+   *
+   * @return The number of threads listing directories in advance.
+   */
+  @Override
+  public int getFileTreeWalkerThreadCount() {
+    return 0;
+  }
+
 
   /**
    * Gibt den Port des Proxy-Servers zur�ck. Wenn kein Port konfiguriert wurde,
@@ -120,6 +132,77 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns the maximum size of a document that is held in memory.
+   *
+   * @return The maximum size in bytes.
+   */
+  @Override
+  public int getMaxContentSizeInMemory() {
+    return 1024 * 1024;
+  }
+
+
+  /**
+   * Returns the file extensions whose mime type is trusted without looking
+   * at the content of the document.
+   *
+   * @return The trusted mime types.
+   */
+  @Override
+  public Map<String, String> getTrustedExtensionMap() {
+    return new HashMap<String, String>();
+  }
+
+
+  /**
+   * Returns the maximum time the preparation of a document may take.
+   *
+   * @return The maximum time in seconds. 0 means no limit.
+   */
+  @Override
+  public int getPreparationTimeoutSecs() {
+    return 0;
+  }
+
+
+  /**
+   * Returns the maximum number of characters the preparation of a document
+   * may extract.
+   *
+   * @return The maximum number of characters. 0 means no limit.
+   */
+  @Override
+  public int getMaxContentLength() {
+    return 0;
+  }
+
+
+  /**
+   * Returns the settings of the worker processes that run preparators
+   * outside of the crawler's VM.
+   *
+   * @return The settings or <code>null</code> if all preparators run in the
+   *         crawler's VM.
+   */
+  @Override
+  public PreparatorWorkerSettings getPreparatorWorkerSettings() {
+    return null;
+  }
+
+
+  /**
+   * Returns the settings for indexing the entries of archives.
+   *
+   * @return The settings or <code>null</code> if only the archives themselves
+   *         should be indexed.
+   */
+  @Override
+  public ArchiveIndexingSettings getArchiveIndexingSettings() {
+    return null;
+  }
+
+
   /**
    * Gibt zur�ck, ob URLs geladen werden sollen, die weder durchsucht noch
    * indiziert werden.
@@ -209,6 +292,16 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return true;
   }
 
+  /**
+   * Gets the number of documents whose analysis files are put together into
+   * one zip archive.
+   *
+   * @return The number of documents per archive.
+   */
+  public int getAnalysisDocumentsPerArchive() {
+    return 1000;
+  }
+
 
   /**
    * Returns the interval between two breakpoint in minutes. If set to 0, no
@@ -221,6 +314,18 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns whether the files of directories that didn't change since the last
+   * crawl should be skipped when updating an index.
+   *
+   * @return Whether unchanged directories should be skipped.
+   */
+  @Override
+  public boolean getSkipUnchangedDirectories() {
+    return true;
+  }
+
+
   /**
    * Gibt den maximalen Prozentsatz von gescheiterten Dokumenten zur�ck. (0..1)
    * <p>
@@ -386,6 +491,17 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Gets the settings of the index fields that override the defaults of the
+   * index field schema.
+   *
+   * @return The settings of the index fields. May be null.
+   */
+  public IndexFieldSettings[] getIndexFieldSettingsList() {
+    return null;
+  }
+
+
   /**
    * Gets the class name of the
    * {@link net.sf.regain.crawler.access.CrawlerAccessController} to use.
@@ -422,6 +538,26 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return null;
   }
 
+  /**
+   * Gets the maximum number of entries in the cache of the groups identified
+   * by the {@link net.sf.regain.crawler.access.CrawlerAccessController}.
+   *
+   * @return The maximum size of the cache.
+   */
+  public int getCrawlerAccessControllerCacheSize() {
+    return 0;
+  }
+
+  /**
+   * Gets whether the cache of the groups should be keyed by the parent
+   * directory of a document.
+   *
+   * @return Whether the cache should be keyed by directory.
+   */
+  public boolean getCrawlerAccessControllerCacheByDirectory() {
+    return false;
+  }
+
 
   /**
    * Returns the names of the fields that shouldn't be tokenized.
@@ -0,0 +1,141 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.config;
+
+/**
+ * The settings of a field in the index. They override the defaults of the
+ * index field schema.
+ * <p>
+ * Every setting may be <code>null</code>, which means that the default of the
+ * schema is kept.
+ *
+ * @see net.sf.regain.crawler.document.IndexFieldSchema
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexFieldSettings {
+
+  /** The information that is indexed for the terms of a field. */
+  public static enum IndexOptions {
+    /** Only the documents containing a term (enough for exact matching) */
+    DOCS,
+    /** The documents and the term frequencies (enough for scoring) */
+    FREQS,
+    /** The documents, the term frequencies and the positions (needed for phrase queries) */
+    POSITIONS
+  }
+
+  /** The name of the field. */
+  private String mName;
+
+  /** Whether the field value should be stored. */
+  private Boolean mStore;
+
+  /** Whether a stored field value should be compressed. */
+  private Boolean mCompress;
+
+  /** Whether no norms should be written for the field. */
+  private Boolean mOmitNorms;
+
+  /** The information that is indexed for the terms of the field. */
+  private IndexOptions mIndexOptions;
+
+
+  /**
+   * Creates a new instance of IndexFieldSettings.
+   *
+   * @param name The name of the field.
+   * @param store Whether the field value should be stored. May be
+   *        <code>null</code>.
+   * @param compress Whether a stored field value should be compressed. May be
+   *        <code>null</code>.
+   * @param omitNorms Whether no norms should be written for the field. May be
+   *        <code>null</code>.
+   * @param indexOptions The information that is indexed for the terms of the
+   *        field. May be <code>null</code>.
+   */
+  public IndexFieldSettings(String name, Boolean store, Boolean compress,
+    Boolean omitNorms, IndexOptions indexOptions)
+  {
+    mName = name;
+    mStore = store;
+    mCompress = compress;
+    mOmitNorms = omitNorms;
+    mIndexOptions = indexOptions;
+  }
+
+
+  /**
+   * Gets the name of the field.
+   *
+   * @return The name of the field.
+   */
+  public String getName() {
+    return mName;
+  }
+
+
+  /**
+   * Gets whether the field value should be stored.
+   *
+   * @return Whether the field value should be stored or <code>null</code> if
+   *         the default should be kept.
+   */
+  public Boolean getStore() {
+    return mStore;
+  }
+
+
+  /**
+   * Gets whether a stored field value should be compressed.
+   *
+   * @return Whether a stored field value should be compressed or
+   *         <code>null</code> if the default should be kept.
+   */
+  public Boolean getCompress() {
+    return mCompress;
+  }
+
+
+  /**
+   * Gets whether no norms should be written for the field.
+   * <p>
+   * Norms hold the length of the field and the boost for each document. They
+   * are only needed for scoring, not for exact matching or sorting.
+   *
+   * @return Whether no norms should be written or <code>null</code> if the
+   *         default should be kept.
+   */
+  public Boolean getOmitNorms() {
+    return mOmitNorms;
+  }
+
+
+  /**
+   * Gets the information that is indexed for the terms of the field.
+   *
+   * @return The index options or <code>null</code> if the default should be
+   *         kept.
+   */
+  public IndexOptions getIndexOptions() {
+    return mIndexOptions;
+  }
+
+}
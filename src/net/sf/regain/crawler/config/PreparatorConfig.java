@@ -59,7 +59,7 @@ public class PreparatorConfig implements Iterable<Map.Entry<String, Map<String,
    * @param name The name of the section to add.
    * @param content The key-value-pairs of the section to add.
    */
-  void addSection(String name, Map<String, String> content) {
+  public void addSection(String name, Map<String, String> content) {
     mSectionList.put(name.toLowerCase(), content);
   }
 
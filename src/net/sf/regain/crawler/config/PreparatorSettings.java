@@ -55,6 +55,18 @@ public class PreparatorSettings {
    */
   private PreparatorConfig mPreparatorConfig;
 
+  /**
+   * The maximum time a preparation may take (in seconds). Is -1 if the
+   * global setting should be used.
+   */
+  private int mTimeoutSecs;
+
+  /**
+   * The maximum number of characters a preparation may extract. Is -1 if the
+   * global setting should be used.
+   */
+  private int mMaxContentLength;
+
 
   /**
    * Creates a new instance of PreparatorSettings.
@@ -69,8 +81,33 @@ public class PreparatorSettings {
    */
   public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
     String urlRegex, PreparatorConfig preparatorConfig)
+  {
+    this(isEnabled, priority, preparatorClassName, urlRegex, preparatorConfig, -1, -1);
+  }
+
+
+  /**
+   * Creates a new instance of PreparatorSettings.
+   *
+   * @param isEnabled Specifies whether the preparator is enabled.
+   * @param preparatorClassName The class name of the preparator. The class must
+   *        implement {@link net.sf.regain.crawler.document.Preparator Preparator}.
+   * @param urlRegex The regular expression a URL must match to, to be prepared
+   *        by this preparator. If <code>null</code> the default regex of the
+   *        preparator should be used.
+   * @param preparatorConfig The configuration of the preparator.
+   * @param timeoutSecs The maximum time a preparation may take (in seconds).
+   *        -1 means the global setting should be used.
+   * @param maxContentLength The maximum number of characters a preparation
+   *        may extract. -1 means the global setting should be used.
+   */
+  public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
+    String urlRegex, PreparatorConfig preparatorConfig, int timeoutSecs,
+    int maxContentLength)
   {
     mIsEnabled = isEnabled;
+    mTimeoutSecs = timeoutSecs;
+    mMaxContentLength = maxContentLength;
     mPriority = priority;
     mUrlRegex = urlRegex;
     mPreparatorConfig = preparatorConfig;
@@ -133,4 +170,24 @@ public class PreparatorSettings {
     return mPriority;
   }
 
+  /**
+   * Gets the maximum time a preparation may take.
+   *
+   * @return The maximum time in seconds. Is -1 if the global setting should be
+   *         used.
+   */
+  public int getTimeoutSecs() {
+    return mTimeoutSecs;
+  }
+
+  /**
+   * Gets the maximum number of characters a preparation may extract.
+   *
+   * @return The maximum number of characters. Is -1 if the global setting
+   *         should be used.
+   */
+  public int getMaxContentLength() {
+    return mMaxContentLength;
+  }
+
 }
@@ -0,0 +1,124 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.config;
+
+/**
+ * The settings of the worker processes that run preparators outside of the
+ * crawler's VM.
+ *
+ * @see net.sf.regain.crawler.document.PreparatorWorkerPool
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorkerSettings {
+
+  /** The number of worker processes. */
+  private int mWorkerCount;
+
+  /**
+   * The number of documents a worker prepares before it is replaced by a new
+   * one.
+   */
+  private int mMaxDocumentsPerWorker;
+
+  /** The additional arguments for the VM of a worker (e.g. "-Xmx512m"). */
+  private String[] mVmArgs;
+
+  /** The class names of the preparators that should run in the workers. */
+  private String[] mPreparatorClassNameArr;
+
+
+  /**
+   * Creates a new instance of PreparatorWorkerSettings.
+   *
+   * @param workerCount The number of worker processes.
+   * @param maxDocumentsPerWorker The number of documents a worker prepares
+   *        before it is replaced by a new one.
+   * @param vmArgs The additional arguments for the VM of a worker.
+   * @param preparatorClassNameArr The class names of the preparators that
+   *        should run in the workers.
+   */
+  public PreparatorWorkerSettings(int workerCount, int maxDocumentsPerWorker,
+    String[] vmArgs, String[] preparatorClassNameArr)
+  {
+    mWorkerCount = workerCount;
+    mMaxDocumentsPerWorker = maxDocumentsPerWorker;
+    mVmArgs = vmArgs;
+
+    mPreparatorClassNameArr = new String[preparatorClassNameArr.length];
+    for (int i = 0; i < preparatorClassNameArr.length; i++) {
+      if (preparatorClassNameArr[i].startsWith(".")) {
+        mPreparatorClassNameArr[i] = PreparatorSettings.DEFAULT_PREPARATOR_PACKAGE
+            + preparatorClassNameArr[i];
+      } else {
+        mPreparatorClassNameArr[i] = preparatorClassNameArr[i];
+      }
+    }
+  }
+
+
+  /**
+   * Gets the number of worker processes.
+   *
+   * @return The number of worker processes.
+   */
+  public int getWorkerCount() {
+    return mWorkerCount;
+  }
+
+
+  /**
+   * Gets the number of documents a worker prepares before it is replaced by a
+   * new one.
+   *
+   * @return The number of documents. 0 means the worker is never replaced
+   *         unless it fails.
+   */
+  public int getMaxDocumentsPerWorker() {
+    return mMaxDocumentsPerWorker;
+  }
+
+
+  /**
+   * Gets the additional arguments for the VM of a worker.
+   *
+   * @return The VM arguments.
+   */
+  public String[] getVmArgs() {
+    return mVmArgs;
+  }
+
+
+  /**
+   * Gets whether a preparator should run in the workers.
+   *
+   * @param className The class name of the preparator.
+   * @return Whether the preparator should run in the workers.
+   */
+  public boolean isRunInWorker(String className) {
+    for (String workerClassName : mPreparatorClassNameArr) {
+      if (workerClassName.equals(className)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -23,9 +23,12 @@ package net.sf.regain.crawler.config;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
 import net.sf.regain.XmlToolkit;
 import net.sf.regain.crawler.config.AuxiliaryField.SourceField;
 
@@ -65,6 +68,22 @@ public class XmlCrawlerConfig implements CrawlerConfig {
    * in Sekunden, die ein HTTP-Download insgesamt dauern darf.
    */
   private int mHttpTimeoutSecs;
+
+  /** The maximum size of a document that is held in memory (in bytes). */
+  private int mMaxContentSizeInMemory;
+  /** The trusted mime types. The file extension is the key. */
+  private HashMap<String, String> mTrustedExtensionMap;
+  /** The maximum time a preparation may take (in seconds). */
+  private int mPreparationTimeoutSecs;
+  /** The maximum number of characters a preparation may extract. */
+  private int mMaxContentLength;
+  /**
+   * The settings of the preparator worker processes. Is <code>null</code> if
+   * all preparators run in the crawler's VM.
+   */
+  private PreparatorWorkerSettings mPreparatorWorkerSettings;
+  /** The settings for indexing the entries of archives. */
+  private ArchiveIndexingSettings mArchiveIndexingSettings;
   /** Das Verzeichnis, in dem der Suchindex stehen soll. */
   private String mIndexDir;
 
@@ -74,6 +93,9 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   /** The maximum count of equal occurences of path-parts in an URI. */
   private int mMaxCycleCount;
 
+  /** The number of threads listing file system directories in advance. */
+  private int mFileTreeWalkerThreadCount;
+
   /** Der zu verwendende Analyzer-Typ. */
   private String mAnalyzerType;
 
@@ -87,8 +109,16 @@ public class XmlCrawlerConfig implements CrawlerConfig {
 
   /** Gibt an, ob Analyse-Deteien geschrieben werden sollen. */
   private boolean mWriteAnalysisFiles;
+  /**
+   * The number of documents whose analysis files are put together into one
+   * zip archive. 0 means that every analysis file is written as file of its
+   * own.
+   */
+  private int mAnalysisDocumentsPerArchive;
   /** The interval between two breakpoint in minutes. */
   private int mBreakpointInterval;
+  /** Whether unchanged directories should be skipped when updating an index. */
+  private boolean mSkipUnchangedDirectories;
   /**
    * Der maximale Prozentsatz von gescheiterten Dokumenten (0..100), der fï¿œr
    * die Freigabe eines Index toleriert wird.
@@ -130,12 +160,22 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   /** The list of the auxiliary fields. May be null. */
   private AuxiliaryField[] mAuxiliaryFieldArr;
 
+  /** The settings of the index fields. May be null. */
+  private IndexFieldSettings[] mIndexFieldSettingsArr;
+
   /** The class name of the CrawlerAccessController to use. */
   private String mCrawlerAccessControllerClass;
   /** The name of jar file to load the CrawlerAccessController from. */
   private String mCrawlerAccessControllerJar;
   /** The configuration of the CrawlerAccessController. */
   private Properties mCrawlerAccessControllerConfig;
+  /**
+   * The maximum number of entries in the cache of the groups. 0 if the groups
+   * should not be cached.
+   */
+  private int mCrawlerAccessControllerCacheSize;
+  /** Whether the cache of the groups should be keyed by directory. */
+  private boolean mCrawlerAccessControllerCacheByDirectory;
 
   /** The maximum amount of characters which will be copied from content to summary */
   private int mMaxSummaryLength;
@@ -160,6 +200,9 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readProxyConfig(config);
     readLoadUnparsedUrls(config);
     readHttpTimeoutSecs(config);
+    readMaxContentSizeInMemory(config);
+    readTrustedExtensionList(config);
+    readPreparationBudget(config);
     readUserAgent(config);
     readIndexConfig(config);
     readControlFileConfig(config);
@@ -169,10 +212,14 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readWhiteList(config);
     readUseLinkTextAsTitleRegexList(config);
     readPreparatorSettingsList(config, xmlFile);
+    readPreparatorWorkerSettings(config);
+    readArchiveIndexingSettings(config);
     readCrawlerPluginConfigSettingsList(config, xmlFile);
     readAuxiliaryFieldList(config);
+    readIndexFieldSettingsList(config);
     readCrawlerAccessController(config);
     readMaxCycleCount(config);
+    readFileTreeWalkerThreadCount(config);
     readMaxSummaryLength(config);
     readURLCleaner(config);
   }
@@ -209,6 +256,17 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     mMaxCycleCount = (node == null) ? -1 : XmlToolkit.getTextAsInt(node);
   }
 
+  /**
+   * Reads the number of threads listing file system directories in advance.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readFileTreeWalkerThreadCount(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "fileTreeWalkerThreads");
+    mFileTreeWalkerThreadCount = (node == null) ? 4 : XmlToolkit.getTextAsInt(node);
+  }
+
   /**
    * Liest aus der Konfiguration, ob Dokumente geladen werden sollen, die weder
    * indiziert, noch auf URLs durchsucht werden.
@@ -233,6 +291,56 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     mHttpTimeoutSecs = (node == null) ? 180 : XmlToolkit.getTextAsInt(node);
   }
 
+  /**
+   * Reads the maximum size of a document that is held in memory.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readMaxContentSizeInMemory(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "maxContentSizeInMemory");
+    int sizeInKB = (node == null) ? 1024 : XmlToolkit.getTextAsInt(node);
+    mMaxContentSizeInMemory = sizeInKB * 1024;
+  }
+
+
+  /**
+   * Reads the limits for the preparation of a document.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readPreparationBudget(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "preparationTimeout");
+    mPreparationTimeoutSecs = (node == null) ? 0 : XmlToolkit.getTextAsInt(node);
+
+    node = XmlToolkit.getChild(config, "maxContentLength");
+    mMaxContentLength = (node == null) ? 0 : XmlToolkit.getTextAsInt(node);
+  }
+
+
+  /**
+   * Reads the file extensions whose mime type is trusted.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readTrustedExtensionList(Element config) throws RegainException {
+    mTrustedExtensionMap = new HashMap<String, String>();
+    Node node = XmlToolkit.getChild(config, "trustedExtensionList");
+    if (node != null) {
+      Node[] nodeArr = XmlToolkit.getChildArr(node, "extension");
+      for (int i = 0; i < nodeArr.length; i++) {
+        String extension = XmlToolkit.getAttribute(nodeArr[i], "name", true);
+        if (extension.startsWith(".")) {
+          extension = extension.substring(1);
+        }
+        mTrustedExtensionMap.put(extension.toLowerCase(),
+            XmlToolkit.getText(nodeArr[i], true));
+      }
+    }
+  }
+
 
   /**
    * Reads the user agent from the config.
@@ -305,10 +413,15 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     mExclusionList = XmlToolkit.getTextAsWordList(node, false);
     node = XmlToolkit.getChild(indexNode, "writeAnalysisFiles");
     mWriteAnalysisFiles = (node == null) ? false : XmlToolkit.getTextAsBoolean(node);
+    mAnalysisDocumentsPerArchive = (node == null) ? 1000
+        : XmlToolkit.getAttributeAsInt(node, "documentsPerArchive", 1000);
 
     node = XmlToolkit.getChild(indexNode, "breakpointInterval");
     mBreakpointInterval = (node == null) ? 10 : XmlToolkit.getTextAsInt(node);
 
+    node = XmlToolkit.getChild(indexNode, "skipUnchangedDirectories");
+    mSkipUnchangedDirectories = (node == null) ? true : XmlToolkit.getTextAsBoolean(node);
+
     node = XmlToolkit.getChild(indexNode, "maxFailedDocuments");
     mMaxFailedDocuments = (node == null) ? 1.0 : (XmlToolkit.getTextAsDouble(node) / 100.0);
 
@@ -496,6 +609,8 @@ public class XmlCrawlerConfig implements CrawlerConfig {
       boolean enabled = XmlToolkit.getAttributeAsBoolean(nodeArr[i], "enabled", true);
 
       int priority = XmlToolkit.getAttributeAsInt(nodeArr[i], "priority", 0);
+      int timeoutSecs = XmlToolkit.getAttributeAsInt(nodeArr[i], "timeout", -1);
+      int maxContentLength = XmlToolkit.getAttributeAsInt(nodeArr[i], "maxContentLength", -1);
 
       node = XmlToolkit.getChild(nodeArr[i], "class", true);
       String className = XmlToolkit.getText(node, true);
@@ -514,8 +629,70 @@ public class XmlCrawlerConfig implements CrawlerConfig {
         prepConfig = new PreparatorConfig();
       }
 
-      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority, className, urlRegex, prepConfig);
+      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority,
+          className, urlRegex, prepConfig, timeoutSecs, maxContentLength);
+    }
+  }
+
+  /**
+   * Reads the settings of the preparator worker processes. (optional)
+   *
+   * @param config The configuration to read from
+   * @throws RegainException If the configuration has errors.
+   */
+  private void readPreparatorWorkerSettings(Node config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "preparatorWorkers", false);
+    if ((node == null) || ! XmlToolkit.getAttributeAsBoolean(node, "enabled", true)) {
+      mPreparatorWorkerSettings = null;
+      return;
+    }
+
+    Node child = XmlToolkit.getChild(node, "workerCount");
+    int workerCount = (child == null) ? 1 : XmlToolkit.getTextAsInt(child);
+
+    child = XmlToolkit.getChild(node, "maxDocumentsPerWorker");
+    int maxDocumentsPerWorker = (child == null) ? 1000 : XmlToolkit.getTextAsInt(child);
+
+    child = XmlToolkit.getChild(node, "vmArgs");
+    String[] vmArgs = new String[0];
+    if (child != null) {
+      vmArgs = RegainToolkit.splitString(XmlToolkit.getText(child, true), " ", true);
+    }
+
+    Node[] nodeArr = XmlToolkit.getChildArr(node, "preparator");
+    String[] classNameArr = new String[nodeArr.length];
+    for (int i = 0; i < nodeArr.length; i++) {
+      classNameArr[i] = XmlToolkit.getText(nodeArr[i], true);
+    }
+
+    mPreparatorWorkerSettings = new PreparatorWorkerSettings(workerCount,
+        maxDocumentsPerWorker, vmArgs, classNameArr);
+  }
+
+  /**
+   * Reads the settings for indexing the entries of archives. (optional)
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has errors.
+   */
+  private void readArchiveIndexingSettings(Node config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "archiveIndexing", false);
+    if ((node == null) || ! XmlToolkit.getAttributeAsBoolean(node, "enabled", true)) {
+      mArchiveIndexingSettings = null;
+      return;
     }
+
+    Node child = XmlToolkit.getChild(node, "maxDepth");
+    int maxDepth = (child == null) ? 2 : XmlToolkit.getTextAsInt(child);
+
+    child = XmlToolkit.getChild(node, "maxEntryCount");
+    int maxEntryCount = (child == null) ? 1000 : XmlToolkit.getTextAsInt(child);
+
+    child = XmlToolkit.getChild(node, "maxTotalBytes");
+    long maxTotalBytes = (child == null) ? 100000000L : XmlToolkit.getTextAsLong(child);
+
+    mArchiveIndexingSettings = new ArchiveIndexingSettings(maxDepth,
+        maxEntryCount, maxTotalBytes);
   }
 
   /**
@@ -584,6 +761,7 @@ public class XmlCrawlerConfig implements CrawlerConfig {
 
         String fieldName = XmlToolkit.getAttribute(nodeArr[i], "name", true);
         RE urlRegex = readRegexChild(nodeArr[i]);
+        Pattern urlPattern = readPatternChild(nodeArr[i]);
         String value = XmlToolkit.getAttribute(nodeArr[i], "value");
         boolean toLowerCase = XmlToolkit.getAttributeAsBoolean(nodeArr[i],
                 "toLowerCase", true);
@@ -598,12 +776,66 @@ public class XmlCrawlerConfig implements CrawlerConfig {
         boolean tokenize = XmlToolkit.getAttributeAsBoolean(nodeArr[i], "tokenize", false);
 
         mAuxiliaryFieldArr[i] = new AuxiliaryField(sourceField, fieldName, value,
-            toLowerCase, urlRegex, urlRegexGroup, store, index, tokenize);
+            toLowerCase, urlRegex, urlPattern, urlRegexGroup, store, index, tokenize);
+      }
+    }
+  }
+
+
+  /**
+   * Reads the settings of the index fields. (optional)
+   *
+   * @param config The configuration to read from
+   * @throws RegainException If the configuration has errors.
+   */
+  private void readIndexFieldSettingsList(Node config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "indexFieldList");
+    if (node != null) {
+      Node[] nodeArr = XmlToolkit.getChildArr(node, "indexField");
+      mIndexFieldSettingsArr = new IndexFieldSettings[nodeArr.length];
+      for (int i = 0; i < nodeArr.length; i++) {
+        String name = XmlToolkit.getAttribute(nodeArr[i], "name", true);
+        Boolean store = readOptionalBooleanAttribute(nodeArr[i], "store");
+        Boolean compress = readOptionalBooleanAttribute(nodeArr[i], "compress");
+        Boolean omitNorms = readOptionalBooleanAttribute(nodeArr[i], "omitNorms");
+
+        IndexFieldSettings.IndexOptions indexOptions = null;
+        String indexOptionsName = XmlToolkit.getAttribute(nodeArr[i], "indexOptions");
+        if (indexOptionsName != null) {
+          try {
+            indexOptions = IndexFieldSettings.IndexOptions.valueOf(indexOptionsName.trim().toUpperCase());
+          } catch (IllegalArgumentException exc) {
+            throw new RegainException("The attribute 'indexOptions' of node 'indexField' has illegal value: '"
+                + indexOptionsName + "'. Use 'docs', 'freqs' or 'positions'");
+          }
+        }
+
+        mIndexFieldSettingsArr[i] = new IndexFieldSettings(name, store,
+            compress, omitNorms, indexOptions);
       }
     }
   }
 
 
+  /**
+   * Reads a boolean attribute that may be missing.
+   *
+   * @param node The node to read the attribute from.
+   * @param attributeName The name of the attribute.
+   * @return The value of the attribute or <code>null</code> if the node has no
+   *         such attribute.
+   * @throws RegainException If the attribute is no boolean.
+   */
+  private Boolean readOptionalBooleanAttribute(Node node, String attributeName)
+    throws RegainException
+  {
+    if (XmlToolkit.getAttribute(node, attributeName) == null) {
+      return null;
+    }
+    return Boolean.valueOf(XmlToolkit.getAttributeAsBoolean(node, attributeName));
+  }
+
+
   /**
    * Reads the regex child node from a node. Can also read the old style, where
    * the regex is directly in the node text.
@@ -641,6 +873,33 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Reads the regex child node from a node and compiles it using
+   * java.util.regex. Reads the same regex as {@link #readRegexChild(Node)}.
+   *
+   * @param node The node to read the regex node from
+   * @return The compiled regular expression or <code>null</code> if the regex
+   *         can't be compiled by java.util.regex. In this case only the
+   *         regex of {@link #readRegexChild(Node)} can be used.
+   * @throws RegainException If there is no regular expression.
+   */
+  private Pattern readPatternChild(Node node) throws RegainException {
+      boolean caseSensitive = false;
+      String regex;
+      Node regexNode = XmlToolkit.getChild(node, "regex");
+      if (regexNode != null) {
+          caseSensitive = XmlToolkit.getAttributeAsBoolean(regexNode,
+              "caseSensitive", false);
+          regex = XmlToolkit.getText(regexNode, true);
+      } else {
+          // This is the old style -> Use the text as regex
+          regex = XmlToolkit.getText(node, true);
+      }
+
+      return AuxiliaryField.compilePattern(regex, caseSensitive);
+  }
+
+
   /**
    * Reads the configuration of a preparator from a node.
    *
@@ -716,6 +975,12 @@ public class XmlCrawlerConfig implements CrawlerConfig {
           mCrawlerAccessControllerConfig.setProperty(name, value);
         }
       }
+
+      Node cacheNode = XmlToolkit.getChild(node, "cache");
+      if ((cacheNode != null) && XmlToolkit.getAttributeAsBoolean(cacheNode, "enabled", true)) {
+        mCrawlerAccessControllerCacheSize = XmlToolkit.getAttributeAsInt(cacheNode, "maxSize", 10000);
+        mCrawlerAccessControllerCacheByDirectory = XmlToolkit.getAttributeAsBoolean(cacheNode, "keyByDirectory", false);
+      }
     }
   }
 
@@ -790,6 +1055,75 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns the maximum size of a document loaded from a Windows share or an
+   * IMAP server that is held in memory. Larger documents are written into a
+   * temporary file while they are loaded.
+   *
+   * @return The maximum size in bytes.
+   */
+  public int getMaxContentSizeInMemory() {
+    return mMaxContentSizeInMemory;
+  }
+
+
+  /**
+   * Returns the file extensions whose mime type is trusted without looking
+   * at the content of the document.
+   *
+   * @return The trusted mime types. The file extension in lower case (without
+   *         the dot) is the key.
+   */
+  public Map<String, String> getTrustedExtensionMap() {
+    return mTrustedExtensionMap;
+  }
+
+
+  /**
+   * Returns the maximum time the preparation of a document may take. May be
+   * overridden for single preparators.
+   *
+   * @return The maximum time in seconds. 0 means no limit.
+   */
+  public int getPreparationTimeoutSecs() {
+    return mPreparationTimeoutSecs;
+  }
+
+
+  /**
+   * Returns the maximum number of characters the preparation of a document
+   * may extract. May be overridden for single preparators.
+   *
+   * @return The maximum number of characters. 0 means no limit.
+   */
+  public int getMaxContentLength() {
+    return mMaxContentLength;
+  }
+
+
+  /**
+   * Returns the settings of the worker processes that run preparators
+   * outside of the crawler's VM.
+   *
+   * @return The settings or <code>null</code> if all preparators run in the
+   *         crawler's VM.
+   */
+  public PreparatorWorkerSettings getPreparatorWorkerSettings() {
+    return mPreparatorWorkerSettings;
+  }
+
+
+  /**
+   * Returns the settings for indexing the entries of archives.
+   *
+   * @return The settings or <code>null</code> if only the archives themselves
+   *         should be indexed.
+   */
+  public ArchiveIndexingSettings getArchiveIndexingSettings() {
+    return mArchiveIndexingSettings;
+  }
+
+
   /**
    * Gibt zurück, ob URLs geladen werden sollen, die weder durchsucht noch
    * indiziert werden.
@@ -883,6 +1217,18 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mWriteAnalysisFiles;
   }
 
+  /**
+   * Gets the number of documents whose analysis files are put together into
+   * one zip archive.
+   *
+   * @return The number of documents per archive. 0 means that every analysis
+   *         file is written as file of its own.
+   */
+  @Override
+  public int getAnalysisDocumentsPerArchive() {
+    return mAnalysisDocumentsPerArchive;
+  }
+
 
   /**
    * Returns the interval between two breakpoint in minutes. If set to 0, no
@@ -896,6 +1242,18 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns whether the files of directories that didn't change since the last
+   * crawl should be skipped when updating an index.
+   *
+   * @return Whether unchanged directories should be skipped.
+   */
+  @Override
+  public boolean getSkipUnchangedDirectories() {
+    return mSkipUnchangedDirectories;
+  }
+
+
   /**
    * Gibt den maximalen Prozentsatz von gescheiterten Dokumenten zurück. (0..1)
    * <p>
@@ -1061,6 +1419,18 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Gets the settings of the index fields that override the defaults of the
+   * index field schema.
+   *
+   * @return The settings of the index fields. May be null.
+   */
+  @Override
+  public IndexFieldSettings[] getIndexFieldSettingsList() {
+    return mIndexFieldSettingsArr;
+  }
+
+
   /**
    * Gets the class name of the
    * {@link net.sf.regain.crawler.access.CrawlerAccessController} to use.
@@ -1100,6 +1470,31 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mCrawlerAccessControllerConfig;
   }
 
+
+  /**
+   * Gets the maximum number of entries in the cache of the groups identified
+   * by the {@link net.sf.regain.crawler.access.CrawlerAccessController}.
+   *
+   * @return The maximum size of the cache. 0 if the groups should not be
+   *         cached.
+   */
+  @Override
+  public int getCrawlerAccessControllerCacheSize() {
+    return mCrawlerAccessControllerCacheSize;
+  }
+
+
+  /**
+   * Gets whether the cache of the groups should be keyed by the parent
+   * directory of a document.
+   *
+   * @return Whether the cache should be keyed by directory.
+   */
+  @Override
+  public boolean getCrawlerAccessControllerCacheByDirectory() {
+    return mCrawlerAccessControllerCacheByDirectory;
+  }
+
   /**
    * Returns the maximum count of equal occurences of path-parts in an URI.
    *
@@ -1110,6 +1505,16 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mMaxCycleCount;
   }
 
+  /**
+   * Returns the number of threads listing file system directories in advance.
+   *
+   * @return The number of threads listing directories in advance.
+   */
+  @Override
+  public int getFileTreeWalkerThreadCount() {
+    return mFileTreeWalkerThreadCount;
+  }
+
  /**
    * Returns maximum amount of characters which will be copied from content to summary
    *
@@ -65,6 +65,11 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
   private String[] mMimeTypes;
   /** The priority of the preparator. Used for the selection of preparators */
   private int mPriority;
+  /**
+   * The maximum number of characters of the cleaned content. 0 means no
+   * limit.
+   */
+  private int mMaxContentLength;
 
   /**
    * Creates a new instance of AbstractPreparator.
@@ -239,6 +244,47 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     }
   }
 
+  /**
+   * Gets the mime types this preparator accepts.
+   * <p>
+   * Is used by the {@link DocumentFactory} to find the preparators for a mime
+   * type in advance. If the preparator has an URL regex or overrides
+   * {@link #accepts(RawDocument)} in a way that depends on more than the mime
+   * type, <code>null</code> has to be returned. Then
+   * {@link #accepts(RawDocument)} is called for every document.
+   * <p>
+   * By default <code>null</code> is returned for subclasses overriding
+   * {@link #accepts(RawDocument)}. They have to override this method, too, if
+   * they only accept by mime type.
+   *
+   * @return The accepted mime types or <code>null</code> if accepting a
+   *         document does not only depend on its mime type.
+   */
+  public String[] getAcceptedMimeTypes() {
+    if ((mUrlRegex != null) || overridesAccepts()) {
+      return null;
+    }
+    return (mMimeTypes == null) ? new String[0] : mMimeTypes;
+  }
+
+  /**
+   * Gets whether the class of this preparator overrides
+   * {@link #accepts(RawDocument)}.
+   *
+   * @return Whether accepts() is overridden.
+   */
+  private boolean overridesAccepts() {
+    try {
+      Class<?> declaringClass = getClass().getMethod("accepts", RawDocument.class)
+          .getDeclaringClass();
+      return declaringClass != AbstractPreparator.class;
+    }
+    catch (NoSuchMethodException exc) {
+      // Can't happen, accepts() is public
+      return true;
+    }
+  }
+
   /**
    * Gibt den Titel des Dokuments zurück.
    * <p>
@@ -274,13 +320,67 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
   /**
    * Setzt von Formatierungsinformation befreiten Inhalt des Dokuments, das
    * gerade Präpariert wird.
+   * <p>
+   * Content longer than {@link #getMaxContentLength()} is truncated. Child
+   * classes should stop the extraction at this limit already, e.g. by
+   * collecting the text with a {@link LimitedWriter}.
    *
    * @param cleanedContent
    */
   public void setCleanedContent(String cleanedContent) {
+    if ((mMaxContentLength > 0) && (cleanedContent != null)
+        && (cleanedContent.length() > mMaxContentLength))
+    {
+      cleanedContent = cleanedContent.substring(0, mMaxContentLength);
+    }
     mCleanedContent = cleanedContent;
   }
 
+  /**
+   * Gets an int parameter of a config section.
+   *
+   * @param section The config section.
+   * @param name The name of the parameter.
+   * @param defaultValue The value to use if the parameter is not set.
+   * @return The value of the parameter.
+   * @throws RegainException If the parameter is no number.
+   */
+  protected int getIntParam(Map<String, String> section, String name,
+    int defaultValue)
+    throws RegainException
+  {
+    String value = section.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException exc) {
+      throw new RegainException("Error in " + getClass().getSimpleName()
+          + " config: " + name + " is no number: " + value);
+    }
+  }
+
+  /**
+   * Gets the maximum number of characters of the cleaned content.
+   *
+   * @return The maximum number of characters. 0 means no limit.
+   */
+  public int getMaxContentLength() {
+    return mMaxContentLength;
+  }
+
+  /**
+   * Sets the maximum number of characters of the cleaned content.
+   *
+   * @param maxContentLength The maximum number of characters. 0 means no
+   *        limit.
+   */
+  public void setMaxContentLength(int maxContentLength) {
+    mMaxContentLength = maxContentLength;
+  }
+
   /**
    * @return the mCleanedMetaData
    */
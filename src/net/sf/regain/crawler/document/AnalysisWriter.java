@@ -0,0 +1,574 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.Profiler;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the analysis files in a background thread.
+ * <p>
+ * The analysis files of a number of documents are put together into one
+ * zip archive (<code>analysis-00001.zip</code>, <code>analysis-00002.zip</code>,
+ * ...). The file <code>analysis-index.txt</code> tells for every entry in
+ * which archive it is. It has one line per entry with the archive name, the
+ * entry name and the URL of the document, separated by tabs.
+ * <p>
+ * If the number of documents per archive is 0, every analysis file is written
+ * as a file of its own (like older versions of regain did).
+ * <p>
+ * The queue is bounded by the number of bytes held in memory. If the writer
+ * can't keep up, the crawler waits until there is space again. Content that
+ * is in a file is not loaded into memory, the writer thread copies it.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class AnalysisWriter {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(AnalysisWriter.class);
+
+  /** The default number of bytes that may wait in memory for the writer. */
+  public static final long DEFAULT_MAX_QUEUED_BYTES = 16L * 1024 * 1024;
+
+  /** The name of the file telling in which archive an entry is. */
+  public static final String INDEX_FILE_NAME = "analysis-index.txt";
+
+  /** The entry telling the writer thread to stop. */
+  private static final QueuedEntry STOP_ENTRY = new QueuedEntry(null, null, null, null, false);
+
+  /** The directory where to write the analysis files. */
+  private File mAnalysisDir;
+
+  /**
+   * The number of documents per archive. 0 means that every analysis file is
+   * written as file of its own.
+   */
+  private int mDocumentsPerArchive;
+
+  /** The queued entries. */
+  private BlockingQueue<QueuedEntry> mQueue;
+
+  /** The number of bytes that may wait in memory for the writer. */
+  private long mMaxQueuedBytes;
+
+  /** The number of bytes of the queued entries held in memory. */
+  private long mQueuedBytes;
+
+  /** The lock for {@link #mQueuedBytes}. */
+  private final Object mQueuedBytesLock = new Object();
+
+  /** The thread writing the entries. */
+  private Thread mThread;
+
+  /** The profiler that measures the writing of the analysis files. */
+  private Profiler mWriteProfiler = new Profiler("Writing Analysis files", "files");
+
+  /** The current archive. Is <code>null</code> if there is none yet. */
+  private ZipOutputStream mArchiveOut;
+
+  /** The name of the current archive. */
+  private String mArchiveName;
+
+  /** The number of the current archive. */
+  private int mArchiveNumber;
+
+  /** The number of documents in the current archive. */
+  private int mArchiveDocCount;
+
+  /** The writer for the index file. Is <code>null</code> if not open yet. */
+  private Writer mIndexWriter;
+
+
+  /**
+   * Creates a new instance of AnalysisWriter and starts the writer thread.
+   *
+   * @param analysisDir The directory where to write the analysis files.
+   * @param documentsPerArchive The number of documents per archive. 0 means
+   *        that every analysis file is written as file of its own.
+   */
+  public AnalysisWriter(File analysisDir, int documentsPerArchive) {
+    this(analysisDir, documentsPerArchive, DEFAULT_MAX_QUEUED_BYTES);
+  }
+
+
+  /**
+   * Creates a new instance of AnalysisWriter and starts the writer thread.
+   *
+   * @param analysisDir The directory where to write the analysis files.
+   * @param documentsPerArchive The number of documents per archive. 0 means
+   *        that every analysis file is written as file of its own.
+   * @param maxQueuedBytes The number of bytes that may wait in memory for the
+   *        writer. An entry larger than this is accepted when the queue is
+   *        empty.
+   */
+  public AnalysisWriter(File analysisDir, int documentsPerArchive,
+    long maxQueuedBytes)
+  {
+    mAnalysisDir = analysisDir;
+    mDocumentsPerArchive = documentsPerArchive;
+    mMaxQueuedBytes = maxQueuedBytes;
+    mQueue = new LinkedBlockingQueue<QueuedEntry>();
+
+    mThread = new Thread("Analysis writer") {
+      @Override
+      public void run() {
+        writeQueuedEntries();
+      }
+    };
+    mThread.setDaemon(true);
+    mThread.start();
+  }
+
+
+  /**
+   * Writes the content of a raw document. This starts the analysis files of
+   * a new document.
+   *
+   * @param url The URL of the document.
+   * @param content The content.
+   */
+  public void writeContent(String url, byte[] content) {
+    enqueue(new QueuedEntry(url, null, content, null, false));
+  }
+
+
+  /**
+   * Writes the content of a raw document that is in a file. This starts the
+   * analysis files of a new document.
+   * <p>
+   * The file is read by the writer thread, so it must not be deleted
+   * meanwhile.
+   *
+   * @param url The URL of the document.
+   * @param contentFile The file holding the content.
+   */
+  public void writeContent(String url, File contentFile) {
+    writeContent(url, contentFile, false);
+  }
+
+
+  /**
+   * Writes the content of a raw document that is in a file. This starts the
+   * analysis files of a new document.
+   * <p>
+   * The file is read by the writer thread. If <code>deleteAfterWriting</code>
+   * is set, the writer owns the file and deletes it when it is written (or
+   * when writing failed).
+   *
+   * @param url The URL of the document.
+   * @param contentFile The file holding the content.
+   * @param deleteAfterWriting Whether the writer should delete the file.
+   */
+  public void writeContent(String url, File contentFile,
+    boolean deleteAfterWriting)
+  {
+    enqueue(new QueuedEntry(url, null, null, contentFile, deleteAfterWriting));
+  }
+
+
+  /**
+   * Writes an analysis file of a document.
+   *
+   * @param url The URL of the document.
+   * @param extension The extension of the analysis file.
+   * @param content The content of the analysis file.
+   */
+  public void write(String url, String extension, String content) {
+    enqueue(new QueuedEntry(url, extension,
+        content.getBytes(StandardCharsets.UTF_8), null, false));
+  }
+
+
+  /**
+   * Writes all queued entries and stops the writer thread.
+   */
+  public void close() {
+    enqueue(STOP_ENTRY);
+    try {
+      mThread.join();
+    }
+    catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+      mLog.warn("Waiting for the analysis writer was interrupted");
+    }
+  }
+
+
+  /**
+   * Gets the number of bytes of the queued entries held in memory.
+   *
+   * @return The number of queued bytes.
+   */
+  public long getQueuedBytes() {
+    synchronized (mQueuedBytesLock) {
+      return mQueuedBytes;
+    }
+  }
+
+
+  /**
+   * Puts an entry into the queue. Waits if the queued entries hold too many
+   * bytes.
+   *
+   * @param entry The entry.
+   */
+  private void enqueue(QueuedEntry entry) {
+    long size = entry.getQueuedSize();
+    try {
+      synchronized (mQueuedBytesLock) {
+        while ((mQueuedBytes > 0) && (mQueuedBytes + size > mMaxQueuedBytes)) {
+          mQueuedBytesLock.wait();
+        }
+        mQueuedBytes += size;
+      }
+      mQueue.add(entry);
+    }
+    catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+      mLog.warn("Dropped analysis file of " + entry.mUrl
+          + ", because the crawler was interrupted");
+      entry.dispose();
+    }
+  }
+
+
+  /**
+   * Releases the bytes of an entry that has been written.
+   *
+   * @param entry The written entry.
+   */
+  private void release(QueuedEntry entry) {
+    synchronized (mQueuedBytesLock) {
+      mQueuedBytes -= entry.getQueuedSize();
+      mQueuedBytesLock.notifyAll();
+    }
+    entry.dispose();
+  }
+
+
+  /**
+   * Writes the queued entries until the stop entry comes. Runs in the writer
+   * thread.
+   */
+  private void writeQueuedEntries() {
+    try {
+      while (true) {
+        QueuedEntry entry;
+        try {
+          entry = mQueue.take();
+        }
+        catch (InterruptedException exc) {
+          mLog.warn("Analysis writer was interrupted");
+          return;
+        }
+        if (entry == STOP_ENTRY) {
+          return;
+        }
+
+        mWriteProfiler.startMeasuring();
+        try {
+          long bytes;
+          if (mDocumentsPerArchive > 0) {
+            bytes = writeToArchive(entry);
+          } else {
+            bytes = writeToFile(entry);
+          }
+          mWriteProfiler.stopMeasuring(bytes);
+        }
+        catch (IOException exc) {
+          mWriteProfiler.abortMeasuring();
+          mLog.error("Writing analysis file of " + entry.mUrl + " failed", exc);
+        }
+        finally {
+          release(entry);
+        }
+      }
+    }
+    finally {
+      // Release the entries that won't be written, so nobody waits for them
+      QueuedEntry entry;
+      while ((entry = mQueue.poll()) != null) {
+        release(entry);
+      }
+
+      closeArchive();
+      if (mIndexWriter != null) {
+        try {
+          mIndexWriter.close();
+        }
+        catch (IOException exc) {
+          mLog.error("Closing analysis index failed", exc);
+        }
+        mIndexWriter = null;
+      }
+    }
+  }
+
+
+  /**
+   * Writes an entry into the current archive. Starts a new archive if the
+   * entry belongs to a new document and the current archive is full.
+   *
+   * @param entry The entry to write.
+   * @return The number of bytes written.
+   * @throws IOException If writing failed.
+   */
+  private long writeToArchive(QueuedEntry entry) throws IOException {
+    if (entry.isDocumentStart()) {
+      if ((mArchiveOut == null) || (mArchiveDocCount >= mDocumentsPerArchive)) {
+        openNextArchive();
+      }
+      mArchiveDocCount++;
+    } else if (mArchiveOut == null) {
+      openNextArchive();
+    }
+
+    String entryName = getEntryName(entry.mUrl, entry.mExtension);
+    try {
+      mArchiveOut.putNextEntry(new ZipEntry(entryName));
+    }
+    catch (ZipException exc) {
+      // The document was written into this archive before
+      mLog.debug("Skipping analysis file " + entryName + ": " + exc.getMessage());
+      return 0;
+    }
+    long bytes = writeContent(entry, mArchiveOut);
+    mArchiveOut.closeEntry();
+
+    if (mIndexWriter == null) {
+      mIndexWriter = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(new File(mAnalysisDir, INDEX_FILE_NAME)),
+          StandardCharsets.UTF_8));
+    }
+    mIndexWriter.write(mArchiveName + "\t" + entryName + "\t" + entry.mUrl + "\n");
+
+    return bytes;
+  }
+
+
+  /**
+   * Writes an entry as file of its own.
+   *
+   * @param entry The entry to write.
+   * @return The number of bytes written.
+   * @throws IOException If writing failed.
+   */
+  private long writeToFile(QueuedEntry entry) throws IOException {
+    File file = new File(mAnalysisDir, getEntryName(entry.mUrl, entry.mExtension));
+    OutputStream out = new FileOutputStream(file);
+    try {
+      return writeContent(entry, out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+
+  /**
+   * Writes the content of an entry.
+   *
+   * @param entry The entry.
+   * @param out The stream to write to.
+   * @return The number of bytes written.
+   * @throws IOException If writing failed.
+   */
+  private long writeContent(QueuedEntry entry, OutputStream out)
+    throws IOException
+  {
+    if (entry.mContent != null) {
+      out.write(entry.mContent);
+      return entry.mContent.length;
+    }
+
+    InputStream in = new FileInputStream(entry.mContentFile);
+    try {
+      byte[] buffer = new byte[8192];
+      long bytes = 0;
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        out.write(buffer, 0, len);
+        bytes += len;
+      }
+      return bytes;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+
+  /**
+   * Closes the current archive and opens the next one.
+   *
+   * @throws IOException If opening the archive failed.
+   */
+  private void openNextArchive() throws IOException {
+    closeArchive();
+
+    mArchiveNumber++;
+    mArchiveName = String.format("analysis-%05d.zip", mArchiveNumber);
+    mArchiveOut = new ZipOutputStream(new FileOutputStream(
+        new File(mAnalysisDir, mArchiveName)));
+    mArchiveDocCount = 0;
+  }
+
+
+  /**
+   * Closes the current archive.
+   */
+  private void closeArchive() {
+    if (mArchiveOut != null) {
+      try {
+        mArchiveOut.close();
+      }
+      catch (IOException exc) {
+        mLog.error("Closing analysis archive " + mArchiveName + " failed", exc);
+      }
+      mArchiveOut = null;
+    }
+  }
+
+
+  /**
+   * Creates the name of an analysis file.
+   *
+   * @param url The URL of the document.
+   * @param extension The extension of the analysis file. Is <code>null</code>
+   *        for the content of the raw document.
+   * @return The name of the analysis file.
+   */
+  static String getEntryName(String url, String extension) {
+    // Cut the protocol
+    if (url.startsWith("http://") || url.startsWith("file://")) {
+      url = url.substring(7);
+    }
+
+    url = RegainToolkit.replace(url, ":", "_");
+    url = RegainToolkit.replace(url, "/", "_");
+
+    if (extension == null) {
+      return url;
+    } else {
+      return url + "." + extension;
+    }
+  }
+
+
+  /**
+   * An entry waiting for the writer.
+   */
+  private static class QueuedEntry {
+
+    /** The URL of the document. */
+    private String mUrl;
+
+    /**
+     * The extension of the analysis file. Is <code>null</code> for the
+     * content of the raw document.
+     */
+    private String mExtension;
+
+    /** The content. Is <code>null</code> if the content is in a file. */
+    private byte[] mContent;
+
+    /** The file holding the content. */
+    private File mContentFile;
+
+    /** Whether the file holding the content is deleted after writing. */
+    private boolean mDeleteContentFile;
+
+
+    /**
+     * Creates a new instance of QueuedEntry.
+     *
+     * @param url The URL of the document.
+     * @param extension The extension of the analysis file.
+     * @param content The content.
+     * @param contentFile The file holding the content.
+     * @param deleteContentFile Whether the file holding the content is
+     *        deleted after writing.
+     */
+    public QueuedEntry(String url, String extension, byte[] content,
+      File contentFile, boolean deleteContentFile)
+    {
+      mUrl = url;
+      mExtension = extension;
+      mContent = content;
+      mContentFile = contentFile;
+      mDeleteContentFile = deleteContentFile;
+    }
+
+
+    /**
+     * Gets the number of bytes this entry holds in memory.
+     *
+     * @return The number of bytes in memory.
+     */
+    public long getQueuedSize() {
+      return (mContent == null) ? 0 : mContent.length;
+    }
+
+
+    /**
+     * Deletes the file holding the content if the writer owns it.
+     */
+    public void dispose() {
+      if (mDeleteContentFile && (mContentFile != null)) {
+        if (! mContentFile.delete()) {
+          mContentFile.deleteOnExit();
+        }
+        mDeleteContentFile = false;
+      }
+    }
+
+
+    /**
+     * Gets whether this entry starts the analysis files of a new document.
+     *
+     * @return Whether this entry starts a new document.
+     */
+    public boolean isDocumentStart() {
+      return (mExtension == null);
+    }
+
+  }
+
+}
@@ -0,0 +1,493 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.AuxiliaryField;
+import net.sf.regain.crawler.config.AuxiliaryField.SourceField;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.regexp.RE;
+
+/**
+ * Extracts the values of the auxiliary fields from the URL or the path of a
+ * document.
+ * <p>
+ * The auxiliary fields are prepared once:
+ * <ul>
+ *   <li>The regexes are compiled by java.util.regex, so they may be used by
+ *     several threads at once. Regexes java.util.regex can't compile use the
+ *     Jakarta regex, which is synchronized then.</li>
+ *   <li>Fields having the same regex on the same source share one match.</li>
+ *   <li>The path of a document is only determined once and only if a field
+ *     needs it.</li>
+ *   <li>The result of a regex that can only match directory components (it
+ *     ends with a separator and doesn't look ahead) is the same for all
+ *     documents in a directory. These results are cached by directory.</li>
+ * </ul>
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class AuxiliaryFieldExtractor {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(AuxiliaryFieldExtractor.class);
+
+  /** The number of directories to cache the results for. */
+  private static final int DIRECTORY_CACHE_SIZE = 1000;
+
+  /** The auxiliary fields. */
+  private AuxiliaryField[] mFieldArr;
+
+  /** The regexes to match for each document that can't be cached. */
+  private Matching[] mMatchingArr;
+
+  /** The regexes whose results are cached by directory. */
+  private DirectoryGroup[] mDirectoryGroupArr;
+
+  /** Whether one of the fields needs the path of a document. */
+  private boolean mNeedsPath;
+
+
+  /**
+   * Creates a new instance of AuxiliaryFieldExtractor.
+   *
+   * @param fieldArr The auxiliary fields. May be <code>null</code>.
+   */
+  public AuxiliaryFieldExtractor(AuxiliaryField[] fieldArr) {
+    mFieldArr = (fieldArr == null) ? new AuxiliaryField[0] : fieldArr;
+
+    // Put the fields having the same regex on the same source together
+    ArrayList<Matching> matchingList = new ArrayList<Matching>();
+    for (int i = 0; i < mFieldArr.length; i++) {
+      AuxiliaryField field = mFieldArr[i];
+      if (field.getSourceField() == SourceField.PATH) {
+        mNeedsPath = true;
+      }
+
+      Matching matching = null;
+      if (field.getPattern() != null) {
+        for (Matching other : matchingList) {
+          if (other.isSameRegex(field)) {
+            matching = other;
+            break;
+          }
+        }
+      } else {
+        mLog.info("Regex of auxiliary field '" + field.getTargetFieldName()
+            + "' can't be compiled by java.util.regex. Using the slower "
+            + "Jakarta regex instead");
+      }
+      if (matching == null) {
+        matching = new Matching(field);
+        matchingList.add(matching);
+      }
+      matching.addField(i);
+    }
+
+    // Separate the regexes that only match directory components
+    ArrayList<Matching> uncachedList = new ArrayList<Matching>();
+    ArrayList<DirectoryGroup> groupList = new ArrayList<DirectoryGroup>();
+    for (Matching matching : matchingList) {
+      char separator = getDirectorySeparator(matching.mPattern);
+      if (separator == 0) {
+        uncachedList.add(matching);
+      } else {
+        DirectoryGroup group = null;
+        for (DirectoryGroup other : groupList) {
+          if ((other.mSourceField == matching.mSourceField)
+              && (other.mSeparator == separator))
+          {
+            group = other;
+            break;
+          }
+        }
+        if (group == null) {
+          group = new DirectoryGroup(matching.mSourceField, separator);
+          groupList.add(group);
+        }
+        group.mMatchingList.add(matching);
+      }
+    }
+    mMatchingArr = uncachedList.toArray(new Matching[uncachedList.size()]);
+    mDirectoryGroupArr = groupList.toArray(new DirectoryGroup[groupList.size()]);
+  }
+
+
+  /**
+   * Gets the auxiliary fields.
+   *
+   * @return The auxiliary fields.
+   */
+  public AuxiliaryField[] getFieldArr() {
+    return mFieldArr;
+  }
+
+
+  /**
+   * Extracts the values of the auxiliary fields of a document.
+   *
+   * @param url The URL of the document.
+   * @return The values of the auxiliary fields in the order of
+   *         {@link #getFieldArr()}. A value is <code>null</code> if the field
+   *         should not be created for the document.
+   * @throws RegainException If the path of the document couldn't be
+   *         determined.
+   */
+  public String[] extractValues(String url) throws RegainException {
+    String[] valueArr = new String[mFieldArr.length];
+    if (valueArr.length == 0) {
+      return valueArr;
+    }
+
+    String path = null;
+    if (mNeedsPath) {
+      if (url.startsWith("file:")) {
+        File file = RegainToolkit.urlToFile(url);
+        path = file.getAbsolutePath();
+      } else {
+        path = url;
+      }
+    }
+
+    for (Matching matching : mMatchingArr) {
+      matching.match((matching.mSourceField == SourceField.PATH) ? path : url,
+          valueArr);
+    }
+    for (DirectoryGroup group : mDirectoryGroupArr) {
+      group.match((group.mSourceField == SourceField.PATH) ? path : url,
+          valueArr);
+    }
+
+    return valueArr;
+  }
+
+
+  /**
+   * Adds the auxiliary fields to a document.
+   *
+   * @param doc The document to add the fields to.
+   * @param url The URL of the document.
+   * @param fieldSchema The schema to create the fields with. It should have
+   *        the auxiliary fields declared (see
+   *        {@link IndexFieldSchema#IndexFieldSchema(net.sf.regain.crawler.config.IndexFieldSettings[], AuxiliaryField[], boolean)}).
+   * @throws RegainException If the path of the document couldn't be
+   *         determined.
+   */
+  public void addFields(Document doc, String url, IndexFieldSchema fieldSchema)
+    throws RegainException
+  {
+    String[] valueArr = extractValues(url);
+    for (int i = 0; i < valueArr.length; i++) {
+      String value = valueArr[i];
+      if (value != null) {
+        String targetFieldName = mFieldArr[i].getTargetFieldName();
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Adding auxiliary field: " + targetFieldName + "=" + value);
+        }
+        fieldSchema.addField(doc, targetFieldName, value);
+      }
+    }
+  }
+
+
+  /**
+   * Gets the separator a regex ends with if the regex can only match directory
+   * components.
+   * <p>
+   * If a regex ends with a separator, the match can't reach into the file
+   * name behind the last separator. As long as nothing in the regex looks
+   * behind the match (lookaheads, anchors at the end, possessive quantifiers),
+   * the result is the same for all documents in a directory.
+   *
+   * @param pattern The regex to check. May be <code>null</code>.
+   * @return The separator ('/' or '\\') or 0 if the results of the regex can't
+   *         be cached by directory.
+   */
+  static char getDirectorySeparator(Pattern pattern) {
+    if ((pattern == null) || ((pattern.flags() & Pattern.COMMENTS) != 0)) {
+      return 0;
+    }
+
+    String regex = pattern.pattern();
+    char separator;
+    if (regex.endsWith("\\\\")) {
+      // Check whether the last backslash is escaped itself
+      int backslashCount = 0;
+      for (int i = regex.length() - 1; (i >= 0) && (regex.charAt(i) == '\\'); i--) {
+        backslashCount++;
+      }
+      if (backslashCount % 2 != 0) {
+        return 0;
+      }
+      separator = '\\';
+    } else if (regex.endsWith("/")) {
+      separator = '/';
+    } else {
+      return 0;
+    }
+
+    int depth = 0;
+    boolean inClass = false;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 < regex.length()) {
+          char next = regex.charAt(i + 1);
+          if ((next == 'z') || (next == 'Z') || (next == 'G') || (next == 'Q')) {
+            return 0;
+          }
+        }
+        i++;
+      } else if (inClass) {
+        if (c == ']') {
+          inClass = false;
+        }
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        if ((i + 1 < regex.length()) && (regex.charAt(i + 1) == '?')
+            && ((i + 2 >= regex.length()) || (regex.charAt(i + 2) != ':')))
+        {
+          // Lookarounds, atomic groups and inline flags
+          return 0;
+        }
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if ((c == '|') && (depth == 0)) {
+        // An alternative might not end with the separator
+        return 0;
+      } else if (c == '$') {
+        return 0;
+      } else if ((c == '+') && (i > 0)) {
+        char prev = regex.charAt(i - 1);
+        if ((prev == '*') || (prev == '+') || (prev == '?') || (prev == '}')) {
+          // Possessive quantifier
+          return 0;
+        }
+      }
+    }
+
+    return separator;
+  }
+
+
+  /**
+   * Converts an extracted value to the value of a field.
+   *
+   * @param field The auxiliary field.
+   * @param value The extracted value. May be <code>null</code>.
+   * @return The value of the field. Is <code>null</code> if the field should
+   *         not be created.
+   */
+  private static String toFieldValue(AuxiliaryField field, String value) {
+    if ((value != null) && field.getToLowerCase()) {
+      return value.toLowerCase();
+    }
+    return value;
+  }
+
+
+  /**
+   * A regex that is matched once for all fields using it.
+   */
+  private class Matching {
+
+    /** The source field on which to apply the regex. */
+    private SourceField mSourceField;
+
+    /** The regex. Is <code>null</code> if {@link #mRegex} has to be used. */
+    private Pattern mPattern;
+
+    /** The Jakarta regex. Only used if {@link #mPattern} is <code>null</code>. */
+    private RE mRegex;
+
+    /** The indexes of the fields using the regex. */
+    private ArrayList<Integer> mFieldIdxList = new ArrayList<Integer>();
+
+
+    /**
+     * Creates a new instance of Matching.
+     *
+     * @param field The first field using the regex.
+     */
+    public Matching(AuxiliaryField field) {
+      mSourceField = field.getSourceField();
+      mPattern = field.getPattern();
+      mRegex = field.getRegex();
+    }
+
+
+    /**
+     * Gets whether a field uses the same regex on the same source.
+     *
+     * @param field The field to check.
+     * @return Whether the field uses the same regex.
+     */
+    public boolean isSameRegex(AuxiliaryField field) {
+      Pattern pattern = field.getPattern();
+      return (mPattern != null) && (pattern != null)
+          && (mSourceField == field.getSourceField())
+          && mPattern.pattern().equals(pattern.pattern())
+          && (mPattern.flags() == pattern.flags());
+    }
+
+
+    /**
+     * Adds a field using the regex.
+     *
+     * @param fieldIdx The index of the field.
+     */
+    public void addField(int fieldIdx) {
+      mFieldIdxList.add(fieldIdx);
+    }
+
+
+    /**
+     * Matches the regex and sets the values of its fields.
+     *
+     * @param sourceValue The URL or the path of the document.
+     * @param valueArr The array to set the values to.
+     */
+    public void match(String sourceValue, String[] valueArr) {
+      if (mPattern != null) {
+        Matcher matcher = mPattern.matcher(sourceValue);
+        if (matcher.find()) {
+          for (int fieldIdx : mFieldIdxList) {
+            AuxiliaryField field = mFieldArr[fieldIdx];
+            String value = field.getValue();
+            int group = field.getRegexGroup();
+            if ((value == null) && (group >= 0) && (group <= matcher.groupCount())) {
+              // We have no value set -> Extract the value from the regex
+              value = matcher.group(group);
+            }
+            valueArr[fieldIdx] = toFieldValue(field, value);
+          }
+        }
+      } else {
+        // NOTE: A Jakarta regex holds the state of the last match
+        synchronized (mRegex) {
+          if (mRegex.match(sourceValue)) {
+            for (int fieldIdx : mFieldIdxList) {
+              AuxiliaryField field = mFieldArr[fieldIdx];
+              String value = field.getValue();
+              if (value == null) {
+                value = mRegex.getParen(field.getRegexGroup());
+              }
+              valueArr[fieldIdx] = toFieldValue(field, value);
+            }
+          }
+        }
+      }
+    }
+
+  }
+
+
+  /**
+   * The regexes on one source that only match directory components. Their
+   * results are cached by directory.
+   */
+  private class DirectoryGroup {
+
+    /** The source field on which to apply the regexes. */
+    private SourceField mSourceField;
+
+    /** The separator the regexes end with. */
+    private char mSeparator;
+
+    /** The regexes. */
+    private ArrayList<Matching> mMatchingList = new ArrayList<Matching>();
+
+    /**
+     * The values extracted for the recently used directories. The values are
+     * in the order of {@link #mFieldArr}, fields not belonging to this group
+     * are <code>null</code>.
+     */
+    private Map<String, String[]> mCache;
+
+
+    /**
+     * Creates a new instance of DirectoryGroup.
+     *
+     * @param sourceField The source field on which to apply the regexes.
+     * @param separator The separator the regexes end with.
+     */
+    public DirectoryGroup(SourceField sourceField, char separator) {
+      mSourceField = sourceField;
+      mSeparator = separator;
+      mCache = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+          return size() > DIRECTORY_CACHE_SIZE;
+        }
+      };
+    }
+
+
+    /**
+     * Sets the values of the fields of this group.
+     *
+     * @param sourceValue The URL or the path of the document.
+     * @param valueArr The array to set the values to.
+     */
+    public void match(String sourceValue, String[] valueArr) {
+      int separatorPos = sourceValue.lastIndexOf(mSeparator);
+      if (separatorPos == -1) {
+        // No directory -> Nothing can match
+        return;
+      }
+
+      String directory = sourceValue.substring(0, separatorPos + 1);
+      String[] cachedArr;
+      synchronized (mCache) {
+        cachedArr = mCache.get(directory);
+      }
+      if (cachedArr == null) {
+        cachedArr = new String[valueArr.length];
+        for (Matching matching : mMatchingList) {
+          matching.match(directory, cachedArr);
+        }
+        synchronized (mCache) {
+          mCache.put(directory, cachedArr);
+        }
+      }
+
+      for (int i = 0; i < cachedArr.length; i++) {
+        if (cachedArr[i] != null) {
+          valueArr[i] = cachedArr[i];
+        }
+      }
+    }
+
+  }
+
+}
@@ -22,40 +22,39 @@ package net.sf.regain.crawler.document;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.Properties;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.ErrorLogger;
 import net.sf.regain.crawler.Profiler;
+import net.sf.regain.crawler.access.CachingCrawlerAccessController;
 import net.sf.regain.crawler.access.CrawlerAccessController;
-import net.sf.regain.crawler.config.AuxiliaryField;
-import net.sf.regain.crawler.config.AuxiliaryField.SourceField;
 import net.sf.regain.crawler.config.CrawlerConfig;
 import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.config.PreparatorWorkerSettings;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
 import net.sf.regain.util.io.PathFilenamePair;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.WhitespaceTokenizer;
-import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
-import org.ontoware.rdf2go.model.node.impl.URIImpl;
-import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
-import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifierFactory;
 
 /**
  * Fabrik, die aus der URL und den Rohdaten eines Dokuments ein Lucene-Ducument
@@ -67,9 +66,10 @@ import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifie
  */
 public class DocumentFactory {
 
-  private static final String MIME_TYPE_UNKNOWN = "application/x-unknown-mime-type";
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(DocumentFactory.class);
+  /** The maximum number of group sets in {@link #mGroupTokensCache}. */
+  private static final int GROUP_TOKENS_CACHE_SIZE = 1000;
   /** The crawler config. */
   private CrawlerConfig mConfig;
   /** The maximum amount of characters which will be copied from content to summary */
@@ -77,29 +77,83 @@ public class DocumentFactory {
   /** should the whole content stored in the index for a preview on the result page */
   private boolean storeContentForPreview;
   /**
-   * Das Verzeichnis, in dem Analyse-Dateien erzeugt werden sollen. Ist
-   * <CODE>null</CODE>, wenn keine Analyse-Dateien erzeugt werden sollen.
+   * Der Writer für die Analyse-Dateien. Ist <CODE>null</CODE>, wenn keine
+   * Analyse-Dateien erzeugt werden sollen.
    */
-  private File mAnalysisDir = null;
-  /** The preparators. */
-  private Preparator[] mPreparatorArr;
+  private AnalysisWriter mAnalysisWriter = null;
+  /**
+   * The preparators. After the constructor the array is never changed, it is
+   * only replaced as a whole by a changed copy (see
+   * {@link #replacePreparator(int, Preparator)}). So a reader takes one snapshot and sees
+   * a consistent array without locking.
+   */
+  private volatile Preparator[] mPreparatorArr;
   /** Die Profiler, die die Bearbeitung durch die Präparatoren messen. */
   private Profiler[] mPreparatorProfilerArr;
+  /**
+   * The candidate preparators for each mime type (as indexes into
+   * {@link #mPreparatorArr}), sorted by priority. Is built once and only read
+   * afterwards, so it may be used by several threads without locking. It stays
+   * valid when a preparator is replaced, since the replacement has the same
+   * class and settings and so the same mime types and priority.
+   */
+  private Map<String, int[]> mPreparatorIdxByMimeType;
+  /**
+   * The candidate preparators for mime types no preparator is registered for.
+   * These are the preparators that accept by URL.
+   */
+  private int[] mUrlPreparatorIdxArr;
+  /**
+   * Holds for each preparator whether {@link Preparator#accepts(RawDocument)}
+   * has to be asked for every document, because accepting does not only depend
+   * on the mime type.
+   */
+  private boolean[] mPreparatorNeedsAcceptCheckArr;
+  /**
+   * The maximum time (in seconds) a preparation may take for each
+   * preparator. 0 means no limit.
+   */
+  private int[] mPreparatorTimeoutArr;
+  /**
+   * The maximum number of characters a preparation may extract for each
+   * preparator. 0 means no limit.
+   */
+  private int[] mPreparatorMaxContentLengthArr;
+  /** Runs the preparators with a time limit. */
+  private PreparationSupervisor mPreparationSupervisor = new PreparationSupervisor();
+  /**
+   * The worker processes running preparators outside of the crawler's VM. Is
+   * <code>null</code> if all preparators run in the crawler.
+   */
+  private PreparatorWorkerPool mPreparatorWorkerPool;
   /**
    * The {@link CrawlerAccessController} to use for identifying the groups that
    * are allowed to read a document. May be <code>null</code>.
    */
   private CrawlerAccessController mCrawlerAccessController;
+  /**
+   * The checked and joined groups of the recently used group sets. The key is
+   * the list of groups. The least recently used group set is removed first.
+   */
+  private LinkedHashMap<List<String>, String> mGroupTokensCache
+    = new LinkedHashMap<List<String>, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, String> eldest) {
+        return size() > GROUP_TOKENS_CACHE_SIZE;
+      }
+    };
   /**
    * The regular expressions that, when one of them applies, cause
    * that instead of the document title the link to that document
    * is used as title.
    */
   private RE[] mUseLinkTextAsTitleReArr;
-  /** The profile that measures the addition to index. */
-  private Profiler mWriteAnalysisProfiler = new Profiler("Writing Analysis files", "files");
-  /** The mimetype mimeTypeIdentifier */
-  MimeTypeIdentifier mimeTypeIdentifier;
+  /** Detects the mime types of the documents. */
+  private MimeTypeDetector mMimeTypeDetector;
+  /** Extracts the values of the auxiliary fields. */
+  private AuxiliaryFieldExtractor mAuxiliaryFieldExtractor;
+  /** Declares how the fields are written to the index. */
+  private IndexFieldSchema mFieldSchema;
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
 
@@ -116,7 +170,10 @@ public class DocumentFactory {
   public DocumentFactory(CrawlerConfig config, File analysisDir)
           throws RegainException {
     mConfig = config;
-    mAnalysisDir = analysisDir;
+    if (analysisDir != null) {
+      mAnalysisWriter = new AnalysisWriter(analysisDir,
+          config.getAnalysisDocumentsPerArchive());
+    }
 
     // Create the preparators
     try {
@@ -126,13 +183,50 @@ public class DocumentFactory {
       throw new RegainException("Creating the document preparators failed", exc);
     }
 
+    // Let the worker processes run the preparators configured for them
+    PreparatorWorkerSettings workerSettings = config.getPreparatorWorkerSettings();
+    if (workerSettings != null) {
+      for (int i = 0; i < mPreparatorArr.length; i++) {
+        if (workerSettings.isRunInWorker(mPreparatorArr[i].getClass().getName())) {
+          if (mPreparatorWorkerPool == null) {
+            // NOTE: The workers create their preparators from the same settings
+            mPreparatorWorkerPool = new PreparatorWorkerPool(workerSettings,
+                    config.getPreparatorSettingsList());
+          }
+          mLog.info("Preparator " + mPreparatorArr[i].getClass().getName()
+                  + " runs in worker processes");
+          mPreparatorArr[i] = new WorkerPreparator(mPreparatorArr[i], mPreparatorWorkerPool, i);
+        }
+      }
+    }
+
     // Create a profiler for each preparator
     mPreparatorProfilerArr = new Profiler[mPreparatorArr.length];
     for (int i = 0; i < mPreparatorProfilerArr.length; i++) {
-      String name = mPreparatorArr[i].getClass().getName();
+      String name = getPreparatorClass(mPreparatorArr[i]).getName();
       mPreparatorProfilerArr[i] = new Profiler("Preparator " + name, "docs");
     }
 
+    createPreparatorDispatchTable();
+
+    // Get the preparation limits of each preparator
+    mPreparatorTimeoutArr = new int[mPreparatorArr.length];
+    mPreparatorMaxContentLengthArr = new int[mPreparatorArr.length];
+    for (int i = 0; i < mPreparatorArr.length; i++) {
+      PreparatorSettings settings = findPreparatorSettings(mPreparatorArr[i]);
+      if ((settings == null) || (settings.getTimeoutSecs() < 0)) {
+        mPreparatorTimeoutArr[i] = config.getPreparationTimeoutSecs();
+      } else {
+        mPreparatorTimeoutArr[i] = settings.getTimeoutSecs();
+      }
+      if ((settings == null) || (settings.getMaxContentLength() < 0)) {
+        mPreparatorMaxContentLengthArr[i] = config.getMaxContentLength();
+      } else {
+        mPreparatorMaxContentLengthArr[i] = settings.getMaxContentLength();
+      }
+      applyMaxContentLength(mPreparatorArr[i], mPreparatorMaxContentLengthArr[i]);
+    }
+
     // Create the CrawlerAccessController
     String accessClass = config.getCrawlerAccessControllerClass();
     if (accessClass != null) {
@@ -146,6 +240,13 @@ public class DocumentFactory {
       }
       mCrawlerAccessController.init(accessControllerConfig);
 
+      int cacheSize = config.getCrawlerAccessControllerCacheSize();
+      if (cacheSize > 0) {
+        mCrawlerAccessController = new CachingCrawlerAccessController(
+            mCrawlerAccessController, cacheSize,
+            config.getCrawlerAccessControllerCacheByDirectory());
+      }
+
       mLog.info("Using crawler access controller: " + accessClass);
     }
 
@@ -168,13 +269,23 @@ public class DocumentFactory {
     // Read some more configuration entries from the config
     this.mMaxSummaryLength = this.mConfig.getMaxSummaryLength();
     this.storeContentForPreview = this.mConfig.getStoreContentForPreview();
+    mFieldSchema = new IndexFieldSchema(config.getIndexFieldSettingsList(),
+        config.getAuxiliaryFieldList(), this.storeContentForPreview);
 
-    // Set up the MimeTypeIdentifierFactory
-    MagicMimeTypeIdentifierFactory factory = new MagicMimeTypeIdentifierFactory();
-    mimeTypeIdentifier = factory.get();
+    mMimeTypeDetector = new MimeTypeDetector(config.getTrustedExtensionMap());
+    mAuxiliaryFieldExtractor = new AuxiliaryFieldExtractor(config.getAuxiliaryFieldList());
 
   }
 
+  /**
+   * Gets the schema the fields of the documents are created with.
+   *
+   * @return The index field schema.
+   */
+  public IndexFieldSchema getFieldSchema() {
+    return mFieldSchema;
+  }
+
   /**
    * Creates a lucene {@link Document} from a {@link RawDocument}.
    *
@@ -188,81 +299,86 @@ public class DocumentFactory {
 
     // Determine the mime-type
     String mimeType;
-    FileInputStream fis = null;
     try {
-      File file = rawDocument.getContentAsFile();
-      if (file.canRead() == false) {
-        mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
-                + RegainToolkit.fileToUrl(file));
-        return null;
-      }
-
-      fis = new FileInputStream(file);
-      byte[] bytes = new byte[mimeTypeIdentifier.getMinArrayLength()];
-      fis.read(bytes);
-      mimeType = mimeTypeIdentifier.identify(bytes, file.getPath(),
-              new URIImpl(rawDocument.getUrl(), false));
-      if (mimeType == null || mimeType.length() == 0) {
-        mimeType = MIME_TYPE_UNKNOWN;
+      if (rawDocument.getUrl().startsWith("file://")
+        && rawDocument.isContentInFile())
+      {
+        // NOTE: Entries of archives have a file URL, but their content is
+        //       in memory
+        File file = rawDocument.getContentAsFile();
+        if (file.canRead() == false) {
+          mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
+                  + RegainToolkit.fileToUrl(file));
+          return null;
+        }
       }
 
-      mLog.debug("Detected mimetype cycle 1: " + mimeType + ". " + rawDocument.getUrl());
-      if (mimeType.equalsIgnoreCase("application/zip")) {
-        // some new files like MS Office documents are zip files
-        // so rewrite the URL for the correct mimetype detection
-        // TODO: Maybe merge MimeTypeDetecter from javaThumbnailer? Seems more reliable
-        mimeType = mimeTypeIdentifier.identify(bytes, null,
-                new URIImpl("zip:mime:file:" + rawDocument.getUrl()));
-        mLog.debug("Detected mimetype cycle 2: " + mimeType + ". " + "zip:mime:file:" + rawDocument.getUrl());
-      }
+      mimeType = mMimeTypeDetector.detect(rawDocument);
     } catch (Exception exc) {
       errorLogger.logError("Determine mime-type of " + rawDocument.getUrl()
               + " failed", exc, false);
-      mimeType = MIME_TYPE_UNKNOWN;
-    } finally {
-      if (fis != null) {
-        try { fis.close(); } catch(IOException e) {}
-      }
+      mimeType = MimeTypeDetector.MIME_TYPE_UNKNOWN;
     }
 
     rawDocument.setMimeType(mimeType);
 
-    // Find the preparator that will prepare this URL
-    PriorityQueue<PreparatorProfilerPair> matchingPreparators = new PriorityQueue<PreparatorProfilerPair>(mPreparatorArr.length);
-    for (int i = 0; i < mPreparatorArr.length; i++) {
-      if (mPreparatorArr[i].accepts(rawDocument)) {
-        // This preparator can prepare this URL
-
-        matchingPreparators.add(new PreparatorProfilerPair(mPreparatorArr[i], mPreparatorProfilerArr[i]));
-        if (mLog.isDebugEnabled()) {
-          mLog.debug("Found: " + mPreparatorArr[i].getClass().getSimpleName()
-                  + ", Prio: " + mPreparatorArr[i].getPriority());
-        }
-      }
+    // Find the preparators that will prepare this URL. The candidates are
+    // already sorted by priority, only the preparators accepting by URL have
+    // to be asked.
+    int[] candidateIdxArr = mPreparatorIdxByMimeType.get(mimeType);
+    if (candidateIdxArr == null) {
+      candidateIdxArr = mUrlPreparatorIdxArr;
     }
 
+    Preparator[] preparatorArr = mPreparatorArr;
     Document doc = null;
     boolean preparatorFound = false;
-      PreparatorProfilerPair preparatorProfiler;
-      while (doc == null && (preparatorProfiler = matchingPreparators.poll()) != null)
-      {
-        preparatorFound = true;
-        try {
-          doc = createDocument(preparatorProfiler.getPreparator(), preparatorProfiler.getProfiler(), rawDocument);
-          mLog.info("Preparation with " + preparatorProfiler.getPreparator().getClass().getSimpleName()
-                  + " done: " + rawDocument.getUrl());
-        } catch (RegainException exc) {
-          errorLogger.logError("Preparing " + rawDocument.getUrl()
-                  + " with preparator " + preparatorProfiler.getPreparator().getClass().getName()
-                  + " failed", exc, false);
+    String preparationError = null;
+    for (int c = 0; (doc == null) && (c < candidateIdxArr.length); c++) {
+      int i = candidateIdxArr[c];
+      Preparator preparator = preparatorArr[i];
+      if (preparator == null) {
+        // This preparator was abandoned and could not be replaced
+        continue;
+      }
+      if (mPreparatorNeedsAcceptCheckArr[i] && ! preparator.accepts(rawDocument)) {
+        continue;
+      }
+
+      // This preparator can prepare this URL
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Found: " + getPreparatorClass(preparator).getSimpleName()
+                + ", Prio: " + preparator.getPriority());
+      }
+
+      preparatorFound = true;
+      try {
+        doc = createDocument(i, preparator, rawDocument);
+        mLog.info("Preparation with " + getPreparatorClass(preparator).getSimpleName()
+                + " done: " + rawDocument.getUrl());
+      } catch (PreparationBudgetException exc) {
+        errorLogger.logError("Preparing " + rawDocument.getUrl()
+                + " with preparator " + getPreparatorClass(preparator).getName()
+                + " exceeded the limits", exc, false);
+        if (exc.isPreparatorAbandoned()) {
+          replacePreparator(i, preparator);
         }
 
-        /* For backwards compability reasons we could introduce this parameter with default true:
-        if (mConfig.getUseOnlyOnePreparator())
-          break;
-        */
+        // Don't try the other preparators, they would have the same problem
+        preparationError = exc.getMessage();
+        break;
+      } catch (RegainException exc) {
+        errorLogger.logError("Preparing " + rawDocument.getUrl()
+                + " with preparator " + getPreparatorClass(preparator).getName()
+                + " failed", exc, false);
       }
 
+      /* For backwards compability reasons we could introduce this parameter with default true:
+      if (mConfig.getUseOnlyOnePreparator())
+        break;
+      */
+    }
+
     if (!preparatorFound) {
       mLog.info("No preparator feels responsible for " + rawDocument.getUrl());
 
@@ -272,7 +388,7 @@ public class DocumentFactory {
       // -> Create a substitute document to avoid that the same document is
       // tried to be processed the next time
       try {
-        doc = createSubstituteDocument(rawDocument);
+        doc = createSubstituteDocument(rawDocument, preparationError);
         mLog.info("Created substitute document: " + rawDocument.getUrl());
       } catch (RegainException exc) {
         errorLogger.logError("Creating substitute document for "
@@ -284,19 +400,186 @@ public class DocumentFactory {
     return doc;
   }
 
+  /**
+   * Builds the table holding the candidate preparators for each mime type.
+   * <p>
+   * Preparators whose accepted mime types are known are only registered for
+   * these mime types. Preparators accepting by URL (e.g. the
+   * ExternalPreparator, preparators having an urlRegex in the config or
+   * preparators with an own accepts()) are candidates for every mime type,
+   * they are asked for every document.
+   */
+  private void createPreparatorDispatchTable() {
+    mPreparatorNeedsAcceptCheckArr = new boolean[mPreparatorArr.length];
+    LinkedHashSet<String> mimeTypeSet = new LinkedHashSet<String>();
+    ArrayList<Integer> urlPreparatorList = new ArrayList<Integer>();
+    for (int i = 0; i < mPreparatorArr.length; i++) {
+      String[] mimeTypeArr = null;
+      if (mPreparatorArr[i] instanceof AbstractPreparator) {
+        mimeTypeArr = ((AbstractPreparator) mPreparatorArr[i]).getAcceptedMimeTypes();
+      }
+
+      if (mimeTypeArr == null) {
+        // We don't know what this preparator accepts -> Ask it every time
+        mPreparatorNeedsAcceptCheckArr[i] = true;
+        urlPreparatorList.add(i);
+      } else {
+        mimeTypeSet.addAll(Arrays.asList(mimeTypeArr));
+      }
+    }
+
+    mUrlPreparatorIdxArr = sortByPriority(urlPreparatorList);
+
+    mPreparatorIdxByMimeType = new HashMap<String, int[]>();
+    for (String mimeType : mimeTypeSet) {
+      ArrayList<Integer> candidateList = new ArrayList<Integer>(urlPreparatorList);
+      for (int i = 0; i < mPreparatorArr.length; i++) {
+        if (! mPreparatorNeedsAcceptCheckArr[i]) {
+          String[] mimeTypeArr = ((AbstractPreparator) mPreparatorArr[i]).getAcceptedMimeTypes();
+          if (Arrays.asList(mimeTypeArr).contains(mimeType)) {
+            candidateList.add(i);
+          }
+        }
+      }
+      mPreparatorIdxByMimeType.put(mimeType, sortByPriority(candidateList));
+    }
+
+    if (mLog.isDebugEnabled()) {
+      for (Entry<String, int[]> entry : mPreparatorIdxByMimeType.entrySet()) {
+        StringBuilder names = new StringBuilder();
+        for (int i : entry.getValue()) {
+          names.append(' ').append(getPreparatorClass(mPreparatorArr[i]).getSimpleName());
+        }
+        mLog.debug("Preparators for " + entry.getKey() + ":" + names);
+      }
+    }
+  }
+
+  /**
+   * Sorts preparator indexes by the priority of the preparators. Preparators
+   * with the same priority keep the order of the config.
+   *
+   * @param idxList The indexes into {@link #mPreparatorArr}.
+   * @return The sorted indexes.
+   */
+  private int[] sortByPriority(ArrayList<Integer> idxList) {
+    Integer[] idxArr = idxList.toArray(new Integer[idxList.size()]);
+    Arrays.sort(idxArr, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer idx1, Integer idx2) {
+        int prio1 = mPreparatorArr[idx1].getPriority();
+        int prio2 = mPreparatorArr[idx2].getPriority();
+        return (prio1 > prio2) ? -1 : ((prio1 < prio2) ? 1 : idx1.compareTo(idx2));
+      }
+    });
+
+    int[] sortedArr = new int[idxArr.length];
+    for (int i = 0; i < idxArr.length; i++) {
+      sortedArr[i] = idxArr[i];
+    }
+    return sortedArr;
+  }
+
+  /**
+   * Finds the settings of a preparator.
+   *
+   * @param preparator The preparator.
+   * @return The settings or <code>null</code> if the preparator is not
+   *         configured.
+   */
+  private PreparatorSettings findPreparatorSettings(Preparator preparator) {
+    String className = getPreparatorClass(preparator).getName();
+    for (PreparatorSettings settings : mConfig.getPreparatorSettingsList()) {
+      if (settings.isEnabled() && settings.getPreparatorClassName().equals(className)) {
+        return settings;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the class of a preparator. For preparators running in worker
+   * processes this is the class of the wrapped preparator.
+   *
+   * @param preparator The preparator.
+   * @return The class of the preparator.
+   */
+  private Class<? extends Preparator> getPreparatorClass(Preparator preparator) {
+    if (preparator instanceof WorkerPreparator) {
+      return ((WorkerPreparator) preparator).getPreparator().getClass();
+    }
+    return preparator.getClass();
+  }
+
+  /**
+   * Replaces a preparator that was abandoned because it did not stop
+   * preparing a document. If no new preparator could be created, the
+   * preparator is not used any more.
+   * <p>
+   * The preparator array is copied on write, so threads dispatching at the
+   * same time go on with their snapshot.
+   *
+   * @param preparatorIdx The index of the preparator.
+   * @param abandoned The abandoned preparator.
+   */
+  private synchronized void replacePreparator(int preparatorIdx,
+          Preparator abandoned) {
+    if ((mPreparatorArr[preparatorIdx] != abandoned)
+        || (abandoned instanceof WorkerPreparator)) {
+      // The preparator was already replaced by another thread or the worker
+      // process was killed and the preparator itself is still usable
+      return;
+    }
+
+    Preparator replacement;
+    try {
+      replacement = PreparatorFactory.getInstance().createPreparator(
+              abandoned.getClass(), findPreparatorSettings(abandoned));
+      applyMaxContentLength(replacement, mPreparatorMaxContentLengthArr[preparatorIdx]);
+      mLog.info("Replaced abandoned preparator " + abandoned.getClass().getName());
+    } catch (RegainException exc) {
+      mLog.error("Replacing abandoned preparator " + abandoned.getClass().getName()
+              + " failed. It won't be used any more.", exc);
+      replacement = null;
+    }
+
+    Preparator[] preparatorArr = mPreparatorArr.clone();
+    preparatorArr[preparatorIdx] = replacement;
+    mPreparatorArr = preparatorArr;
+  }
+
+  /**
+   * Lets a preparator stop extracting content at the maximum content length.
+   * Preparators not extending {@link AbstractPreparator} are only truncated
+   * afterwards.
+   *
+   * @param preparator The preparator.
+   * @param maxContentLength The maximum number of characters. 0 means no
+   *        limit.
+   */
+  private void applyMaxContentLength(Preparator preparator, int maxContentLength) {
+    if (preparator instanceof AbstractPreparator) {
+      ((AbstractPreparator) preparator).setMaxContentLength(maxContentLength);
+    }
+  }
+
   /**
    * Creates a lucene {@link Document} from a {@link RawDocument} using a
    * certain Preparator.
+   * <p>
+   * The preparation is stopped if it exceeds the time limit of the
+   * preparator. Content exceeding the content limit is truncated.
    *
+   * @param preparatorIdx The index of the preparator to use.
    * @param preparator The preparator to use.
-   * @param preparatorProfiler The profile of the preparator.
    * @param rawDocument The raw document.
    * @return The lucene document with the prepared data.
+   * @throws PreparationBudgetException If the preparation exceeded the limits.
    * @throws RegainException If creating the document failed.
    */
-  private Document createDocument(Preparator preparator, Profiler preparatorProfiler,
-          RawDocument rawDocument)
-          throws RegainException {
+  private Document createDocument(int preparatorIdx, Preparator preparator,
+          RawDocument rawDocument) throws RegainException {
+    Profiler preparatorProfiler = mPreparatorProfilerArr[preparatorIdx];
     String url = rawDocument.getUrl();
 
     // Extract the file type specific information
@@ -316,7 +599,8 @@ public class DocumentFactory {
     pluginManager.eventBeforePrepare(rawDocument, (WriteablePreparator) preparator);
 
     try {
-      preparator.prepare(rawDocument);
+      mPreparationSupervisor.prepare(preparator, rawDocument,
+              mPreparatorTimeoutArr[preparatorIdx]);
 
       pluginManager.eventAfterPrepare(rawDocument, (WriteablePreparator) preparator);
 
@@ -331,6 +615,12 @@ public class DocumentFactory {
       preparator.cleanUp();
 
       preparatorProfiler.stopMeasuring(rawDocument.getLength());
+    } catch (PreparationBudgetException exc) {
+      preparatorProfiler.abortMeasuring();
+      if (! exc.isPreparatorAbandoned()) {
+        preparator.cleanUp();
+      }
+      throw exc;
     } catch (Throwable thr) {
       preparatorProfiler.abortMeasuring();
       throw new RegainException("Preparing " + url
@@ -343,6 +633,15 @@ public class DocumentFactory {
               + " did not extract the content of " + url);
     }
 
+    // NOTE: The preparators normally stop at the limit themselves, but
+    //       those not extending AbstractPreparator don't know it
+    int maxContentLength = mPreparatorMaxContentLengthArr[preparatorIdx];
+    if ((maxContentLength > 0) && (cleanedContent.length() > maxContentLength)) {
+      mLog.info("Truncating content of " + url + " from "
+              + cleanedContent.length() + " to " + maxContentLength + " characters");
+      cleanedContent = cleanedContent.substring(0, maxContentLength);
+    }
+
     // Preparing succeed -> Create the document
     Document doc = createDocument(rawDocument, cleanedContent, title,
             summary, metadata, headlines, path, additionalFieldMap);
@@ -360,13 +659,21 @@ public class DocumentFactory {
    * previously failed document is not retried.
    *
    * @param rawDocument The document to create the substitute document for.
+   * @param preparationError The reason why the preparation failed. Is stored
+   *        in the "preparation-error" field. May be <code>null</code>.
    * @return The substitide document.
    * @throws RegainException If the user groups that are allowed to read this
    *         document couldn't be determined.
    */
-  private Document createSubstituteDocument(RawDocument rawDocument)
+  private Document createSubstituteDocument(RawDocument rawDocument,
+          String preparationError)
           throws RegainException {
-    return createDocument(rawDocument, null, null, null, null, null, null, null);
+    Document doc = createDocument(rawDocument, null, null, null, null, null, null, null);
+    if (preparationError != null) {
+      doc.removeField("preparation-error");
+      mFieldSchema.addField(doc, "preparation-error", preparationError);
+    }
+    return doc;
   }
 
   /**
@@ -394,7 +701,6 @@ public class DocumentFactory {
           throws RegainException
   {
     String url = rawDocument.getUrl();
-    String docPath = null;
 
     // Create a new, empty document
     Document doc = new Document();
@@ -404,100 +710,45 @@ public class DocumentFactory {
     //       having the same name as a normal field, then the field will be
     //       overriden by the normal field. This way we can be sure that the
     //       normal fields have the value we expect.
-    AuxiliaryField[] auxiliaryFieldArr = mConfig.getAuxiliaryFieldList();
-    if (auxiliaryFieldArr != null) {
-      for (int i = 0; i < auxiliaryFieldArr.length; i++) {
-        AuxiliaryField auxiliaryField = auxiliaryFieldArr[i];
-
-        RE regex = auxiliaryField.getRegex();
-        String sourceValue = url;
-        if (auxiliaryField.getSourceField() == SourceField.PATH) {
-          if (docPath == null) {
-            if (url.startsWith("file:")) {
-              File file = RegainToolkit.urlToFile(url);
-              docPath = file.getAbsolutePath();
-            } else {
-              docPath = url;
-            }
-          }
-          sourceValue = docPath;
-        }
-
-        if (regex.match(sourceValue)) {
-          String targetFieldName = auxiliaryField.getTargetFieldName();
-
-          String value = auxiliaryField.getValue();
-          if (value == null) {
-            // We have no value set -> Extract the value from the regex
-            value = regex.getParen(auxiliaryField.getRegexGroup());
-          }
-
-          if (value != null) {
-            if (auxiliaryField.getToLowerCase()) {
-              value = value.toLowerCase();
-            }
-
-            if (mLog.isDebugEnabled()) {
-              mLog.debug("Adding auxiliary field: " + targetFieldName + "=" + value);
-            }
-            boolean store = auxiliaryField.isStored();
-            boolean index = auxiliaryField.isIndexed();
-            boolean token = auxiliaryField.isTokenized();
-
-            doc.add(new Field(targetFieldName, value,
-                    store ? Field.Store.YES : Field.Store.NO,
-                    index ? (token ? Field.Index.ANALYZED : Field.Index.NOT_ANALYZED) : Field.Index.NO));
-          }
-        }
-      }
-    }
+    mAuxiliaryFieldExtractor.addFields(doc, url, mFieldSchema);
 
     // Add the groups of the document
     if (mCrawlerAccessController != null) {
       String[] groupArr = mCrawlerAccessController.getDocumentGroups(rawDocument);
 
-      // Check the Group array
-      RegainToolkit.checkGroupArray(mCrawlerAccessController, groupArr);
-
       // Add the field
       // NOTE: The field "groups" is tokenized, but not stemmed.
       //       See: RegainToolkit.WrapperAnalyzer
-      StringBuilder tokenBuilder = new StringBuilder();
-      for (String group : groupArr)
-      {
-        tokenBuilder.append(group)
-                    .append(" ");
-      }
-
       //doc.add(new Field(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, new IteratorTokenStream(groupIter)));
-      doc.add(new Field(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, new WhitespaceTokenizer(RegainToolkit.getLuceneVersion(),
-              new StringReader(tokenBuilder.toString()))));
+      mFieldSchema.addField(doc, RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS,
+              new WhitespaceTokenizer(RegainToolkit.getLuceneVersion(),
+              new StringReader(getGroupTokens(groupArr))));
     }
 
     // Add the URL of the document
     if (url == null)
       url = "";
-    doc.add(new Field("url", url, Field.Store.YES, Field.Index.NOT_ANALYZED));
+    mFieldSchema.addField(doc, "url", url);
 
     // Add the file name (without protocol, drive-letter and path)
     String filenameWithVariants = RegainToolkit.urlToWhitespacedFileName(url);
 //    doc.add(new Field("filename", new WhitespaceTokenizer(IndexConfig.getLuceneVersion(),
 //            new StringReader(filenameWithVariants))));
-    doc.add(new Field("filename", filenameWithVariants, Field.Store.YES, Field.Index.ANALYZED));
+    mFieldSchema.addField(doc, "filename", filenameWithVariants);
 
     // Add the filename field for sorting
     PathFilenamePair pfPair = RegainToolkit.fragmentUrl(url);
-    doc.add(new Field("filename_sort", pfPair.getFilename(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    mFieldSchema.addField(doc, "filename_sort", pfPair.getFilename());
 
     // Add the document's size
     int size = rawDocument.getLength();
-    doc.add(new Field("size", Integer.toString(size), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    mFieldSchema.addField(doc, "size", (long) size);
 
     // Add the mime-type
     String mimeType = rawDocument.getMimeType();
     if (mimeType == null)
-      mimeType = MIME_TYPE_UNKNOWN;
-    doc.add(new Field("mimetype", mimeType, Field.Store.YES, Field.Index.NOT_ANALYZED));
+      mimeType = MimeTypeDetector.MIME_TYPE_UNKNOWN;
+    mFieldSchema.addField(doc, "mimetype", mimeType);
 
     // Add last modified
     Date lastModified = rawDocument.getLastModified();
@@ -506,9 +757,9 @@ public class DocumentFactory {
       // -> Take the current time
       lastModified = new Date();
     }
-    doc.add(new Field("last-modified",
-            DateTools.dateToString(lastModified, DateTools.Resolution.DAY), Field.Store.YES,
-            Field.Index.NOT_ANALYZED));
+    mFieldSchema.addField(doc, "last-modified",
+            DateTools.dateToString(lastModified, DateTools.Resolution.DAY));
+    mFieldSchema.addField(doc, RegainToolkit.FIELD_MODIFIED, lastModified.getTime());
 
     // Write the raw content to an analysis file
     writeContentAnalysisFile(rawDocument);
@@ -521,8 +772,7 @@ public class DocumentFactory {
         //doc.add(new Field(fieldName, fieldValue, Field.Store.COMPRESS, Field.Index.ANALYZED));
         // DEBUG doc.add(new Field(fieldName, fieldValue, Field.Store.YES, Field.Index.ANALYZED));
 
-        doc.add(new Field(fieldName, fieldValue, Field.Store.NO, Field.Index.ANALYZED));
-        doc.add(new Field(fieldName, CompressionTools.compressString(fieldValue)));
+        mFieldSchema.addField(doc, fieldName, fieldValue);
       }
     }
 
@@ -531,13 +781,11 @@ public class DocumentFactory {
       writeAnalysisFile(url, "clean", cleanedContent);
 
       // Add the cleaned content of the document
-      doc.add(new Field("content", cleanedContent,
-              this.storeContentForPreview ? Field.Store.YES : Field.Store.NO, Field.Index.ANALYZED));
+      mFieldSchema.addField(doc, "content", cleanedContent);
     } else {
       // We have no content! This is a substitute document
       // -> Add a "preparation-error"-field
-      doc.add(new Field("preparation-error", "true", Field.Store.YES,
-              Field.Index.NO));
+      mFieldSchema.addField(doc, "preparation-error", "true");
     }
 
     // Check whether to use the link text as title
@@ -553,10 +801,10 @@ public class DocumentFactory {
 
     // Add the document's title
     if (hasContent(title)) {
-      doc.add(new Field("title", title, Field.Store.YES, Field.Index.ANALYZED));
-      doc.add(new Field("title_sort", title.toLowerCase(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      mFieldSchema.addField(doc, "title", title);
+      mFieldSchema.addField(doc, "title_sort", title.toLowerCase());
     } else {
-      doc.add(new Field("title_sort", "", Field.Store.YES, Field.Index.NOT_ANALYZED));
+      mFieldSchema.addField(doc, "title_sort", "");
     }
 
     // Add the document's summary
@@ -564,31 +812,29 @@ public class DocumentFactory {
       summary = createSummaryFromContent(cleanedContent);
     }
     if (hasContent(summary)) {
-      doc.add(new Field("summary", summary, Field.Store.NO, Field.Index.ANALYZED));
-      doc.add(new Field("summary", CompressionTools.compressString(summary)));
+      mFieldSchema.addField(doc, "summary", summary);
     }
 
     // Add the document's metadata
     if (hasContent(metadata)) {
-      doc.add(new Field("metadata", metadata, Field.Store.YES, Field.Index.ANALYZED));
+      mFieldSchema.addField(doc, "metadata", metadata);
     }
 
     // Add the document's headlines
     if (hasContent(headlines)) {
-      doc.add(new Field("headlines", headlines, Field.Store.NO,
-              Field.Index.ANALYZED));
+      mFieldSchema.addField(doc, "headlines", headlines);
     }
 
     // Add the document's path
     if (pfPair.getPath() != null) {
       //String asString = pathToString(path);
-      doc.add(new Field("path", pfPair.getPath(), Field.Store.YES, Field.Index.NO));
-      doc.add(new Field("path_sort", pfPair.getPath().toLowerCase(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      mFieldSchema.addField(doc, "path", pfPair.getPath());
+      mFieldSchema.addField(doc, "path_sort", pfPair.getPath().toLowerCase());
 
       // Write the path to an analysis file
       writeAnalysisFile(url, "path", pfPair.getPath());
     } else {
-      doc.add(new Field("path_sort", "", Field.Store.YES, Field.Index.NOT_ANALYZED));
+      mFieldSchema.addField(doc, "path_sort", "");
     }
 
     return doc;
@@ -650,28 +896,86 @@ public class DocumentFactory {
     return builder.toString();
   }
 
+  /**
+   * Gets the groups of a document joined by spaces. Every group set is checked
+   * and joined only once while it is in the cache.
+   *
+   * @param groupArr The groups returned by the access controller.
+   * @return The groups separated by spaces.
+   * @throws RegainException If the group array is illegal.
+   */
+  private synchronized String getGroupTokens(String[] groupArr)
+    throws RegainException
+  {
+    if (groupArr == null) {
+      // checkGroupArray throws the exception
+      RegainToolkit.checkGroupArray(mCrawlerAccessController, groupArr);
+    }
+
+    String groupTokens = mGroupTokensCache.get(Arrays.asList(groupArr));
+    if (groupTokens == null) {
+      RegainToolkit.checkGroupArray(mCrawlerAccessController, groupArr);
+
+      StringBuilder tokenBuilder = new StringBuilder();
+      for (String group : groupArr) {
+        tokenBuilder.append(group).append(' ');
+      }
+      groupTokens = tokenBuilder.toString();
+
+      // Copy the array, so changes by the controller can't affect the key
+      mGroupTokensCache.put(Arrays.asList(groupArr.clone()), groupTokens);
+    }
+    return groupTokens;
+  }
+
   /**
    * Schreibt eine Ananlyse-Datei mit dem Inhalt des Roh-Dokuments.
    *
    * @param rawDocument
    */
   private void writeContentAnalysisFile(RawDocument rawDocument) {
-    if (mAnalysisDir == null) {
+    if (mAnalysisWriter == null) {
       // Analysis is disabled -> nothing to do
       return;
     }
 
-    File file = getAnalysisFile(rawDocument.getUrl(), null);
-    mWriteAnalysisProfiler.startMeasuring();
     try {
-      rawDocument.writeToFile(file);
-      mWriteAnalysisProfiler.stopMeasuring(rawDocument.getLength());
+      // NOTE: The writer reads the file later. Temporary files may be gone by
+      //       then, so the writer gets a link of its own that it deletes
+      //       after copying.
+      if (! rawDocument.isContentInFile()) {
+        mAnalysisWriter.writeContent(rawDocument.getUrl(), rawDocument.getContent());
+      } else if (rawDocument.isContentInTemporaryFile()) {
+        File link = createAnalysisLink(rawDocument.getContentAsFile());
+        mAnalysisWriter.writeContent(rawDocument.getUrl(), link, true);
+      } else {
+        mAnalysisWriter.writeContent(rawDocument.getUrl(), rawDocument.getContentAsFile());
+      }
     } catch (RegainException exc) {
-      mWriteAnalysisProfiler.abortMeasuring();
       mLog.error("Writing analysis file failed", exc);
     }
   }
 
+  /**
+   * Creates a hard link of a temporary content file for the analysis writer.
+   * If the file system doesn't support hard links, the file is copied.
+   *
+   * @param file The temporary content file.
+   * @return The link (or copy). The caller has to delete it.
+   * @throws RegainException If neither linking nor copying worked.
+   */
+  private File createAnalysisLink(File file) throws RegainException {
+    File link = new File(file.getParentFile(), "analysis_" + file.getName());
+    try {
+      Files.createLink(link.toPath(), file.toPath());
+    }
+    catch (IOException | UnsupportedOperationException exc) {
+      mLog.debug("Linking " + file.getAbsolutePath() + " failed, copying it", exc);
+      RegainToolkit.copyFile(file, link);
+    }
+    return link;
+  }
+
   /**
    * Schreibt eine Analyse-Datei.
    * <p>
@@ -679,76 +983,25 @@ public class DocumentFactory {
    * Zwischenschritt der Aufbereitung. Sie hilft die Qualit�t der
    * Index-Erstellung zu Prüfen und wird in einem Unterverzeichnis im
    * Index-Verzeichnis angelegt.
+   * <p>
+   * The file is written in the background by the {@link AnalysisWriter}.
    *
    * @param url Die URL des Dokuments.
    * @param extension Der Erweiterung, die die Analyse-Datei erhalten soll.
    * @param content Der Inhalt, der in die Datei geschrieben werden soll.
    */
   public void writeAnalysisFile(String url, String extension, String content) {
-    if (mAnalysisDir == null) {
+    if (mAnalysisWriter == null) {
       // Analysis is disabled -> nothing to do
       return;
     }
 
-    File file = getAnalysisFile(url, extension);
-
     if (content == null) {
       throw new NullPointerException("Content for analysis file is null: "
-              + file.getAbsolutePath());
+              + AnalysisWriter.getEntryName(url, extension));
     }
 
-    mWriteAnalysisProfiler.startMeasuring();
-
-    FileOutputStream stream = null;
-    OutputStreamWriter writer = null;
-    try {
-      stream = new FileOutputStream(file);
-      writer = new OutputStreamWriter(stream);
-
-      writer.write(content);
-
-      mWriteAnalysisProfiler.stopMeasuring(content.length());
-    } catch (IOException exc) {
-      mWriteAnalysisProfiler.abortMeasuring();
-      mLog.error("Writing analysis file failed", exc);
-    } finally {
-      if (writer != null) {
-        try {
-          writer.close();
-        } catch (IOException exc) {
-        }
-      }
-      if (stream != null) {
-        try {
-          stream.close();
-        } catch (IOException exc) {
-        }
-      }
-    }
-  }
-
-  /**
-   * Erzeugt den Dateinamen einer Analyse-Datei.
-   *
-   * @param url Die URL des Dokuments.
-   * @param extension Der Erweiterung, die die Analyse-Datei erhalten soll.
-   *
-   * @return Den Dateinamen einer Analyse-Datei.
-   */
-  private File getAnalysisFile(String url, String extension) {
-    // Cut the protocol
-    if (url.startsWith("http://") || url.startsWith("file://")) {
-      url = url.substring(7);
-    }
-
-    url = RegainToolkit.replace(url, ":", "_");
-    url = RegainToolkit.replace(url, "/", "_");
-
-    if (extension == null) {
-      return new File(mAnalysisDir, url);
-    } else {
-      return new File(mAnalysisDir, url + "." + extension);
-    }
+    mAnalysisWriter.write(url, extension, content);
   }
 
   /**
@@ -758,13 +1011,24 @@ public class DocumentFactory {
    * bearbeitet wurden.
    */
   public void close() {
+    mPreparationSupervisor.close();
+    if (mAnalysisWriter != null) {
+      mAnalysisWriter.close();
+    }
+    if (mPreparatorWorkerPool != null) {
+      mPreparatorWorkerPool.close();
+    }
+
     for (int i = 0; i < mPreparatorArr.length; i++) {
-      mLog.info("Closing preparator " + mPreparatorArr[i].getClass().getName());
+      if (mPreparatorArr[i] == null) {
+        continue;
+      }
+      mLog.info("Closing preparator " + getPreparatorClass(mPreparatorArr[i]).getName());
       try {
         mPreparatorArr[i].close();
       } catch (Throwable thr) {
         mLog.error("Closing preparator failed: "
-                + mPreparatorArr[i].getClass().getName(), thr);
+                + getPreparatorClass(mPreparatorArr[i]).getName(), thr);
       }
     }
 
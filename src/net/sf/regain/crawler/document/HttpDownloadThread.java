@@ -36,10 +36,17 @@ public class HttpDownloadThread extends Thread {
   /** Der Thread, der am Ende des Downloads benachrichtigt werden soll. */
   private Thread mWaitingThread;
   /**
-   * Der Inhalt des Dokuments. Ist <code>null</code>, solange der Download
-   * nicht erfolgreich abgeschlossen ist.
+   * The stream the content is written to. Up to a limit it keeps the content
+   * in memory, larger content is written into a temporary file.
    */
-  private byte[] mDocContent;
+  private SpillOutputStream mOut;
+  /** Whether the download was completed successfully. */
+  private boolean mFinished;
+  /**
+   * Whether the download was given up. In this case the thread disposes the
+   * content when it is done, since nobody will take it any more.
+   */
+  private boolean mCancelled;
   /**
    * Der Fehler, der beim Download aufgetreten ist. Ist <code>null</code>,
    * solange kein Fehler auftrat.
@@ -53,29 +60,42 @@ public class HttpDownloadThread extends Thread {
    * @param url Die URL des zu ladenden Dokuments.
    * @param waitingThread Der Thread, der am Ende des Downloads benachrichtigt
    *        werden soll.
+   * @param maxContentSizeInMemory The maximum number of bytes to keep in
+   *        memory. Larger content is written into a temporary file.
+   * @param tempFileExtension The extension of the temporary file.
    */
-  public HttpDownloadThread(String url, Thread waitingThread) {
+  public HttpDownloadThread(String url, Thread waitingThread,
+    int maxContentSizeInMemory, String tempFileExtension)
+  {
     mDocUrl = url;
     mWaitingThread = waitingThread;
+    mOut = new SpillOutputStream(maxContentSizeInMemory, tempFileExtension);
   }
 
 
   /**
    * Führt den Download aus.
    * <p>
-   * Am Ende ist entweder mDocContent oder mError gesetzt, bevor der wartende
-   * Thread benachrichtigt wird.
+   * Am Ende ist entweder der Download beendet oder mError gesetzt, bevor der
+   * wartende Thread benachrichtigt wird.
    */
   @Override
   public void run() {
+    boolean success = false;
     try {
-      mDocContent = CrawlerToolkit.loadHttpDocument(mDocUrl);
+      CrawlerToolkit.loadHttpDocument(mDocUrl, mOut);
+      mOut.close();
+      success = true;
     }
     catch (Throwable thr) {
       mError = thr;
     }
 
     synchronized (this) {
+      mFinished = success;
+      if (! success || mCancelled) {
+        mOut.dispose();
+      }
       if (mWaitingThread != null) {
         mWaitingThread.interrupt();
       }
@@ -86,24 +106,35 @@ public class HttpDownloadThread extends Thread {
   /**
    * Gibt den Download auf. Es wird sichergestellt, dass der wartende Thread
    * nun nicht mehr benachrichtigt wird.
+   * <p>
+   * If the download is still running, its content will be disposed as soon
+   * as it is done.
+   *
+   * @return Whether the download was still running. If <code>false</code>, it
+   *         is finished (see {@link #getContent()}) or has failed (see
+   *         {@link #getError()}).
    */
-  public void cancel() {
-    synchronized (this) {
-      mWaitingThread = null;
+  public synchronized boolean cancel() {
+    mWaitingThread = null;
+    if (mFinished || (mError != null)) {
+      return false;
     }
+    mCancelled = true;
+    return true;
   }
 
 
   /**
    * Gibt den Inhalt des heruntergeladenen Dokuments zurück.
    * <p>
-   * Falls das Dokument noch nicht vollst�ndig heruntergeladen wurde, wird
-   * <code>null</code> zurückgegeben.
+   * Falls das Dokument noch nicht vollständig heruntergeladen wurde, wird
+   * <code>null</code> zurückgegeben. Otherwise the caller takes over the
+   * stream and has to dispose its temporary file.
    *
    * @return Der Inhalt des heruntergeladenen Dokuments
    */
-  public byte[] getContent() {
-    return mDocContent;
+  public synchronized SpillOutputStream getContent() {
+    return mFinished ? mOut : null;
   }
 
 
@@ -114,7 +145,7 @@ public class HttpDownloadThread extends Thread {
    *
    * @return Der Fehler, der beim Download auftrat.
    */
-  public Throwable getError() {
+  public synchronized Throwable getError() {
     return mError;
   }
 
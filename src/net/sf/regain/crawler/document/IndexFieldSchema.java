@@ -0,0 +1,340 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.util.HashMap;
+
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.ArchiveIndexer;
+import net.sf.regain.crawler.config.AuxiliaryField;
+import net.sf.regain.crawler.config.IndexFieldSettings;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.CompressionTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+
+/**
+ * Declares how the fields of a document are written to the index: Whether
+ * they are stored (and compressed), whether they are tokenized, whether they
+ * have norms and which information is indexed for their terms.
+ * <p>
+ * The fields that are only used for exact matching or sorting (like
+ * <code>url</code>, <code>mimetype</code> or <code>title_sort</code>) have no
+ * norms and only the documents are indexed for their terms. This saves one
+ * byte per document and field in the norms and the positions in the postings.
+ * The size and the last-modified time are numeric fields (see
+ * {@link #addField(Document, String, long)}).
+ * <p>
+ * The auxiliary fields are declared as their configuration says. The
+ * defaults may be overridden by the configuration (see
+ * {@link IndexFieldSettings}). Fields not declared here (e.g. the additional
+ * fields of the preparators) are tokenized and stored compressed.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexFieldSchema {
+
+  /** The types of the declared fields. The field name is the key. */
+  private HashMap<String, FieldType> mFieldTypeMap;
+
+  /** The type of the fields that are not declared. */
+  private FieldType mDefaultFieldType;
+
+
+  /**
+   * Creates a new instance of IndexFieldSchema.
+   *
+   * @param settingsArr The settings that override the defaults. May be
+   *        <code>null</code>.
+   * @param storeContent Whether the content should be stored for the preview.
+   */
+  public IndexFieldSchema(IndexFieldSettings[] settingsArr, boolean storeContent) {
+    this(settingsArr, null, storeContent);
+  }
+
+
+  /**
+   * Creates a new instance of IndexFieldSchema.
+   *
+   * @param settingsArr The settings that override the defaults. May be
+   *        <code>null</code>.
+   * @param auxiliaryFieldArr The auxiliary fields. May be <code>null</code>.
+   * @param storeContent Whether the content should be stored for the preview.
+   */
+  public IndexFieldSchema(IndexFieldSettings[] settingsArr,
+    AuxiliaryField[] auxiliaryFieldArr, boolean storeContent)
+  {
+    mFieldTypeMap = new HashMap<String, FieldType>();
+
+    // Identifiers: Only used for exact matching or sorting
+    declareIdentifier("url");
+    declareIdentifier("filename_sort");
+    declareIdentifier("title_sort");
+    declareIdentifier("path_sort");
+    declareIdentifier("size");
+    declareIdentifier("mimetype");
+    declareIdentifier("last-modified");
+    declareIdentifier(ArchiveIndexer.ARCHIVE_URL_FIELD);
+    declareIdentifier(ArchiveIndexer.ENTRY_CRC_FIELD);
+    // NOTE: "last-modified" is stored for displaying
+    declareIdentifier(RegainToolkit.FIELD_MODIFIED).mStore = false;
+
+    // Text
+    declare("filename", true, false, Field.Index.ANALYZED);
+    declare("content", storeContent, false, Field.Index.ANALYZED);
+    declare("title", true, false, Field.Index.ANALYZED);
+    declare("summary", true, true, Field.Index.ANALYZED);
+    declare("metadata", true, false, Field.Index.ANALYZED);
+    declare("headlines", false, false, Field.Index.ANALYZED);
+
+    // Only stored
+    declare("path", true, false, Field.Index.NO);
+    declare("preparation-error", true, false, Field.Index.NO);
+
+    // The groups are only used for filtering
+    FieldType groupsType = declare(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS,
+        false, false, Field.Index.ANALYZED);
+    groupsType.mOmitNorms = true;
+    groupsType.mIndexOptions = IndexOptions.DOCS_ONLY;
+
+    // The auxiliary fields
+    // NOTE: An auxiliary field having the same name as a normal field gets
+    //       the type of the normal field.
+    if (auxiliaryFieldArr != null) {
+      for (AuxiliaryField field : auxiliaryFieldArr) {
+        if (! mFieldTypeMap.containsKey(field.getTargetFieldName())) {
+          Field.Index index = Field.Index.NO;
+          if (field.isIndexed()) {
+            index = field.isTokenized() ? Field.Index.ANALYZED : Field.Index.NOT_ANALYZED;
+          }
+          declare(field.getTargetFieldName(), field.isStored(), false, index);
+        }
+      }
+    }
+
+    mDefaultFieldType = new FieldType(true, true, Field.Index.ANALYZED);
+
+    // Apply the settings of the configuration
+    if (settingsArr != null) {
+      for (IndexFieldSettings settings : settingsArr) {
+        FieldType type = mFieldTypeMap.get(settings.getName());
+        if (type == null) {
+          type = new FieldType(mDefaultFieldType.mStore,
+              mDefaultFieldType.mCompress, mDefaultFieldType.mIndex);
+          mFieldTypeMap.put(settings.getName(), type);
+        }
+
+        if (settings.getStore() != null) {
+          type.mStore = settings.getStore().booleanValue();
+        }
+        if (settings.getCompress() != null) {
+          type.mCompress = settings.getCompress().booleanValue();
+        }
+        if (settings.getOmitNorms() != null) {
+          type.mOmitNorms = settings.getOmitNorms().booleanValue();
+        }
+        if (settings.getIndexOptions() != null) {
+          type.mIndexOptions = toLuceneIndexOptions(settings.getIndexOptions());
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Declares a field that is only used for exact matching or sorting.
+   *
+   * @param name The name of the field.
+   * @return The type of the field.
+   */
+  private FieldType declareIdentifier(String name) {
+    FieldType type = declare(name, true, false, Field.Index.NOT_ANALYZED);
+    type.mOmitNorms = true;
+    type.mIndexOptions = IndexOptions.DOCS_ONLY;
+    return type;
+  }
+
+
+  /**
+   * Declares a field.
+   *
+   * @param name The name of the field.
+   * @param store Whether the field value should be stored.
+   * @param compress Whether a stored field value should be compressed.
+   * @param index How the field should be indexed.
+   * @return The type of the field.
+   */
+  private FieldType declare(String name, boolean store, boolean compress,
+    Field.Index index)
+  {
+    FieldType type = new FieldType(store, compress, index);
+    mFieldTypeMap.put(name, type);
+    return type;
+  }
+
+
+  /**
+   * Converts the index options of the configuration to the ones of Lucene.
+   *
+   * @param indexOptions The index options of the configuration.
+   * @return The index options of Lucene.
+   */
+  private static IndexOptions toLuceneIndexOptions(IndexFieldSettings.IndexOptions indexOptions) {
+    switch (indexOptions) {
+      case DOCS:  return IndexOptions.DOCS_ONLY;
+      case FREQS: return IndexOptions.DOCS_AND_FREQS;
+      default:    return IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
+    }
+  }
+
+
+  /**
+   * Gets the type of a field.
+   *
+   * @param name The name of the field.
+   * @return The type of the field.
+   */
+  private FieldType getFieldType(String name) {
+    FieldType type = mFieldTypeMap.get(name);
+    return (type == null) ? mDefaultFieldType : type;
+  }
+
+
+  /**
+   * Adds a field to a document.
+   * <p>
+   * A compressed field is added twice: Once indexed and once stored
+   * compressed as binary value.
+   *
+   * @param doc The document to add the field to.
+   * @param name The name of the field.
+   * @param value The value of the field.
+   */
+  public void addField(Document doc, String name, String value) {
+    FieldType type = getFieldType(name);
+    boolean indexed = (type.mIndex != Field.Index.NO);
+
+    if (type.mStore && type.mCompress) {
+      if (indexed) {
+        doc.add(type.applyIndexOptions(new Field(name, value, Field.Store.NO, type.mIndex)));
+      }
+      doc.add(new Field(name, CompressionTools.compressString(value)));
+    } else if (type.mStore || indexed) {
+      doc.add(type.applyIndexOptions(new Field(name, value,
+          type.mStore ? Field.Store.YES : Field.Store.NO, type.mIndex)));
+    }
+    // NOTE: A field that is neither stored nor indexed is dropped
+  }
+
+
+  /**
+   * Adds a numeric field to a document.
+   * <p>
+   * The value is indexed trie encoded. This way it can be searched by a
+   * {@link org.apache.lucene.search.NumericRangeQuery} and the field cache
+   * gets the values for sorting without parsing strings. A stored value is
+   * returned as decimal string by {@link Document#get(String)}.
+   *
+   * @param doc The document to add the field to.
+   * @param name The name of the field.
+   * @param value The value of the field.
+   */
+  public void addField(Document doc, String name, long value) {
+    FieldType type = getFieldType(name);
+    boolean indexed = (type.mIndex != Field.Index.NO);
+    if (type.mStore || indexed) {
+      // NOTE: A numeric field has no norms and only the documents are indexed
+      //       for its terms
+      NumericField field = new NumericField(name,
+          type.mStore ? Field.Store.YES : Field.Store.NO, indexed);
+      doc.add(field.setLongValue(value));
+    }
+  }
+
+
+  /**
+   * Adds a field to a document that gets its tokens from a TokenStream. Such
+   * a field can't be stored.
+   *
+   * @param doc The document to add the field to.
+   * @param name The name of the field.
+   * @param tokenStream The tokens of the field.
+   */
+  public void addField(Document doc, String name, TokenStream tokenStream) {
+    doc.add(getFieldType(name).applyIndexOptions(new Field(name, tokenStream)));
+  }
+
+
+  /**
+   * The type of a field.
+   */
+  private static class FieldType {
+
+    /** Whether the field value should be stored. */
+    private boolean mStore;
+
+    /** Whether a stored field value should be compressed. */
+    private boolean mCompress;
+
+    /** How the field should be indexed. */
+    private Field.Index mIndex;
+
+    /** Whether no norms should be written for the field. */
+    private boolean mOmitNorms;
+
+    /** The information that is indexed for the terms of the field. */
+    private IndexOptions mIndexOptions = IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
+
+
+    /**
+     * Creates a new instance of FieldType.
+     *
+     * @param store Whether the field value should be stored.
+     * @param compress Whether a stored field value should be compressed.
+     * @param index How the field should be indexed.
+     */
+    public FieldType(boolean store, boolean compress, Field.Index index) {
+      mStore = store;
+      mCompress = compress;
+      mIndex = index;
+    }
+
+
+    /**
+     * Applies the norms and the index options to a field.
+     *
+     * @param field The field.
+     * @return The field.
+     */
+    public Field applyIndexOptions(Field field) {
+      if (field.isIndexed()) {
+        field.setOmitNorms(mOmitNorms);
+        field.setIndexOptions(mIndexOptions);
+      }
+      return field;
+    }
+
+  }
+
+}
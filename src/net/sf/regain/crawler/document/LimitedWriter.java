@@ -0,0 +1,127 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer that collects text up to a maximum number of characters.
+ * <p>
+ * When the text gets longer than the limit, it is cut at the limit and a
+ * {@link LimitReachedException} is thrown in order to stop the extraction.
+ * The text collected so far stays in the builder, so a preparator may use it
+ * as truncated content.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class LimitedWriter extends Writer {
+
+  /** The collected text. */
+  private StringBuilder mText;
+
+  /** The maximum number of characters to collect. 0 means no limit. */
+  private int mMaxChars;
+
+
+  /**
+   * Creates a new instance of LimitedWriter.
+   *
+   * @param text The builder to collect the text in.
+   * @param maxChars The maximum number of characters to collect. 0 means no
+   *        limit.
+   */
+  public LimitedWriter(StringBuilder text, int maxChars) {
+    mText = text;
+    mMaxChars = maxChars;
+  }
+
+
+  /**
+   * Gets the stricter one of two limits.
+   *
+   * @param limit1 The first limit. 0 means no limit.
+   * @param limit2 The second limit. 0 means no limit.
+   * @return The stricter limit. 0 if both mean no limit.
+   */
+  public static int getStricterLimit(int limit1, int limit2) {
+    if (limit1 <= 0) {
+      return Math.max(limit2, 0);
+    } else if (limit2 <= 0) {
+      return limit1;
+    } else {
+      return Math.min(limit1, limit2);
+    }
+  }
+
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    if ((mMaxChars > 0) && (mText.length() + len > mMaxChars)) {
+      mText.append(cbuf, off, mMaxChars - mText.length());
+      throw new LimitReachedException();
+    }
+    mText.append(cbuf, off, len);
+  }
+
+
+  @Override
+  public void write(int c) throws IOException {
+    // NOTE: Overridden, since Writer would copy every single char into an array
+    if ((mMaxChars > 0) && (mText.length() + 1 > mMaxChars)) {
+      throw new LimitReachedException();
+    }
+    mText.append((char) c);
+  }
+
+
+  @Override
+  public void flush() {
+  }
+
+
+  @Override
+  public void close() {
+  }
+
+
+  /**
+   * Gets the collected text.
+   *
+   * @return The collected text.
+   */
+  @Override
+  public String toString() {
+    return mText.toString();
+  }
+
+
+  /**
+   * Thrown by the {@link LimitedWriter} to stop the extraction.
+   */
+  public static class LimitReachedException extends IOException {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifierFactory;
+
+/**
+ * Detects the mime type of a document.
+ * <p>
+ * The detection only looks at the first bytes of the document (and at the
+ * central directory for zip files). These bytes are taken from the content
+ * in memory or are read directly from the file, so no temporary file is
+ * written just for the detection.
+ * <p>
+ * For trusted file extensions the mime type is taken without looking at the
+ * content at all.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MimeTypeDetector {
+
+  /** The mime type for documents whose type could not be detected. */
+  public static final String MIME_TYPE_UNKNOWN = "application/x-unknown-mime-type";
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(MimeTypeDetector.class);
+
+  /** The mime type of zip files. */
+  private static final String MIME_TYPE_ZIP = "application/zip";
+
+  /** The signature of a local file header in a zip file. */
+  private static final int ZIP_LOCAL_HEADER_SIG = 0x04034b50;
+  /** The signature of a central directory entry in a zip file. */
+  private static final int ZIP_CENTRAL_ENTRY_SIG = 0x02014b50;
+  /** The signature of the end of central directory record in a zip file. */
+  private static final int ZIP_END_RECORD_SIG = 0x06054b50;
+  /** The size of the end of central directory record (without comment). */
+  private static final int ZIP_END_RECORD_SIZE = 22;
+  /** The maximum size of the zip file comment. */
+  private static final int ZIP_MAX_COMMENT_SIZE = 65535;
+  /** The maximum number of bytes of the central directory that are read. */
+  private static final int ZIP_MAX_CENTRAL_DIRECTORY_SIZE = 256 * 1024;
+
+  /**
+   * Entries that identify zip based formats. The first entry found in this
+   * list wins.
+   */
+  private static final String[][] ZIP_ENTRY_MIME_TYPES = {
+    { "word/document.xml", "application/vnd.openxmlformats-officedocument.wordprocessingml" },
+    { "xl/workbook.xml", "application/vnd.openxmlformats-officedocument.spreadsheetml" },
+    { "ppt/presentation.xml", "application/vnd.openxmlformats-officedocument.presentationml" },
+    { "META-INF/application.xml", "application/x-java-enterprisearchive" },
+    { "WEB-INF/web.xml", "application/x-java-webarchive" },
+    { "META-INF/MANIFEST.MF", "application/java-archive" }
+  };
+
+  /** The identifier that detects the mime type from the first bytes. */
+  private MimeTypeIdentifier mIdentifier;
+
+  /**
+   * The trusted mime types. The file extension in lower case is the key.
+   */
+  private Map<String, String> mTrustedExtensionMap;
+
+
+  /**
+   * Creates a new instance of MimeTypeDetector.
+   *
+   * @param trustedExtensionMap The trusted mime types. The file extension in
+   *        lower case (without the dot) is the key.
+   */
+  public MimeTypeDetector(Map<String, String> trustedExtensionMap) {
+    mTrustedExtensionMap = trustedExtensionMap;
+    mIdentifier = new MagicMimeTypeIdentifierFactory().get();
+  }
+
+
+  /**
+   * Detects the mime type of a document.
+   *
+   * @param rawDocument The document.
+   * @return The mime type. Is {@link #MIME_TYPE_UNKNOWN} if the type could not
+   *         be detected.
+   * @throws RegainException If reading the document failed.
+   */
+  public String detect(RawDocument rawDocument) throws RegainException {
+    String fileName = rawDocument.getFileName();
+
+    // Check whether we trust the file extension
+    int lastDot = fileName.lastIndexOf('.');
+    if (lastDot != -1) {
+      String extension = fileName.substring(lastDot + 1).toLowerCase();
+      String mimeType = mTrustedExtensionMap.get(extension);
+      if (mimeType != null) {
+        mLog.debug("Mimetype by trusted extension: " + mimeType + ". " + rawDocument.getUrl());
+        return mimeType;
+      }
+    }
+
+    byte[] head = rawDocument.getContentPart(0, mIdentifier.getMinArrayLength());
+    String mimeType = mIdentifier.identify(head, fileName,
+            new URIImpl(rawDocument.getUrl(), false));
+    if (mimeType == null || mimeType.length() == 0) {
+      return MIME_TYPE_UNKNOWN;
+    }
+    mLog.debug("Detected mimetype: " + mimeType + ". " + rawDocument.getUrl());
+
+    if (mimeType.equalsIgnoreCase(MIME_TYPE_ZIP)) {
+      // Some formats like OpenDocument or MS Office 2007 are zip files
+      // -> Look at the zip entries
+      String zipMimeType = probeZip(rawDocument, head);
+      if (zipMimeType != null) {
+        mLog.debug("Detected mimetype from zip entries: " + zipMimeType + ". " + rawDocument.getUrl());
+        mimeType = zipMimeType;
+      }
+    }
+
+    return mimeType;
+  }
+
+
+  /**
+   * Detects the format of a zip file from its entries.
+   * <p>
+   * OpenDocument files have an uncompressed first entry called "mimetype"
+   * holding the mime type, so the first bytes are enough. For other formats
+   * the names in the central directory at the end of the file are checked.
+   *
+   * @param rawDocument The zip document.
+   * @param head The first bytes of the document.
+   * @return The mime type or <code>null</code> if the zip file has no known
+   *         format.
+   * @throws RegainException If reading the document failed.
+   */
+  private String probeZip(RawDocument rawDocument, byte[] head)
+    throws RegainException
+  {
+    // Check whether the first entry is an uncompressed "mimetype"
+    if ((head.length >= 38) && (readInt(head, 0) == ZIP_LOCAL_HEADER_SIG)
+      && (readShort(head, 8) == 0) && (readShort(head, 26) == 8)
+      && "mimetype".equals(new String(head, 30, 8, StandardCharsets.ISO_8859_1)))
+    {
+      int start = 38 + readShort(head, 28);
+      int length = readInt(head, 18);
+      if ((length > 0) && (start + length <= head.length)) {
+        return new String(head, start, length, StandardCharsets.ISO_8859_1).trim();
+      }
+    }
+
+    // Find the end of central directory record. It is at the end of the file,
+    // followed by a comment
+    int docLength = rawDocument.getLength();
+    int tailLength = Math.min(docLength, ZIP_END_RECORD_SIZE + ZIP_MAX_COMMENT_SIZE);
+    long tailOffset = docLength - tailLength;
+    byte[] tail = rawDocument.getContentPart(tailOffset, tailLength);
+    int endRecord = -1;
+    for (int i = tail.length - ZIP_END_RECORD_SIZE; i >= 0; i--) {
+      if (readInt(tail, i) == ZIP_END_RECORD_SIG) {
+        endRecord = i;
+        break;
+      }
+    }
+    if (endRecord == -1) {
+      return null;
+    }
+
+    // Get the central directory
+    int directorySize = Math.min(readInt(tail, endRecord + 12), ZIP_MAX_CENTRAL_DIRECTORY_SIZE);
+    long directoryOffset = readInt(tail, endRecord + 16) & 0xffffffffL;
+    byte[] directory;
+    if ((directoryOffset >= tailOffset) && (directoryOffset - tailOffset + directorySize <= tail.length)) {
+      // The central directory is already read
+      int start = (int) (directoryOffset - tailOffset);
+      directory = Arrays.copyOfRange(tail, start, start + directorySize);
+    } else {
+      directory = rawDocument.getContentPart(directoryOffset, directorySize);
+    }
+
+    // Check the names of the entries
+    int bestMatch = ZIP_ENTRY_MIME_TYPES.length;
+    int pos = 0;
+    while ((pos + 46 <= directory.length) && (readInt(directory, pos) == ZIP_CENTRAL_ENTRY_SIG)) {
+      int nameLength = readShort(directory, pos + 28);
+      if (pos + 46 + nameLength > directory.length) {
+        break;
+      }
+      String name = new String(directory, pos + 46, nameLength, StandardCharsets.ISO_8859_1);
+      for (int i = 0; i < bestMatch; i++) {
+        if (ZIP_ENTRY_MIME_TYPES[i][0].equals(name)) {
+          bestMatch = i;
+          break;
+        }
+      }
+
+      pos += 46 + nameLength + readShort(directory, pos + 30) + readShort(directory, pos + 32);
+    }
+
+    return (bestMatch < ZIP_ENTRY_MIME_TYPES.length) ? ZIP_ENTRY_MIME_TYPES[bestMatch][1] : null;
+  }
+
+
+  /**
+   * Reads a little endian unsigned short.
+   *
+   * @param bytes The bytes to read from.
+   * @param offset The position of the short.
+   * @return The short.
+   */
+  private static int readShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+  }
+
+
+  /**
+   * Reads a little endian int.
+   *
+   * @param bytes The bytes to read from.
+   * @param offset The position of the int.
+   * @return The int.
+   */
+  private static int readInt(byte[] bytes, int offset) {
+    return readShort(bytes, offset) | (readShort(bytes, offset + 2) << 16);
+  }
+
+}
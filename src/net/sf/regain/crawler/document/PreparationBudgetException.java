@@ -0,0 +1,63 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import net.sf.regain.RegainException;
+
+/**
+ * Is thrown when the preparation of a document took too long.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparationBudgetException extends RegainException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Whether the preparation is still running in the background. */
+  private boolean mPreparatorAbandoned;
+
+
+  /**
+   * Creates a new instance of PreparationBudgetException.
+   *
+   * @param message The error message.
+   * @param preparatorAbandoned Whether the preparation did not stop and is
+   *        still running in the background. In this case the preparator must
+   *        not be used any more.
+   */
+  public PreparationBudgetException(String message, boolean preparatorAbandoned) {
+    super(message);
+
+    mPreparatorAbandoned = preparatorAbandoned;
+  }
+
+
+  /**
+   * Gets whether the preparation did not stop and is still running in the
+   * background. In this case the preparator must not be used any more.
+   *
+   * @return Whether the preparator was abandoned.
+   */
+  public boolean isPreparatorAbandoned() {
+    return mPreparatorAbandoned;
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sf.regain.RegainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs preparators with a time limit.
+ * <p>
+ * The preparation runs in a separate thread while the crawler thread waits
+ * for it. If the preparation takes longer than allowed, the thread is
+ * interrupted. If the preparator does not react on the interrupt, the thread
+ * is abandoned and a new thread is used for the following preparations. This
+ * way a single pathological document can't stop the crawler.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparationSupervisor {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparationSupervisor.class);
+
+  /**
+   * The time (in seconds) a preparator gets to stop after it was interrupted.
+   */
+  private static final int INTERRUPT_GRACE_SECS = 5;
+
+  /** The thread running the preparations. */
+  private ExecutorService mExecutor;
+
+  /** The number of threads that were created so far. */
+  private int mThreadCount;
+
+
+  /**
+   * Lets a preparator prepare a document.
+   *
+   * @param preparator The preparator to use.
+   * @param rawDocument The document to prepare.
+   * @param timeoutSecs The maximum time the preparation may take (in seconds).
+   *        If &lt;= 0 there is no limit and the preparator runs in the
+   *        current thread.
+   * @throws PreparationBudgetException If the preparation took too long.
+   * @throws RegainException If the preparation failed.
+   */
+  public void prepare(final Preparator preparator, final RawDocument rawDocument,
+    int timeoutSecs)
+    throws RegainException
+  {
+    if (timeoutSecs <= 0) {
+      preparator.prepare(rawDocument);
+      return;
+    }
+
+    if (mExecutor == null) {
+      mExecutor = createExecutor();
+    }
+
+    final CountDownLatch doneLatch = new CountDownLatch(1);
+    Future<Void> future = mExecutor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try {
+          preparator.prepare(rawDocument);
+          return null;
+        } finally {
+          doneLatch.countDown();
+        }
+      }
+    });
+
+    try {
+      future.get(timeoutSecs, TimeUnit.SECONDS);
+    }
+    catch (TimeoutException exc) {
+      // The preparation takes too long -> Interrupt it
+      future.cancel(true);
+      boolean stopped = false;
+      try {
+        stopped = doneLatch.await(INTERRUPT_GRACE_SECS, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException exc2) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (! stopped) {
+        // The preparator doesn't react -> Leave it alone and use a new thread
+        mLog.warn("Preparator " + preparator.getClass().getName()
+            + " does not stop. Abandoning it for " + rawDocument.getUrl());
+        mExecutor.shutdownNow();
+        mExecutor = null;
+      }
+
+      throw new PreparationBudgetException("Preparation took more than "
+          + timeoutSecs + " seconds", ! stopped);
+    }
+    catch (InterruptedException exc) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RegainException("Waiting for preparation was interrupted", exc);
+    }
+    catch (ExecutionException exc) {
+      Throwable cause = exc.getCause();
+      if (cause instanceof RegainException) {
+        throw (RegainException) cause;
+      }
+      throw new RegainException("Preparation failed", cause);
+    }
+  }
+
+
+  /**
+   * Creates the executor running the preparations.
+   *
+   * @return The executor.
+   */
+  private ExecutorService createExecutor() {
+    mThreadCount++;
+    final String threadName = "Preparation-" + mThreadCount;
+    return Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, threadName);
+        // An abandoned preparation must not prevent the VM from exiting
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+  /**
+   * Stops the preparation thread.
+   */
+  public void close() {
+    if (mExecutor != null) {
+      mExecutor.shutdownNow();
+      mExecutor = null;
+    }
+  }
+
+}
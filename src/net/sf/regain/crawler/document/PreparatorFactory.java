@@ -29,6 +29,7 @@ import org.apache.regexp.RESyntaxException;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.PreparatorConfig;
 import net.sf.regain.crawler.config.PreparatorSettings;
 
 /**
@@ -115,6 +116,39 @@ public class PreparatorFactory extends PluggableFactory {
 		  return createPluggables(preparatorSettingsArr).toArray(new Preparator[]{});
 	  }
 
+	  /**
+	   * Creates a new preparator of the same class as an existing one. Is used
+	   * to replace a preparator that is not usable any more.
+	   *
+	   * @param preparatorClass The class of the preparator.
+	   * @param preparatorSettings The settings of the preparator. May be
+	   *        <code>null</code> if the preparator is not configured.
+	   * @return The new preparator.
+	   * @throws RegainException If the creation of the preparator failed.
+	   */
+	  public Preparator createPreparator(Class<? extends Preparator> preparatorClass,
+	    PreparatorSettings preparatorSettings)
+	    throws RegainException
+	  {
+		  Preparator prep;
+		  try {
+			  prep = preparatorClass.newInstance();
+		  }
+		  catch (Throwable thr) {
+			  throw new RegainException("Creating preparator "
+					  + preparatorClass.getName() + " failed", thr);
+		  }
+
+		  if (preparatorSettings == null) {
+			  prep.init(new PreparatorConfig());
+		  } else {
+			  prep.init(preparatorSettings.getPreparatorConfig());
+		  }
+		  pluggableAfterInit(prep, preparatorSettings);
+
+		  return prep;
+	  }
+
     @Override
     protected String getDefaultPackage()
     {
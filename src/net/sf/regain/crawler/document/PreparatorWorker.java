@@ -0,0 +1,395 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorConfig;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * A worker process that prepares documents for the crawler.
+ * <p>
+ * The crawler starts the worker as a child process (see
+ * {@link PreparatorWorkerPool}) and talks with it over stdin and stdout using
+ * a compact binary protocol:
+ * <ul>
+ *   <li>At start the crawler sends the preparator settings. The worker creates
+ *     its preparators and answers with {@link #STATUS_OK}.</li>
+ *   <li>For each document the crawler sends {@link #CMD_PREPARE}, the index
+ *     and the class name of the preparator, the maximum content length, the
+ *     URL, the mime type, the last-modified date and either the path of the
+ *     file holding the content or the content itself. The worker answers with
+ *     the extracted fields or an error.</li>
+ *   <li>{@link #CMD_QUIT} (or the end of stdin) stops the worker.</li>
+ * </ul>
+ * Each answer is a frame: The status, the length of the payload and the
+ * payload. The worker builds the whole payload before it writes anything, so
+ * a failure while building it can't leave a broken frame.
+ * Anything printed by the preparators goes to stderr, so it can't disturb the
+ * protocol.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorker {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorWorker.class);
+
+  /** The command for preparing a document. */
+  static final byte CMD_PREPARE = 1;
+  /** The command for stopping the worker. */
+  static final byte CMD_QUIT = 2;
+
+  /** The status for a successful request. */
+  static final byte STATUS_OK = 1;
+  /** The status for a failed preparation. The worker is still usable. */
+  static final byte STATUS_ERROR = 2;
+  /**
+   * The status for a failed preparation that left the VM in a bad state
+   * (e.g. an OutOfMemoryError). The worker exits after sending it.
+   */
+  static final byte STATUS_FATAL = 3;
+
+  /**
+   * The preparators. The crawler creates its preparators from the same
+   * settings, so the index of a preparator is the same in both processes.
+   */
+  private Preparator[] mPreparatorArr;
+
+
+  /**
+   * Creates a new instance of PreparatorWorker.
+   *
+   * @param preparatorSettingsArr The preparator settings.
+   * @throws RegainException If creating the preparators failed.
+   */
+  private PreparatorWorker(PreparatorSettings[] preparatorSettingsArr)
+    throws RegainException
+  {
+    mPreparatorArr = PreparatorFactory.getInstance().createPreparatorArr(preparatorSettingsArr);
+  }
+
+
+  /**
+   * The entry point of a worker process.
+   *
+   * @param args The command line arguments. Not used.
+   */
+  public static void main(String[] args) {
+    // The protocol uses stdout -> Everything else has to go to stderr
+    FileOutputStream protocolOut = new FileOutputStream(FileDescriptor.out);
+    System.setOut(System.err);
+
+    BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(Level.WARN);
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(FileDescriptor.in)));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(protocolOut));
+    try {
+      PreparatorWorker worker = new PreparatorWorker(readPreparatorSettings(in));
+      writeResponse(out, STATUS_OK, new byte[0]);
+
+      worker.run(in, out);
+    }
+    catch (EOFException exc) {
+      // The crawler is gone
+    }
+    catch (Throwable thr) {
+      mLog.error("Preparator worker failed", thr);
+      System.exit(1);
+    }
+
+    System.exit(0);
+  }
+
+
+  /**
+   * Handles the requests of the crawler until it sends {@link #CMD_QUIT}.
+   *
+   * @param in The stream to read the requests from.
+   * @param out The stream to write the answers to.
+   * @throws IOException If reading or writing failed.
+   */
+  private void run(DataInputStream in, DataOutputStream out) throws IOException {
+    while (in.readByte() == CMD_PREPARE) {
+      int preparatorIdx = in.readInt();
+      String className = readString(in);
+      int maxContentLength = in.readInt();
+      String url = readString(in);
+      String mimeType = readString(in);
+      long lastModified = in.readLong();
+      String path = readString(in);
+      byte[] content = null;
+      if (path == null) {
+        content = new byte[in.readInt()];
+        in.readFully(content);
+      }
+
+      RawDocument rawDocument = new RawDocument(url, mimeType, content,
+          (path == null) ? null : new File(path),
+          (lastModified == -1) ? null : new Date(lastModified));
+      try {
+        Preparator preparator = null;
+        if ((preparatorIdx >= 0) && (preparatorIdx < mPreparatorArr.length)) {
+          preparator = mPreparatorArr[preparatorIdx];
+        }
+        if ((preparator == null) || ! preparator.getClass().getName().equals(className)) {
+          throw new RegainException("Preparator " + className + " (#"
+              + preparatorIdx + ") is not available in the worker");
+        }
+        if (preparator instanceof AbstractPreparator) {
+          ((AbstractPreparator) preparator).setMaxContentLength(maxContentLength);
+        }
+
+        preparator.prepare(rawDocument);
+
+        String cleanedContent = preparator.getCleanedContent();
+        String title = preparator.getTitle();
+        String summary = preparator.getSummary();
+        String metadata = preparator.getCleanedMetaData();
+        String headlines = preparator.getHeadlines();
+        PathElement[] pathArr = preparator.getPath();
+        Map<String, String> additionalFieldMap = preparator.getAdditionalFields();
+        Map<String, String> linkMap = rawDocument.getLinks();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        writeString(payload, cleanedContent);
+        writeString(payload, title);
+        writeString(payload, summary);
+        writeString(payload, metadata);
+        writeString(payload, headlines);
+        if (pathArr == null) {
+          payload.writeInt(-1);
+        } else {
+          payload.writeInt(pathArr.length);
+          for (PathElement element : pathArr) {
+            writeString(payload, element.getUrl());
+            writeString(payload, element.getTitle());
+          }
+        }
+        writeMap(payload, additionalFieldMap);
+        writeMap(payload, linkMap);
+
+        preparator.cleanUp();
+        writeResponse(out, STATUS_OK, buffer.toByteArray());
+      }
+      catch (Throwable thr) {
+        // NOTE: After an Error (e.g. OutOfMemoryError or StackOverflowError)
+        //       the VM is not trustworthy any more -> Quit
+        boolean fatal = (thr instanceof Error);
+        StringWriter stackTrace = new StringWriter();
+        thr.printStackTrace(new PrintWriter(stackTrace));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeString(new DataOutputStream(buffer), stackTrace.toString());
+        writeResponse(out, fatal ? STATUS_FATAL : STATUS_ERROR, buffer.toByteArray());
+        if (fatal) {
+          System.exit(1);
+        }
+      }
+      finally {
+        rawDocument.dispose();
+      }
+    }
+  }
+
+
+  /**
+   * Writes a response frame and flushes it.
+   *
+   * @param out The stream to write to.
+   * @param status The status of the response.
+   * @param payload The payload of the response.
+   * @throws IOException If writing failed.
+   */
+  private static void writeResponse(DataOutputStream out, byte status,
+    byte[] payload)
+    throws IOException
+  {
+    out.writeByte(status);
+    out.writeInt(payload.length);
+    out.write(payload);
+    out.flush();
+  }
+
+
+  /**
+   * Writes the preparator settings.
+   *
+   * @param out The stream to write to.
+   * @param preparatorSettingsArr The preparator settings.
+   * @throws IOException If writing failed.
+   */
+  static void writePreparatorSettings(DataOutputStream out,
+    PreparatorSettings[] preparatorSettingsArr)
+    throws IOException
+  {
+    out.writeInt(preparatorSettingsArr.length);
+    for (PreparatorSettings settings : preparatorSettingsArr) {
+      out.writeBoolean(settings.isEnabled());
+      out.writeInt(settings.getPriority());
+      writeString(out, settings.getPreparatorClassName());
+      writeString(out, settings.getUrlRegex());
+
+      PreparatorConfig config = settings.getPreparatorConfig();
+      out.writeInt(config.getSectionCount());
+      for (Map.Entry<String, Map<String, String>> section : config) {
+        writeString(out, section.getKey());
+        writeMap(out, section.getValue());
+      }
+    }
+  }
+
+
+  /**
+   * Reads the preparator settings.
+   *
+   * @param in The stream to read from.
+   * @return The preparator settings.
+   * @throws IOException If reading failed.
+   */
+  private static PreparatorSettings[] readPreparatorSettings(DataInputStream in)
+    throws IOException
+  {
+    PreparatorSettings[] preparatorSettingsArr = new PreparatorSettings[in.readInt()];
+    for (int i = 0; i < preparatorSettingsArr.length; i++) {
+      boolean enabled = in.readBoolean();
+      int priority = in.readInt();
+      String className = readString(in);
+      String urlRegex = readString(in);
+
+      PreparatorConfig config = new PreparatorConfig();
+      int sectionCount = in.readInt();
+      for (int j = 0; j < sectionCount; j++) {
+        String sectionName = readString(in);
+        config.addSection(sectionName, readMap(in));
+      }
+
+      preparatorSettingsArr[i] = new PreparatorSettings(enabled, priority,
+          className, urlRegex, config);
+    }
+    return preparatorSettingsArr;
+  }
+
+
+  /**
+   * Writes a String. Unlike {@link DataOutputStream#writeUTF(String)} the
+   * String may be <code>null</code> and longer than 64 KB.
+   *
+   * @param out The stream to write to.
+   * @param text The String to write. May be <code>null</code>.
+   * @throws IOException If writing failed.
+   */
+  static void writeString(DataOutputStream out, String text) throws IOException {
+    if (text == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+
+  /**
+   * Reads a String written by {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param in The stream to read from.
+   * @return The String. May be <code>null</code>.
+   * @throws IOException If reading failed.
+   */
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+
+  /**
+   * Writes a map of Strings.
+   *
+   * @param out The stream to write to.
+   * @param map The map to write. May be <code>null</code>.
+   * @throws IOException If writing failed.
+   */
+  static void writeMap(DataOutputStream out, Map<String, String> map)
+    throws IOException
+  {
+    if (map == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(out, entry.getKey());
+        writeString(out, entry.getValue());
+      }
+    }
+  }
+
+
+  /**
+   * Reads a map written by {@link #writeMap(DataOutputStream, Map)}.
+   *
+   * @param in The stream to read from.
+   * @return The map. May be <code>null</code>.
+   * @throws IOException If reading failed.
+   */
+  static HashMap<String, String> readMap(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size == -1) {
+      return null;
+    }
+    HashMap<String, String> map = new HashMap<String, String>();
+    for (int i = 0; i < size; i++) {
+      map.put(readString(in), readString(in));
+    }
+    return map;
+  }
+
+}
@@ -0,0 +1,544 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.config.PreparatorWorkerSettings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of worker processes that run preparators outside of the crawler's
+ * VM.
+ * <p>
+ * A preparator that crashes, hangs or runs out of memory in a worker only
+ * takes the worker down. The crawler notices this, starts a new worker and
+ * goes on with the next document. Workers are also replaced after a
+ * configured number of documents, so memory leaks of the preparators can't
+ * accumulate.
+ * <p>
+ * The pool is thread-safe: Each caller gets a worker of its own for the time
+ * of a preparation.
+ *
+ * @see PreparatorWorker
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorkerPool {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorWorkerPool.class);
+
+  /**
+   * The time (in ms) a worker process gets to exit after it was asked to
+   * quit. After that it is killed.
+   */
+  private static final int STOP_GRACE_MILLIS = 5000;
+
+  /** The longest time (in ms) to sleep between two checks whether a worker exited. */
+  private static final int MAX_POLL_INTERVAL = 50;
+
+  /** The settings of the workers. */
+  private PreparatorWorkerSettings mWorkerSettings;
+
+  /** The preparator settings the workers create their preparators from. */
+  private PreparatorSettings[] mPreparatorSettingsArr;
+
+  /** The workers that are currently not in use. */
+  private BlockingQueue<Worker> mIdleWorkerQueue;
+
+  /** All workers. */
+  private ArrayList<Worker> mWorkerList;
+
+
+  /**
+   * Creates a new instance of PreparatorWorkerPool.
+   * <p>
+   * The worker processes are started when they are needed first.
+   *
+   * @param workerSettings The settings of the workers.
+   * @param preparatorSettingsArr The preparator settings the workers create
+   *        their preparators from.
+   */
+  public PreparatorWorkerPool(PreparatorWorkerSettings workerSettings,
+    PreparatorSettings[] preparatorSettingsArr)
+  {
+    mWorkerSettings = workerSettings;
+    mPreparatorSettingsArr = preparatorSettingsArr;
+
+    int workerCount = Math.max(1, workerSettings.getWorkerCount());
+    mIdleWorkerQueue = new ArrayBlockingQueue<Worker>(workerCount);
+    mWorkerList = new ArrayList<Worker>(workerCount);
+    for (int i = 0; i < workerCount; i++) {
+      Worker worker = new Worker(i + 1);
+      mWorkerList.add(worker);
+      mIdleWorkerQueue.add(worker);
+    }
+  }
+
+
+  /**
+   * Lets a worker prepare a document.
+   * <p>
+   * If the preparing thread is interrupted (e.g. by the
+   * {@link PreparationSupervisor} because the preparation took too long), the
+   * worker process is killed.
+   *
+   * @param preparatorIdx The index of the preparator to use. The workers
+   *        create their preparators from the same settings as the crawler,
+   *        so the index is the same.
+   * @param preparatorClassName The class name of the preparator to use. Is
+   *        used to check the index.
+   * @param rawDocument The document to prepare.
+   * @param target The preparator to set the extracted data to.
+   * @throws RegainException If the preparation failed.
+   */
+  public void prepare(int preparatorIdx, String preparatorClassName,
+    RawDocument rawDocument, AbstractPreparator target)
+    throws RegainException
+  {
+    Worker worker;
+    try {
+      worker = mIdleWorkerQueue.take();
+    }
+    catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+      throw new RegainException("Waiting for a preparator worker was interrupted", exc);
+    }
+
+    try {
+      worker.prepare(preparatorIdx, preparatorClassName, rawDocument, target);
+    }
+    finally {
+      mIdleWorkerQueue.add(worker);
+    }
+  }
+
+
+  /**
+   * Stops all worker processes.
+   */
+  public void close() {
+    // Let all workers quit at the same time, so they share the grace period
+    for (Worker worker : mWorkerList) {
+      worker.requestQuit();
+    }
+    long deadline = System.currentTimeMillis() + STOP_GRACE_MILLIS;
+    for (Worker worker : mWorkerList) {
+      worker.awaitExit(deadline);
+    }
+  }
+
+
+  /**
+   * A worker process.
+   */
+  private class Worker {
+
+    /** The number of the worker. Used for logging. */
+    private int mNumber;
+
+    /** The worker process. Is <code>null</code> if it is not running. */
+    private Process mProcess;
+
+    /** The stream to the worker process. */
+    private DataOutputStream mOut;
+
+    /**
+     * The responses of the worker process. They are read by a thread of their
+     * own, so waiting for a response can be interrupted.
+     */
+    private BlockingQueue<Response> mResponseQueue;
+
+    /** The number of documents the current process prepared. */
+    private int mDocumentCount;
+
+
+    /**
+     * Creates a new instance of Worker.
+     *
+     * @param number The number of the worker.
+     */
+    public Worker(int number) {
+      mNumber = number;
+    }
+
+
+    /**
+     * Lets the worker process prepare a document. Starts the process if it is
+     * not running.
+     *
+     * @param preparatorIdx The index of the preparator to use.
+     * @param preparatorClassName The class name of the preparator to use.
+     * @param rawDocument The document to prepare.
+     * @param target The preparator to set the extracted data to.
+     * @throws RegainException If the preparation failed.
+     */
+    public void prepare(int preparatorIdx, String preparatorClassName,
+      RawDocument rawDocument, AbstractPreparator target)
+      throws RegainException
+    {
+      if (mProcess == null) {
+        start();
+      }
+
+      try {
+        // Send the request
+        mOut.writeByte(PreparatorWorker.CMD_PREPARE);
+        mOut.writeInt(preparatorIdx);
+        PreparatorWorker.writeString(mOut, preparatorClassName);
+        mOut.writeInt(target.getMaxContentLength());
+        PreparatorWorker.writeString(mOut, rawDocument.getUrl());
+        PreparatorWorker.writeString(mOut, rawDocument.getMimeType());
+        Date lastModified = rawDocument.getLastModified();
+        mOut.writeLong((lastModified == null) ? -1 : lastModified.getTime());
+        if (rawDocument.isContentInFile()) {
+          // The worker reads the file itself
+          PreparatorWorker.writeString(mOut, rawDocument.getContentAsFile().getAbsolutePath());
+        } else {
+          byte[] content = rawDocument.getContent();
+          PreparatorWorker.writeString(mOut, null);
+          mOut.writeInt(content.length);
+          mOut.write(content);
+        }
+        mOut.flush();
+
+        // Get the response
+        Response response = awaitResponse();
+        DataInputStream in = response.getPayload();
+        if (response.mStatus == PreparatorWorker.STATUS_OK) {
+          target.setCleanedContent(PreparatorWorker.readString(in));
+          target.setTitle(PreparatorWorker.readString(in));
+          target.setSummary(PreparatorWorker.readString(in));
+          target.setCleanedMetaData(PreparatorWorker.readString(in));
+          target.setHeadlines(PreparatorWorker.readString(in));
+          int pathLength = in.readInt();
+          if (pathLength != -1) {
+            PathElement[] pathArr = new PathElement[pathLength];
+            for (int i = 0; i < pathLength; i++) {
+              String url = PreparatorWorker.readString(in);
+              pathArr[i] = new PathElement(url, PreparatorWorker.readString(in));
+            }
+            target.setPath(pathArr);
+          }
+          HashMap<String, String> additionalFieldMap = PreparatorWorker.readMap(in);
+          if (additionalFieldMap != null) {
+            for (Map.Entry<String, String> entry : additionalFieldMap.entrySet()) {
+              target.addAdditionalField(entry.getKey(), entry.getValue());
+            }
+          }
+          HashMap<String, String> linkMap = PreparatorWorker.readMap(in);
+          if (linkMap != null) {
+            for (Map.Entry<String, String> entry : linkMap.entrySet()) {
+              rawDocument.addLink(entry.getKey(), entry.getValue());
+            }
+          }
+        } else {
+          String stackTrace = PreparatorWorker.readString(in);
+          if (response.mStatus == PreparatorWorker.STATUS_FATAL) {
+            stop();
+          }
+          throw new RegainException("Preparing " + rawDocument.getUrl()
+              + " in preparator worker " + mNumber + " failed:\n" + stackTrace);
+        }
+      }
+      catch (IOException exc) {
+        // The worker process died
+        kill();
+        throw new RegainException("Preparator worker " + mNumber
+            + " failed while preparing " + rawDocument.getUrl(), exc);
+      }
+      catch (InterruptedException exc) {
+        // The preparation took too long -> Kill the worker
+        kill();
+        Thread.currentThread().interrupt();
+        throw new RegainException("Preparing " + rawDocument.getUrl()
+            + " in preparator worker " + mNumber + " was interrupted", exc);
+      }
+
+      mDocumentCount++;
+      int maxDocuments = mWorkerSettings.getMaxDocumentsPerWorker();
+      if ((maxDocuments > 0) && (mDocumentCount >= maxDocuments)) {
+        mLog.info("Preparator worker " + mNumber + " prepared " + mDocumentCount
+            + " documents. Replacing it");
+        stop();
+      }
+    }
+
+
+    /**
+     * Waits for the response of the worker process.
+     * <p>
+     * The response is read by the reader thread of the process, so the
+     * waiting thread can be interrupted.
+     *
+     * @return The response.
+     * @throws IOException If the worker process died.
+     * @throws InterruptedException If the waiting thread was interrupted.
+     */
+    private Response awaitResponse() throws IOException, InterruptedException {
+      Response response = mResponseQueue.take();
+      if (response.mError != null) {
+        throw new IOException("Reading from preparator worker " + mNumber
+            + " failed", response.mError);
+      }
+      return response;
+    }
+
+
+    /**
+     * Starts the worker process and sends it the preparator settings.
+     *
+     * @throws RegainException If starting the worker failed.
+     */
+    private void start() throws RegainException {
+      ArrayList<String> command = new ArrayList<String>();
+      command.add(System.getProperty("java.home") + File.separator + "bin"
+          + File.separator + "java");
+      String[] vmArgs = mWorkerSettings.getVmArgs();
+      if (vmArgs != null) {
+        for (String arg : vmArgs) {
+          command.add(arg);
+        }
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(PreparatorWorker.class.getName());
+
+      mLog.info("Starting preparator worker " + mNumber);
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Command of preparator worker " + mNumber + ": " + command);
+      }
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      try {
+        mProcess = builder.start();
+        mOut = new DataOutputStream(new BufferedOutputStream(mProcess.getOutputStream()));
+        mResponseQueue = new LinkedBlockingQueue<Response>();
+        startReaderThread(new DataInputStream(new BufferedInputStream(
+            mProcess.getInputStream())), mResponseQueue);
+        mDocumentCount = 0;
+
+        PreparatorWorker.writePreparatorSettings(mOut, mPreparatorSettingsArr);
+        mOut.flush();
+        if (awaitResponse().mStatus != PreparatorWorker.STATUS_OK) {
+          throw new IOException("Unexpected answer");
+        }
+      }
+      catch (IOException exc) {
+        kill();
+        throw new RegainException("Starting preparator worker " + mNumber
+            + " failed", exc);
+      }
+      catch (InterruptedException exc) {
+        kill();
+        Thread.currentThread().interrupt();
+        throw new RegainException("Starting preparator worker " + mNumber
+            + " was interrupted", exc);
+      }
+    }
+
+
+    /**
+     * Starts the thread that reads the responses of the worker process. It
+     * ends when the process ends.
+     *
+     * @param in The stream from the worker process.
+     * @param responseQueue The queue to put the responses in.
+     */
+    private void startReaderThread(final DataInputStream in,
+      final BlockingQueue<Response> responseQueue)
+    {
+      Thread thread = new Thread("Preparator worker reader " + mNumber) {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              byte status = in.readByte();
+              byte[] payload = new byte[in.readInt()];
+              in.readFully(payload);
+              responseQueue.add(new Response(status, payload, null));
+            }
+          }
+          catch (IOException exc) {
+            // The process has ended or was killed
+            responseQueue.add(new Response((byte) 0, null, exc));
+          }
+          finally {
+            try { in.close(); } catch (IOException exc) {}
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+
+    /**
+     * Asks the worker process to quit and waits until it exited. If it
+     * doesn't exit in time it is killed.
+     */
+    public void stop() {
+      requestQuit();
+      awaitExit(System.currentTimeMillis() + STOP_GRACE_MILLIS);
+    }
+
+
+    /**
+     * Asks the worker process to quit.
+     */
+    public void requestQuit() {
+      if (mProcess != null) {
+        try {
+          mOut.writeByte(PreparatorWorker.CMD_QUIT);
+          mOut.flush();
+        }
+        catch (IOException exc) {
+          // The worker is already gone
+        }
+      }
+    }
+
+
+    /**
+     * Waits until the worker process exited after it was asked to quit (see
+     * {@link #requestQuit()}). If it is still running at the deadline it is
+     * killed.
+     *
+     * @param deadline The time (in ms since 1970) when to kill the worker.
+     */
+    public void awaitExit(long deadline) {
+      if (mProcess != null) {
+        // NOTE: Process.waitFor(long, TimeUnit) is not available in Java 7
+        try {
+          int pollInterval = 1;
+          while (isAlive() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(pollInterval);
+            pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+          }
+        }
+        catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+        }
+        if (isAlive()) {
+          mLog.warn("Preparator worker " + mNumber + " did not quit, killing it");
+        }
+        kill();
+      }
+    }
+
+
+    /**
+     * Gets whether the worker process is still running.
+     *
+     * @return Whether the worker process is still running.
+     */
+    private boolean isAlive() {
+      try {
+        mProcess.exitValue();
+        return false;
+      }
+      catch (IllegalThreadStateException exc) {
+        return true;
+      }
+    }
+
+
+    /**
+     * Kills the worker process.
+     */
+    private void kill() {
+      if (mProcess != null) {
+        try {
+          mOut.close();
+        }
+        catch (IOException exc) {
+          // Nothing to do
+        }
+        // NOTE: This ends the stdout of the process and so the reader thread
+        mProcess.destroy();
+        mProcess = null;
+        mResponseQueue = null;
+      }
+    }
+
+  }
+
+
+  /**
+   * A response frame of a worker process.
+   */
+  private static class Response {
+
+    /** The status of the response. */
+    private byte mStatus;
+
+    /** The payload of the response. */
+    private byte[] mPayload;
+
+    /**
+     * The error that occurred while reading from the process. Is
+     * <code>null</code> for a real response.
+     */
+    private IOException mError;
+
+
+    /**
+     * Creates a new instance of Response.
+     *
+     * @param status The status of the response.
+     * @param payload The payload of the response.
+     * @param error The error that occurred while reading from the process.
+     */
+    public Response(byte status, byte[] payload, IOException error) {
+      mStatus = status;
+      mPayload = payload;
+      mError = error;
+    }
+
+
+    /**
+     * Gets a stream reading the payload.
+     *
+     * @return The stream reading the payload.
+     */
+    public DataInputStream getPayload() {
+      return new DataInputStream(new ByteArrayInputStream(mPayload));
+    }
+
+  }
+
+}
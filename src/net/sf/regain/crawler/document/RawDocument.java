@@ -23,15 +23,20 @@ package net.sf.regain.crawler.document;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPSSLStore;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.zip.CRC32;
 
 import java.util.HashMap;
 import java.util.Properties;
@@ -83,6 +88,13 @@ public class RawDocument {
    */
   private static int mHttpTimeoutSecs = 180;
 
+  /**
+   * The maximum size (in bytes) of a document loaded from a Windows share or
+   * an IMAP server that is held in memory. Larger documents are written into
+   * a temporary file while they are loaded.
+   */
+  private static int mMaxContentSizeInMemory = 1024 * 1024;
+
   /** Die URL des Dokuments. */
   private String mUrl;
 
@@ -98,8 +110,7 @@ public class RawDocument {
 
   /**
    * Der Inhalt des Dokuments.
-   * Ist <CODE>null</CODE>, wenn sich das Dokument in einer Datei befindet und
-   * noch nicht angefragt wurde.
+   * Ist <CODE>null</CODE>, wenn sich das Dokument in einer Datei befindet.
    */
   private byte[] mContent;
 
@@ -109,6 +120,12 @@ public class RawDocument {
    */
   private String mContentAsString;
 
+  /**
+   * The charset {@link #mContentAsString} was decoded with. Is
+   * <code>null</code> if the default charset was used.
+   */
+  private String mContentCharset;
+
   /**
    * Die Datei, in der sich der Inhalt des Dokuments befindet.
    * Ist <CODE>null</CODE>, wenn das Dokument über HTTP bezogen wird und noch
@@ -139,6 +156,12 @@ public class RawDocument {
   /** Last modified date. Will be changed by protocolls which can determine this date correctly. */
   Date mLastModifiedDate = new Date();
 
+  /**
+   * The length of the file as read when its directory was listed. Is -1 if
+   * the length is unknown.
+   */
+  private long mFileLength = -1;
+
   /**
    * Erzeugt eine neue RawDocument-Instanz.
    *
@@ -154,6 +177,30 @@ public class RawDocument {
   public RawDocument(String url, String sourceUrl, String sourceLinkText,
     AccountPasswordEntry accountPasswordEntry )
     throws RegainException
+  {
+    this(url, sourceUrl, sourceLinkText, accountPasswordEntry, null);
+  }
+
+
+  /**
+   * Creates a new RawDocument instance for a file whose attributes were
+   * already read when its directory was listed. This saves asking the file
+   * system again for the last-modified date and the length.
+   *
+   * @param url The URL of the document.
+   * @param sourceUrl The URL of the document where the URL of this document
+   *        was found.
+   * @param sourceLinkText The text of the link where the URL was found. May be
+   *        <code>null</code>.
+   * @param accountPasswordEntry The account-password entry for the URL.
+   * @param fileAttributes The attributes of the file. If <code>null</code>
+   *        they are read from the file system.
+   * @throws RegainException If the document could not be loaded.
+   */
+  public RawDocument(String url, String sourceUrl, String sourceLinkText,
+    AccountPasswordEntry accountPasswordEntry,
+    BasicFileAttributes fileAttributes)
+    throws RegainException
   {
     this.mLinks = new HashMap<String,String>();
     this.mUrl = url;
@@ -163,19 +210,125 @@ public class RawDocument {
 
     if (url.startsWith("file://")) {
       mContentAsFile = RegainToolkit.urlToFile(url);
-      mLastModifiedDate = new Date(mContentAsFile.lastModified());
+      if (fileAttributes != null) {
+        mLastModifiedDate = new Date(fileAttributes.lastModifiedTime().toMillis());
+        mFileLength = fileAttributes.size();
+      } else {
+        mLastModifiedDate = new Date(mContentAsFile.lastModified());
+      }
     } else if( url.startsWith("smb://" )) {
       mContent = null;
       mContentAsFile = null;
+      if (fileAttributes != null) {
+        mLastModifiedDate = new Date(fileAttributes.lastModifiedTime().toMillis());
+        mFileLength = fileAttributes.size();
+      }
    } else if( url.startsWith("imap://") || url.startsWith("imaps://")) {
       mContent = null;
       mContentAsFile = null;
     } else {
-      mContent = loadContent(url);
+      mContent = null;
       mContentAsFile = null;
+      loadContent(url);
     }
   }
 
+  /**
+   * Creates a new RawDocument instance for an entry of an archive. The content
+   * of the entry was already read from the archive.
+   *
+   * @param url The URL of the entry (e.g.
+   *        <code>file:///data/a.zip!/dir/x.pdf</code>).
+   * @param archiveUrl The URL of the archive holding the entry.
+   * @param content The content of the entry.
+   * @param lastModified The last-modified date of the entry. May be
+   *        <code>null</code>.
+   * @return The RawDocument of the entry.
+   */
+  public static RawDocument createArchiveEntry(String url, String archiveUrl,
+    byte[] content, Date lastModified)
+  {
+    RawDocument rawDocument = new RawDocument(url, null, content, null, lastModified);
+    rawDocument.mSourceUrl = archiveUrl;
+    return rawDocument;
+  }
+
+  /**
+   * Creates a new RawDocument instance for an entry of an archive whose
+   * content was read into a {@link SpillOutputStream}.
+   * <p>
+   * The document takes over the content: If it was spilled into a temporary
+   * file, the file is deleted by {@link #dispose()}.
+   *
+   * @param url The URL of the entry (e.g.
+   *        <code>file:///data/a.zip!/dir/x.pdf</code>).
+   * @param archiveUrl The URL of the archive holding the entry.
+   * @param content The content of the entry. Must be closed already.
+   * @param lastModified The last-modified date of the entry. May be
+   *        <code>null</code>.
+   * @return The RawDocument of the entry.
+   */
+  public static RawDocument createArchiveEntry(String url, String archiveUrl,
+    SpillOutputStream content, Date lastModified)
+  {
+    RawDocument rawDocument;
+    if (content.isInMemory()) {
+      rawDocument = new RawDocument(url, null, content.toByteArray(), null, lastModified);
+    } else {
+      rawDocument = new RawDocument(url, null, null, content.getFile(), lastModified);
+      rawDocument.mContentAsFileIsTemporary = true;
+    }
+    rawDocument.mSourceUrl = archiveUrl;
+    return rawDocument;
+  }
+
+
+  /**
+   * Creates a snapshot of this document for a plugin that gets its events
+   * asynchronously. The snapshot holds the URL, the source URL and link text,
+   * the mime type, the last-modified date and the length of this document,
+   * but no content. It doesn't change when this document changes and it
+   * holds no temporary files.
+   *
+   * @return The snapshot.
+   */
+  public RawDocument createSnapshot() {
+    Date lastModified = (mLastModifiedDate == null) ? null
+        : new Date(mLastModifiedDate.getTime());
+    RawDocument snapshot = new RawDocument(mUrl, mMimeType, new byte[0], null,
+        lastModified);
+    snapshot.mSourceUrl = mSourceUrl;
+    snapshot.mSourceLinkText = mSourceLinkText;
+    snapshot.mFileLength = getLength();
+    return snapshot;
+  }
+
+
+  /**
+   * Creates a new RawDocument instance whose content was already loaded. Is
+   * used by the {@link PreparatorWorker} for the documents it gets from the
+   * crawler.
+   *
+   * @param url The URL of the document.
+   * @param mimeType The mime type of the document.
+   * @param content The content of the document. Is <code>null</code> if the
+   *        content is in a file.
+   * @param contentFile The file holding the content of the document. Is
+   *        <code>null</code> if the content is given as bytes.
+   * @param lastModified The last-modified date of the document. May be
+   *        <code>null</code>.
+   */
+  RawDocument(String url, String mimeType, byte[] content, File contentFile,
+    Date lastModified)
+  {
+    mLinks = new HashMap<String,String>();
+    mUrl = url;
+    mMimeType = mimeType;
+    mContent = content;
+    mContentAsFile = contentFile;
+    mLastModifiedDate = lastModified;
+  }
+
   /**
    * Setzt den Timeout für HTTP-Downloads.
    * <p>
@@ -188,18 +341,35 @@ public class RawDocument {
     mHttpTimeoutSecs = httpTimeoutSecs;
   }
 
+  /**
+   * Sets the maximum size of a document loaded from a Windows share or an
+   * IMAP server that is held in memory. Larger documents are written into a
+   * temporary file while they are loaded.
+   *
+   * @param maxContentSizeInMemory The maximum size in bytes.
+   */
+  public static void setMaxContentSizeInMemory(int maxContentSizeInMemory) {
+    mMaxContentSizeInMemory = maxContentSizeInMemory;
+  }
+
+  /**
+   * Gets the maximum size of a document that is held in memory.
+   *
+   * @return The maximum size in bytes.
+   * @see #setMaxContentSizeInMemory(int)
+   */
+  public static int getMaxContentSizeInMemory() {
+    return mMaxContentSizeInMemory;
+  }
+
   /**
    * Loads a mime message from an IMAP server.
    *
    * @param url the URL of the mime message
-   * @return content of the message
+   * @param out the stream to write the message to
    * @throws RegainException if loading fails
    */
-
-  private byte[] loadIMAPMessage(String url) throws RegainException {
-
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    byte[] bytearrayMessage = new byte[0];
+  private void loadIMAPMessage(String url, OutputStream out) throws RegainException {
 
     try {
       Matcher matcher = ImapToolkit.getMessagePattern().matcher(url);
@@ -236,10 +406,7 @@ public class RawDocument {
 
         if (cplMessage != null) {
           cplMessage.setFlag(Flags.Flag.SEEN, true);
-          cplMessage.writeTo(baos);
-          baos.flush();
-          bytearrayMessage = baos.toByteArray();
-          baos.close();
+          cplMessage.writeTo(out);
           mLastModifiedDate = cplMessage.getSentDate();
 
         }
@@ -252,32 +419,32 @@ public class RawDocument {
     } catch (Throwable thr) {
       throw new RegainException( thr.getMessage(), thr );
     }
-    CRC32 crc = new CRC32();
-    crc.update(bytearrayMessage);
-
-    mLog.debug("loadIMAPMessage crc: " + crc.getValue() + " for IMAP url: " + url);
-    return bytearrayMessage;
   }
 
   /**
    * Loads the content from a smb file
    *
    * @param url The URL
-   * @return content of the document
+   * @param out the stream to write the content to
    * @throws net.sf.regain.RegainException if loading fails
    */
-  private byte[] loadSmbFile(String url) throws RegainException {
+  private void loadSmbFile(String url, OutputStream out) throws RegainException {
 
     InputStream in = null;
     try {
-      SmbFile smbFile = RegainToolkit.urlToSmbFile(
-        CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry));
+      SmbFile smbFile = CrawlerToolkit.createSmbFile(url, mAccountPasswordEntry);
 
-      if( smbFile.canRead() && !smbFile.isDirectory() ) {
+      if (mFileLength != -1) {
+        // The attributes are known from the directory listing
+        // -> Open the file without asking for them again
+        in = smbFile.getInputStream();
+        RegainToolkit.pipe(in, out);
+
+      } else if( smbFile.canRead() && !smbFile.isDirectory() ) {
         in = smbFile.getInputStream();
         mLastModifiedDate = new Date(smbFile.lastModified());
 
-        return CrawlerToolkit.loadFileFromStream(in,smbFile.getContentLength());
+        RegainToolkit.pipe(in, out);
 
       } else {
         throw new RegainException("Can't load content from: "
@@ -295,18 +462,75 @@ public class RawDocument {
 
   }
 
+  /**
+   * Loads the content of a document from a Windows share or an IMAP server.
+   * <p>
+   * Up to {@link #mMaxContentSizeInMemory} bytes the content is kept in
+   * memory, larger content is written into a temporary file while it is
+   * loaded. So a document never needs more heap than this limit, no matter
+   * how large it is. Either way the content is loaded only once, even if it
+   * is requested as file and as stream.
+   *
+   * @throws RegainException If loading failed.
+   */
+  private void loadRemoteContent() throws RegainException {
+    SpillOutputStream out = new SpillOutputStream(mMaxContentSizeInMemory,
+        getTempFileExtension());
+    try {
+      if (mUrl.startsWith("smb://")) {
+        loadSmbFile(mUrl, out);
+      } else {
+        loadIMAPMessage(mUrl, out);
+      }
+      out.close();
+    }
+    catch (Throwable thr) {
+      out.dispose();
+      if (thr instanceof RegainException) {
+        throw (RegainException) thr;
+      }
+      throw new RegainException("Loading content failed: " + mUrl, thr);
+    }
+
+    if (out.isInMemory()) {
+      mContent = out.toByteArray();
+    } else {
+      mContentAsFile = out.getFile();
+      mContentAsFileIsTemporary = true;
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Content of " + mUrl + " was written to temporary file "
+            + mContentAsFile.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * Gets whether the content of this document is on a Windows share or an
+   * IMAP server and was not loaded yet.
+   *
+   * @return Whether the remote content still has to be loaded.
+   */
+  private boolean isRemoteContentMissing() {
+    return (mContent == null) && (mContentAsFile == null)
+      && (mUrl.startsWith("smb://") || mUrl.startsWith("imap://")
+          || mUrl.startsWith("imaps://"));
+  }
+
   /**
    * Load content from URL for http/https documents.
+   * <p>
+   * Like {@link #loadRemoteContent()} content larger than
+   * {@link #mMaxContentSizeInMemory} is written into a temporary file while it
+   * is downloaded.
    *
    * @param url The URL.
-   * @return content of document.
    * @throws RegainException if loading was erroneous
    */
-  private byte[] loadContent(String url) throws RegainException {
+  private void loadContent(String url) throws RegainException {
     HTTP_LOADING_PROFILER.startMeasuring();
     HttpDownloadThread loaderThread = new HttpDownloadThread(
       CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry),
-      Thread.currentThread());
+      Thread.currentThread(), mMaxContentSizeInMemory, getTempFileExtension());
     loaderThread.start();
 
     // Warten bis entweder der Timeout abläuft, oder bis dieser Thread vom
@@ -317,10 +541,19 @@ public class RawDocument {
     }
 
     // Prüfen, ob wir mittlerweile den Inhalt haben
-    byte[] content = loaderThread.getContent();
-    if (content != null) {
-      HTTP_LOADING_PROFILER.stopMeasuring(content.length);
-      return content;
+    // NOTE: After cancel() the loader thread disposes the content of a
+    //       download that is still running
+    loaderThread.cancel();
+    SpillOutputStream out = loaderThread.getContent();
+    if (out != null) {
+      if (out.isInMemory()) {
+        mContent = out.toByteArray();
+        HTTP_LOADING_PROFILER.stopMeasuring(mContent.length);
+      } else {
+        mContentAsFile = out.getFile();
+        mContentAsFileIsTemporary = true;
+        HTTP_LOADING_PROFILER.stopMeasuring(mContentAsFile.length());
+      }
     } else {
       // Wir haben keinen Inhalt
       HTTP_LOADING_PROFILER.abortMeasuring();
@@ -352,7 +585,12 @@ public class RawDocument {
   public int getLength() /*throws RegainException*/ {
     int length = 0;
 
-    if (mContent != null) {
+    if (mFileLength != -1) {
+      // The length is known from the directory listing (or the document is
+      // a snapshot)
+      length = (int) mFileLength;
+
+    } else if (mContent != null) {
       length = mContent.length;
 
     } else {
@@ -363,8 +601,7 @@ public class RawDocument {
       } else if( mUrl.startsWith("smb://")) {
         // @todo : define a suitable way to hold different kinds of files (local fs, windows share, other share types)
         try{
-          length = (int) RegainToolkit.urlToSmbFile(
-            CrawlerToolkit.replaceAuthenticationValuesInURL(mUrl, mAccountPasswordEntry)).length();
+          length = (int) CrawlerToolkit.createSmbFile(mUrl, mAccountPasswordEntry).length();
         } catch( Exception ex ){
           //throw new RegainException("Detection of file length failed: ", ex);
         }
@@ -427,6 +664,11 @@ public class RawDocument {
 
   /**
    * Gibt den Inhalt des Dokuments zurück.
+   * <p>
+   * The whole content is loaded into memory, no matter how large it is.
+   * Callers that can process the content step by step should use
+   * {@link #getContentAsStream()} or {@link #getContentPart(long, int)},
+   * callers that need an array should use {@link #getContent(int)}.
    *
    * @return Der Inhalt des Dokuments.
    * @throws RegainException Wenn das Dokument nicht geladen werden konnte.
@@ -436,15 +678,14 @@ public class RawDocument {
       // Das Dokument befindet sich in einer Datei -> Diese laden
       FILE_LOADING_PROFILER.startMeasuring();
       try {
-        byte[] content = new byte[0];
-        if( mUrl.startsWith("file://")) {
+        if (isRemoteContentMissing()) {
+          loadRemoteContent();
+        }
+
+        byte[] content = mContent;
+        if (content == null) {
+          // NOTE: Large content is not cached in order to keep the heap small
           content = CrawlerToolkit.loadFile(mContentAsFile);
-        } else if( mUrl.startsWith("smb://")) {
-          content =  loadSmbFile(mUrl);
-          mContent = content;
-        } else if( mUrl.startsWith("imap://") || mUrl.startsWith("imaps://")) {
-          content =  loadIMAPMessage(mUrl);
-          mContent = content;
         }
         FILE_LOADING_PROFILER.stopMeasuring(content.length);
         return content;
@@ -460,24 +701,134 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the content of the document if it is not larger than the given
+   * limit.
+   * <p>
+   * Unlike {@link #getContent()} this never loads more than
+   * <code>maxLength + 1</code> bytes, even if the file grows while it is read.
+   *
+   * @param maxLength The maximum number of bytes the content may have.
+   * @return The content of the document.
+   * @throws RegainException If the content is larger than
+   *         <code>maxLength</code> bytes or if it could not be loaded.
+   */
+  public byte[] getContent(int maxLength) throws RegainException {
+    if ((mContent != null) && (mContent.length <= maxLength)) {
+      return mContent;
+    }
+
+    // NOTE: We get one byte more in order to detect content being too large
+    byte[] content = getContentPart(0, (int) Math.min((long) maxLength + 1, Integer.MAX_VALUE));
+    if (content.length > maxLength) {
+      throw new RegainException("Content of " + mUrl + " is larger than "
+          + maxLength + " bytes");
+    }
+    return content;
+  }
+
+
 
   /**
    * Gibt den Inhalt des Dokuments als String zurück.
    * <p>
    * Dieser String wird erst bei der ersten Abfrage erzeugt und dann gecached.
+   * Wurde der Inhalt bereits mit einem bestimmten Zeichensatz dekodiert
+   * (siehe {@link #getContentAsString(String)}), wird dieser String geliefert.
    *
    * @return Der Inhalt des Dokuments als String.
    * @throws RegainException Wenn das Dokument nicht geladen werden konnte.
    */
   public String getContentAsString() throws RegainException {
     if (mContentAsString == null) {
-      mContentAsString = new String(getContent());
+      mContentAsString = decodeContent(null);
     }
 
     return mContentAsString;
   }
 
 
+  /**
+   * Gets the content of the document as String decoded with a certain
+   * charset.
+   * <p>
+   * The String is cached, so later calls of {@link #getContentAsString()}
+   * get the same String and the document is decoded only once.
+   *
+   * @param charsetName The name of the charset to use. If <code>null</code>
+   *        the default charset is used.
+   * @return The content of the document as String.
+   * @throws RegainException If the document could not be loaded or if the
+   *         charset is unknown.
+   */
+  public String getContentAsString(String charsetName) throws RegainException {
+    if ((mContentAsString == null)
+      || ((charsetName == null) ? (mContentCharset != null)
+                                : ! charsetName.equals(mContentCharset)))
+    {
+      // Free the old String before decoding the new one
+      mContentAsString = null;
+      mContentAsString = decodeContent(charsetName);
+      mContentCharset = charsetName;
+    }
+
+    return mContentAsString;
+  }
+
+
+  /**
+   * Decodes the content of the document.
+   *
+   * @param charsetName The name of the charset to use. If <code>null</code>
+   *        the default charset is used.
+   * @return The content of the document as String.
+   * @throws RegainException If the document could not be loaded.
+   */
+  private String decodeContent(String charsetName) throws RegainException {
+    if (isRemoteContentMissing()) {
+      loadRemoteContent();
+    }
+
+    Charset charset;
+    try {
+      charset = (charsetName == null) ? Charset.defaultCharset()
+                                      : Charset.forName(charsetName);
+    }
+    catch (IllegalArgumentException exc) {
+      throw new RegainException("Unknown charset '" + charsetName + "' for "
+          + mUrl, exc);
+    }
+
+    String contentAsString;
+    if (mContent != null) {
+      contentAsString = new String(mContent, charset);
+    } else {
+      // Decode the file directly, so we don't need the bytes in memory
+      Reader reader = null;
+      try {
+        reader = new InputStreamReader(getContentAsStream(), charset);
+        StringBuilder buffer = new StringBuilder(getLength());
+        char[] chars = new char[8192];
+        int len;
+        while ((len = reader.read(chars)) != -1) {
+          buffer.append(chars, 0, len);
+        }
+        contentAsString = buffer.toString();
+      }
+      catch (IOException exc) {
+        throw new RegainException("Reading content failed: " + mUrl, exc);
+      }
+      finally {
+        if (reader != null) {
+          try { reader.close(); } catch (IOException exc) {}
+        }
+      }
+    }
+
+    return contentAsString;
+  }
+
+
   /**
    * Gets the content of the document as stream. The stream must be closed by
    * the caller.
@@ -488,32 +839,124 @@ public class RawDocument {
   public InputStream getContentAsStream()
     throws RegainException
   {
+    if (isRemoteContentMissing()) {
+      loadRemoteContent();
+    }
+
     if (mContent != null) {
       return new ByteArrayInputStream(mContent);
+    } else if (mContentAsFile != null) {
+      // This document is in a file
+      try {
+        return new FileInputStream(mContentAsFile);
+
+      } catch (Throwable thr) {
+        throw new RegainException("Creating stream for file failed: " +
+            mContentAsFile, thr);
+      }
     } else {
-      // This document must be a file
-      if(mUrl.startsWith("file://")){
-        try {
-          return new FileInputStream(mContentAsFile);
-
-        } catch (Throwable thr) {
-          throw new RegainException("Creating stream for file failed: " +
-              mContentAsFile, thr);
+      throw new RegainException("Creating stream for unknown file protocoll failed.");
+    }
+  }
+
+
+  /**
+   * Gets a part of the content of the document.
+   * <p>
+   * Unlike {@link #getContent()} and {@link #getContentAsFile()} this neither
+   * loads the whole content of a file into memory nor writes a temporary file.
+   * So it is cheap to look at the beginning or the end of a document (e.g. for
+   * detecting its mime type).
+   *
+   * @param offset The position of the first byte to get.
+   * @param length The maximum number of bytes to get.
+   * @return The bytes. Has less than <code>length</code> bytes if the content
+   *         ends before.
+   * @throws RegainException If reading the content failed.
+   */
+  public byte[] getContentPart(long offset, int length) throws RegainException {
+    if (isRemoteContentMissing()) {
+      loadRemoteContent();
+    }
+
+    if (mContent != null) {
+      int start = (int) Math.min(offset, mContent.length);
+      int end = (int) Math.min(offset + length, mContent.length);
+      return Arrays.copyOfRange(mContent, start, end);
+    } else if (mContentAsFile != null) {
+      RandomAccessFile file = null;
+      try {
+        file = new RandomAccessFile(mContentAsFile, "r");
+        int partLength = (int) Math.max(0, Math.min(length, file.length() - offset));
+        byte[] part = new byte[partLength];
+        file.seek(offset);
+
+        // NOTE: The file may shrink while we read it, so we read up to EOF
+        int pos = 0;
+        int len;
+        while ((pos < part.length)
+            && ((len = file.read(part, pos, part.length - pos)) != -1))
+        {
+          pos += len;
         }
-      } else if(mUrl.startsWith("smb://")) {
-        try {
-           SmbFile smbFile = RegainToolkit.urlToSmbFile(
-             CrawlerToolkit.replaceAuthenticationValuesInURL(mUrl, mAccountPasswordEntry));
-           return smbFile.getInputStream();
-
-        } catch (Throwable thr) {
-          throw new RegainException("Creating stream for file failed: " +
-              mContentAsFile, thr);
+        return (pos < part.length) ? Arrays.copyOf(part, pos) : part;
+      }
+      catch (IOException exc) {
+        throw new RegainException("Reading content part of file failed: " +
+            mContentAsFile, exc);
+      }
+      finally {
+        if (file != null) {
+          try { file.close(); } catch (IOException exc) {}
         }
-      } else {
-        throw new RegainException("Creating stream for unknown file protocoll failed.");
-
       }
+    } else {
+      throw new RegainException("Reading content part for unknown file protocoll failed.");
+    }
+  }
+
+
+  /**
+   * Gets whether the content of the document is in a file. In this case
+   * {@link #getContentAsFile()} does not need to write a temporary file.
+   *
+   * @return Whether the content of the document is in a file.
+   * @throws RegainException If loading the content failed.
+   */
+  public boolean isContentInFile() throws RegainException {
+    if (isRemoteContentMissing()) {
+      loadRemoteContent();
+    }
+
+    return (mContentAsFile != null);
+  }
+
+
+  /**
+   * Gets whether the content of the document is in a temporary file that is
+   * deleted by {@link #dispose()}.
+   *
+   * @return Whether the content is in a temporary file.
+   */
+  boolean isContentInTemporaryFile() {
+    return (mContentAsFile != null) && mContentAsFileIsTemporary;
+  }
+
+
+  /**
+   * Gets the name of the document's file. It is used to guess the type of the
+   * document by its extension.
+   * <p>
+   * For documents not coming from the file system a name having the
+   * extension of the URL is returned.
+   *
+   * @return The file name.
+   */
+  public String getFileName() {
+    if (mUrl.startsWith("file://") && (mContentAsFile != null)) {
+      return mContentAsFile.getName();
+    } else {
+      return "content" + getTempFileExtension();
     }
   }
 
@@ -526,7 +969,12 @@ public class RawDocument {
    */
   public void writeToFile(File file) throws RegainException {
     try {
-      RegainToolkit.writeToFile(getContent(), file);
+      if ((mContent == null) && (mContentAsFile != null)) {
+        // Copy the file, so we don't need the content in memory
+        RegainToolkit.copyFile(mContentAsFile, file);
+      } else {
+        RegainToolkit.writeToFile(getContent(), file);
+      }
 
       if (mContentAsFile == null) {
         // Falls das Dokument in Dateiform benötigt wird, dann diese Datei
@@ -568,52 +1016,29 @@ public class RawDocument {
    *         konnte.
    */
   public File getContentAsFile(boolean forceTempFile) throws RegainException {
+    if (isRemoteContentMissing()) {
+      loadRemoteContent();
+    }
+
     if ((mContentAsFile == null) || (forceTempFile && ! mContentAsFileIsTemporary)) {
       // Das Dokument wurde via HTTP geladen
       // -> Inhalt in eine Datei schreiben
 
-      // Determine the file extension
-      String extension = "";
-      URL url;
-      String path;
-      if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
-        try {
-          url = new URL(mUrl);
-          path = url.getPath();
-          // Handles urls like http://www.example.com/ an http://www.example.com/blog/
-          if( (path.length()==0
-                  && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
-                  || path.endsWith("/")) {
-            path = "index.html";
-          }
-        } catch (MalformedURLException ex) {
-           mLog.debug("Couldn't create URL", ex);
-           path = mUrl;
-        }
-
-        int lastDot = path.lastIndexOf('.');
-        if (lastDot == -1 || path.length()-lastDot>=6 ) {
-          extension = "";
-        } else {
-          extension = path.substring(lastDot);
-        }
-      } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
-        // @todo: consider extensions for attachments too
-        extension = ".mht";
-
-      }
-
       // Get an unused file
       File tmpFile;
       try {
-        tmpFile = File.createTempFile("lucenesearch_", extension);
+        tmpFile = File.createTempFile("lucenesearch_", getTempFileExtension());
       }
       catch (IOException exc) {
         throw new RegainException("Getting temporary File failed", exc);
       }
 
       // write content in temporary file
-      writeToFile(tmpFile);
+      if (mContentAsFile != null) {
+        RegainToolkit.copyFile(mContentAsFile, tmpFile);
+      } else {
+        writeToFile(tmpFile);
+      }
 
       mContentAsFile = tmpFile;
       mContentAsFileIsTemporary = true;
@@ -623,6 +1048,54 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the file extension to use for a temporary file holding the content
+   * of this document.
+   *
+   * @return The file extension (e.g. ".pdf") or an empty String.
+   */
+  private String getTempFileExtension() {
+    // Determine the file extension
+    String extension = "";
+    URL url;
+    String path;
+    if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
+      try {
+        url = new URL(mUrl);
+        path = url.getPath();
+        // Handles urls like http://www.example.com/ an http://www.example.com/blog/
+        if( (path.length()==0
+                && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
+                || path.endsWith("/")) {
+          path = "index.html";
+        }
+      } catch (MalformedURLException ex) {
+         mLog.debug("Couldn't create URL", ex);
+         path = mUrl;
+      }
+
+      int lastDot = path.lastIndexOf('.');
+      if (lastDot == -1 || path.length()-lastDot>=6 ) {
+        extension = "";
+      } else {
+        extension = path.substring(lastDot);
+      }
+    } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
+      // @todo: consider extensions for attachments too
+      extension = ".mht";
+
+    } else if (mUrl.startsWith("smb://") || mUrl.startsWith("file://")) {
+      // NOTE: file URLs get here for entries of archives
+      path = mUrl.substring(mUrl.lastIndexOf('/') + 1);
+      int lastDot = path.lastIndexOf('.');
+      if (lastDot != -1 && path.length()-lastDot<6) {
+        extension = path.substring(lastDot);
+      }
+    }
+    return extension;
+  }
+
+
   /**
    * Gibt alle genutzten System-Ressourcen, wie temporäre Dateien, wieder frei.
    * <p>
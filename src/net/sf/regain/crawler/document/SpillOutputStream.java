@@ -0,0 +1,174 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that keeps its data in memory until a limit is reached. Then
+ * all data is written into a temporary file.
+ * <p>
+ * This way small documents stay in memory while large documents don't need
+ * more heap than the limit.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SpillOutputStream extends OutputStream {
+
+  /** The maximum number of bytes kept in memory. */
+  private int mMaxSizeInMemory;
+
+  /** The file extension of the temporary file. */
+  private String mExtension;
+
+  /** The data as long as it is in memory. Is null after spilling. */
+  private ByteArrayOutputStream mMemoryOut;
+
+  /** The temporary file. Is null as long as the data is in memory. */
+  private File mFile;
+
+  /** The stream writing the temporary file. */
+  private OutputStream mFileOut;
+
+
+  /**
+   * Creates a new instance of SpillOutputStream.
+   *
+   * @param maxSizeInMemory The maximum number of bytes kept in memory.
+   * @param extension The file extension of the temporary file (e.g. ".pdf").
+   */
+  public SpillOutputStream(int maxSizeInMemory, String extension) {
+    mMaxSizeInMemory = maxSizeInMemory;
+    mExtension = extension;
+    mMemoryOut = new ByteArrayOutputStream(Math.min(maxSizeInMemory, 8192));
+  }
+
+
+  @Override
+  public void write(int b) throws IOException {
+    if (mMemoryOut != null && mMemoryOut.size() + 1 > mMaxSizeInMemory) {
+      spill();
+    }
+
+    if (mMemoryOut != null) {
+      mMemoryOut.write(b);
+    } else {
+      mFileOut.write(b);
+    }
+  }
+
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (mMemoryOut != null && mMemoryOut.size() + len > mMaxSizeInMemory) {
+      spill();
+    }
+
+    if (mMemoryOut != null) {
+      mMemoryOut.write(b, off, len);
+    } else {
+      mFileOut.write(b, off, len);
+    }
+  }
+
+
+  /**
+   * Moves the data written so far into the temporary file.
+   *
+   * @throws IOException If creating the temporary file failed.
+   */
+  private void spill() throws IOException {
+    mFile = File.createTempFile("lucenesearch_", mExtension);
+    mFileOut = new BufferedOutputStream(new FileOutputStream(mFile));
+    mMemoryOut.writeTo(mFileOut);
+    mMemoryOut = null;
+  }
+
+
+  @Override
+  public void flush() throws IOException {
+    if (mFileOut != null) {
+      mFileOut.flush();
+    }
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    if (mFileOut != null) {
+      mFileOut.close();
+    }
+  }
+
+
+  /**
+   * Gets whether the data is still in memory.
+   *
+   * @return Whether the data is still in memory.
+   */
+  public boolean isInMemory() {
+    return mMemoryOut != null;
+  }
+
+
+  /**
+   * Gets the data if it is in memory.
+   *
+   * @return The data or <code>null</code> if it was written into a file.
+   */
+  public byte[] toByteArray() {
+    return (mMemoryOut == null) ? null : mMemoryOut.toByteArray();
+  }
+
+
+  /**
+   * Gets the temporary file holding the data. The caller is responsible for
+   * deleting it.
+   *
+   * @return The temporary file or <code>null</code> if the data is in memory.
+   */
+  public File getFile() {
+    return mFile;
+  }
+
+
+  /**
+   * Closes the stream and deletes the temporary file. Should be called if
+   * writing failed.
+   */
+  public void dispose() {
+    try {
+      close();
+    } catch (IOException exc) {}
+
+    if (mFile != null) {
+      mFile.delete();
+      mFile = null;
+    }
+    mMemoryOut = null;
+  }
+
+}
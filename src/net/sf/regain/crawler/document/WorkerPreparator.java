@@ -0,0 +1,106 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import net.sf.regain.RegainException;
+
+/**
+ * A preparator that lets a {@link PreparatorWorkerPool} do the work.
+ * <p>
+ * It wraps the preparator that would run in the crawler otherwise. This one
+ * decides which documents are accepted, the preparation itself is done by
+ * the same preparator class in a worker process.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class WorkerPreparator extends AbstractPreparator {
+
+  /** The preparator that is wrapped. */
+  private Preparator mPreparator;
+
+  /** The pool of the worker processes. */
+  private PreparatorWorkerPool mWorkerPool;
+
+  /** The index of the preparator in the preparators of the crawler. */
+  private int mPreparatorIdx;
+
+
+  /**
+   * Creates a new instance of WorkerPreparator.
+   *
+   * @param preparator The preparator to wrap.
+   * @param workerPool The pool of the worker processes.
+   * @param preparatorIdx The index of the preparator in the preparators of
+   *        the crawler. The workers use the same index.
+   */
+  public WorkerPreparator(Preparator preparator, PreparatorWorkerPool workerPool,
+    int preparatorIdx)
+  {
+    mPreparator = preparator;
+    mWorkerPool = workerPool;
+    mPreparatorIdx = preparatorIdx;
+  }
+
+
+  /**
+   * Gets the preparator that is wrapped.
+   *
+   * @return The wrapped preparator.
+   */
+  public Preparator getPreparator() {
+    return mPreparator;
+  }
+
+
+  @Override
+  public boolean accepts(RawDocument rawDocument) {
+    return mPreparator.accepts(rawDocument);
+  }
+
+
+  @Override
+  public String[] getAcceptedMimeTypes() {
+    if (mPreparator instanceof AbstractPreparator) {
+      return ((AbstractPreparator) mPreparator).getAcceptedMimeTypes();
+    }
+    return null;
+  }
+
+
+  @Override
+  public int getPriority() {
+    return mPreparator.getPriority();
+  }
+
+
+  @Override
+  public void prepare(RawDocument rawDocument) throws RegainException {
+    mWorkerPool.prepare(mPreparatorIdx, mPreparator.getClass().getName(),
+        rawDocument, this);
+  }
+
+
+  @Override
+  public void close() throws RegainException {
+    mPreparator.close();
+  }
+
+}
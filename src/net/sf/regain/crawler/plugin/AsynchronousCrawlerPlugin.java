@@ -0,0 +1,58 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+
+package net.sf.regain.crawler.plugin;
+
+/**
+ * A crawler plugin that only observes the crawler. Its URL and document
+ * events are delivered on a thread of its own, so a slow plugin (e.g. one
+ * that writes to a remote audit store) doesn't block the crawler.
+ *
+ * The events onAcceptURL, onDeclineURL, onBeforePrepare, onAfterPrepare,
+ * onCreateIndexEntry and onDeleteIndexEntry are put into a bounded queue. If
+ * the plugin can't keep up and the queue is full, the crawler waits until
+ * there is space again. Since the crawler goes on meanwhile, the plugin gets
+ * immutable copies of the arguments that change after the event:
+ * <ul>
+ *   <li>The RawDocument is a snapshot without content (see
+ *     RawDocument.createSnapshot()).</li>
+ *   <li>The Document holds a copy of the stored fields.</li>
+ *   <li>The preparator and the IndexReader or IndexWriter are null.</li>
+ * </ul>
+ *
+ * onStartCrawling, onFinishCrawling and checkDynamicBlacklist are delivered
+ * synchronously in the crawler thread. onFinishCrawling is delivered after
+ * all queued events. The queued events of one plugin are delivered in the
+ * order they occurred and never at the same time.
+ *
+ * @see CrawlerPluginManager
+ * @author Til Schneider, www.murfman.de
+ */
+public interface AsynchronousCrawlerPlugin extends CrawlerPlugin {
+
+		/**
+		 * Gets the number of events that may wait for this plugin.
+		 *
+		 * @return The capacity of the event queue.
+		 */
+		int getEventQueueCapacity();
+
+}
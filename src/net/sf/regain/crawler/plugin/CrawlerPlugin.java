@@ -36,6 +36,11 @@ import net.sf.regain.crawler.document.Pluggable;
  * If you want to implement only some of these method,
  * you can inherit empty stub methods from AbstractCrawlerPlugin.
  *
+ * The methods are called in the crawler thread. Plugins that only observe
+ * the crawler can implement AsynchronousCrawlerPlugin instead. They get the
+ * URL and document events on a thread of their own with copies of the
+ * arguments.
+ *
  * A typical call order may be:
  *
  * onStartCrawling
@@ -22,25 +22,41 @@
 
 package net.sf.regain.crawler.plugin;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import net.sf.regain.crawler.Crawler;
 import net.sf.regain.crawler.CrawlerJob;
+import net.sf.regain.crawler.Profiler;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.document.WriteablePreparator;
-import org.apache.commons.beanutils.MethodUtils;
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 
 /**
  * Guarantees:
  * - If one plugin throws an exception, the other plugins will be executed none-the-less
- * - Every argument of a plugin call is non-null
  *
  * Singleton pattern: get the only instance by calling getInstance().
  *
+ * The events are passed to the plugins by direct calls of the CrawlerPlugin
+ * interface. Each plugin gets a profiler measuring the time it spends in its
+ * events. If no plugin is registered, triggering an event costs nothing but
+ * a check of the array length.
+ *
+ * The URL and document events of an AsynchronousCrawlerPlugin are put into a
+ * bounded queue and are delivered by a thread of the plugin. Arguments that
+ * change or are closed once the event is over are replaced by immutable
+ * copies: The plugin gets a snapshot of the RawDocument, a copy of the stored
+ * fields of the Document and null for the preparator and the index. The
+ * crawl events and checkDynamicBlacklist are delivered synchronously.
+ * onFinishCrawling is delivered after all queued events.
+ *
  * @author Benjamin
  */
 public class CrawlerPluginManager {
@@ -57,6 +73,16 @@ public class CrawlerPluginManager {
 	 */
 	private SortedMap<Integer,CrawlerPlugin> plugins = null;
 
+	/**
+	 * The registered plugins in order of call. This is a snapshot of
+	 * {@link #plugins} that is replaced on every change, so the events can
+	 * iterate it without locking.
+	 */
+	private volatile PluginEntry[] entryArr = new PluginEntry[0];
+
+	/** The entries of the registered plugins. The plugin is the key. */
+	private Map<CrawlerPlugin,PluginEntry> entryMap = new IdentityHashMap<CrawlerPlugin,PluginEntry>();
+
 	/**
 	 * The single Manager Instance.
 	 */
@@ -83,7 +109,7 @@ public class CrawlerPluginManager {
 	 *
 	 * @return	The Plugin Manager
 	 */
-	public static CrawlerPluginManager getInstance()
+	public static synchronized CrawlerPluginManager getInstance()
 	{
 		if (instance == null)
 		{
@@ -102,7 +128,7 @@ public class CrawlerPluginManager {
 	 *
 	 * @param plugin	Plugin to register
 	 */
-	public void registerPlugin(CrawlerPlugin plugin)
+	public synchronized void registerPlugin(CrawlerPlugin plugin)
 	{
 		registerPlugin(plugin, nextOrder);
 	}
@@ -116,14 +142,18 @@ public class CrawlerPluginManager {
 	 * 					relatively to other plugins)
 	 * @throws NullPointerException	if plugin is null
 	 */
-	public void registerPlugin(CrawlerPlugin plugin, int order)
+	public synchronized void registerPlugin(CrawlerPlugin plugin, int order)
 	{
+		if (plugin == null) {
+			throw new NullPointerException("plugin is null");
+		}
 		plugins.put(MAX_PLUGINS * order + insertIndex, plugin);
 
 		if (order + 1 > nextOrder) {
       nextOrder = order + 1;
     }
 		insertIndex ++;
+		updatePluginArr();
 	}
 
 	/**
@@ -134,129 +164,167 @@ public class CrawlerPluginManager {
 	 *
 	 * @param plugin
 	 */
-	public void unregisterPlugin(CrawlerPlugin plugin)
+	public synchronized void unregisterPlugin(CrawlerPlugin plugin)
 	{
 		plugins.values().remove(plugin);
+		updatePluginArr();
 	}
 
 	/**
 	 * Unregister all Plugins
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		plugins.clear();
 		nextOrder = 1;
 		insertIndex = 0;
+		updatePluginArr();
 	}
 
+	/**
+	 * Rebuilds the snapshot of the registered plugins. Starts the event
+	 * threads of new asynchronous plugins and stops the ones of removed
+	 * plugins.
+	 */
+	private void updatePluginArr() {
+		PluginEntry[] newEntryArr = new PluginEntry[plugins.size()];
+		Map<CrawlerPlugin,PluginEntry> newEntryMap = new IdentityHashMap<CrawlerPlugin,PluginEntry>();
+		int i = 0;
+		for (CrawlerPlugin plugin : plugins.values()) {
+			PluginEntry entry = entryMap.remove(plugin);
+			if (entry == null) {
+				entry = newEntryMap.get(plugin);
+			}
+			if (entry == null) {
+				entry = new PluginEntry(plugin);
+			}
+			newEntryArr[i++] = entry;
+			newEntryMap.put(plugin, entry);
+		}
+
+		Map<CrawlerPlugin,PluginEntry> removedEntryMap = entryMap;
+		entryMap = newEntryMap;
+		entryArr = newEntryArr;
+
+		// The remaining entries belong to removed plugins
+		// NOTE: The new array is in place already, so no new events are queued
+		//       for them. Their queued events are still delivered.
+		for (PluginEntry entry : removedEntryMap.values()) {
+			if (entry.dispatcher != null) {
+				entry.dispatcher.stop();
+			}
+			Profiler.unregisterProfiler(entry.profiler);
+		}
+	}
 
 	/**
 	 * Trigger an event: call the corresponding plugins.
-	 * Collect return values.
-	 * TODO : Profiling?
 	 *
-	 * (This is done via Reflection API to avoid code duplication)
-	 *
-	 * @param methodName	Name of Event (as in the interface: onEvent)
-	 * @param args		Args of Event (as in the interface)
-	 * @return Return Values of the called methods. Null if the called method threw an exception.
+	 * @param event	The event to trigger.
+	 * @param arg1	The first argument of the event.
+	 * @param arg2	The second argument of the event. Null if the event has less arguments.
+	 * @param arg3	The third argument of the event. Null if the event has less arguments.
+	 * @return Whether at least one plugin returned true. Only
+	 *         checkDynamicBlacklist has a return value, for all other events
+	 *         this is false.
 	 */
-	protected List<Object> triggerEvent(String methodName, Class<?>[] argTypes, Object... args)
+	private boolean triggerEvent(PluginEvent event, Object arg1, Object arg2, Object arg3)
 	{
-		List<Object> returns = new ArrayList<Object>();
+		return triggerEvent(event, arg1, arg2, arg3, null);
+	}
 
-	  checkIfEventExists(methodName, argTypes);
+	/**
+	 * Trigger an event: call the corresponding plugins.
+	 *
+	 * @param event	The event to trigger.
+	 * @param arg1	The first argument of the event.
+	 * @param arg2	The second argument of the event. Null if the event has less arguments.
+	 * @param arg3	The third argument of the event. Null if the event has less arguments.
+	 * @param returnList The list where to add the return value of each plugin.
+	 *        May be null.
+	 * @return Whether at least one plugin returned true. Only
+	 *         checkDynamicBlacklist has a return value, for all other events
+	 *         this is false.
+	 */
+	private boolean triggerEvent(PluginEvent event, Object arg1, Object arg2, Object arg3,
+		List<Object> returnList)
+	{
+		PluginEntry[] currEntryArr = entryArr;
+		if (currEntryArr.length == 0) {
+			return false;
+		}
 
-		for (Map.Entry<Integer, CrawlerPlugin> entry : plugins.entrySet())
+		boolean result = false;
+		for (PluginEntry entry : currEntryArr)
 		{
-		  Object ret = null;
-
-			CrawlerPlugin plugin = entry.getValue();
-			String pluginName = plugin.getClass().getName();
+			if (mLog.isDebugEnabled()) {
+				mLog.debug("Send " + event.mMethodName + "-Event to " + entry.plugin.getClass().getName());
+			}
 
-			mLog.debug("Send " + methodName + "-Event to " + pluginName);
+			boolean pluginResult = false;
+			if ((entry.dispatcher != null) && event.mAsyncAllowed) {
+				// NOTE: Every plugin gets its own snapshot, so one plugin can't
+				//       change what the other one gets
+				Object[] argArr = event.snapshot(arg1, arg2, arg3);
+				entry.dispatcher.enqueue(event, argArr[0], argArr[1], argArr[2]);
+			} else {
+				pluginResult = entry.call(event, arg1, arg2, arg3);
+			}
 
-			try {
-				ret = MethodUtils.invokeMethod(plugin, methodName, args, argTypes);
-			} catch (IllegalAccessException e) 	{ mLog.error("Reflection Error:", e);
-			} catch (SecurityException e) 		{ mLog.error("Reflection Error:", e);
-			} catch (NoSuchMethodException e)	{ mLog.error("Reflection Error:", e);
-			} catch (InvocationTargetException e) {
-				mLog.error(pluginName + " has thrown an exception:", e.getCause());
-			} catch (Throwable e) {
-				mLog.error(pluginName + " has thrown an exception:", e);
+			if (pluginResult) {
+				if (! result && mLog.isDebugEnabled()) {
+					mLog.debug("URL dynamically blacklisted by CrawlerPlugin " + entry.plugin.getClass().getName());
+				}
+				result = true;
+			}
+			if (returnList != null) {
+				returnList.add((event == PluginEvent.CHECK_DYNAMIC_BLACKLIST)
+						? Boolean.valueOf(pluginResult) : null);
 			}
-			returns.add(ret);
 		}
 
-		return returns;
+		return result;
 	}
 
 	/**
-	 * Check if the array does not contain any null value.
-	 * @param args	Array of arguments
-	 * @throws IllegalArgumentException if a null value is detected
+	 * Trigger an event: call the corresponding plugins.
+	 *
+	 * @param methodName	Name of Event (as in the interface: onEvent)
+	 * @param argTypes	Types of the arguments of the event
+	 * @param args		Args of Event (as in the interface)
+	 * @return Return Values of the called methods. Null for events without
+	 *         return value, for events that were queued for an asynchronous
+	 *         plugin, and false if checkDynamicBlacklist threw an exception.
+	 * @deprecated Use the eventXxx methods. They call the plugins directly.
 	 */
-	private void checkArgsNotNull(Object[] args) {
-		for (int i = 0; i < args.length; i++)
-		{
-			if (args[i] == null) {
-        throw new IllegalArgumentException("Plugin manager was called with null parameter (param nb " + (i + 1) + ")");
-      }
-		}
+	@Deprecated
+	protected List<Object> triggerEvent(String methodName, Class<?>[] argTypes, Object... args)
+	{
+		checkIfEventExists(methodName, argTypes);
+
+		PluginEvent event = PluginEvent.forMethodName(methodName);
+		Object[] argArr = Arrays.copyOf(args, 3);
+		List<Object> returnList = new ArrayList<Object>();
+		triggerEvent(event, argArr[0], argArr[1], argArr[2], returnList);
+		return returnList;
 	}
 
 	/**
 	 * Check if a certain eventName exists in the CrawlerPlugin Interface
-	 *
 	 * @param methodName	"on" + eventName
 	 * @param argTypes		Types of the arguments
+	 * @throws RuntimeException If there is no such event.
+	 * @deprecated The eventXxx methods need no check.
 	 */
+	@Deprecated
 	protected void checkIfEventExists(String methodName, Class<?>[] argTypes) {
 		try {
 			CrawlerPlugin.class.getMethod(methodName, argTypes);
-		} catch (SecurityException e) {
-			mLog.error("Reflection Error:", e);
-		} catch (NoSuchMethodException e1) {
-			String methodSignature = methodName + "(" + argTypesToString(argTypes) + ")";
-			throw new RuntimeException("There is no event with this name (or different arguments): " + methodSignature + " declared in the CrawlerPlugin-Interface");
+		} catch (NoSuchMethodException exc) {
+			throw new RuntimeException("There is no event with this name (or different arguments): "
+					+ methodName + Arrays.toString(argTypes) + " declared in the CrawlerPlugin-Interface");
 		}
 	}
 
-	/**
-	 * Convert argument Types into a string represantation
-	 * @param argTypes	Types of the arguments
-	 * @return			Stringified types (e.g. java.lang.String, java.lang.String)
-	 */
-	private String argTypesToString(Class<?>[] argTypes) {
-		StringBuilder ret = new StringBuilder(100);
-		for (int i = 0; i < argTypes.length; i++)
-		{
-			ret.append(argTypes[i].getCanonicalName());
-			if (i < argTypes.length - 1) {
-        ret.append(", ");
-      }
-		}
-		return ret.toString();
-	}
-
-	/**
-	 * Get Parameter types for Reflection API
-	 * (Little helper function, currently not used)
-	 *
-	 * @param params	Parameters to give
-	 * @return Their respective classes
-	 *
-	 * currently not used
-	private Class<?>[] getTypes(Object[] params) {
-		Class<?> types[] = new Class<?>[params.length];
-
-		for (int i = 0; i < params.length; i++)
-			types[i] = params[i].getClass();
-
-		return types;
-	}
-*/
-
 	// --------------------- Event Triggers -------------------------
 
 	/**
@@ -266,9 +334,7 @@ public class CrawlerPluginManager {
 	 */
 	public void eventStartCrawling(Crawler crawler)
 	{
-		triggerEvent("onStartCrawling",
-				new Class[]{Crawler.class},
-				crawler);
+		triggerEvent(PluginEvent.START_CRAWLING, crawler, null, null);
 	}
 
 	/**
@@ -277,9 +343,14 @@ public class CrawlerPluginManager {
 	 * @param crawler	Crawler instance (caller)
 	 */
 	public void eventFinishCrawling(Crawler crawler) {
-		triggerEvent("onFinishCrawling",
-				new Class[]{Crawler.class},
-				crawler);
+		// The asynchronous plugins get onFinishCrawling after their queued events
+		for (PluginEntry entry : entryArr) {
+			if (entry.dispatcher != null) {
+				entry.dispatcher.waitUntilIdle();
+			}
+		}
+
+		triggerEvent(PluginEvent.FINISH_CRAWLING, crawler, null, null);
 	}
 
 	/**
@@ -289,9 +360,7 @@ public class CrawlerPluginManager {
 	 * @param	preparator	Preparator that will prepare
 	 */
 	public void eventBeforePrepare(RawDocument document, WriteablePreparator preparator) {
-		triggerEvent("onBeforePrepare",
-				new Class[]{RawDocument.class, WriteablePreparator.class},
-				document, preparator);
+		triggerEvent(PluginEvent.BEFORE_PREPARE, document, preparator, null);
 	}
 
 	/**
@@ -301,9 +370,7 @@ public class CrawlerPluginManager {
 	 * @param preparator	Preparator that prepared
 	 */
 	public void eventAfterPrepare(RawDocument document, WriteablePreparator preparator) {
-		triggerEvent("onAfterPrepare",
-				new Class[]{RawDocument.class, WriteablePreparator.class},
-				document, preparator);
+		triggerEvent(PluginEvent.AFTER_PREPARE, document, preparator, null);
 	}
 
 	/**
@@ -313,9 +380,7 @@ public class CrawlerPluginManager {
 	 * @param index	Index where it will be added
 	 */
 	public void eventCreateIndexEntry(Document doc, IndexWriter index) {
-		triggerEvent("onCreateIndexEntry",
-				new Class[]{Document.class, IndexWriter.class},
-				doc, index);
+		triggerEvent(PluginEvent.CREATE_INDEX_ENTRY, doc, index, null);
 	}
 
 	/**
@@ -325,9 +390,7 @@ public class CrawlerPluginManager {
 	 * @param index	Index where it will be deleted
 	 */
 	public void eventDeleteIndexEntry(Document doc, IndexReader index) {
-		triggerEvent("onDeleteIndexEntry",
-				new Class[]{Document.class, IndexReader.class},
-				doc, index);
+		triggerEvent(PluginEvent.DELETE_INDEX_ENTRY, doc, index, null);
 	}
 
 	/**
@@ -337,9 +400,7 @@ public class CrawlerPluginManager {
 	 * @param job	Resulting Job
 	 */
 	public void eventAcceptURL(String url, CrawlerJob job) {
-		triggerEvent("onAcceptURL",
-				new Class[]{String.class, CrawlerJob.class},
-				url, job);
+		triggerEvent(PluginEvent.ACCEPT_URL, url, job, null);
 	}
 
 	/**
@@ -348,9 +409,7 @@ public class CrawlerPluginManager {
 	 * @param url	URL that was declined
 	 */
 	public void eventDeclineURL(String url) {
-		triggerEvent("onDeclineURL",
-				new Class[]{String.class},
-				url);
+		triggerEvent(PluginEvent.DECLINE_URL, url, null, null);
 	}
 
 	/**
@@ -365,43 +424,7 @@ public class CrawlerPluginManager {
 	 */
   public boolean eventAskDynamicBlacklist(String url, String sourceUrl, String sourceLinkText)
   {
-    List<Object> returns;
-
-    returns = triggerEvent("checkDynamicBlacklist",
-        new Class[]{String.class, String.class, String.class},
-        url, sourceUrl, sourceLinkText);
-
-    int i = 0;
-    for (Object ret : returns)
-    {
-      if (! (ret instanceof Boolean)) {
-        continue;
-      }
-
-      boolean blacklist = ((Boolean) ret).booleanValue();
-
-      if (blacklist)
-      {
-        if (mLog.isDebugEnabled())
-        {
-          // Find out which plugin was the cause
-          CrawlerPlugin cp = null;
-          for (Map.Entry<Integer, CrawlerPlugin> entry : plugins.entrySet())
-          {
-            cp = entry.getValue();
-            if (i == 0) {
-              break;
-            }
-            i--;
-          }
-          mLog.debug("URL dynamically blacklisted by CrawlerPlugin " + cp.getClass().getName());
-        }
-        return true;
-      }
-      i++;
-    }
-
-    return false;
+    return triggerEvent(PluginEvent.CHECK_DYNAMIC_BLACKLIST, url, sourceUrl, sourceLinkText);
   }
 
 	/**
@@ -409,7 +432,7 @@ public class CrawlerPluginManager {
 	 * @return Debugging output: contained plugins.
 	 */
   @Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuilder str = new StringBuilder();
 		str.append("Contains ").append(plugins.size()).append(" Plugins: \n");
 
@@ -422,4 +445,399 @@ public class CrawlerPluginManager {
 		return str.toString();
 	}
 
+
+	/**
+	 * The events of the CrawlerPlugin interface. Each event calls its method
+	 * directly.
+	 */
+	private enum PluginEvent {
+
+		START_CRAWLING("onStartCrawling", false) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onStartCrawling((Crawler) arg1);
+				return false;
+			}
+		},
+		FINISH_CRAWLING("onFinishCrawling", false) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onFinishCrawling((Crawler) arg1);
+				return false;
+			}
+		},
+		CHECK_DYNAMIC_BLACKLIST("checkDynamicBlacklist", false) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				return plugin.checkDynamicBlacklist((String) arg1, (String) arg2, (String) arg3);
+			}
+		},
+		ACCEPT_URL("onAcceptURL", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onAcceptURL((String) arg1, (CrawlerJob) arg2);
+				return false;
+			}
+		},
+		DECLINE_URL("onDeclineURL", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onDeclineURL((String) arg1);
+				return false;
+			}
+		},
+		CREATE_INDEX_ENTRY("onCreateIndexEntry", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onCreateIndexEntry((Document) arg1, (IndexWriter) arg2);
+				return false;
+			}
+			@Override
+			Object[] snapshot(Object arg1, Object arg2, Object arg3) {
+				return new Object[] { copyStoredFields((Document) arg1), null, null };
+			}
+		},
+		DELETE_INDEX_ENTRY("onDeleteIndexEntry", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onDeleteIndexEntry((Document) arg1, (IndexReader) arg2);
+				return false;
+			}
+			@Override
+			Object[] snapshot(Object arg1, Object arg2, Object arg3) {
+				return new Object[] { copyStoredFields((Document) arg1), null, null };
+			}
+		},
+		BEFORE_PREPARE("onBeforePrepare", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onBeforePrepare((RawDocument) arg1, (WriteablePreparator) arg2);
+				return false;
+			}
+			@Override
+			Object[] snapshot(Object arg1, Object arg2, Object arg3) {
+				return new Object[] { createSnapshot((RawDocument) arg1), null, null };
+			}
+		},
+		AFTER_PREPARE("onAfterPrepare", true) {
+			@Override
+			boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3) {
+				plugin.onAfterPrepare((RawDocument) arg1, (WriteablePreparator) arg2);
+				return false;
+			}
+			@Override
+			Object[] snapshot(Object arg1, Object arg2, Object arg3) {
+				return new Object[] { createSnapshot((RawDocument) arg1), null, null };
+			}
+		};
+
+		/** The name of the method in the CrawlerPlugin interface. Used for logging. */
+		private final String mMethodName;
+
+		/**
+		 * Whether the event may be delivered asynchronously. The URL and
+		 * document events are, with a snapshot of their arguments (see
+		 * {@link #snapshot(Object, Object, Object)}). The crawl events and the
+		 * events the crawler needs an answer for are always delivered
+		 * synchronously.
+		 */
+		private final boolean mAsyncAllowed;
+
+		/**
+		 * Creates a new instance of PluginEvent.
+		 *
+		 * @param methodName The name of the method in the CrawlerPlugin interface.
+		 * @param asyncAllowed Whether the event may be delivered asynchronously.
+		 */
+		private PluginEvent(String methodName, boolean asyncAllowed) {
+			mMethodName = methodName;
+			mAsyncAllowed = asyncAllowed;
+		}
+
+		/**
+		 * Gets the event of a method of the CrawlerPlugin interface.
+		 *
+		 * @param methodName The name of the method.
+		 * @return The event.
+		 * @throws IllegalArgumentException If there is no such event.
+		 */
+		static PluginEvent forMethodName(String methodName) {
+			for (PluginEvent event : values()) {
+				if (event.mMethodName.equals(methodName)) {
+					return event;
+				}
+			}
+			throw new IllegalArgumentException("There is no event " + methodName);
+		}
+
+		/**
+		 * Gets the arguments to queue for an asynchronous plugin. The arguments
+		 * must not change after the event, so mutable ones are copied or
+		 * replaced by null.
+		 *
+		 * @param arg1 The first argument of the event.
+		 * @param arg2 The second argument of the event.
+		 * @param arg3 The third argument of the event.
+		 * @return The three arguments to queue. This implementation returns
+		 *         the arguments themselves.
+		 */
+		Object[] snapshot(Object arg1, Object arg2, Object arg3) {
+			return new Object[] { arg1, arg2, arg3 };
+		}
+
+		/**
+		 * Passes the event to a plugin.
+		 *
+		 * @param plugin The plugin to call.
+		 * @param arg1 The first argument of the event.
+		 * @param arg2 The second argument of the event.
+		 * @param arg3 The third argument of the event.
+		 * @return The return value of the plugin method. false for methods
+		 *         without return value.
+		 */
+		abstract boolean call(CrawlerPlugin plugin, Object arg1, Object arg2, Object arg3);
+
+	}
+
+
+
+	/**
+	 * Creates a snapshot of a RawDocument for an asynchronous plugin.
+	 *
+	 * @param document The document. May be null.
+	 * @return The snapshot or null.
+	 * @see RawDocument#createSnapshot()
+	 */
+	private static RawDocument createSnapshot(RawDocument document) {
+		return (document == null) ? null : document.createSnapshot();
+	}
+
+	/**
+	 * Copies the stored fields of a Document for an asynchronous plugin. The
+	 * copied fields are only stored.
+	 *
+	 * @param doc The document. May be null.
+	 * @return The copy or null.
+	 */
+	private static Document copyStoredFields(Document doc) {
+		if (doc == null) {
+			return null;
+		}
+
+		Document copy = new Document();
+		for (Fieldable field : doc.getFields()) {
+			if (field.isStored()) {
+				if (field.isBinary()) {
+					int offset = field.getBinaryOffset();
+					copy.add(new Field(field.name(), Arrays.copyOfRange(field.getBinaryValue(),
+							offset, offset + field.getBinaryLength())));
+				} else if (field.stringValue() != null) {
+					copy.add(new Field(field.name(), field.stringValue(), Field.Store.YES, Field.Index.NO));
+				}
+			}
+		}
+		return copy;
+	}
+
+
+	/**
+	 * A registered plugin together with its profiler and (for asynchronous
+	 * plugins) its event dispatcher.
+	 */
+	private static class PluginEntry {
+
+		/** The plugin. */
+		final CrawlerPlugin plugin;
+
+		/** The profiler measuring the time the plugin spends in its events. */
+		final Profiler profiler;
+
+		/** The dispatcher of the events. Null for synchronous plugins. */
+		final AsyncDispatcher dispatcher;
+
+		/**
+		 * Creates a new instance of PluginEntry.
+		 *
+		 * @param plugin The plugin.
+		 */
+		PluginEntry(CrawlerPlugin plugin) {
+			this.plugin = plugin;
+			profiler = new Profiler("Plugin " + plugin.getClass().getName(), "events");
+			if (plugin instanceof AsynchronousCrawlerPlugin) {
+				dispatcher = new AsyncDispatcher(this,
+						((AsynchronousCrawlerPlugin) plugin).getEventQueueCapacity());
+			} else {
+				dispatcher = null;
+			}
+		}
+
+		/**
+		 * Passes an event to the plugin in the current thread.
+		 *
+		 * @param event The event.
+		 * @param arg1 The first argument of the event.
+		 * @param arg2 The second argument of the event.
+		 * @param arg3 The third argument of the event.
+		 * @return The return value of the plugin method. false if the plugin
+		 *         threw an exception.
+		 */
+		boolean call(PluginEvent event, Object arg1, Object arg2, Object arg3) {
+			profiler.startMeasuring();
+			try {
+				boolean result = event.call(plugin, arg1, arg2, arg3);
+				profiler.stopMeasuring(0);
+				return result;
+			} catch (Throwable e) {
+				profiler.abortMeasuring();
+				mLog.error(plugin.getClass().getName() + " has thrown an exception:", e);
+				return false;
+			}
+		}
+
+	}
+
+
+	/**
+	 * Delivers the events of an asynchronous plugin in a thread of its own.
+	 */
+	private static class AsyncDispatcher implements Runnable {
+
+		/** The entry of the plugin. */
+		private final PluginEntry mEntry;
+
+		/**
+		 * The queued events. Each element holds the event and its three
+		 * arguments.
+		 */
+		private final BlockingQueue<Object[]> mQueue;
+
+		/** The number of events that were queued, but are not processed yet. */
+		private int mPendingCount;
+
+		/** The thread delivering the events. */
+		private final Thread mThread;
+
+		/** The interval (in ms) to check whether the dispatcher should stop. */
+		private static final long STOP_CHECK_INTERVAL = 1000;
+
+		/**
+		 * Whether the dispatcher should stop once the queue is empty. No more
+		 * events are queued then.
+		 */
+		private boolean mShouldStop;
+
+		/**
+		 * Creates a new instance of AsyncDispatcher and starts its thread.
+		 *
+		 * @param entry The entry of the plugin.
+		 * @param capacity The capacity of the event queue.
+		 */
+		AsyncDispatcher(PluginEntry entry, int capacity) {
+			mEntry = entry;
+			mQueue = new ArrayBlockingQueue<Object[]>(Math.max(1, capacity));
+
+			mThread = new Thread(this, "Plugin events " + entry.plugin.getClass().getName());
+			mThread.setDaemon(true);
+			mThread.start();
+		}
+
+		/**
+		 * Queues an event. Waits if the queue is full. Events for a stopped
+		 * dispatcher are dropped, since its plugin was removed.
+		 *
+		 * @param event The event.
+		 * @param arg1 The first argument of the event.
+		 * @param arg2 The second argument of the event.
+		 * @param arg3 The third argument of the event.
+		 */
+		void enqueue(PluginEvent event, Object arg1, Object arg2, Object arg3) {
+			synchronized (this) {
+				if (mShouldStop) {
+					return;
+				}
+				mPendingCount++;
+			}
+			Object[] item = new Object[] { event, arg1, arg2, arg3 };
+			try {
+				if (! mQueue.offer(item)) {
+					if (mLog.isDebugEnabled()) {
+						mLog.debug("Event queue of " + mEntry.plugin.getClass().getName()
+								+ " is full. Waiting for the plugin");
+					}
+					mQueue.put(item);
+				}
+			}
+			catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				mLog.warn("Dropped " + event.mMethodName + "-Event for "
+						+ mEntry.plugin.getClass().getName() + ", because the crawler was interrupted");
+				eventDone();
+			}
+		}
+
+		/**
+		 * Waits until all queued events are processed.
+		 */
+		synchronized void waitUntilIdle() {
+			try {
+				while (mPendingCount > 0) {
+					wait();
+				}
+			}
+			catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Stops the thread once all queued events are processed. Events queued
+		 * afterwards are dropped.
+		 */
+		synchronized void stop() {
+			mShouldStop = true;
+		}
+
+		/**
+		 * Gets whether the thread should end, because the dispatcher was stopped
+		 * and all queued events are processed.
+		 *
+		 * @return Whether the thread should end.
+		 */
+		private synchronized boolean isDone() {
+			return mShouldStop && (mPendingCount == 0);
+		}
+
+		/**
+		 * Marks an event as processed.
+		 */
+		private synchronized void eventDone() {
+			mPendingCount--;
+			if (mPendingCount == 0) {
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Object[] item;
+				try {
+					item = mQueue.poll(STOP_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException exc) {
+					return;
+				}
+
+				if (item != null) {
+					mEntry.call((PluginEvent) item[0], item[1], item[2], item[3]);
+					eventDone();
+				} else if (isDone()) {
+					// All queued events are delivered
+					return;
+				}
+			}
+		}
+
+	}
+
 }
@@ -21,11 +21,20 @@
 package net.sf.regain.crawler.preparator;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
 
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
@@ -34,17 +43,54 @@ import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.config.PreparatorConfig;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.LimitedWriter;
 import net.sf.regain.crawler.document.RawDocument;
 
 /**
  * Prepares a document by calling an external program that writes the plain text
  * to Standard.out.
+ * <p>
+ * By default the program is started for every document. A command may also
+ * be marked as persistent: Then the program is started once and kept running.
+ * It gets the file names on Standard.in, one per line, and answers each with
+ * the plain text followed by a line holding the end marker. If the document
+ * can't be read, the program writes a line starting with the error marker
+ * (followed by the error message) before the end marker. Every preparator
+ * instance runs one program per command, because the preparator holds the
+ * results of one document at a time.
+ * <p>
+ * In both modes the output is read while the program is running. It may be
+ * limited in time and size.
  *
  * @author Til Schneider, www.murfman.de
  * @author Paul Ortyl
  */
 public class ExternalPreparator extends AbstractPreparator {
 
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(ExternalPreparator.class);
+
+  /** The default line a persistent program ends its answer with. */
+  private static final String DEFAULT_END_MARKER = "<<END>>";
+
+  /** The default start of the line a persistent program reports errors with. */
+  private static final String DEFAULT_ERROR_MARKER = "<<ERROR>>";
+
+  /** The longest time (in ms) to sleep between two checks whether a program exited. */
+  private static final int MAX_POLL_INTERVAL = 50;
+
+  /**
+   * The time (in ms) a persistent program gets to exit after its Standard.in
+   * was closed. After that it is killed.
+   */
+  private static final int STOP_GRACE_MILLIS = 5000;
+
+  /**
+   * The minimum number of characters kept of a line. Lines are kept a little
+   * longer than the text, so the markers are still found if the text was cut.
+   */
+  private static final int MIN_LINE_LENGTH = 1024;
+
   /** The command pattern. */
   private String[] mCommandLineArr;
 
@@ -52,6 +98,21 @@ public class ExternalPreparator extends AbstractPreparator {
 
   private boolean[] mCheckExitCodeArr;
 
+  /** The maximum time (in seconds) a command may take. 0 means no limit. */
+  private int[] mTimeoutArr;
+
+  /**
+   * The maximum number of characters taken from the output of a command. 0
+   * means no limit.
+   */
+  private int[] mMaxOutputLengthArr;
+
+  /**
+   * The programs of the persistent commands. Holds <code>null</code> for
+   * commands that are started for every document.
+   */
+  private PersistentProcess[] mProcessArr;
+
 
   /**
    * Creates a new instance of ExternalPreparator.
@@ -64,15 +125,21 @@ public class ExternalPreparator extends AbstractPreparator {
 
   @Override
   public void init(PreparatorConfig config) throws RegainException {
-    Map[] commandArr = config.getSectionsWithName("command");
-    mCommandLineArr = new String[commandArr.length];
-    mUrlRegexArr = new RE[commandArr.length];
-    mCheckExitCodeArr = new boolean[commandArr.length];
+    List<Map<String, String>> commandList = config.getSectionsWithNameList("command");
+    int commandCount = commandList.size();
+    mCommandLineArr = new String[commandCount];
+    mUrlRegexArr = new RE[commandCount];
+    mCheckExitCodeArr = new boolean[commandCount];
+    mTimeoutArr = new int[commandCount];
+    mMaxOutputLengthArr = new int[commandCount];
+    mProcessArr = new PersistentProcess[commandCount];
 
-    for (int i = 0; i < commandArr.length; i++) {
-      String urlPattern = (String) commandArr[i].get("urlPattern");
-      String commandLine = (String) commandArr[i].get("commandLine");
-      String checkExitCode = (String) commandArr[i].get("checkExitCode");
+    for (int i = 0; i < commandCount; i++) {
+      Map<String, String> command = commandList.get(i);
+      String urlPattern = command.get("urlPattern");
+      String commandLine = command.get("commandLine");
+      String checkExitCode = command.get("checkExitCode");
+      String persistent = command.get("persistent");
 
       if (urlPattern == null) {
         throw new RegainException("Error in ExternalPreparator config: No " +
@@ -92,6 +159,20 @@ public class ExternalPreparator extends AbstractPreparator {
       }
       mCommandLineArr[i] = commandLine;
       mCheckExitCodeArr[i] = (checkExitCode == null) ? true : checkExitCode.equals("true");
+      mTimeoutArr[i] = getIntParam(command, "timeout", 0);
+      mMaxOutputLengthArr[i] = getIntParam(command, "maxOutputLength", 0);
+
+      if ("true".equals(persistent)) {
+        String endMarker = command.get("endMarker");
+        String errorMarker = command.get("errorMarker");
+        mProcessArr[i] = new PersistentProcess(commandLine,
+            (endMarker == null) ? DEFAULT_END_MARKER : endMarker,
+            (errorMarker == null) ? DEFAULT_ERROR_MARKER : errorMarker);
+      }
+      if (command.get("poolSize") != null) {
+        mLog.warn("ExternalPreparator ignores poolSize, every preparator " +
+            "runs one program per command: " + commandLine);
+      }
     }
   }
 
@@ -108,57 +189,623 @@ public class ExternalPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public String[] getAcceptedMimeTypes() {
+    // We accept by URL -> accepts() has to be asked for every document
+    return null;
+  }
+
+
   // overridden super().super().prepare
   // @Override
   public void prepare(RawDocument rawDocument) throws RegainException {
     // Get the right command line
-    String commandLine = null;
-    boolean checkExitCode = true;
+    int commandIdx = -1;
     for (int i = 0; i < mUrlRegexArr.length; i++) {
       if (mUrlRegexArr[i].match(rawDocument.getUrl())) {
-        commandLine = mCommandLineArr[i];
-        checkExitCode = mCheckExitCodeArr[i];
+        commandIdx = i;
         break;
       }
     }
-    if (commandLine == null)
+    if (commandIdx == -1)
       throw new RegainException("Running external command failed: no Regex matched, so I don't know which command to use.");
 
-    // Execute the command
     String filename = rawDocument.getContentAsFile().getAbsolutePath();
-    String cmd = RegainToolkit.replace(commandLine, "${filename}", filename);
-    try {
-      Process process = Runtime.getRuntime().exec(cmd);
-      InputStream stream = process.getInputStream();
-      BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-      StringWriter writer = new StringWriter();
+    if (mProcessArr[commandIdx] == null) {
+      prepareWithNewProcess(commandIdx, filename);
+    } else {
+      setCleanedContent(mProcessArr[commandIdx].prepare(filename,
+          mTimeoutArr[commandIdx], getMaxOutputLength(commandIdx)));
+    }
+  }
 
-      RegainToolkit.pipe(reader, writer);
 
-      stream.close();
-      reader.close();
-      writer.close();
+  /**
+   * Prepares a document by starting the command for it.
+   *
+   * @param commandIdx The index of the command to use.
+   * @param filename The name of the file to prepare.
+   * @throws RegainException If the command failed.
+   */
+  private void prepareWithNewProcess(int commandIdx, String filename)
+    throws RegainException
+  {
+    // Execute the command
+    String cmd = RegainToolkit.replace(mCommandLineArr[commandIdx], "${filename}", filename);
+    Process process;
+    try {
+      process = startProcess(cmd);
+    } catch (IOException exc) {
+      throw new RegainException("Running external command failed: '" + cmd + "'", exc);
+    }
+
+    OutputReader output = new OutputReader(process.getInputStream());
+    output.start();
+    try {
+      process.getOutputStream().close();
+      OutputCollector collector = new OutputCollector(getMaxOutputLength(commandIdx), null, null);
+      boolean finished = collector.collect(output, mTimeoutArr[commandIdx]);
+      if (! finished) {
+        process.destroy();
+        output.interrupt();
+        throw new RegainException("External command took more than "
+            + mTimeoutArr[commandIdx] + " seconds: '" + cmd + "'");
+      }
 
       // Check the exit code
-      if (checkExitCode) {
-        int exitCode;
-        try {
-          exitCode = process.waitFor();
-        } catch (InterruptedException exc2) {
-          throw new RegainException("Waiting for termination of external command" +
-                  " failed: " + cmd, exc2);
-        }
+      if (mCheckExitCodeArr[commandIdx]) {
+        int exitCode = process.waitFor();
         if (exitCode != 0) {
           throw new RegainException("External command returned exit code "
               + exitCode + ": '" + cmd + "'");
         }
       }
 
-      String cleanedContent = writer.toString();
-      setCleanedContent(cleanedContent);
+      setCleanedContent(collector.getText());
     } catch (IOException exc) {
+      process.destroy();
+      output.interrupt();
       throw new RegainException("Running external command failed: '" + cmd + "'", exc);
+    } catch (InterruptedException exc) {
+      process.destroy();
+      output.interrupt();
+      Thread.currentThread().interrupt();
+      throw new RegainException("Waiting for termination of external command" +
+              " failed: " + cmd, exc);
     }
   }
 
+
+  /**
+   * Gets the maximum number of characters to read from the output of a
+   * command. This is the stricter one of the maxOutputLength of the command
+   * and the maximum content length of the preparator.
+   *
+   * @param commandIdx The index of the command.
+   * @return The maximum number of characters. 0 means no limit.
+   */
+  private int getMaxOutputLength(int commandIdx) {
+    return LimitedWriter.getStricterLimit(mMaxOutputLengthArr[commandIdx],
+        getMaxContentLength());
+  }
+
+
+  /**
+   * Stops the programs of the persistent commands.
+   *
+   * @throws RegainException If stopping failed.
+   */
+  @Override
+  public void close() throws RegainException {
+    if (mProcessArr == null) {
+      // init() was not called
+      return;
+    }
+
+    // Let all programs exit at the same time, so they share the grace period
+    for (PersistentProcess process : mProcessArr) {
+      if (process != null) {
+        process.closeInput();
+      }
+    }
+    long deadline = System.currentTimeMillis() + STOP_GRACE_MILLIS;
+    for (PersistentProcess process : mProcessArr) {
+      if (process != null) {
+        process.stop(deadline);
+      }
+    }
+  }
+
+
+  /**
+   * Starts a program and a thread reading its Standard.err. Otherwise a
+   * program writing much to Standard.err would block as soon as the pipe is
+   * full.
+   *
+   * @param commandLine The command line to start the program with.
+   * @return The process of the program.
+   * @throws IOException If starting the program failed.
+   */
+  private static Process startProcess(final String commandLine) throws IOException {
+    Process process = Runtime.getRuntime().exec(commandLine);
+
+    final BufferedReader errReader = new BufferedReader(
+        new InputStreamReader(process.getErrorStream()));
+    Thread thread = new Thread("External command stderr") {
+      @Override
+      public void run() {
+        try {
+          String line;
+          while ((line = errReader.readLine()) != null) {
+            if (mLog.isDebugEnabled()) {
+              mLog.debug("External command '" + commandLine + "' reports: " + line);
+            }
+          }
+        }
+        catch (IOException exc) {
+          // The program is gone
+        }
+        finally {
+          try { errReader.close(); } catch (IOException exc) {}
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+
+    return process;
+  }
+
+
+  /**
+   * Gets whether a process is still running.
+   *
+   * @param process The process to check.
+   * @return Whether the process is still running.
+   */
+  private static boolean isAlive(Process process) {
+    try {
+      process.exitValue();
+      return false;
+    }
+    catch (IllegalThreadStateException exc) {
+      return true;
+    }
+  }
+
+
+  /**
+   * A running program of a persistent command.
+   */
+  private static class PersistentProcess {
+
+    /** The command line to start the program with. */
+    private String mCommandLine;
+
+    /** The line the program ends its answer with. */
+    private String mEndMarker;
+
+    /** The start of the line the program reports errors with. */
+    private String mErrorMarker;
+
+    /** The process. Is <code>null</code> if the program is not running. */
+    private Process mProcess;
+
+    /** The writer for Standard.in of the program. */
+    private BufferedWriter mWriter;
+
+    /** The reader for Standard.out of the program. */
+    private OutputReader mOutput;
+
+
+    /**
+     * Creates a new instance of PersistentProcess. The program is started
+     * when it is needed first.
+     *
+     * @param commandLine The command line to start the program with.
+     * @param endMarker The line the program ends its answer with.
+     * @param errorMarker The start of the line the program reports errors
+     *        with.
+     */
+    public PersistentProcess(String commandLine, String endMarker,
+      String errorMarker)
+    {
+      mCommandLine = commandLine;
+      mEndMarker = endMarker;
+      mErrorMarker = errorMarker;
+    }
+
+
+    /**
+     * Lets the program prepare a file. Starts the program if it is not
+     * running.
+     *
+     * @param filename The name of the file to prepare.
+     * @param timeoutSecs The maximum time (in seconds) the program may take.
+     *        0 means no limit.
+     * @param maxOutputLength The maximum number of characters to take from
+     *        the output. 0 means no limit.
+     * @return The plain text of the file.
+     * @throws RegainException If the program failed.
+     */
+    public String prepare(String filename, int timeoutSecs, int maxOutputLength)
+      throws RegainException
+    {
+      try {
+        if (mProcess == null) {
+          mLog.info("Starting external command: '" + mCommandLine + "'");
+          mProcess = startProcess(mCommandLine);
+          mWriter = new BufferedWriter(new OutputStreamWriter(mProcess.getOutputStream()));
+          mOutput = new OutputReader(mProcess.getInputStream());
+          mOutput.start();
+        }
+
+        mWriter.write(filename);
+        mWriter.newLine();
+        mWriter.flush();
+
+        OutputCollector collector = new OutputCollector(maxOutputLength,
+            mEndMarker, mErrorMarker);
+        if (! collector.collect(mOutput, timeoutSecs)) {
+          // The program hangs -> Kill it, it is started again for the next file
+          kill();
+          throw new RegainException("External command took more than "
+              + timeoutSecs + " seconds for " + filename + ": '" + mCommandLine + "'");
+        }
+        if (collector.getError() != null) {
+          throw new RegainException("External command failed for " + filename
+              + ": " + collector.getError());
+        }
+        return collector.getText();
+      }
+      catch (IOException exc) {
+        kill();
+        throw new RegainException("Running external command failed: '"
+            + mCommandLine + "'", exc);
+      }
+      catch (InterruptedException exc) {
+        kill();
+        Thread.currentThread().interrupt();
+        throw new RegainException("Waiting for external command failed: '"
+            + mCommandLine + "'", exc);
+      }
+    }
+
+
+    /**
+     * Asks the program to exit by closing its Standard.in.
+     */
+    public void closeInput() {
+      if (mProcess != null) {
+        try {
+          mWriter.close();
+        }
+        catch (IOException exc) {
+          // The program is already gone
+        }
+      }
+    }
+
+
+    /**
+     * Stops the program. It gets the time until the deadline to exit after
+     * its Standard.in was closed (see {@link #closeInput()}), then it is
+     * killed.
+     *
+     * @param deadline The time (in ms since 1970) when to kill the program.
+     */
+    public void stop(long deadline) {
+      if (mProcess != null) {
+        // NOTE: Process.waitFor(long, TimeUnit) is not available in Java 7
+        try {
+          while (isAlive(mProcess) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(MAX_POLL_INTERVAL);
+          }
+        }
+        catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+        }
+        if (isAlive(mProcess)) {
+          mLog.warn("External command did not exit, killing it: '"
+              + mCommandLine + "'");
+        }
+        kill();
+      }
+    }
+
+
+    /**
+     * Kills the program.
+     */
+    private void kill() {
+      if (mProcess != null) {
+        mProcess.destroy();
+        mOutput.interrupt();
+        mProcess = null;
+        mWriter = null;
+        mOutput = null;
+      }
+    }
+
+  }
+
+
+  /**
+   * Reads the output of a program in its own thread. So waiting for the output
+   * can be limited in time without polling the program.
+   * <p>
+   * The thread ends at the end of the output or when it is interrupted.
+   */
+  private static class OutputReader extends Thread {
+
+    /** Marks the end of the output in the queue. */
+    private static final char[] END_OF_OUTPUT = new char[0];
+
+    /** The maximum number of read blocks waiting to be collected. */
+    private static final int MAX_QUEUED_BLOCKS = 16;
+
+    /** The reader for the output. */
+    private Reader mReader;
+
+    /** The read blocks waiting to be collected. */
+    private BlockingQueue<char[]> mQueue = new ArrayBlockingQueue<char[]>(MAX_QUEUED_BLOCKS);
+
+    /** The error reading failed with. Is <code>null</code> if there was none. */
+    private volatile IOException mError;
+
+
+    /**
+     * Creates a new instance of OutputReader. The reading starts when the
+     * thread is started.
+     *
+     * @param in The stream to read the output from.
+     */
+    public OutputReader(InputStream in) {
+      super("External command stdout");
+      setDaemon(true);
+      mReader = new InputStreamReader(in);
+    }
+
+
+    @Override
+    public void run() {
+      char[] buffer = new char[4096];
+      try {
+        try {
+          int count;
+          while ((count = mReader.read(buffer)) != -1) {
+            mQueue.put(Arrays.copyOf(buffer, count));
+          }
+        }
+        catch (IOException exc) {
+          mError = exc;
+        }
+        mQueue.put(END_OF_OUTPUT);
+      }
+      catch (InterruptedException exc) {
+        // The output is not needed any more
+      }
+      finally {
+        try { mReader.close(); } catch (IOException exc) {}
+      }
+    }
+
+
+    /**
+     * Gets the next block of the output.
+     *
+     * @param deadline The time (in ms since 1970) when to stop waiting.
+     *        <code>Long.MAX_VALUE</code> means no limit.
+     * @return The next block, an empty block at the end of the output or
+     *         <code>null</code> if the time ran out.
+     * @throws IOException If reading failed.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public char[] read(long deadline) throws IOException, InterruptedException {
+      char[] block;
+      if (deadline == Long.MAX_VALUE) {
+        block = mQueue.take();
+      } else {
+        block = mQueue.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+      }
+
+      if ((block == END_OF_OUTPUT) && (mError != null)) {
+        throw mError;
+      }
+      return block;
+    }
+
+  }
+
+
+  /**
+   * Collects the output of a program while it is running.
+   */
+  private static class OutputCollector {
+
+    /** The maximum number of characters to collect. 0 means no limit. */
+    private int mMaxLength;
+
+    /**
+     * The line the output ends with. If <code>null</code> the output ends
+     * when the program exits.
+     */
+    private String mEndMarker;
+
+    /**
+     * The start of the line the program reports errors with. May be
+     * <code>null</code>.
+     */
+    private String mErrorMarker;
+
+    /** The collected text. */
+    private StringBuilder mText = new StringBuilder();
+
+    /** The current line. */
+    private StringBuilder mLine = new StringBuilder();
+
+    /** Whether the text was cut because it was too long. */
+    private boolean mTruncated;
+
+    /** The error the program reported. Is <code>null</code> if none. */
+    private String mError;
+
+    /** Whether the whole output was read. */
+    private boolean mDone;
+
+
+    /**
+     * Creates a new instance of OutputCollector.
+     *
+     * @param maxLength The maximum number of characters to collect. 0 means
+     *        no limit.
+     * @param endMarker The line the output ends with. If <code>null</code>
+     *        the output ends when the program exits.
+     * @param errorMarker The start of the line the program reports errors
+     *        with. May be <code>null</code>.
+     */
+    public OutputCollector(int maxLength, String endMarker, String errorMarker) {
+      mMaxLength = maxLength;
+      mEndMarker = endMarker;
+      mErrorMarker = errorMarker;
+    }
+
+
+    /**
+     * Reads the output of a program.
+     * <p>
+     * Waiting for the output can be stopped by the timeout or by interrupting
+     * the thread.
+     *
+     * @param output The reader for the output.
+     * @param timeoutSecs The maximum time (in seconds) to wait for the
+     *        output. 0 means no limit.
+     * @return Whether the whole output was read. Is <code>false</code> if the
+     *         time ran out.
+     * @throws IOException If reading failed or if the program exited before
+     *         writing the end marker.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public boolean collect(OutputReader output, int timeoutSecs)
+      throws IOException, InterruptedException
+    {
+      long deadline = (timeoutSecs > 0)
+          ? System.currentTimeMillis() + timeoutSecs * 1000L : Long.MAX_VALUE;
+      while (! mDone) {
+        char[] block = output.read(deadline);
+        if (block == null) {
+          return false;
+        } else if (block.length == 0) {
+          endOfOutput();
+        } else {
+          addChars(block, block.length);
+        }
+      }
+
+      if (mTruncated && mLog.isDebugEnabled()) {
+        mLog.debug("Output of external command was cut after " + mMaxLength
+            + " characters");
+      }
+      return true;
+    }
+
+
+    /**
+     * Adds read characters.
+     *
+     * @param buffer The buffer holding the characters.
+     * @param count The number of characters in the buffer.
+     */
+    private void addChars(char[] buffer, int count) {
+      for (int i = 0; (i < count) && ! mDone; i++) {
+        char c = buffer[i];
+        if (c == '\n') {
+          int length = mLine.length();
+          if ((length > 0) && (mLine.charAt(length - 1) == '\r')) {
+            mLine.setLength(length - 1);
+          }
+          addLine(mLine.toString());
+          mLine.setLength(0);
+        }
+        else if ((mMaxLength <= 0) || (mLine.length() < Math.max(mMaxLength, MIN_LINE_LENGTH))) {
+          mLine.append(c);
+        }
+      }
+    }
+
+
+    /**
+     * Handles the end of the output.
+     *
+     * @throws IOException If the end marker is missing.
+     */
+    private void endOfOutput() throws IOException {
+      if (mEndMarker != null) {
+        throw new IOException("External command exited without writing the end marker");
+      }
+      if (mLine.length() > 0) {
+        addText(mLine.toString());
+        mLine.setLength(0);
+      }
+      mDone = true;
+    }
+
+
+    /**
+     * Handles a line of the output.
+     *
+     * @param line The line.
+     */
+    private void addLine(String line) {
+      if ((mEndMarker != null) && line.equals(mEndMarker)) {
+        mDone = true;
+      } else if ((mErrorMarker != null) && line.startsWith(mErrorMarker)) {
+        mError = line.substring(mErrorMarker.length()).trim();
+      } else {
+        addText(line);
+        addText("\n");
+      }
+    }
+
+
+    /**
+     * Adds text to the collected text. Cuts the text if it gets too long.
+     *
+     * @param text The text to add.
+     */
+    private void addText(String text) {
+      if (mTruncated) {
+        return;
+      }
+      if ((mMaxLength > 0) && (mText.length() + text.length() > mMaxLength)) {
+        mText.append(text, 0, mMaxLength - mText.length());
+        mTruncated = true;
+      } else {
+        mText.append(text);
+      }
+    }
+
+
+    /**
+     * Gets the collected text.
+     *
+     * @return The collected text.
+     */
+    public String getText() {
+      return mText.toString();
+    }
+
+
+    /**
+     * Gets the error the program reported.
+     *
+     * @return The error message or <code>null</code> if the program reported
+     *         no error.
+     */
+    public String getError() {
+      return mError;
+    }
+
+  }
+
 }
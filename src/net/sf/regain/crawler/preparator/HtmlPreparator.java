@@ -20,10 +20,17 @@
  */
 package net.sf.regain.crawler.preparator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.sf.regain.RegainException;
 import net.sf.regain.crawler.CrawlerToolkit;
 import net.sf.regain.crawler.config.PreparatorConfig;
@@ -32,13 +39,12 @@ import net.sf.regain.crawler.document.PathElement;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.preparator.html.HtmlContentExtractor;
 import net.sf.regain.crawler.preparator.html.HtmlPathExtractor;
-import net.sf.regain.crawler.preparator.html.LinkVisitor;
+import net.sf.regain.crawler.preparator.html.HtmlDocumentVisitor;
 import org.apache.log4j.Logger;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 import org.htmlparser.Parser;
 import org.htmlparser.Tag;
-import org.htmlparser.beans.StringBean;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
 import org.htmlparser.tags.BaseHrefTag;
@@ -65,6 +71,17 @@ public class HtmlPreparator extends AbstractPreparator {
    * Die HtmlPathExtractor, die den jeweiligen Pfad aus den HTML-Dokumenten extrahieren.
    */
   private List<HtmlPathExtractor> mPathExtractorList;
+  /**
+   * The number of bytes at the start of a page that are scanned for the
+   * charset.
+   */
+  private static final int CHARSET_SNIFF_LENGTH = 2048;
+  /**
+   * The pattern finding the charset of a meta tag or of the XML declaration.
+   */
+  private static final Pattern CHARSET_PATTERN = Pattern.compile(
+          "(?:<meta[^>]+charset\\s*=\\s*[\"']?|<\\?xml[^>]+encoding\\s*=\\s*[\"'])"
+          + "([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
 
   /**
    * Creates a new instance of HtmlPreparator.
@@ -161,9 +178,8 @@ public class HtmlPreparator extends AbstractPreparator {
    */
   @Override
   public void prepare(RawDocument rawDocument) throws RegainException {
-    // Get the title
-    String title = extractHtmlTitle(rawDocument.getContentAsString());
-    setTitle(title);
+    // Decode the page only once, with the charset it declares
+    String content = rawDocument.getContentAsString(detectCharset(rawDocument));
 
     // Find the content extractor that is responsible for this document
     HtmlContentExtractor contentExtractor = null;
@@ -175,105 +191,80 @@ public class HtmlPreparator extends AbstractPreparator {
       }
     }
 
-    // Cut the content and extract the headlines
-    String cuttedContent;
+    // Find the content part and extract the headlines
+    int contentStart = 0;
+    int contentEnd = content.length();
     String headlines;
-    boolean isContentCutted = false;
     if (contentExtractor == null) {
       // There is no HtmlContentExtractor responsible for this document
       if (mLog.isDebugEnabled()) {
         mLog.debug("No HTML content extractor is responsible for " + rawDocument.getUrl());
       }
 
-      cuttedContent = rawDocument.getContentAsString();
       headlines = null;
     } else {
-      cuttedContent = contentExtractor.extractContent(rawDocument);
-      headlines = contentExtractor.extractHeadlines(cuttedContent);
-      if (!cuttedContent.equals(rawDocument.getContentAsString())) {
-        isContentCutted = true;
-      }
+      int[] fragment = contentExtractor.findFragment(rawDocument);
+      contentStart = fragment[0];
+      contentEnd = fragment[1];
+
+      boolean isContentCutted = (contentStart != 0) || (contentEnd != content.length());
+      headlines = contentExtractor.extractHeadlines(isContentCutted
+          ? content.substring(contentStart, contentEnd) : content);
     }
 
-    // Using HTMLParser to extract the content
-    String cleanedContent = null;
-    Page htmlPage = new Page(cuttedContent, "UTF-8");
+    // Parse the page once for the text of the content part, the title and
+    // the links of the whole page
+    Page htmlPage = new Page(content, "UTF-8");
     Parser parser = new Parser(new Lexer(htmlPage));
-    StringBean stringBean = new StringBean();
-
-    // replace multiple whitespace with one whitespace
-    stringBean.setCollapse(true);
-    // Do not extract URLs
-    stringBean.setLinks(false);
-    // replace &nbsp; with whitespace
-    stringBean.setReplaceNonBreakingSpaces(true);
-
+    HtmlDocumentVisitor visitor = new HtmlDocumentVisitor(contentStart, contentEnd);
     try {
-      // Parse the content
-      parser.visitAllNodesWith(stringBean);
-      cleanedContent = stringBean.getStrings();
-
+      parser.visitAllNodesWith(visitor);
     } catch (ParserException ex) {
       throw new RegainException("Error while parsing content: ", ex);
     }
 
     // The result of parsing the html-content
-    setCleanedContent(cleanedContent);
+    setTitle(visitor.getTitle());
+    setCleanedContent(visitor.getStrings());
 
     // Extract links
-    LinkVisitor linkVisitor = new LinkVisitor();
-    if (isContentCutted) {
-      // This means a new parser run which is expensive but neccessary
-      htmlPage = new Page(rawDocument.getContentAsString(), "UTF-8");
-      parser = new Parser(new Lexer(htmlPage));
+    ArrayList<Tag> links = visitor.getLinkTags();
+    ArrayList<Tag> frames = visitor.getFrameTags();
+    if (visitor.getBaseTag() != null) {
+      htmlPage.setBaseUrl(((BaseHrefTag) visitor.getBaseTag()).getBaseUrl());
     } else {
-      parser.reset();
+      htmlPage.setBaseUrl(rawDocument.getUrl());
     }
+    mLog.debug("Set base URL to: " + htmlPage.getBaseUrl());
 
-    try {
-      // Parse the content
-      parser.visitAllNodesWith(linkVisitor);
-      ArrayList<Tag> links = linkVisitor.getLinks();
-      ArrayList<Tag> frames = linkVisitor.getFrames();
-      if (linkVisitor.getBaseTag() != null) {
-        htmlPage.setBaseUrl(((BaseHrefTag) linkVisitor.getBaseTag()).getBaseUrl());
-      } else {
-        htmlPage.setBaseUrl(rawDocument.getUrl());
-      }
-      mLog.debug("Set base URL to: " + htmlPage.getBaseUrl());
-
-      // Iterate over all links found
-      Iterator<Tag> linksIter = links.iterator();
-      while (linksIter.hasNext()) {
-        LinkTag currTag = ((LinkTag) linksIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.extractLink());
+    // Iterate over all links found
+    Iterator<Tag> linksIter = links.iterator();
+    while (linksIter.hasNext()) {
+      LinkTag currTag = ((LinkTag) linksIter.next());
+      String link = CrawlerToolkit.removeAnchor(currTag.extractLink());
 
-        // find urls which do not end with an '/' but are a directory
-        link = CrawlerToolkit.completeDirectory(link);
+      // find urls which do not end with an '/' but are a directory
+      link = CrawlerToolkit.completeDirectory(link);
 
-        //link = CrawlerToolkit.toAbsoluteUrl(link, rawDocument.getUrl());
-        String linkText = (currTag.getLinkText() == null) ? "" : currTag.getLinkText();
+      //link = CrawlerToolkit.toAbsoluteUrl(link, rawDocument.getUrl());
+      String linkText = (currTag.getLinkText() == null) ? "" : currTag.getLinkText();
 
-        // store all http(s)-links the link
-        if (currTag.isHTTPLikeLink()) {
-          rawDocument.addLink(link, linkText);
-        }
+      // store all http(s)-links the link
+      if (currTag.isHTTPLikeLink()) {
+        rawDocument.addLink(link, linkText);
       }
+    }
 
-      // Iterate over all frames found
-      Iterator<Tag> framesIter = frames.iterator();
-      while (framesIter.hasNext()) {
-        FrameTag currTag = ((FrameTag) framesIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.getFrameLocation());
-
-        // find urls which do not end with an '/' but are a directory
-        link = CrawlerToolkit.completeDirectory(link);
+    // Iterate over all frames found
+    Iterator<Tag> framesIter = frames.iterator();
+    while (framesIter.hasNext()) {
+      FrameTag currTag = ((FrameTag) framesIter.next());
+      String link = CrawlerToolkit.removeAnchor(currTag.getFrameLocation());
 
-        rawDocument.addLink(link, "frame");
-      }
+      // find urls which do not end with an '/' but are a directory
+      link = CrawlerToolkit.completeDirectory(link);
 
-    } catch (ParserException ex) {
-      throw new RegainException("Error while extracting links: ", ex);
+      rawDocument.addLink(link, "frame");
     }
 
     if (headlines != null) {
@@ -302,63 +293,69 @@ public class HtmlPreparator extends AbstractPreparator {
   }
 
   /**
-   * Extrahiert den Titel aus einem HTML-Dokument.
-   *
-   * @param content Der Inhalt (die HTML-Rohdaten) des Dokuments, dessen Titel ermittelt werden soll.
+   * Detects the charset of a HTML page from its first bytes.
+   * <p>
+   * A byte order mark is used first. Otherwise the charset declared by a meta
+   * tag or by the XML declaration is used. The first bytes are scanned as
+   * ISO-8859-1, which is sufficient to read these ASCII declarations.
    *
-   * @return Den Titel des HTML-Dokuments.
+   * @param rawDocument The page to detect the charset for.
+   * @return The name of the charset or <code>null</code> if the page declares
+   *         no (known) charset.
    */
-  private String extractHtmlTitle(String content) {
-    final String TITLE_START_TAG = "<title>";
-
-    // NOTE: We don't use a regex here, beause it's far too slow and it doesn't
-    //       stop when the body begins.
-    int pos = -1;
-    int startPos = -1;
-    while ((pos = content.indexOf('<', pos + 1)) != -1) {
-      // A tag starts here -> Check whether this is the title tag
-      if (isIndexOf(content, TITLE_START_TAG, pos)) {
-        // The title starts here -> Remember the start pos
-        startPos = pos + TITLE_START_TAG.length();
-        break;
-      } else if (isIndexOf(content, "<body", pos)) {
-        // The body starts here -> Give up
-        break;
+  private String detectCharset(RawDocument rawDocument) {
+    byte[] head = new byte[CHARSET_SNIFF_LENGTH];
+    int length = 0;
+    InputStream stream = null;
+    try {
+      stream = rawDocument.getContentAsStream();
+      int read;
+      while ((length < head.length)
+        && ((read = stream.read(head, length, head.length - length)) != -1))
+      {
+        length += read;
+      }
+    } catch (Exception exc) {
+      mLog.debug("Reading the head of " + rawDocument.getUrl() + " failed", exc);
+      return null;
+    } finally {
+      if (stream != null) {
+        try { stream.close(); } catch (IOException exc) {}
       }
     }
 
-    // Scan until the end of the title
-    if (startPos != -1) {
-      pos = startPos - 1;
-      while ((pos = content.indexOf('<', pos + 1)) != -1) {
-        if (isIndexOf(content, "</title>", pos)) {
-          // We found the title's end tag -> extract the title
-          return content.substring(startPos, pos);
-        } else if (pos > startPos + 1000) {
-          // This is too long -> There won't come a end tag -> Give up
-          break;
+    // Check the byte order mark
+    if ((length >= 3) && ((head[0] & 0xFF) == 0xEF) && ((head[1] & 0xFF) == 0xBB)
+      && ((head[2] & 0xFF) == 0xBF))
+    {
+      return "UTF-8";
+    } else if ((length >= 2) && ((head[0] & 0xFF) == 0xFE) && ((head[1] & 0xFF) == 0xFF)) {
+      return "UTF-16BE";
+    } else if ((length >= 2) && ((head[0] & 0xFF) == 0xFF) && ((head[1] & 0xFF) == 0xFE)) {
+      return "UTF-16LE";
+    }
+
+    // Look for a declared charset
+    String headAsString;
+    try {
+      headAsString = new String(head, 0, length, "ISO-8859-1");
+    } catch (UnsupportedEncodingException exc) {
+      return null;
+    }
+    Matcher matcher = CHARSET_PATTERN.matcher(headAsString);
+    if (matcher.find()) {
+      String charsetName = matcher.group(1);
+      try {
+        if (Charset.isSupported(charsetName)) {
+          return charsetName;
         }
+      } catch (IllegalCharsetNameException exc) {
+        // Ignore the invalid charset
       }
+      mLog.debug("Ignoring unknown charset '" + charsetName + "' of "
+          + rawDocument.getUrl());
     }
 
     return null;
   }
-
-  /**
-   * Checks whether an expected substring is at a certain position.
-   *
-   * @param content The String to check the excepted substring.
-   * @param expected The expected substring.
-   * @param pos The position where the substring is expected.
-   * @return Whether the expected substring is really at this position.
-   */
-  private boolean isIndexOf(String content, String expected, int pos) {
-    if (content.length() < pos + expected.length()) {
-      // The expected String doesn't match here
-      return false;
-    }
-
-    String substring = content.substring(pos, pos + expected.length());
-    return expected.equalsIgnoreCase(substring);
-  }
 }
@@ -35,6 +35,9 @@ import net.sf.regain.crawler.document.RawDocument;
  * <p>
  * The following information will be extracted:
  * filename
+ * <p>
+ * The content of the entries is indexed by the
+ * {@link net.sf.regain.crawler.ArchiveIndexer} if this is configured.
  *
  * @author Thomas Tesche (thtesche), https://github.com/thtesche
  */
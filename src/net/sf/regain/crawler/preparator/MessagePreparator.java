@@ -43,6 +43,7 @@ import javax.mail.Session;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.MimeMessage;
 import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
@@ -86,7 +87,7 @@ public class MessagePreparator extends AbstractPreparator {
 
     Properties mailProperties = System.getProperties();
     Session session = Session.getInstance(mailProperties, null);
-    SharedByteArrayInputStream mimeInput = new SharedByteArrayInputStream(rawDocument.getContent());
+    InputStream mimeInput = null;
 
     Collection<String> textParts = new ArrayList<String>();
     Collection<String> attachments = new ArrayList<String>();
@@ -96,6 +97,13 @@ public class MessagePreparator extends AbstractPreparator {
     StringBuffer keyText = new StringBuffer();
 
     try {
+      // NOTE: A shared stream lets the message read its parts directly from
+      //       the source, so a message in a file is not loaded into the heap
+      if (rawDocument.isContentInFile()) {
+        mimeInput = new SharedFileInputStream(rawDocument.getContentAsFile());
+      } else {
+        mimeInput = new SharedByteArrayInputStream(rawDocument.getContent());
+      }
       MimeMessage message = new MimeMessage(session, mimeInput);
 
       resultText.append("Subject: " + message.getSubject()).append("\n");
@@ -249,6 +257,11 @@ public class MessagePreparator extends AbstractPreparator {
 
     } catch (IOException ex) {
       mLog.error("Could not parse mime message for parsing.", ex);
+
+    } finally {
+      if (mimeInput != null) {
+        try { mimeInput.close(); } catch (IOException exc) {}
+      }
     }
 
     if (textParts.size() > 0) {
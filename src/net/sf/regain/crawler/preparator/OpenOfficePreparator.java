@@ -23,14 +23,14 @@ package net.sf.regain.crawler.preparator;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import net.sf.regain.RegainException;
-import net.sf.regain.RegainToolkit;
-import net.sf.regain.crawler.CrawlerToolkit;
 import net.sf.regain.crawler.document.AbstractPreparator;
 import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.util.io.MarkupStripper;
 
 /**
  * Preparates OpenOffice, StarOffice and OpenDocument documents.
@@ -131,11 +131,13 @@ public class OpenOfficePreparator extends AbstractPreparator {
         throw new RegainException("Opening OpenOffice file failed (no content.xml found inside): " +
                 file.getAbsolutePath());
 
+    // Clean the content from tags while reading it. This way the content.xml
+    // doesn't have to be in memory as String.
     InputStream xmlStream = null;
-    String content;
+    StringBuilder cleanedContent = new StringBuilder();
     try {
       xmlStream = zipFile.getInputStream(entry);
-      content = RegainToolkit.readStringFromStream(xmlStream, "UTF-8");
+      MarkupStripper.strip(new InputStreamReader(xmlStream, "UTF-8"), cleanedContent);
     }
     catch (IOException exc) {
       throw new RegainException("Reading text from OpenOffice file failed: " +
@@ -148,9 +150,7 @@ public class OpenOfficePreparator extends AbstractPreparator {
       try { zipFile.close(); } catch (IOException exc) {}
     }
 
-    // Clean the content from tags
-    String cleanedContent = CrawlerToolkit.cleanFromHtmlTags(content);
-    setCleanedContent(cleanedContent);
+    setCleanedContent(cleanedContent.toString());
   }
 
 }
@@ -20,16 +20,21 @@
  */
 package net.sf.regain.crawler.preparator;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 
 import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorConfig;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.LimitedWriter;
 import net.sf.regain.crawler.document.RawDocument;
 
 import org.apache.pdfbox.exceptions.CryptographyException;
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
@@ -45,6 +50,12 @@ import org.apache.pdfbox.util.PDFTextStripper;
  * <p>
  * Dabei werden die Rohdaten des Dokuments von Formatierungsinformation befreit,
  * es wird der Titel extrahiert.
+ * <p>
+ * The text is extracted page by page. The extraction stops when the
+ * configured number of pages or characters is reached, so huge documents
+ * only cost as much as their first part. The annotations are collected in the
+ * same pass. Large documents may be parsed using a scratch file instead of
+ * the heap.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -53,6 +64,24 @@ public class PdfBoxPreparator extends AbstractPreparator {
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(PdfBoxPreparator.class);
 
+  /** The maximum number of pages to extract. 0 means no limit. */
+  private int mMaxPages;
+
+  /** The maximum number of characters to extract. 0 means no limit. */
+  private int mMaxChars;
+
+  /**
+   * Whether the text should be sorted by its position on the page. Gives a
+   * better text for multi-column layouts but costs a lot of CPU.
+   */
+  private boolean mSortByPosition = true;
+
+  /**
+   * The size (in bytes) from which on a document is parsed using a scratch
+   * file. 0 means never.
+   */
+  private int mScratchFileThreshold;
+
   /**
    * Creates a new instance of PdfBoxPreparator.
    *
@@ -62,6 +91,26 @@ public class PdfBoxPreparator extends AbstractPreparator {
     super("application/pdf");
   }
 
+  /**
+   * Reads the limits of the extraction from the config.
+   *
+   * @param config The configuration.
+   * @throws RegainException If the configuration has an error.
+   */
+  @Override
+  public void init(PreparatorConfig config) throws RegainException {
+    Map<String, String> main = config.getSectionWithName("main");
+    if (main != null) {
+      mMaxPages = getIntParam(main, "maxPages", 0);
+      mMaxChars = getIntParam(main, "maxChars", 0);
+      mScratchFileThreshold = getIntParam(main, "scratchFileThreshold", 0);
+      String sortByPosition = main.get("sortByPosition");
+      if (sortByPosition != null) {
+        mSortByPosition = Boolean.parseBoolean(sortByPosition.trim());
+      }
+    }
+  }
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
@@ -69,19 +118,28 @@ public class PdfBoxPreparator extends AbstractPreparator {
    *
    * @throws RegainException Wenn die Pr�paration fehl schlug.
    */
-  @SuppressWarnings("unchecked")
   public void prepare(RawDocument rawDocument) throws RegainException {
     String url = rawDocument.getUrl();
 
     InputStream stream = null;
     PDDocument pdfDocument = null;
+    File scratchFile = null;
+    RandomAccessFile scratch = null;
 
     try {
       // Create a InputStream that reads the content.
       stream = rawDocument.getContentAsStream();
 
       // Parse the content
-      PDFParser parser = new PDFParser(stream);
+      PDFParser parser;
+      if ((mScratchFileThreshold > 0) && (rawDocument.getLength() >= mScratchFileThreshold)) {
+        // Keep the streams of the document in a file instead of the heap
+        scratchFile = File.createTempFile("regain_pdf_", ".tmp");
+        scratch = new RandomAccessFile(scratchFile, "rw");
+        parser = new PDFParser(stream, scratch);
+      } else {
+        parser = new PDFParser(stream);
+      }
       parser.parse();
       pdfDocument = parser.getPDDocument();
 
@@ -97,35 +155,27 @@ public class PdfBoxPreparator extends AbstractPreparator {
         }
       }
 
-      // Extract the text with a utility class
-      PDFTextStripper stripper = new PDFTextStripper();
+      // Extract the text and the annotations page by page
+      int maxChars = LimitedWriter.getStricterLimit(mMaxChars, getMaxContentLength());
+      StringBuilder text = new StringBuilder();
+      LimitedTextStripper stripper = new LimitedTextStripper(maxChars);
       stripper.setSuppressDuplicateOverlappingText(false);
-      stripper.setSortByPosition(true);
+      stripper.setSortByPosition(mSortByPosition);
       stripper.setStartPage(1);
-      stripper.setEndPage(Integer.MAX_VALUE);
-
-      setCleanedContent(stripper.getText(pdfDocument).replaceAll("visiblespace", " "));
-
-      // extract annotations
-      StringBuilder annotsResult = new StringBuilder();
-      List allPages = pdfDocument.getDocumentCatalog().getAllPages();
-      for (int i = 0; i < allPages.size(); i++) {
-        int pageNum = i + 1;
-        PDPage page = (PDPage) allPages.get(i);
-        List<PDAnnotation> annotations = page.getAnnotations();
-        if (annotations.size() < 1) {
-          continue;
-        }
-        mLog.debug("Total annotations = " + annotations.size());
-        mLog.debug("\nProcess Page " + pageNum + "...");
-        for (PDAnnotation annotation : annotations) {
-          if (annotation.getContents() != null && annotation.getContents().length() > 0) {
-            annotsResult.append(annotation.getContents());
-            annotsResult.append(" ");
-            mLog.debug("Text from annotation: " + annotation.getContents());
-          }
-        }
+      stripper.setEndPage((mMaxPages > 0) ? mMaxPages : Integer.MAX_VALUE);
+      try {
+        stripper.writeText(pdfDocument, new LimitedWriter(text, maxChars));
+      } catch (LimitedWriter.LimitReachedException exc) {
+        mLog.debug("Stopped text extraction after " + maxChars
+                + " characters: " + url);
+      }
+
+      if (text.indexOf("visiblespace") != -1) {
+        setCleanedContent(text.toString().replaceAll("visiblespace", " "));
+      } else {
+        setCleanedContent(text.toString());
       }
+      StringBuilder annotsResult = stripper.getAnnotations();
       if (annotsResult.length() > 0) {
         setCleanedContent(getCleanedContent() + " Annotations " + annotsResult.toString());
       }
@@ -184,6 +234,73 @@ public class PdfBoxPreparator extends AbstractPreparator {
         } catch (Exception exc) {
         }
       }
+      if (scratch != null) {
+        try {
+          scratch.close();
+        } catch (Exception exc) {
+        }
+      }
+      if ((scratchFile != null) && ! scratchFile.delete()) {
+        scratchFile.deleteOnExit();
+      }
+    }
+  }
+
+
+  /**
+   * A text stripper that collects the annotations of each page after its
+   * text was extracted.
+   */
+  private static class LimitedTextStripper extends PDFTextStripper {
+
+    /** The maximum number of characters to collect. 0 means no limit. */
+    private int mMaxChars;
+
+    /** The collected annotations. */
+    private StringBuilder mAnnotations = new StringBuilder();
+
+
+    /**
+     * Creates a new instance of LimitedTextStripper.
+     *
+     * @param maxChars The maximum number of characters of annotations to
+     *        collect. 0 means no limit.
+     * @throws IOException If loading the properties of the stripper failed.
+     */
+    public LimitedTextStripper(int maxChars) throws IOException {
+      mMaxChars = maxChars;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void endPage(PDPage page) throws IOException {
+      super.endPage(page);
+
+      List<PDAnnotation> annotations = page.getAnnotations();
+      for (PDAnnotation annotation : annotations) {
+        if ((mMaxChars > 0) && (mAnnotations.length() >= mMaxChars)) {
+          return;
+        }
+        String contents = annotation.getContents();
+        if (contents != null && contents.length() > 0) {
+          mAnnotations.append(contents);
+          mAnnotations.append(" ");
+          mLog.debug("Text from annotation: " + contents);
+        }
+      }
+    }
+
+
+    /**
+     * Gets the collected annotations.
+     *
+     * @return The annotations.
+     */
+    public StringBuilder getAnnotations() {
+      return mAnnotations;
     }
+
   }
+
 }
@@ -27,8 +27,11 @@ import java.util.HashMap;
 import java.util.Map;
 
 import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorConfig;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.LimitedWriter;
 import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.preparator.poi.SpreadsheetExtractor;
 
 import org.apache.log4j.Logger;
 import org.apache.poi.POITextExtractor;
@@ -42,6 +45,10 @@ import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
  * <p>
  * The preparator use the generic extractor possibilities of POI.
  * Contributions from Jorge Corona.
+ * <p>
+ * Large spreadsheets are read with the event API of POI instead (see
+ * {@link SpreadsheetExtractor}), because the usermodel needs many times the
+ * size of the file in memory.
  *
  * @author Thomas Tesche (thtesche), https://github.com/thtesche
  */
@@ -50,6 +57,26 @@ public class PoiMsOfficePreparator extends AbstractPreparator {
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(PoiMsOfficePreparator.class);
 
+  /** The mime types of Excel 97-2003 workbooks. */
+  private static final String[] XLS_MIME_TYPES = {
+    "application/msexcel", "application/vnd.ms-excel"
+  };
+
+  /** The mime type of Excel 2007 workbooks. */
+  private static final String XLSX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml";
+
+  /**
+   * The size (in bytes) from which on spreadsheets are read with the event
+   * API. 0 means always.
+   */
+  private int mStreamingThreshold = 1000000;
+
+  /**
+   * The maximum number of characters extracted from a spreadsheet read with
+   * the event API. 0 means no limit.
+   */
+  private int mMaxChars;
+
   /**
    * Creates a new instance of PoiMsOfficePreparator.
    *
@@ -67,6 +94,21 @@ public class PoiMsOfficePreparator extends AbstractPreparator {
               "application/vnd.ms-office"});
   }
 
+  /**
+   * Reads the settings for large spreadsheets from the config.
+   *
+   * @param config The configuration.
+   * @throws RegainException If the configuration has an error.
+   */
+  @Override
+  public void init(PreparatorConfig config) throws RegainException {
+    Map<String, String> main = config.getSectionWithName("main");
+    if (main != null) {
+      mStreamingThreshold = getIntParam(main, "streamingThreshold", mStreamingThreshold);
+      mMaxChars = getIntParam(main, "maxChars", mMaxChars);
+    }
+  }
+
   /**
    * Prepares the document.
    *
@@ -80,12 +122,30 @@ public class PoiMsOfficePreparator extends AbstractPreparator {
     InputStream stream = null;
 
     try {
-      stream = rawDocument.getContentAsStream();
-      POITextExtractor contentExtractor = ExtractorFactory.createExtractor(stream);
-      setCleanedContent(contentExtractor.getText());
-      POITextExtractor metadataExtractor = contentExtractor.getMetadataTextExtractor();
+      String metaDataText;
+      String mimeType = rawDocument.getMimeType();
+      boolean isXls = Arrays.asList(XLS_MIME_TYPES).contains(mimeType);
+      boolean isXlsx = XLSX_MIME_TYPE.equals(mimeType);
+      if ((isXls || isXlsx) && (rawDocument.getLength() >= mStreamingThreshold)) {
+        // Stream the cells instead of building the whole workbook
+        SpreadsheetExtractor extractor = new SpreadsheetExtractor(
+            LimitedWriter.getStricterLimit(mMaxChars, getMaxContentLength()));
+        if (isXls) {
+          extractor.extractXls(rawDocument.getContentAsFile());
+        } else {
+          extractor.extractXlsx(rawDocument.getContentAsFile());
+        }
+        setCleanedContent(extractor.getText());
+        metaDataText = extractor.getMetaData();
+      } else {
+        stream = rawDocument.getContentAsStream();
+        POITextExtractor contentExtractor = ExtractorFactory.createExtractor(stream);
+        setCleanedContent(contentExtractor.getText());
+        POITextExtractor metadataExtractor = contentExtractor.getMetadataTextExtractor();
+        metaDataText = metadataExtractor.getText();
+      }
 
-      Map<String, String> metaDataMap = createMetaDataMap(metadataExtractor.getText());
+      Map<String, String> metaDataMap = createMetaDataMap(metaDataText);
 //      if (mLog.isDebugEnabled()) {
 //      mLog.info("Found meta data ::" + metadataExtractor.getText()
 //              + ":: in " + rawDocument.getUrl());
@@ -20,10 +20,15 @@
  */
 package net.sf.regain.crawler.preparator;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
 import net.sf.regain.RegainException;
-import net.sf.regain.crawler.CrawlerToolkit;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.LimitedWriter;
 import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.util.io.MarkupStripper;
 
 /**
  * Präpariert ein XML-Dokument für die Indizierung.
@@ -52,11 +57,28 @@ public class XmlPreparator extends AbstractPreparator {
    * @throws RegainException Wenn die Pr�paration fehl schlug.
    */
   public void prepare(RawDocument rawDocument) throws RegainException {
-    String contentAsString = rawDocument.getContentAsString();
-
-    // Clean the content from tags
-    String cleanedContent = CrawlerToolkit.cleanFromHtmlTags(contentAsString);
-    setCleanedContent(cleanedContent);
+    // Clean the content from tags while reading it. This way the raw content
+    // doesn't have to be in memory as String.
+    StringBuilder cleanedContent = new StringBuilder();
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(rawDocument.getContentAsStream());
+      MarkupStripper.strip(reader,
+          new LimitedWriter(cleanedContent, getMaxContentLength()));
+    }
+    catch (LimitedWriter.LimitReachedException exc) {
+      // The content is truncated
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading XML document failed: "
+          + rawDocument.getUrl(), exc);
+    }
+    finally {
+      if (reader != null) {
+        try { reader.close(); } catch (IOException exc) {}
+      }
+    }
+    setCleanedContent(cleanedContent.toString());
   }
 
 }
@@ -154,6 +154,31 @@ public class AbstractExtractor {
   {
     String content = rawDocument.getContentAsString();
 
+    int[] fragment = findFragment(rawDocument);
+    int fragmentStart = fragment[0];
+    int fragmentEnd = fragment[1];
+
+    if ((fragmentStart == 0) && (fragmentEnd == content.length())) {
+      // Nothing to do -> So don't waste ressources
+      return content;
+    } else {
+      return content.substring(fragmentStart, fragmentEnd);
+    }
+  }
+
+
+
+  /**
+   * Finds the position of the fragment in the given document.
+   *
+   * @param rawDocument The document to find the fragment in.
+   * @return The start and the end of the fragment within the content of the
+   *         document.
+   * @throws RegainException If the document could not be read.
+   */
+  public int[] findFragment(RawDocument rawDocument) throws RegainException {
+    String content = rawDocument.getContentAsString();
+
     // Find the fragment start
     int fragmentStart = 0;
     if (mFragmentStartRE != null) {
@@ -176,12 +201,7 @@ public class AbstractExtractor {
       }
     }
 
-    if ((fragmentStart == 0) && (fragmentEnd == content.length())) {
-      // Nothing to do -> So don't waste ressources
-      return content;
-    } else {
-      return content.substring(fragmentStart, fragmentEnd);
-    }
+    return new int[] { fragmentStart, fragmentEnd };
   }
 
 
@@ -0,0 +1,173 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.preparator.html;
+
+import java.util.ArrayList;
+
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.beans.StringBean;
+import org.htmlparser.nodes.TextNode;
+import org.htmlparser.tags.TitleTag;
+
+/**
+ * Collects everything the HtmlPreparator needs from a HTML page in one parser
+ * run: the text, the title, the links, the frames and the base tag.
+ * <p>
+ * The text is collected like the {@link StringBean} does, but only from a
+ * part of the page (the part a HtmlContentExtractor cut out). The links are
+ * collected from the whole page. So the page has to be parsed only once, even
+ * if only a part of it is indexed.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HtmlDocumentVisitor extends StringBean {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The start of the part of the page whose text should be collected. */
+  private int mContentStart;
+  /** The end of the part of the page whose text should be collected. */
+  private int mContentEnd;
+
+  /** The link tags having a href attribute. */
+  private ArrayList<Tag> mLinks = new ArrayList<Tag>();
+  /** The frame tags having a src attribute. */
+  private ArrayList<Tag> mFrames = new ArrayList<Tag>();
+  /** The base tag. Is <code>null</code> if the page has none. */
+  private Tag mBaseTag;
+
+  /** The title of the page. Is <code>null</code> if the page has none. */
+  private String mTitle;
+  /** Whether the body of the page has started. */
+  private boolean mInBody;
+
+
+  /**
+   * Creates a new instance of HtmlDocumentVisitor.
+   *
+   * @param contentStart The start of the part of the page whose text should
+   *        be collected.
+   * @param contentEnd The end of the part of the page whose text should be
+   *        collected.
+   */
+  public HtmlDocumentVisitor(int contentStart, int contentEnd) {
+    mContentStart = contentStart;
+    mContentEnd = contentEnd;
+
+    // replace multiple whitespace with one whitespace
+    setCollapse(true);
+    // Do not extract URLs
+    setLinks(false);
+    // replace &nbsp; with whitespace
+    setReplaceNonBreakingSpaces(true);
+  }
+
+
+  /**
+   * Gets the link tags having a href attribute.
+   *
+   * @return The link tags.
+   */
+  public ArrayList<Tag> getLinkTags() {
+    return mLinks;
+  }
+
+
+  /**
+   * Gets the frame tags having a src attribute.
+   *
+   * @return The frame tags.
+   */
+  public ArrayList<Tag> getFrameTags() {
+    return mFrames;
+  }
+
+
+  /**
+   * Gets the base tag.
+   *
+   * @return The base tag or <code>null</code> if the page has none.
+   */
+  public Tag getBaseTag() {
+    return mBaseTag;
+  }
+
+
+  /**
+   * Gets the title of the page. Only a title before the body is regarded.
+   *
+   * @return The title or <code>null</code> if the page has none.
+   */
+  public String getTitle() {
+    return mTitle;
+  }
+
+
+  @Override
+  public void visitTag(Tag tag) {
+    String name = tag.getTagName();
+    if ("a".equalsIgnoreCase(name)) {
+      if (tag.getAttribute("href") != null) {
+        mLinks.add(tag);
+      }
+    } else if ("frame".equalsIgnoreCase(name)) {
+      if (tag.getAttribute("src") != null) {
+        mFrames.add(tag);
+      }
+    } else if ("base".equalsIgnoreCase(name)) {
+      if (tag.getAttribute("href") != null) {
+        mBaseTag = tag;
+      }
+    } else if ("body".equalsIgnoreCase(name)) {
+      mInBody = true;
+    } else if ((tag instanceof TitleTag) && (mTitle == null) && ! mInBody) {
+      mTitle = ((TitleTag) tag).getTitle();
+    }
+
+    super.visitTag(tag);
+  }
+
+
+  @Override
+  public void visitStringNode(Text text) {
+    int start = text.getStartPosition();
+    int end = text.getEndPosition();
+    if ((end <= mContentStart) || (start >= mContentEnd)) {
+      // This text is not in the content part
+      return;
+    }
+
+    if ((start < mContentStart) || (end > mContentEnd)) {
+      // This text is only partly in the content part -> Cut it
+      String asString = text.getText();
+      int cutStart = Math.max(0, mContentStart - start);
+      int cutEnd = Math.min(asString.length(), mContentEnd - start);
+      if (cutStart >= cutEnd) {
+        return;
+      }
+      text = new TextNode(asString.substring(cutStart, cutEnd));
+    }
+
+    super.visitStringNode(text);
+  }
+
+}
@@ -0,0 +1,650 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.preparator.poi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.hpsf.extractor.HPSFPropertiesExtractor;
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageProperties;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.util.Nullable;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Extracts the text of a spreadsheet using the event API of POI.
+ * <p>
+ * Unlike the usermodel this never builds the whole workbook in memory: The
+ * cells are streamed into the text one by one. The extraction stops when the
+ * text reached the maximum length. The text is formatted like the POI
+ * extractors do: The name of each sheet, followed by its rows with the cells
+ * separated by tabs.
+ * <p>
+ * The meta data is returned in the format of the POI meta data extractors
+ * ("name = value" lines).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SpreadsheetExtractor {
+
+  /** The namespace of the SpreadsheetML elements. */
+  private static final String SPREADSHEET_NAMESPACE
+    = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+  /** The namespace of the relationship attributes. */
+  private static final String RELATIONSHIPS_NAMESPACE
+    = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  /** The type of the relationship from the workbook to its shared strings. */
+  private static final String SHARED_STRINGS_RELATION_TYPE
+    = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings";
+
+  /** The maximum number of characters to extract. 0 means no limit. */
+  private int mMaxChars;
+
+  /** The extracted text. */
+  private StringBuilder mText = new StringBuilder();
+
+  /** The extracted meta data. */
+  private String mMetaData;
+
+  /** The row of the last cell. -1 if no cell was added to the sheet yet. */
+  private int mLastRow;
+
+
+  /**
+   * Creates a new instance of SpreadsheetExtractor.
+   *
+   * @param maxChars The maximum number of characters to extract. 0 means no
+   *        limit.
+   */
+  public SpreadsheetExtractor(int maxChars) {
+    mMaxChars = maxChars;
+  }
+
+
+  /**
+   * Gets the extracted text.
+   *
+   * @return The extracted text.
+   */
+  public String getText() {
+    return mText.toString();
+  }
+
+
+  /**
+   * Gets the extracted meta data.
+   *
+   * @return The meta data ("name = value" lines).
+   */
+  public String getMetaData() {
+    return mMetaData;
+  }
+
+
+  /**
+   * Extracts an Excel 97-2003 workbook (xls).
+   *
+   * @param file The file of the workbook.
+   * @throws IOException If reading the file failed.
+   */
+  public void extractXls(File file) throws IOException {
+    NPOIFSFileSystem fs = new NPOIFSFileSystem(file);
+    try {
+      HssfListener listener = new HssfListener();
+      HSSFRequest request = new HSSFRequest();
+      request.addListenerForAllRecords(listener);
+      try {
+        new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+      }
+      catch (HSSFUserException exc) {
+        throw new IOException("Reading workbook failed", exc);
+      }
+
+      mMetaData = new HPSFPropertiesExtractor(fs).getText();
+    }
+    finally {
+      fs.close();
+    }
+  }
+
+
+  /**
+   * Extracts an Excel 2007 workbook (xlsx).
+   * <p>
+   * The parts of the package are parsed with SAX directly. The XSSF event API
+   * of POI (XSSFReader and XSSFSheetXMLHandler) can't be used here, because it
+   * needs the OpenXML schema classes (poi-ooxml-schemas), which are not shipped
+   * with regain. Since the styles are not read, numbers and dates are written
+   * as they are stored in the sheet.
+   *
+   * @param file The file of the workbook.
+   * @throws IOException If reading the file failed.
+   * @throws OpenXML4JException If the file is no valid OpenXML package.
+   * @throws SAXException If parsing a part failed.
+   */
+  public void extractXlsx(File file)
+    throws IOException, OpenXML4JException, SAXException
+  {
+    OPCPackage pkg = OPCPackage.open(file.getAbsolutePath(), PackageAccess.READ);
+    try {
+      PackageRelationshipCollection docRels
+        = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+      if (docRels.size() == 0) {
+        throw new OpenXML4JException("Workbook has no main document");
+      }
+      PackagePart workbookPart = getTargetPart(pkg, null, docRels.getRelationship(0));
+
+      ArrayList<String> sharedStringList = new ArrayList<String>();
+      PackageRelationshipCollection stringRels
+        = workbookPart.getRelationshipsByType(SHARED_STRINGS_RELATION_TYPE);
+      if (stringRels.size() != 0) {
+        parsePart(getTargetPart(pkg, workbookPart, stringRels.getRelationship(0)),
+            new XlsxSharedStringsHandler(sharedStringList));
+      }
+
+      XlsxWorkbookHandler workbookHandler = new XlsxWorkbookHandler();
+      parsePart(workbookPart, workbookHandler);
+
+      try {
+        for (String[] sheet : workbookHandler.mSheetList) {
+          PackageRelationship sheetRel = workbookPart.getRelationship(sheet[1]);
+          if (sheetRel != null) {
+            startSheet(sheet[0]);
+            parsePart(getTargetPart(pkg, workbookPart, sheetRel),
+                new XlsxSheetHandler(sharedStringList));
+          }
+        }
+      }
+      catch (LimitReachedException exc) {
+        // We have enough text
+      }
+
+      mMetaData = createMetaData(pkg.getPackageProperties());
+    }
+    finally {
+      pkg.revert();
+    }
+  }
+
+
+  /**
+   * Gets the part a relationship points to.
+   *
+   * @param pkg The package.
+   * @param source The part the relationship belongs to. <code>null</code> if
+   *        the relationship belongs to the package.
+   * @param rel The relationship.
+   * @return The target part.
+   * @throws OpenXML4JException If the target part does not exist.
+   */
+  private PackagePart getTargetPart(OPCPackage pkg, PackagePart source,
+    PackageRelationship rel)
+    throws OpenXML4JException
+  {
+    URI targetUri = rel.getTargetURI();
+    if (source != null) {
+      targetUri = PackagingURIHelper.resolvePartUri(source.getPartName().getURI(), targetUri);
+    }
+    PackagePart part = pkg.getPart(PackagingURIHelper.createPartName(targetUri));
+    if (part == null) {
+      throw new OpenXML4JException("Workbook part " + targetUri + " is missing");
+    }
+    return part;
+  }
+
+
+  /**
+   * Parses a part of an OpenXML package.
+   *
+   * @param part The part to parse.
+   * @param handler The handler receiving the SAX events.
+   * @throws IOException If reading the part failed.
+   * @throws SAXException If parsing the part failed.
+   */
+  private void parsePart(PackagePart part, DefaultHandler handler)
+    throws IOException, SAXException
+  {
+    XMLReader parser;
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      parser = factory.newSAXParser().getXMLReader();
+    }
+    catch (ParserConfigurationException exc) {
+      throw new SAXException("Creating XML parser failed", exc);
+    }
+    parser.setContentHandler(handler);
+
+    InputStream in = part.getInputStream();
+    try {
+      parser.parse(new InputSource(in));
+    }
+    finally {
+      in.close();
+    }
+  }
+
+
+  /**
+   * Creates the meta data text from the properties of an OpenXML package.
+   *
+   * @param props The properties.
+   * @return The meta data ("name = value" lines).
+   * @throws OpenXML4JException If reading the properties failed.
+   */
+  private String createMetaData(PackageProperties props)
+    throws OpenXML4JException
+  {
+    StringBuilder metaData = new StringBuilder();
+    appendMetaData(metaData, "Title", props.getTitleProperty());
+    appendMetaData(metaData, "Creator", props.getCreatorProperty());
+    appendMetaData(metaData, "Keywords", props.getKeywordsProperty());
+    appendMetaData(metaData, "LastModifiedBy", props.getLastModifiedByProperty());
+    appendMetaData(metaData, "Description", props.getDescriptionProperty());
+    appendMetaData(metaData, "Subject", props.getSubjectProperty());
+    return metaData.toString();
+  }
+
+
+  /**
+   * Appends a meta data line.
+   *
+   * @param metaData The meta data to append to.
+   * @param name The name of the property.
+   * @param value The value of the property.
+   */
+  private void appendMetaData(StringBuilder metaData, String name,
+    Nullable<String> value)
+  {
+    if (value.hasValue()) {
+      metaData.append(name).append(" = ").append(value.getValue()).append('\n');
+    }
+  }
+
+
+  /**
+   * Starts a new sheet in the text.
+   *
+   * @param sheetName The name of the sheet.
+   */
+  private void startSheet(String sheetName) {
+    if (mText.length() > 0) {
+      append("\n");
+    }
+    if (sheetName != null) {
+      append(sheetName);
+      append("\n");
+    }
+    mLastRow = -1;
+  }
+
+
+  /**
+   * Adds the text of a cell.
+   *
+   * @param row The row of the cell.
+   * @param text The text of the cell.
+   */
+  private void addCell(int row, String text) {
+    if ((text == null) || (text.length() == 0)) {
+      return;
+    }
+
+    if (mLastRow == -1) {
+      // This is the first cell of the sheet
+    } else if (row != mLastRow) {
+      append("\n");
+    } else {
+      append("\t");
+    }
+    mLastRow = row;
+    append(text);
+  }
+
+
+  /**
+   * Appends text. Throws a {@link LimitReachedException} if the maximum
+   * number of characters is reached.
+   *
+   * @param text The text to append.
+   */
+  private void append(String text) {
+    if ((mMaxChars > 0) && (mText.length() + text.length() >= mMaxChars)) {
+      mText.append(text, 0, mMaxChars - mText.length());
+      throw new LimitReachedException();
+    }
+    mText.append(text);
+  }
+
+
+  /**
+   * Collects the sheets of a xlsx workbook (xl/workbook.xml).
+   */
+  private static class XlsxWorkbookHandler extends DefaultHandler {
+
+    /** The sheets: Each entry holds the name and the relationship ID. */
+    private ArrayList<String[]> mSheetList = new ArrayList<String[]>();
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes attributes)
+    {
+      if (SPREADSHEET_NAMESPACE.equals(uri) && "sheet".equals(localName)) {
+        mSheetList.add(new String[] {
+          attributes.getValue("name"),
+          attributes.getValue(RELATIONSHIPS_NAMESPACE, "id")
+        });
+      }
+    }
+
+  }
+
+
+  /**
+   * Collects the shared strings of a xlsx workbook (xl/sharedStrings.xml).
+   */
+  private static class XlsxSharedStringsHandler extends DefaultHandler {
+
+    /** The list where to add the shared strings. */
+    private ArrayList<String> mStringList;
+
+    /** The text of the current string. null if we are outside a string. */
+    private StringBuilder mString;
+
+    /** Whether we are in a text element of the current string. */
+    private boolean mInText;
+
+    /**
+     * Creates a new instance of XlsxSharedStringsHandler.
+     *
+     * @param stringList The list where to add the shared strings.
+     */
+    public XlsxSharedStringsHandler(ArrayList<String> stringList) {
+      mStringList = stringList;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes attributes)
+    {
+      if (! SPREADSHEET_NAMESPACE.equals(uri)) {
+        return;
+      }
+      if ("si".equals(localName)) {
+        mString = new StringBuilder();
+      } else if ("t".equals(localName) && (mString != null)) {
+        mInText = true;
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if (! SPREADSHEET_NAMESPACE.equals(uri)) {
+        return;
+      }
+      if ("si".equals(localName)) {
+        mStringList.add(mString.toString());
+        mString = null;
+      } else if ("t".equals(localName)) {
+        mInText = false;
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (mInText) {
+        mString.append(ch, start, length);
+      }
+    }
+
+  }
+
+
+  /**
+   * Receives the cells of a xlsx sheet (xl/worksheets/sheet*.xml).
+   */
+  private class XlsxSheetHandler extends DefaultHandler {
+
+    /** The shared strings of the workbook. */
+    private ArrayList<String> mSharedStringList;
+
+    /** The current row. */
+    private int mRow;
+
+    /** The type of the current cell (the "t" attribute). */
+    private String mCellType;
+
+    /** The value of the current cell. null if we are outside a cell. */
+    private StringBuilder mValue;
+
+    /**
+     * Whether we are in the value of the current cell. The formula of a cell
+     * (<code>&lt;f&gt;</code>) is no value, only <code>&lt;v&gt;</code> and
+     * the text of an inline string (<code>&lt;is&gt;&lt;t&gt;</code>) are.
+     */
+    private boolean mInValue;
+
+    /**
+     * Creates a new instance of XlsxSheetHandler.
+     *
+     * @param sharedStringList The shared strings of the workbook.
+     */
+    public XlsxSheetHandler(ArrayList<String> sharedStringList) {
+      mSharedStringList = sharedStringList;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes attributes)
+    {
+      if (! SPREADSHEET_NAMESPACE.equals(uri)) {
+        return;
+      }
+      if ("row".equals(localName)) {
+        String rowNum = attributes.getValue("r");
+        mRow = (rowNum == null) ? mRow + 1 : Integer.parseInt(rowNum) - 1;
+      } else if ("c".equals(localName)) {
+        mCellType = attributes.getValue("t");
+        mValue = new StringBuilder();
+      } else if (("v".equals(localName) || "t".equals(localName)) && (mValue != null)) {
+        mInValue = true;
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if (! SPREADSHEET_NAMESPACE.equals(uri)) {
+        return;
+      }
+      if ("v".equals(localName) || "t".equals(localName)) {
+        mInValue = false;
+      }
+      if (! "c".equals(localName)) {
+        return;
+      }
+
+      String value = mValue.toString();
+      mValue = null;
+      if ("s".equals(mCellType)) {
+        int idx = Integer.parseInt(value.trim());
+        value = (idx < mSharedStringList.size()) ? mSharedStringList.get(idx) : null;
+      } else if ("b".equals(mCellType)) {
+        value = "1".equals(value) ? "TRUE" : "FALSE";
+      }
+      addCell(mRow, value);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (mInValue) {
+        mValue.append(ch, start, length);
+      }
+    }
+
+  }
+
+
+  /**
+   * Receives the records of a xls workbook.
+   */
+  private class HssfListener extends AbortableHSSFListener {
+
+    /** Formats the numbers like Excel does. */
+    private FormatTrackingHSSFListener mFormatListener;
+
+    /** The sheets in the order of their BOF records. */
+    private BoundSheetRecord[] mSheetArr;
+
+    /** The sheets in the order they were found. */
+    private ArrayList<BoundSheetRecord> mSheetList = new ArrayList<BoundSheetRecord>();
+
+    /** The index of the current sheet. */
+    private int mSheetIdx = -1;
+
+    /** The shared strings. */
+    private SSTRecord mSstRecord;
+
+    /**
+     * The row of the formula whose string result is in the next string
+     * record. -1 if the next string record belongs to no formula.
+     */
+    private int mFormulaStringRow = -1;
+
+
+    /**
+     * Creates a new instance of HssfListener.
+     */
+    public HssfListener() {
+      mFormatListener = new FormatTrackingHSSFListener(this);
+    }
+
+
+    @Override
+    public short abortableProcessRecord(Record record) throws HSSFUserException {
+      mFormatListener.processRecordInternally(record);
+
+      try {
+        switch (record.getSid()) {
+          case BoundSheetRecord.sid:
+            mSheetList.add((BoundSheetRecord) record);
+            break;
+          case BOFRecord.sid:
+            if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+              if (mSheetArr == null) {
+                mSheetArr = BoundSheetRecord.orderByBofPosition(mSheetList);
+              }
+              mSheetIdx++;
+              startSheet((mSheetIdx < mSheetArr.length)
+                  ? mSheetArr[mSheetIdx].getSheetname() : null);
+            }
+            break;
+          case SSTRecord.sid:
+            mSstRecord = (SSTRecord) record;
+            break;
+          case LabelSSTRecord.sid:
+            LabelSSTRecord labelSst = (LabelSSTRecord) record;
+            if (mSstRecord != null) {
+              addCell(labelSst.getRow(), mSstRecord.getString(labelSst.getSSTIndex()).getString());
+            }
+            break;
+          case LabelRecord.sid:
+            LabelRecord label = (LabelRecord) record;
+            addCell(label.getRow(), label.getValue());
+            break;
+          case NumberRecord.sid:
+            addCell(((NumberRecord) record).getRow(),
+                mFormatListener.formatNumberDateCell((CellValueRecordInterface) record));
+            break;
+          case FormulaRecord.sid:
+            FormulaRecord formula = (FormulaRecord) record;
+            if (formula.hasCachedResultString()) {
+              // The result is in the next string record
+              mFormulaStringRow = formula.getRow();
+            } else if (formula.getCachedResultType() == Cell.CELL_TYPE_NUMERIC) {
+              addCell(formula.getRow(), mFormatListener.formatNumberDateCell(formula));
+            }
+            break;
+          case StringRecord.sid:
+            if (mFormulaStringRow != -1) {
+              addCell(mFormulaStringRow, ((StringRecord) record).getString());
+              mFormulaStringRow = -1;
+            }
+            break;
+        }
+      }
+      catch (LimitReachedException exc) {
+        // We have enough text -> Stop reading
+        return 1;
+      }
+
+      return 0;
+    }
+
+  }
+
+
+  /**
+   * Thrown when the text reached the maximum length.
+   */
+  private static class LimitReachedException extends RuntimeException {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+  }
+
+}
@@ -164,6 +164,7 @@ public class IndexSearcherManager implements Closeable {
     }
 
     String[] valueArr = mFieldTermHash.get(field);
+    SearchMetrics.recordFieldValueRequest(valueArr != null);
     if (valueArr == null) {
       valueArr = readFieldValues(field);
       // Copy the field values to our cache
@@ -0,0 +1,120 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.regain.util.metrics.LatencyHistogram;
+import net.sf.regain.util.metrics.MetricSource;
+import net.sf.regain.util.metrics.Metrics;
+import net.sf.regain.util.metrics.MetricsCollector;
+import net.sf.regain.util.metrics.RateMeter;
+
+/**
+ * Collects the metrics of the search: The number of searches per second, the
+ * search times and the hit ratio of the field value cache.
+ * <p>
+ * The metrics are registered at {@link Metrics} by {@link #register()}, which
+ * is called when the search mask starts.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SearchMetrics implements MetricSource {
+
+  /** The shared instance. */
+  private static final SearchMetrics mSingleton = new SearchMetrics();
+
+  /** The times of the searches. */
+  private LatencyHistogram mSearchTimeHistogram = new LatencyHistogram();
+
+  /** Measures the number of searches per second. */
+  private RateMeter mSearchRate = new RateMeter();
+
+  /** The number of field value requests answered from the cache. */
+  private AtomicLong mFieldValueCacheHits = new AtomicLong();
+
+  /** The number of field value requests that had to read the index. */
+  private AtomicLong mFieldValueCacheMisses = new AtomicLong();
+
+
+  /**
+   * Creates the shared instance.
+   */
+  private SearchMetrics() {
+  }
+
+
+  /**
+   * Registers the metrics of the search at {@link Metrics}. Calling this
+   * more than once does no harm.
+   */
+  public static void register() {
+    Metrics.registerSource("search", mSingleton);
+  }
+
+
+  /**
+   * Records a search.
+   *
+   * @param nanos The time the search took (in nano seconds).
+   */
+  public static void recordSearch(long nanos) {
+    mSingleton.mSearchTimeHistogram.record(nanos);
+    mSingleton.mSearchRate.mark();
+  }
+
+
+  /**
+   * Records a request for the values of a field.
+   *
+   * @param cacheHit Whether the values were found in the cache.
+   */
+  public static void recordFieldValueRequest(boolean cacheHit) {
+    if (cacheHit) {
+      mSingleton.mFieldValueCacheHits.incrementAndGet();
+    } else {
+      mSingleton.mFieldValueCacheMisses.incrementAndGet();
+    }
+  }
+
+
+  @Override
+  public void collectMetrics(MetricsCollector collector) {
+    collector.addSummary("regain_search_duration_seconds",
+        "The time of the searches", mSearchTimeHistogram);
+    collector.addGauge("regain_search_queries_per_second",
+        "The number of searches per second (last minute)",
+        mSearchRate.getRatePerSecond());
+
+    long hits = mFieldValueCacheHits.get();
+    long misses = mFieldValueCacheMisses.get();
+    collector.addCounter("regain_search_field_value_cache_hits_total",
+        "The number of field value requests answered from the cache", hits);
+    collector.addCounter("regain_search_field_value_cache_misses_total",
+        "The number of field value requests that had to read the index", misses);
+    if (hits + misses > 0) {
+      collector.addGauge("regain_search_field_value_cache_hit_ratio",
+          "The share of field value requests answered from the cache",
+          (double) hits / (hits + misses));
+    }
+  }
+
+}
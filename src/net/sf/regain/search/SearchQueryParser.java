@@ -0,0 +1,234 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.regain.RegainToolkit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+
+/**
+ * A QueryParser that knows the numeric fields of the index.
+ * <p>
+ * The fields "size" and "modified" are indexed trie encoded by the crawler.
+ * For them this parser creates {@link NumericRangeQuery}s, which only need a
+ * few terms, instead of expanding a range over string terms:
+ * <ul>
+ *   <li><code>size:[1MB TO 10MB]</code>, <code>size:{* TO 500KB}</code> or
+ *     <code>size:1024</code>. The units B, KB, MB, GB and TB are powers of
+ *     1024.</li>
+ *   <li><code>modified:last7d</code>: Modified in the last 7 days. The units
+ *     are d (days), w (weeks), m (months) and y (years).</li>
+ *   <li><code>modified:today</code>, <code>modified:2012-03-31</code> or
+ *     <code>modified:[2012-01-01 TO 2012-03-31]</code>. The dates may also be
+ *     written as <code>20120331</code>. A date means the whole day.</li>
+ * </ul>
+ * A <code>*</code> as bound of a range means no limit.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SearchQueryParser extends QueryParser {
+
+  /** The name of the numeric size field. */
+  private static final String FIELD_SIZE = "size";
+
+  /** The pattern of a size having an optional unit. */
+  private static final Pattern SIZE_PATTERN
+    = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([kmgt]?)b?", Pattern.CASE_INSENSITIVE);
+
+  /** The pattern of a relative date like "last7d". */
+  private static final Pattern LAST_PATTERN
+    = Pattern.compile("last(\\d+)([dwmy])", Pattern.CASE_INSENSITIVE);
+
+  /** The formats of a date. */
+  private static final String[] DATE_FORMATS = { "yyyy-MM-dd", "yyyyMMdd" };
+
+
+  /**
+   * Creates a new instance of SearchQueryParser.
+   *
+   * @param matchVersion The Lucene version to match.
+   * @param field The default field for query terms.
+   * @param analyzer The analyzer used to find the terms in the query text.
+   */
+  public SearchQueryParser(Version matchVersion, String field, Analyzer analyzer) {
+    super(matchVersion, field, analyzer);
+  }
+
+
+  @Override
+  protected Query getFieldQuery(String field, String queryText, boolean quoted)
+    throws ParseException
+  {
+    if (FIELD_SIZE.equals(field)) {
+      long size = parseSize(queryText.trim());
+      return NumericRangeQuery.newLongRange(field, size, size, true, true);
+    }
+    else if (RegainToolkit.FIELD_MODIFIED.equals(field)) {
+      String text = queryText.trim();
+      Matcher matcher = LAST_PATTERN.matcher(text);
+      if (matcher.matches()) {
+        Calendar cal = Calendar.getInstance();
+        int amount = Integer.parseInt(matcher.group(1));
+        switch (Character.toLowerCase(matcher.group(2).charAt(0))) {
+          case 'd': cal.add(Calendar.DAY_OF_YEAR, -amount); break;
+          case 'w': cal.add(Calendar.WEEK_OF_YEAR, -amount); break;
+          case 'm': cal.add(Calendar.MONTH, -amount); break;
+          default:  cal.add(Calendar.YEAR, -amount); break;
+        }
+        return NumericRangeQuery.newLongRange(field, cal.getTimeInMillis(), null, true, true);
+      }
+
+      // A single day
+      return NumericRangeQuery.newLongRange(field, getDayStart(text, 0),
+          getDayStart(text, 1), true, false);
+    }
+
+    return super.getFieldQuery(field, queryText, quoted);
+  }
+
+
+  @Override
+  protected Query getRangeQuery(String field, String part1, String part2,
+    boolean inclusive)
+    throws ParseException
+  {
+    if (FIELD_SIZE.equals(field)) {
+      Long min = isOpenBound(part1) ? null : parseSize(part1.trim());
+      Long max = isOpenBound(part2) ? null : parseSize(part2.trim());
+      return NumericRangeQuery.newLongRange(field, min, max, inclusive, inclusive);
+    }
+    else if (RegainToolkit.FIELD_MODIFIED.equals(field)) {
+      // NOTE: A date means the whole day. So an inclusive range goes to the
+      //       start of the day after the upper bound, an exclusive range
+      //       starts at the day after the lower bound.
+      Long min = isOpenBound(part1) ? null : getDayStart(part1.trim(), inclusive ? 0 : 1);
+      Long max = isOpenBound(part2) ? null : getDayStart(part2.trim(), inclusive ? 1 : 0);
+      return NumericRangeQuery.newLongRange(field, min, max, true, false);
+    }
+
+    return super.getRangeQuery(field, part1, part2, inclusive);
+  }
+
+
+  /**
+   * Gets whether a bound of a range means no limit.
+   *
+   * @param part The bound.
+   * @return Whether the bound means no limit.
+   */
+  private static boolean isOpenBound(String part) {
+    return (part == null) || part.trim().equals("*");
+  }
+
+
+  /**
+   * Parses a size like "1024", "500KB" or "1.5 MB".
+   *
+   * @param text The text to parse.
+   * @return The size in bytes.
+   * @throws ParseException If the text is no size.
+   */
+  private static long parseSize(String text) throws ParseException {
+    Matcher matcher = SIZE_PATTERN.matcher(text);
+    if (! matcher.matches()) {
+      throw new ParseException("Not a size: '" + text + "'");
+    }
+
+    double size = Double.parseDouble(matcher.group(1));
+    String unit = matcher.group(2).toLowerCase();
+    if (unit.length() != 0) {
+      int exponent = "kmgt".indexOf(unit.charAt(0)) + 1;
+      size *= Math.pow(1024, exponent);
+    }
+    return Math.round(size);
+  }
+
+
+  /**
+   * Parses a date like "2012-03-31" or "20120331".
+   *
+   * @param text The text to parse.
+   * @return The start of the day.
+   * @throws ParseException If the text is no date.
+   */
+  private static Date parseDate(String text) throws ParseException {
+    for (String format : DATE_FORMATS) {
+      SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
+      dateFormat.setLenient(false);
+      ParsePosition pos = new ParsePosition(0);
+      Date date = dateFormat.parse(text, pos);
+      if ((date != null) && (pos.getIndex() == text.length())) {
+        return date;
+      }
+    }
+    throw new ParseException("Not a date: '" + text
+        + "'. Use the format yyyy-MM-dd or yyyyMMdd");
+  }
+
+
+  /**
+   * Gets the start of a day.
+   *
+   * @param text The day as date.
+   * @param dayOffset The number of days to add.
+   * @return The start of the day (in milliseconds).
+   * @throws ParseException If the text is no date.
+   */
+  private static long getDayStart(String text, int dayOffset)
+    throws ParseException
+  {
+    Calendar cal = Calendar.getInstance();
+    if (text.equalsIgnoreCase("today")) {
+      setStartOfDay(cal);
+    } else {
+      cal.setTime(parseDate(text));
+    }
+    cal.add(Calendar.DAY_OF_YEAR, dayOffset);
+    return cal.getTimeInMillis();
+  }
+
+
+  /**
+   * Sets a calendar to the start of its day.
+   *
+   * @param cal The calendar.
+   */
+  private static void setStartOfDay(Calendar cal) {
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+  }
+
+}
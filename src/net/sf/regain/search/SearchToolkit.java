@@ -42,13 +42,9 @@ import net.sf.regain.search.results.SearchResultsImpl;
 import net.sf.regain.util.sharedtag.PageRequest;
 import net.sf.regain.util.sharedtag.PageResponse;
 
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.WhitespaceAnalyzer;
 import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
@@ -427,15 +423,9 @@ public class SearchToolkit {
       }
 
       // Check whether the document is in the index
-      Analyzer analyzer = new WhitespaceAnalyzer(RegainToolkit.getLuceneVersion());
-      QueryParser parser = new QueryParser(RegainToolkit.getLuceneVersion(), "url", analyzer);
-      String queryString = "\"" + transformedFileUrl + "\"";
-
-      try {
-        query = parser.parse(queryString);
-      } catch (ParseException ex) {
-        throw new RegainException("Parsing of url lookup-query failed.", ex);
-      }
+      // NOTE: The URL is indexed untokenized and without positions
+      //       -> Look for exactly this term (a phrase query would fail)
+      query = new TermQuery(new Term("url", transformedFileUrl));
       if (configArr[i].getSearchAccessController() != null) {
         SearchAccessController accessController = configArr[i].getSearchAccessController();
         String[] allGroups = accessController.getUserGroups(request);
@@ -651,7 +641,14 @@ public class SearchToolkit {
   public static String getCompressedFieldValue(Document doc, String fieldname) throws RegainException {
     byte[] compressedFieldValue = doc.getBinaryValue(fieldname);
     String value = "";
-    if (compressedFieldValue != null) {
+    if (compressedFieldValue == null) {
+      // The field might be stored uncompressed (see the index field schema
+      // of the crawler)
+      String uncompressedValue = doc.get(fieldname);
+      if (uncompressedValue != null) {
+        value = uncompressedValue;
+      }
+    } else {
       try {
         value = CompressionTools.decompressString(compressedFieldValue);
       } catch (DataFormatException dataFormatException) {
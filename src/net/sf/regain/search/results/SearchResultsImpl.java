@@ -30,6 +30,8 @@ import java.util.regex.Pattern;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.search.IndexSearcherManager;
+import net.sf.regain.search.SearchMetrics;
+import net.sf.regain.search.SearchQueryParser;
 import net.sf.regain.search.SearchToolkit;
 import net.sf.regain.search.access.SearchAccessController;
 import net.sf.regain.search.config.IndexConfig;
@@ -125,7 +127,7 @@ public class SearchResultsImpl implements SearchResults {
   public SearchResultsImpl(IndexConfig[] indexConfigs, PageRequest request)
           throws RegainException {
 
-    long startTime = System.currentTimeMillis();
+    long startTime = System.nanoTime();
     ArrayList<String> groupsArr = new ArrayList<String>();
     IndexSearcherManager[] indexSearcherManagers = new IndexSearcherManager[indexConfigs.length];
     IndexSearcher[] searchers = new IndexSearcher[indexConfigs.length];
@@ -203,7 +205,7 @@ public class SearchResultsImpl implements SearchResults {
             String[] searchFieldArr = indexConfigs[k].getSearchFieldList();
             for (int i = 0; i < searchFieldArr.length; i++) {
 
-              QueryParser parser = new QueryParser(RegainToolkit.getLuceneVersion(), searchFieldArr[i], mAnalyzer);
+              QueryParser parser = new SearchQueryParser(RegainToolkit.getLuceneVersion(), searchFieldArr[i], mAnalyzer);
               parser.setDefaultOperator(QueryParser.AND_OPERATOR);
               parser.setAllowLeadingWildcard(true);
 
@@ -284,7 +286,9 @@ public class SearchResultsImpl implements SearchResults {
       }
     }
 
-    mSearchTime = (int) (System.currentTimeMillis() - startTime);
+    long searchTime = System.nanoTime() - startTime;
+    mSearchTime = (int) (searchTime / 1000000);
+    SearchMetrics.recordSearch(searchTime);
 
   }
 
@@ -638,7 +642,7 @@ public class SearchResultsImpl implements SearchResults {
         text = RegainToolkit.replace(text, "<", "&lt;");
         text = RegainToolkit.replace(text, ">", "&gt;");
 
-        TokenStream tokenStream = mAnalyzer.tokenStream("content",
+        TokenStream tokenStream = mAnalyzer.reusableTokenStream("content",
                 new StringReader(text));
         // Get 3 best fragments and seperate with a " ... "
         resHighlSummary = highlighter.getBestFragments(tokenStream, text, 3, " ... ");
@@ -654,7 +658,7 @@ public class SearchResultsImpl implements SearchResults {
       text = document.get("title");
       String resHighlTitle = null;
       if (text != null) {
-        TokenStream tokenStream = mAnalyzer.tokenStream("content",
+        TokenStream tokenStream = mAnalyzer.reusableTokenStream("content",
                 new StringReader(text));
         // Get the best fragment
         resHighlTitle = highlighter.getBestFragment(tokenStream, text);
@@ -22,6 +22,7 @@ package net.sf.regain.search.results;
 
 import java.util.HashSet;
 import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
 import org.apache.lucene.search.SortField;
 
 /**
@@ -76,7 +77,7 @@ public class SortingOption implements Comparable {
     } else if (orderFromRequest.startsWith(LAST_MODIFIED)) {
       sortFieldName = LAST_MODIFIED;
       reverse = isReverse(orderFromRequest);
-      sortType = SortField.STRING;
+      sortType = SortField.LONG;
 
     } else if (orderFromRequest.startsWith(TITLE)) {
       sortFieldName = TITLE;
@@ -170,6 +171,9 @@ public class SortingOption implements Comparable {
   public SortField getSortField() {
     if (sortFieldName.equalsIgnoreCase(RELEVANCE)) {
       return SortField.FIELD_SCORE;
+    } else if (sortFieldName.equals(LAST_MODIFIED)) {
+      // Sort by the numeric field, the field cache needn't parse date strings
+      return new SortField(RegainToolkit.FIELD_MODIFIED, SortField.LONG, isReverse());
     } else {
       return new SortField(getSortFieldName(), getSortType(), isReverse());
     }
@@ -29,6 +29,7 @@ import java.util.Properties;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.Crawler;
+import net.sf.regain.crawler.FileChangeIndexer;
 import net.sf.regain.crawler.config.CrawlerConfig;
 import net.sf.regain.crawler.config.XmlCrawlerConfig;
 
@@ -55,6 +56,12 @@ public class IndexUpdateManager implements DesktopConstants {
   /** The crawler. Is <code>null</code> if there is currently no index update running. */
   private volatile Crawler mCrawler;
 
+  /**
+   * The indexer watching the file system. Is <code>null</code> if the file
+   * system is currently not watched.
+   */
+  private volatile FileChangeIndexer mFileChangeIndexer;
+
   private volatile boolean welcomePageShown = false;
 
 
@@ -108,6 +115,12 @@ public class IndexUpdateManager implements DesktopConstants {
       return;
     }
 
+    // Stop watching the file system, the crawler will do the work
+    FileChangeIndexer indexer = mFileChangeIndexer;
+    if (indexer != null) {
+      indexer.stop();
+    }
+
     // Create an needsupdate file
     try {
       FileOutputStream out = new FileOutputStream(NEEDSUPDATE_FILE);
@@ -161,14 +174,67 @@ public class IndexUpdateManager implements DesktopConstants {
         mLog.error("Updating index failed", thr);
       }
 
+      // Watch the file system until the next index update is due
+      boolean watched = false;
       try {
-        Thread.sleep(10000);
+        watched = watchFileSystem();
+      }
+      catch (Throwable thr) {
+        mLog.error("Watching the file system failed", thr);
+      }
+
+      if (! watched) {
+        try {
+          Thread.sleep(10000);
+        }
+        catch (InterruptedException exc) {}
       }
-      catch (InterruptedException exc) {}
     }
   }
 
 
+  /**
+   * Keeps the index up to date by watching the file system until the next
+   * index update is due.
+   *
+   * @return Whether the file system was watched.
+   * @throws RegainException If watching failed.
+   */
+  private boolean watchFileSystem() throws RegainException {
+    if ((! DesktopToolkit.getDesktopConfig().getContinuousIndexing())
+      || indexNeedsUpdate())
+    {
+      return false;
+    }
+
+    CrawlerConfig config = new XmlCrawlerConfig(CRAWLER_CONFIG_FILE);
+    if (config.getStartUrls().length == 0) {
+      return false;
+    }
+
+    FileChangeIndexer indexer = new FileChangeIndexer(config);
+    mFileChangeIndexer = indexer;
+    try {
+      indexer.run(getNextUpdateTime());
+    }
+    finally {
+      mFileChangeIndexer = null;
+    }
+
+    if (indexer.getNeedsFullUpdate()) {
+      // The watcher missed some changes -> Do a complete index update
+      try {
+        FileOutputStream out = new FileOutputStream(NEEDSUPDATE_FILE);
+        out.close();
+      }
+      catch (IOException exc) {
+        throw new RegainException("Creating needsupdate file failed", exc);
+      }
+    }
+    return true;
+  }
+
+
   /**
    * Executes an index update if nessesary.
    *
@@ -248,12 +314,7 @@ public class IndexUpdateManager implements DesktopConstants {
     if (NEEDSUPDATE_FILE.exists()) {
       return true;
     } else if (LASTUPDATE_FILE.exists()) {
-      String lastUpdateAsString = RegainToolkit.readStringFromFile(LASTUPDATE_FILE);
-      long lastUpdate = RegainToolkit.stringToLastModified(lastUpdateAsString).getTime();
-      long interval = DesktopToolkit.getDesktopConfig().getInterval();
-      long nextUpdateTime = lastUpdate + interval * 1000 * 60;
-
-      return System.currentTimeMillis() >= nextUpdateTime;
+      return System.currentTimeMillis() >= getNextUpdateTime();
     } else {
       // The lastupdate file does not exist -> There was never an index created
       return true;
@@ -261,6 +322,24 @@ public class IndexUpdateManager implements DesktopConstants {
   }
 
 
+  /**
+   * Gets the time when the next index update is due.
+   *
+   * @return The time of the next index update.
+   * @throws RegainException If reading the last update file failed.
+   */
+  private long getNextUpdateTime() throws RegainException {
+    if (! LASTUPDATE_FILE.exists()) {
+      return System.currentTimeMillis();
+    }
+
+    String lastUpdateAsString = RegainToolkit.readStringFromFile(LASTUPDATE_FILE);
+    long lastUpdate = RegainToolkit.stringToLastModified(lastUpdateAsString).getTime();
+    long interval = DesktopToolkit.getDesktopConfig().getInterval();
+    return lastUpdate + interval * 1000 * 60;
+  }
+
+
   /**
    * Saves the current time as the last index update.
    */
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.SearchMetrics;
 import net.sf.regain.ui.desktop.config.DesktopConfig;
 import net.sf.regain.util.sharedtag.simple.ExecuterParser;
 import net.sf.regain.util.sharedtag.simple.SimplePageRequest;
@@ -100,6 +101,7 @@ public class Main implements DesktopConstants {
 		SimplePageRequest.setResourceBaseUrl(baseurl);
 		SimplePageRequest.setWorkingDir(new File("."));
 		SimplePageRequest.setInitParameter("searchConfigFile", "conf/SearchConfiguration.xml");
+		SearchMetrics.register();
 
 		// Set Namespaces of Tags.
 		Map<String,String> namespaces = null;
@@ -0,0 +1,71 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.ui.desktop;
+
+import java.io.PrintStream;
+
+import net.sf.regain.util.metrics.Metrics;
+import net.sf.regain.util.metrics.MetricsResponse;
+import simple.http.Request;
+import simple.http.Response;
+import simple.http.load.BasicService;
+import simple.http.serve.Context;
+
+/**
+ * A simpleweb Service providing the current metrics of regain.
+ * <p>
+ * By default the metrics are sent in the Prometheus text format. With the
+ * parameter <code>format=json</code> they are sent as JSON object.
+ *
+ * @see MetricsResponse
+ * @see Metrics
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsService extends BasicService {
+
+  /**
+   * Creates a new instance of MetricsService.
+   *
+   * @param context The context of this service.
+   */
+  public MetricsService(Context context) {
+    super(context);
+  }
+
+
+  /**
+   * Processes a request.
+   *
+   * @param req The request.
+   * @param resp The response.
+   * @throws Exception If sending the metrics failed.
+   */
+  public void process(Request req, Response resp) throws Exception {
+    MetricsResponse response = new MetricsResponse(
+        req.getParameter(MetricsResponse.FORMAT_PARAM));
+
+    resp.set("Content-Type", response.getContentType());
+    PrintStream out = resp.getPrintStream();
+    out.write(response.getBody());
+    out.close();
+  }
+
+}
@@ -39,6 +39,15 @@ public interface DesktopConfig {
    */
   public int getInterval() throws RegainException;
 
+  /**
+   * Gets whether the index should be kept up to date by watching the file
+   * system between the index updates.
+   *
+   * @return Whether the file system should be watched.
+   * @throws RegainException If loading the config failed.
+   */
+  public boolean getContinuousIndexing() throws RegainException;
+
   /**
    * Gets the port of the webserver.
    *
@@ -52,6 +52,9 @@ public class XmlDesktopConfig implements DesktopConfig, DesktopConstants {
   /** The index update interval. */
   private int mInterval;
 
+  /** Whether the file system should be watched between the index updates. */
+  private boolean mContinuousIndexing;
+
   /** The port of the webserver. */
   private int mPort;
 
@@ -93,6 +96,19 @@ public class XmlDesktopConfig implements DesktopConfig, DesktopConstants {
   }
 
 
+  /**
+   * Gets whether the index should be kept up to date by watching the file
+   * system between the index updates.
+   *
+   * @return Whether the file system should be watched.
+   * @throws RegainException If loading the config failed.
+   */
+  public boolean getContinuousIndexing() throws RegainException {
+    loadConfig();
+    return mContinuousIndexing;
+  }
+
+
   /**
    * Gets the port of the webserver.
    *
@@ -146,6 +162,9 @@ public class XmlDesktopConfig implements DesktopConfig, DesktopConstants {
       Node node = XmlToolkit.getChild(config, "interval", true);
       mInterval = (node == null ) ? DEFAULT_INTERVAL : XmlToolkit.getTextAsInt(node);
 
+      node = XmlToolkit.getChild(config, "continuous_indexing");
+      mContinuousIndexing = (node == null) ? false : XmlToolkit.getTextAsBoolean(node);
+
       node = XmlToolkit.getChild(config, "port");
       mPort = (node == null) ? DEFAULT_PORT : XmlToolkit.getTextAsInt(node);
 
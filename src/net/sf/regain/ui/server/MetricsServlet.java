@@ -0,0 +1,76 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.ui.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.regain.search.SearchMetrics;
+import net.sf.regain.util.metrics.Metrics;
+import net.sf.regain.util.metrics.MetricsResponse;
+
+/**
+ * A servlet providing the current metrics of regain.
+ * <p>
+ * By default the metrics are sent in the Prometheus text format. With the
+ * parameter <code>format=json</code> they are sent as JSON object.
+ *
+ * @see MetricsResponse
+ * @see Metrics
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsServlet extends HttpServlet {
+
+  /** The serial version UID. */
+  private static final long serialVersionUID = 1L;
+
+
+  /**
+   * Registers the metrics of the search. The servlet is loaded on startup,
+   * so the metrics are available from the start.
+   *
+   * @throws ServletException Never.
+   */
+  public void init() throws ServletException {
+    SearchMetrics.register();
+  }
+
+
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+    throws ServletException, IOException
+  {
+    MetricsResponse response = new MetricsResponse(
+        req.getParameter(MetricsResponse.FORMAT_PARAM));
+
+    byte[] bytes = response.getBody();
+    resp.setContentType(response.getContentType());
+    resp.setContentLength(bytes.length);
+    OutputStream out = resp.getOutputStream();
+    out.write(bytes);
+    out.close();
+  }
+
+}
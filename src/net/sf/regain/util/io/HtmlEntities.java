@@ -54,6 +54,8 @@ package net.sf.regain.util.io;
  * <http://www.apache.org/>.
  */
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Hashtable;
 
 /**
@@ -451,4 +453,66 @@ public class HtmlEntities {
     addXML("&gt",     62);
     addXML("&apos",   39);
   }
+
+  /**
+   * A copy of {@link #decoder} that can be read without synchronization. It is
+   * filled when the class is loaded and never changed afterwards.
+   */
+  private static final HashMap<String, String> unsyncDecoder
+    = new HashMap<String, String>(decoder);
+
+
+  /**
+   * Decodes an entity within a text and appends its plain text.
+   * <p>
+   * Unlike {@link #decode(String)} this method neither synchronizes nor
+   * creates Strings for numeric entities, so it is suited for stripping
+   * large documents.
+   *
+   * @param text The text holding the entity.
+   * @param start The index of the '&amp;' starting the entity.
+   * @param end The index of the ';' ending the entity.
+   * @param out Where to append the plain text.
+   * @return Whether the entity was wellformed. If not, nothing was appended.
+   * @throws IOException If appending failed.
+   */
+  public static boolean decode(CharSequence text, int start, int end,
+    Appendable out) throws IOException
+  {
+    if (end - start < 2) {
+      return false;
+    }
+
+    if (text.charAt(start + 1) == '#') {
+      int pos = start + 2;
+      int radix = 10;
+      if ((pos < end) && (text.charAt(pos) == 'X' || text.charAt(pos) == 'x')) {
+        pos++;
+        radix = 16;
+      }
+      if (pos == end) {
+        return false;
+      }
+
+      int value = 0;
+      for (; pos < end; pos++) {
+        int digit = Character.digit(text.charAt(pos), radix);
+        if (digit == -1) {
+          return false;
+        }
+        value = value * radix + digit;
+        if (value > 0xFFFF) {
+          return false;
+        }
+      }
+      out.append((char) value);
+    } else {
+      String s = unsyncDecoder.get(text.subSequence(start, end).toString());
+      if (s != null) {
+        out.append(s);
+      }
+    }
+    return true;
+  }
+
 }
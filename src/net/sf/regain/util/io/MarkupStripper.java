@@ -0,0 +1,270 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Strips the tags from HTML or XML text and replaces the entities.
+ * <p>
+ * The stripper scans the text in one pass and writes the plain text to an
+ * {@link Appendable}. It reads the input in chunks, so neither the input nor
+ * the single text runs have to be held as Strings. The text between two tags
+ * is trimmed and separated from the previous text by a space.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MarkupStripper {
+
+  /** The maximum length of an entity (without '&amp;' and ';'). */
+  private static final int MAX_ENTITY_LENGTH = 10;
+
+  /** Where to append the plain text. */
+  private Appendable mOut;
+
+  /** The text since the last tag. The buffer is reused for every text run. */
+  private StringBuilder mRun;
+
+  /** Whether we are currently within a tag. */
+  private boolean mInTag;
+
+  /** Whether the current text run already had a rest of a cascaded tag. */
+  private boolean mRunHadTagRest;
+
+  /** Whether some text was already appended. */
+  private boolean mHasOutput;
+
+
+  /**
+   * Creates a new instance of MarkupStripper.
+   *
+   * @param out Where to append the plain text.
+   */
+  public MarkupStripper(Appendable out) {
+    mOut = out;
+    mRun = new StringBuilder();
+  }
+
+
+  /**
+   * Strips the tags from a text and replaces all entities.
+   *
+   * @param text The text to strip.
+   * @return The plain text.
+   */
+  public static String strip(String text) {
+    StringBuilder clean = new StringBuilder(text.length());
+    MarkupStripper stripper = new MarkupStripper(clean);
+    try {
+      stripper.write(text);
+      stripper.close();
+    }
+    catch (IOException exc) {
+      // Can't happen, a StringBuilder throws no IOException
+      throw new IllegalStateException(exc);
+    }
+    return clean.toString();
+  }
+
+
+  /**
+   * Strips the tags from the text of a reader and replaces all entities.
+   * The reader is not closed.
+   *
+   * @param reader The reader to read the text from.
+   * @param out Where to append the plain text.
+   * @throws IOException If reading or appending failed.
+   */
+  public static void strip(Reader reader, Appendable out) throws IOException {
+    MarkupStripper stripper = new MarkupStripper(out);
+    char[] buffer = new char[8192];
+    int len;
+    while ((len = reader.read(buffer)) != -1) {
+      stripper.write(buffer, 0, len);
+    }
+    stripper.close();
+  }
+
+
+  /**
+   * Replaces all entities of a text. Tags are left as they are.
+   *
+   * @param text The text whose entities should be replaced.
+   * @return The text with replaced entities.
+   */
+  public static String replaceEntities(String text) {
+    if (text.indexOf('&') == -1) {
+      return text;
+    }
+
+    StringBuilder clean = new StringBuilder(text.length());
+    try {
+      appendDecoded(text, 0, text.length(), clean);
+    }
+    catch (IOException exc) {
+      // Can't happen, a StringBuilder throws no IOException
+      throw new IllegalStateException(exc);
+    }
+    return clean.toString();
+  }
+
+
+  /**
+   * Strips a chunk of text.
+   *
+   * @param text The text to strip.
+   * @throws IOException If appending failed.
+   */
+  public void write(CharSequence text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      write(text.charAt(i));
+    }
+  }
+
+
+  /**
+   * Strips a chunk of text.
+   *
+   * @param buffer The buffer holding the text.
+   * @param offset The start of the text in the buffer.
+   * @param length The length of the text.
+   * @throws IOException If appending failed.
+   */
+  public void write(char[] buffer, int offset, int length) throws IOException {
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      write(buffer[i]);
+    }
+  }
+
+
+  /**
+   * Strips one char of the text.
+   *
+   * @param c The char.
+   * @throws IOException If appending failed.
+   */
+  private void write(char c) throws IOException {
+    if (mInTag) {
+      if (c == '>') {
+        mInTag = false;
+      }
+    } else if (c == '<') {
+      flushRun();
+      mInTag = true;
+    } else if (c == '>' && ! mRunHadTagRest) {
+      // This is the rest of a cascaded tag
+      // Example: In the text "<!-- <br> --> Hello" "<!-- <br>" is detected
+      //          as tag and "-->" is the rest that has to be thrown away.
+      mRun.setLength(0);
+      mRunHadTagRest = true;
+    } else {
+      mRun.append(c);
+    }
+  }
+
+
+  /**
+   * Appends the last text run. If the text ends within a tag, this dirty end
+   * is thrown away.
+   *
+   * @throws IOException If appending failed.
+   */
+  public void close() throws IOException {
+    if (! mInTag) {
+      flushRun();
+    }
+    mRun.setLength(0);
+  }
+
+
+  /**
+   * Trims the current text run, replaces its entities and appends it.
+   *
+   * @throws IOException If appending failed.
+   */
+  private void flushRun() throws IOException {
+    int start = 0;
+    int end = mRun.length();
+    while ((start < end) && (mRun.charAt(start) <= ' ')) {
+      start++;
+    }
+    while ((start < end) && (mRun.charAt(end - 1) <= ' ')) {
+      end--;
+    }
+
+    if (start < end) {
+      if (mHasOutput) {
+        mOut.append(' ');
+      }
+      appendDecoded(mRun, start, end, mOut);
+      mHasOutput = true;
+    }
+
+    mRun.setLength(0);
+    mRunHadTagRest = false;
+  }
+
+
+  /**
+   * Appends a part of a text and replaces its entities.
+   *
+   * @param text The text.
+   * @param start The start of the part.
+   * @param end The end of the part.
+   * @param out Where to append the text.
+   * @throws IOException If appending failed.
+   */
+  private static void appendDecoded(CharSequence text, int start, int end,
+    Appendable out) throws IOException
+  {
+    int offset = start;
+    for (int i = start; i < end; i++) {
+      if (text.charAt(i) == '&') {
+        // Find the end of the entity
+        int entityEnd = -1;
+        int maxEnd = Math.min(end, i + MAX_ENTITY_LENGTH + 2);
+        for (int j = i + 1; j < maxEnd; j++) {
+          if (text.charAt(j) == ';') {
+            entityEnd = j;
+            break;
+          }
+        }
+
+        if (entityEnd != -1) {
+          out.append(text, offset, i);
+          if (HtmlEntities.decode(text, i, entityEnd, out)) {
+            offset = entityEnd + 1;
+            i = entityEnd;
+          } else {
+            // This doesn't seem to be a wellformed entity
+            // -> Leave the text as it is
+            offset = i;
+          }
+        }
+      }
+    }
+
+    out.append(text, offset, end);
+  }
+
+}
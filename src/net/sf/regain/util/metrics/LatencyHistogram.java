@@ -0,0 +1,191 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations having a fixed size.
+ * <p>
+ * The durations are counted in log-linear buckets: Each power of two is split
+ * into 8 sub buckets, so a percentile is reported with an error of at most
+ * 12.5%. The buckets cover about 1 microsecond to 73 minutes. Recording a
+ * duration doesn't need any locks.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class LatencyHistogram {
+
+  /** The number of bits for the sub buckets of a power of two. */
+  private static final int SUB_BUCKET_BITS = 3;
+  /** The number of sub buckets for each power of two. */
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  /**
+   * The power of two of the smallest duration (2^10 ns = about 1
+   * microsecond). Shorter durations go in the first bucket.
+   */
+  private static final int MIN_EXPONENT = 10;
+  /**
+   * The power of two of the largest duration (2^42 ns = about 73 minutes).
+   * Longer durations go in the last bucket.
+   */
+  private static final int MAX_EXPONENT = 42;
+  /** The number of buckets. */
+  private static final int BUCKET_COUNT
+    = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKET_COUNT;
+
+  /** The number of durations for each bucket. */
+  private AtomicLongArray mBuckets;
+  /** The sum of all durations (in nanoseconds). */
+  private AtomicLong mSum;
+  /** The longest duration (in nanoseconds). */
+  private AtomicLong mMax;
+
+
+  /**
+   * Creates a new instance of LatencyHistogram.
+   */
+  public LatencyHistogram() {
+    mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    mSum = new AtomicLong();
+    mMax = new AtomicLong();
+  }
+
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos The duration in nanoseconds.
+   */
+  public void record(long nanos) {
+    nanos = Math.max(0, nanos);
+    mBuckets.incrementAndGet(getBucket(nanos));
+    mSum.addAndGet(nanos);
+
+    long max;
+    do {
+      max = mMax.get();
+    } while ((nanos > max) && ! mMax.compareAndSet(max, nanos));
+  }
+
+
+  /**
+   * Gets the number of recorded durations.
+   *
+   * @return The number of durations.
+   */
+  public long getCount() {
+    long count = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      count += mBuckets.get(bucket);
+    }
+    return count;
+  }
+
+
+  /**
+   * Gets the sum of all recorded durations.
+   *
+   * @return The sum in nanoseconds.
+   */
+  public long getSum() {
+    return mSum.get();
+  }
+
+
+  /**
+   * Gets the longest recorded duration.
+   *
+   * @return The longest duration in nanoseconds.
+   */
+  public long getMax() {
+    return mMax.get();
+  }
+
+
+  /**
+   * Gets the duration that a share of the recorded durations had at most.
+   *
+   * @param share The share, e.g. 0.99 for the duration 99% of the recordings
+   *        had at most.
+   * @return The duration in nanoseconds. Is 0 if nothing was recorded.
+   */
+  public long getPercentile(double share) {
+    // Get a snapshot of the buckets
+    long[] countArr = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      countArr[bucket] = mBuckets.get(bucket);
+      total += countArr[bucket];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long max = getMax();
+    long rank = Math.max(1, (long) Math.ceil(share * total));
+    long count = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      count += countArr[bucket];
+      if (count >= rank) {
+        return Math.min(getBucketLimit(bucket), max);
+      }
+    }
+    return max;
+  }
+
+
+  /**
+   * Gets the bucket a duration belongs to.
+   *
+   * @param nanos The duration in nanoseconds.
+   * @return The bucket.
+   */
+  private static int getBucket(long nanos) {
+    if (nanos < (1L << MIN_EXPONENT)) {
+      return 0;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - MIN_EXPONENT) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+
+  /**
+   * Gets the longest duration belonging to a bucket.
+   *
+   * @param bucket The bucket.
+   * @return The longest duration in nanoseconds.
+   */
+  private static long getBucketLimit(int bucket) {
+    if (bucket == BUCKET_COUNT - 1) {
+      return Long.MAX_VALUE;
+    }
+    int exponent = bucket / SUB_BUCKET_COUNT + MIN_EXPONENT;
+    int subBucket = bucket % SUB_BUCKET_COUNT;
+    return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+}
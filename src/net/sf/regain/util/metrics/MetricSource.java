@@ -18,39 +18,24 @@
  *
  * Contact: Til Schneider, info@murfman.de
  */
-package net.sf.regain.crawler.document;
-
-import net.sf.regain.crawler.Profiler;
+package net.sf.regain.util.metrics;
 
 /**
- * Allow ordering by priority of Preparator. (Higher values first.)
- * @author Benjamin
+ * A source of metrics. A source is registered at {@link Metrics} and asked for
+ * its current values each time the metrics are requested.
+ *
+ * @author Til Schneider, www.murfman.de
  */
-public class PreparatorProfilerPair implements Comparable<PreparatorProfilerPair>
-{
-  private Preparator preparator;
-  private Profiler profiler;
-
-  public Preparator getPreparator()
-  {
-    return preparator;
-  }
-
-  public Profiler getProfiler()
-  {
-    return profiler;
-  }
-
-  public PreparatorProfilerPair(Preparator preparator, Profiler profiler)
-  {
-    this.preparator = preparator;
-    this.profiler = profiler;
-  }
+public interface MetricSource {
 
-  @Override
-  public int compareTo(PreparatorProfilerPair other)
-  {
-    return Integer.valueOf(other.preparator.getPriority()).compareTo(preparator.getPriority());
-  }
+  /**
+   * Adds the current values of the metrics of this source.
+   * <p>
+   * May be called by any thread at any time, so the values must be read
+   * without blocking the thread that changes them.
+   *
+   * @param collector The collector to add the values to.
+   */
+  public void collectMetrics(MetricsCollector collector);
 
 }
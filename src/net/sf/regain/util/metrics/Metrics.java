@@ -0,0 +1,127 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The registry of all metric sources of the VM.
+ * <p>
+ * The crawler and the search register their sources here. The metrics are
+ * provided by the <code>/metrics</code> page of the desktop search and the
+ * search webapp. If the system property <code>regain.metrics.jmx</code> is
+ * <code>true</code>, they are provided as JMX MBean
+ * <code>net.sf.regain:type=Metrics</code>, too.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class Metrics {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(Metrics.class);
+
+  /** The name of the system property that enables the JMX MBean. */
+  public static final String JMX_PROPERTY = "regain.metrics.jmx";
+
+  /** The name of the JMX MBean. */
+  public static final String MBEAN_NAME = "net.sf.regain:type=Metrics";
+
+  /** The registered sources. The key of a source is the key. */
+  private static Map<String, MetricSource> mSourceMap
+    = new LinkedHashMap<String, MetricSource>();
+
+  static {
+    if (Boolean.getBoolean(JMX_PROPERTY)) {
+      registerMBean();
+    }
+  }
+
+
+  /**
+   * Registers a metric source. A source registered before with the same key
+   * is replaced.
+   *
+   * @param key The key of the source, e.g. "crawler".
+   * @param source The source.
+   */
+  public static synchronized void registerSource(String key, MetricSource source) {
+    mSourceMap.put(key, source);
+  }
+
+
+  /**
+   * Unregisters a metric source.
+   *
+   * @param key The key of the source.
+   */
+  public static synchronized void unregisterSource(String key) {
+    mSourceMap.remove(key);
+  }
+
+
+  /**
+   * Collects the current values of all sources.
+   *
+   * @return The collected values.
+   */
+  public static MetricsCollector collect() {
+    MetricSource[] sourceArr;
+    synchronized (Metrics.class) {
+      sourceArr = mSourceMap.values().toArray(new MetricSource[mSourceMap.size()]);
+    }
+
+    MetricsCollector collector = new MetricsCollector();
+    for (MetricSource source : sourceArr) {
+      try {
+        source.collectMetrics(collector);
+      }
+      catch (RuntimeException exc) {
+        mLog.warn("Collecting metrics failed for " + source, exc);
+      }
+    }
+    return collector;
+  }
+
+
+  /**
+   * Registers the JMX MBean providing the metrics.
+   */
+  private static void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (! server.isRegistered(name)) {
+        server.registerMBean(new MetricsJmxBean(), name);
+      }
+    }
+    catch (Exception exc) {
+      mLog.warn("Registering the metrics MBean failed", exc);
+    }
+  }
+
+}
@@ -0,0 +1,372 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Collects the current values of metrics and writes them in the Prometheus
+ * text format or as JSON.
+ * <p>
+ * Labels are given as pairs of name and value, e.g.
+ * <code>addGauge("regain_queue_size", "The queue size", 5, "queue", "jobs")</code>.
+ *
+ * @see MetricSource
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsCollector {
+
+  /** The quantiles reported for summaries. */
+  private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+  /** The collected metric families. The name is the key. */
+  private LinkedHashMap<String, Family> mFamilyMap;
+
+
+  /**
+   * Creates a new instance of MetricsCollector.
+   */
+  public MetricsCollector() {
+    mFamilyMap = new LinkedHashMap<String, Family>();
+  }
+
+
+  /**
+   * Adds the value of a counter. A counter only increases.
+   *
+   * @param name The name of the counter.
+   * @param help The description of the counter.
+   * @param value The value.
+   * @param labels The labels as pairs of name and value.
+   */
+  public void addCounter(String name, String help, double value, String... labels) {
+    getFamily(name, "counter", help).mSampleList.add(new Sample(name, labels, value));
+  }
+
+
+  /**
+   * Adds the value of a gauge. A gauge may increase and decrease.
+   *
+   * @param name The name of the gauge.
+   * @param help The description of the gauge.
+   * @param value The value.
+   * @param labels The labels as pairs of name and value.
+   */
+  public void addGauge(String name, String help, double value, String... labels) {
+    getFamily(name, "gauge", help).mSampleList.add(new Sample(name, labels, value));
+  }
+
+
+  /**
+   * Adds a summary of durations with the median, the 95% and the 99%
+   * quantile.
+   *
+   * @param name The name of the summary. Should end with "_seconds".
+   * @param help The description of the summary.
+   * @param histogram The histogram holding the durations.
+   * @param labels The labels as pairs of name and value.
+   */
+  public void addSummary(String name, String help, LatencyHistogram histogram,
+    String... labels)
+  {
+    long[] quantileArr = new long[QUANTILES.length];
+    for (int i = 0; i < QUANTILES.length; i++) {
+      quantileArr[i] = histogram.getPercentile(QUANTILES[i]);
+    }
+    addSummary(name, help, quantileArr, histogram.getSum(),
+        histogram.getCount(), labels);
+  }
+
+
+  /**
+   * Adds a summary of durations.
+   *
+   * @param name The name of the summary. Should end with "_seconds".
+   * @param help The description of the summary.
+   * @param quantileArr The median, the 95% and the 99% quantile (in
+   *        nanoseconds).
+   * @param sum The sum of all durations (in nanoseconds).
+   * @param count The number of durations.
+   * @param labels The labels as pairs of name and value.
+   */
+  public void addSummary(String name, String help, long[] quantileArr,
+    long sum, long count, String... labels)
+  {
+    Family family = getFamily(name, "summary", help);
+    for (int i = 0; i < QUANTILES.length; i++) {
+      String[] quantileLabels = new String[labels.length + 2];
+      System.arraycopy(labels, 0, quantileLabels, 0, labels.length);
+      quantileLabels[labels.length] = "quantile";
+      quantileLabels[labels.length + 1] = Double.toString(QUANTILES[i]);
+      family.mSampleList.add(new Sample(name, quantileLabels, quantileArr[i] / 1e9));
+    }
+    family.mSampleList.add(new Sample(name + "_sum", labels, sum / 1e9));
+    family.mSampleList.add(new Sample(name + "_count", labels, count));
+  }
+
+
+  /**
+   * Gets a metric family. Creates it if it doesn't exist yet.
+   *
+   * @param name The name of the family.
+   * @param type The type of the family.
+   * @param help The description of the family.
+   * @return The family.
+   */
+  private Family getFamily(String name, String type, String help) {
+    Family family = mFamilyMap.get(name);
+    if (family == null) {
+      family = new Family(name, type, help);
+      mFamilyMap.put(name, family);
+    }
+    return family;
+  }
+
+
+  /**
+   * Gets the values of all samples. The key has the form
+   * <code>name{label="value",...}</code>.
+   *
+   * @return The values of all samples.
+   */
+  public LinkedHashMap<String, Double> getValueMap() {
+    LinkedHashMap<String, Double> valueMap = new LinkedHashMap<String, Double>();
+    StringBuilder buffer = new StringBuilder();
+    for (Family family : mFamilyMap.values()) {
+      for (Sample sample : family.mSampleList) {
+        buffer.setLength(0);
+        appendSampleName(buffer, sample);
+        valueMap.put(buffer.toString(), sample.mValue);
+      }
+    }
+    return valueMap;
+  }
+
+
+  /**
+   * Writes the metrics in the Prometheus text format (version 0.0.4).
+   *
+   * @return The metrics as text.
+   */
+  public String toPrometheusText() {
+    StringBuilder buffer = new StringBuilder();
+    for (Family family : mFamilyMap.values()) {
+      buffer.append("# HELP ").append(family.mName).append(' ')
+        .append(family.mHelp.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+      buffer.append("# TYPE ").append(family.mName).append(' ')
+        .append(family.mType).append('\n');
+      for (Sample sample : family.mSampleList) {
+        appendSampleName(buffer, sample);
+        buffer.append(' ').append(formatValue(sample.mValue)).append('\n');
+      }
+    }
+    return buffer.toString();
+  }
+
+
+  /**
+   * Writes the metrics as JSON.
+   *
+   * @return The metrics as JSON.
+   */
+  public String toJson() {
+    StringBuilder buffer = new StringBuilder("{\"metrics\":[");
+    boolean firstFamily = true;
+    for (Family family : mFamilyMap.values()) {
+      if (! firstFamily) {
+        buffer.append(',');
+      }
+      firstFamily = false;
+
+      buffer.append("{\"name\":");
+      appendJsonString(buffer, family.mName);
+      buffer.append(",\"type\":");
+      appendJsonString(buffer, family.mType);
+      buffer.append(",\"help\":");
+      appendJsonString(buffer, family.mHelp);
+      buffer.append(",\"samples\":[");
+      boolean firstSample = true;
+      for (Sample sample : family.mSampleList) {
+        if (! firstSample) {
+          buffer.append(',');
+        }
+        firstSample = false;
+
+        buffer.append("{\"name\":");
+        appendJsonString(buffer, sample.mName);
+        buffer.append(",\"labels\":{");
+        for (int i = 0; i + 1 < sample.mLabels.length; i += 2) {
+          if (i > 0) {
+            buffer.append(',');
+          }
+          appendJsonString(buffer, sample.mLabels[i]);
+          buffer.append(':');
+          appendJsonString(buffer, sample.mLabels[i + 1]);
+        }
+        buffer.append("},\"value\":");
+        if (Double.isNaN(sample.mValue) || Double.isInfinite(sample.mValue)) {
+          buffer.append("null");
+        } else {
+          buffer.append(formatValue(sample.mValue));
+        }
+        buffer.append('}');
+      }
+      buffer.append("]}");
+    }
+    buffer.append("]}");
+    return buffer.toString();
+  }
+
+
+  /**
+   * Appends the name of a sample with its labels.
+   *
+   * @param buffer The buffer to append to.
+   * @param sample The sample.
+   */
+  private void appendSampleName(StringBuilder buffer, Sample sample) {
+    buffer.append(sample.mName);
+    if (sample.mLabels.length >= 2) {
+      buffer.append('{');
+      for (int i = 0; i + 1 < sample.mLabels.length; i += 2) {
+        if (i > 0) {
+          buffer.append(',');
+        }
+        buffer.append(sample.mLabels[i]).append("=\"")
+          .append(sample.mLabels[i + 1].replace("\\", "\\\\")
+                  .replace("\"", "\\\"").replace("\n", "\\n"))
+          .append('"');
+      }
+      buffer.append('}');
+    }
+  }
+
+
+  /**
+   * Formats a value. Whole numbers are written without fraction.
+   *
+   * @param value The value to format.
+   * @return The formatted value.
+   */
+  private static String formatValue(double value) {
+    if ((value == Math.rint(value)) && (Math.abs(value) < 1e15)) {
+      return Long.toString((long) value);
+    } else if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return (value > 0) ? "+Inf" : "-Inf";
+    } else {
+      return Double.toString(value);
+    }
+  }
+
+
+  /**
+   * Appends a String as JSON String.
+   *
+   * @param buffer The buffer to append to.
+   * @param text The String to append.
+   */
+  private static void appendJsonString(StringBuilder buffer, String text) {
+    buffer.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"':  buffer.append("\\\""); break;
+        case '\\': buffer.append("\\\\"); break;
+        case '\n': buffer.append("\\n"); break;
+        case '\r': buffer.append("\\r"); break;
+        case '\t': buffer.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            buffer.append(String.format("\\u%04x", (int) c));
+          } else {
+            buffer.append(c);
+          }
+      }
+    }
+    buffer.append('"');
+  }
+
+
+  /**
+   * A metric family: All samples of one metric.
+   */
+  private static class Family {
+
+    /** The name. */
+    private String mName;
+    /** The type: "counter", "gauge" or "summary". */
+    private String mType;
+    /** The description. */
+    private String mHelp;
+    /** The samples. */
+    private List<Sample> mSampleList;
+
+
+    /**
+     * Creates a new instance of Family.
+     *
+     * @param name The name.
+     * @param type The type.
+     * @param help The description.
+     */
+    public Family(String name, String type, String help) {
+      mName = name;
+      mType = type;
+      mHelp = help;
+      mSampleList = new ArrayList<Sample>();
+    }
+
+  }
+
+
+  /**
+   * A value of a metric.
+   */
+  private static class Sample {
+
+    /** The name. For summaries it may have a suffix like "_sum". */
+    private String mName;
+    /** The labels as pairs of name and value. */
+    private String[] mLabels;
+    /** The value. */
+    private double mValue;
+
+
+    /**
+     * Creates a new instance of Sample.
+     *
+     * @param name The name.
+     * @param labels The labels as pairs of name and value.
+     * @param value The value.
+     */
+    public Sample(String name, String[] labels, double value) {
+      mName = name;
+      mLabels = labels;
+      mValue = value;
+    }
+
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * A JMX MBean providing the metrics.
+ * <p>
+ * Every sample is a read-only attribute named like in the Prometheus text
+ * format (e.g. <code>regain_crawler_jobs_queued</code>). The attribute
+ * <code>PrometheusText</code> has all metrics as text.
+ *
+ * @see Metrics
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsJmxBean implements DynamicMBean {
+
+  /** The name of the attribute holding all metrics as text. */
+  private static final String TEXT_ATTRIBUTE = "PrometheusText";
+
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    MetricsCollector collector = Metrics.collect();
+    if (TEXT_ATTRIBUTE.equals(attribute)) {
+      return collector.toPrometheusText();
+    }
+
+    Double value = collector.getValueMap().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException("Unknown metric: " + attribute);
+    }
+    return value;
+  }
+
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    MetricsCollector collector = Metrics.collect();
+    Map<String, Double> valueMap = collector.getValueMap();
+
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      if (TEXT_ATTRIBUTE.equals(attribute)) {
+        list.add(new Attribute(attribute, collector.toPrometheusText()));
+      } else if (valueMap.containsKey(attribute)) {
+        list.add(new Attribute(attribute, valueMap.get(attribute)));
+      }
+    }
+    return list;
+  }
+
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("The metrics are read-only");
+  }
+
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) {
+    throw new UnsupportedOperationException("The metrics MBean has no operations");
+  }
+
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    Map<String, Double> valueMap = Metrics.collect().getValueMap();
+
+    MBeanAttributeInfo[] infoArr = new MBeanAttributeInfo[valueMap.size() + 1];
+    infoArr[0] = new MBeanAttributeInfo(TEXT_ATTRIBUTE, String.class.getName(),
+        "All metrics in the Prometheus text format", true, false, false);
+    int i = 1;
+    for (String name : valueMap.keySet()) {
+      infoArr[i++] = new MBeanAttributeInfo(name, Double.class.getName(),
+          name, true, false, false);
+    }
+
+    return new MBeanInfo(getClass().getName(), "The metrics of regain",
+        infoArr, null, new MBeanOperationInfo[0], null);
+  }
+
+}
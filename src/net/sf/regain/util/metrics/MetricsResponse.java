@@ -0,0 +1,104 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The response of a metrics page. Is used by the <code>/metrics</code> page
+ * of the desktop search and the search webapp.
+ * <p>
+ * By default the metrics are sent in the Prometheus text format. With the
+ * parameter <code>format=json</code> they are sent as JSON object.
+ *
+ * @see Metrics
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsResponse {
+
+  /** The name of the request parameter selecting the format. */
+  public static final String FORMAT_PARAM = "format";
+
+  /** The content type of the response. */
+  private String mContentType;
+
+  /** The body of the response. */
+  private byte[] mBody;
+
+
+  /**
+   * Creates a new instance of MetricsResponse holding the current values of
+   * all metric sources.
+   *
+   * @param format The value of the request parameter <code>format</code>.
+   *        May be <code>null</code>.
+   */
+  public MetricsResponse(String format) {
+    this(Metrics.collect(), format);
+  }
+
+
+  /**
+   * Creates a new instance of MetricsResponse.
+   *
+   * @param collector The collected metrics.
+   * @param format The value of the request parameter <code>format</code>.
+   *        May be <code>null</code>.
+   */
+  public MetricsResponse(MetricsCollector collector, String format) {
+    String text;
+    if ("json".equals(format)) {
+      mContentType = "application/json; charset=utf-8";
+      text = collector.toJson();
+    } else {
+      mContentType = "text/plain; version=0.0.4; charset=utf-8";
+      text = collector.toPrometheusText();
+    }
+
+    try {
+      mBody = text.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException exc) {
+      throw new IllegalStateException("UTF-8 is not supported", exc);
+    }
+  }
+
+
+  /**
+   * Gets the content type of the response.
+   *
+   * @return The content type.
+   */
+  public String getContentType() {
+    return mContentType;
+  }
+
+
+  /**
+   * Gets the body of the response.
+   *
+   * @return The body (UTF-8).
+   */
+  public byte[] getBody() {
+    return mBody;
+  }
+
+}
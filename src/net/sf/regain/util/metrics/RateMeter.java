@@ -0,0 +1,86 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how many events happened per second during the last minute.
+ * <p>
+ * The events are counted in one slot per second. Marking an event doesn't
+ * need any locks. When a slot is reused for a new second, events marked by
+ * other threads at the same moment may get lost, so the rate is an
+ * approximation.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class RateMeter {
+
+  /** The number of seconds the rate is measured for. */
+  private static final int SLOT_COUNT = 60;
+
+  /** The number of events for each slot. */
+  private AtomicLongArray mCounts;
+  /** The second (since 1970) each slot is counting for. */
+  private AtomicLongArray mSeconds;
+
+
+  /**
+   * Creates a new instance of RateMeter.
+   */
+  public RateMeter() {
+    mCounts = new AtomicLongArray(SLOT_COUNT);
+    mSeconds = new AtomicLongArray(SLOT_COUNT);
+  }
+
+
+  /**
+   * Marks that an event happened.
+   */
+  public void mark() {
+    long second = System.currentTimeMillis() / 1000;
+    int slot = (int) (second % SLOT_COUNT);
+    long slotSecond = mSeconds.get(slot);
+    if ((slotSecond != second) && mSeconds.compareAndSet(slot, slotSecond, second)) {
+      // This slot counted an older second -> Start again
+      mCounts.set(slot, 0);
+    }
+    mCounts.incrementAndGet(slot);
+  }
+
+
+  /**
+   * Gets the average number of events per second during the last minute.
+   *
+   * @return The number of events per second.
+   */
+  public double getRatePerSecond() {
+    long second = System.currentTimeMillis() / 1000;
+    long count = 0;
+    for (int slot = 0; slot < SLOT_COUNT; slot++) {
+      if (mSeconds.get(slot) > second - SLOT_COUNT) {
+        count += mCounts.get(slot);
+      }
+    }
+    return (double) count / SLOT_COUNT;
+  }
+
+}
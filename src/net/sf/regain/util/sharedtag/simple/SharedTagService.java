@@ -27,6 +27,7 @@ import net.sf.regain.RegainException;
 import net.sf.regain.search.SearchToolkit;
 import net.sf.regain.ui.desktop.DesktopToolkit;
 import net.sf.regain.ui.desktop.FileService;
+import net.sf.regain.ui.desktop.MetricsService;
 import net.sf.regain.util.sharedtag.PageRequest;
 import net.sf.regain.util.sharedtag.PageResponse;
 import simple.http.Request;
@@ -51,6 +52,9 @@ public class SharedTagService extends BasicService {
   /** The service to pass file requests to. */
   private FileService mFileService;
 
+  /** The service to pass metrics requests to. */
+  private MetricsService mMetricsService;
+
 
   /**
    * Creates a new instance of SharedTagService.
@@ -65,6 +69,7 @@ public class SharedTagService extends BasicService {
 
     // TODO: Find out, how simpleweb calls another service
     mFileService = new FileService(context);
+    mMetricsService = new MetricsService(context);
   }
 
 
@@ -91,6 +96,10 @@ public class SharedTagService extends BasicService {
       mFileService.process(req, resp);
       return;
     }
+    if (fileName.equals("/metrics")) {
+      mMetricsService.process(req, resp);
+      return;
+    }
 
     if (mBaseDir == null) {
       mBaseDir = new File(context.getBasePath());
@@ -0,0 +1,92 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.RawDocument;
+
+import org.apache.regexp.RE;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.document.AbstractPreparator}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class AbstractPreparatorTest extends TestCase {
+
+  /**
+   * Tests which preparators are asked for every document.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testAcceptedMimeTypes() throws Exception {
+    AbstractPreparator preparator = new MimeTypePreparator();
+    assertEquals(Arrays.asList("text/plain"),
+        Arrays.asList(preparator.getAcceptedMimeTypes()));
+
+    // An URL regex has to be checked for every document
+    preparator.setUrlRegex(new RE("\\.txt$"));
+    assertNull(preparator.getAcceptedMimeTypes());
+
+    // An own accepts() has to be asked for every document
+    assertNull(new UrlPreparator().getAcceptedMimeTypes());
+  }
+
+
+  /**
+   * A preparator accepting by mime type.
+   */
+  private static class MimeTypePreparator extends AbstractPreparator {
+
+    public MimeTypePreparator() throws RegainException {
+      super("text/plain");
+    }
+
+    // overridden
+    public void prepare(RawDocument rawDocument) throws RegainException {
+      setCleanedContent("");
+    }
+
+  }
+
+
+  /**
+   * A preparator accepting by an own rule.
+   */
+  private static class UrlPreparator extends MimeTypePreparator {
+
+    public UrlPreparator() throws RegainException {
+      super();
+    }
+
+    @Override
+    public boolean accepts(RawDocument rawDocument) {
+      return rawDocument.getUrl().endsWith(".log");
+    }
+
+  }
+
+}
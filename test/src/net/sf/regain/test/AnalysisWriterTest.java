@@ -0,0 +1,158 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.AnalysisWriter;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.document.AnalysisWriter}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class AnalysisWriterTest extends TestCase {
+
+  /** The analysis directory. */
+  private File mDir;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-analysis").toFile();
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  public void testArchives() throws Exception {
+    AnalysisWriter writer = new AnalysisWriter(mDir, 2);
+    for (int i = 1; i <= 3; i++) {
+      writer.writeContent("file:///doc" + i + ".txt", ("content " + i).getBytes("UTF-8"));
+      writer.write("file:///doc" + i + ".txt", "txt", "text " + i);
+    }
+    writer.close();
+
+    assertEquals("[_doc1.txt, _doc1.txt.txt, _doc2.txt, _doc2.txt.txt]",
+        getEntryNames(new File(mDir, "analysis-00001.zip")).toString());
+    assertEquals("[_doc3.txt, _doc3.txt.txt]",
+        getEntryNames(new File(mDir, "analysis-00002.zip")).toString());
+
+    List<String> indexLines = Files.readAllLines(
+        new File(mDir, AnalysisWriter.INDEX_FILE_NAME).toPath(), StandardCharsets.UTF_8);
+    assertEquals(6, indexLines.size());
+    assertEquals("analysis-00002.zip\t_doc3.txt.txt\tfile:///doc3.txt", indexLines.get(5));
+  }
+
+
+  public void testSingleFiles() throws Exception {
+    AnalysisWriter writer = new AnalysisWriter(mDir, 0);
+    writer.writeContent("file:///doc.txt", "content".getBytes("UTF-8"));
+    writer.write("file:///doc.txt", "txt", "text");
+    writer.close();
+
+    assertEquals("content", RegainToolkit.readStringFromFile(new File(mDir, "_doc.txt")));
+    assertEquals("text", RegainToolkit.readStringFromFile(new File(mDir, "_doc.txt.txt")));
+    assertFalse(new File(mDir, AnalysisWriter.INDEX_FILE_NAME).exists());
+  }
+
+
+  public void testContentFiles() throws Exception {
+    File keptFile = File.createTempFile("regain-analysis", ".txt");
+    File ownedFile = File.createTempFile("regain-analysis", ".txt");
+    try {
+      RegainToolkit.writeToFile("kept".getBytes("UTF-8"), keptFile);
+      RegainToolkit.writeToFile("owned".getBytes("UTF-8"), ownedFile);
+
+      AnalysisWriter writer = new AnalysisWriter(mDir, 0);
+      writer.writeContent("file:///kept.txt", keptFile);
+      writer.writeContent("file:///owned.txt", ownedFile, true);
+      writer.close();
+
+      assertEquals("kept", RegainToolkit.readStringFromFile(new File(mDir, "_kept.txt")));
+      assertEquals("owned", RegainToolkit.readStringFromFile(new File(mDir, "_owned.txt")));
+
+      // The writer deletes only the files it owns
+      assertTrue(keptFile.exists());
+      assertFalse(ownedFile.exists());
+    }
+    finally {
+      keptFile.delete();
+      ownedFile.delete();
+    }
+  }
+
+
+  public void testQueuedBytes() throws Exception {
+    AnalysisWriter writer = new AnalysisWriter(mDir, 10, 250);
+    byte[] content = new byte[100];
+    for (int i = 0; i < 50; i++) {
+      writer.writeContent("file:///doc" + i + ".txt", content);
+      assertTrue(writer.getQueuedBytes() <= 250);
+    }
+
+    // An entry larger than the limit is accepted when the queue is empty
+    writer.writeContent("file:///large.txt", new byte[1000]);
+    writer.close();
+
+    assertEquals(0, writer.getQueuedBytes());
+    assertTrue(new File(mDir, "analysis-00006.zip").exists());
+    assertFalse(new File(mDir, "analysis-00007.zip").exists());
+  }
+
+
+  /**
+   * Gets the names of the entries of a zip archive.
+   *
+   * @param file The zip archive.
+   * @return The entry names.
+   * @throws Exception If reading the archive failed.
+   */
+  private List<String> getEntryNames(File file) throws Exception {
+    List<String> nameList = new ArrayList<String>();
+    ZipFile zipFile = new ZipFile(file);
+    try {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        nameList.add(entries.nextElement().getName());
+      }
+    }
+    finally {
+      zipFile.close();
+    }
+    return nameList;
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.ErrorLogger;
+import net.sf.regain.crawler.IndexWriterManager;
+import net.sf.regain.crawler.config.ArchiveIndexingSettings;
+import net.sf.regain.crawler.config.DummyCrawlerConfig;
+import net.sf.regain.crawler.config.PreparatorConfig;
+import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.document.RawDocument;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.crawler.ArchiveIndexer}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ArchiveIndexerTest extends TestCase implements ErrorLogger {
+
+  /** The number of milliseconds of one day. */
+  private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+  /** The directory holding the archive and the index. */
+  private File mDir;
+  /** The archive to index. */
+  private File mArchiveFile;
+  /** The URL of the archive. */
+  private String mArchiveUrl;
+  /** The preparators for the test. */
+  private PreparatorJarFixture mPreparatorJar;
+  /** The archive indexing settings of the next crawl. null means disabled. */
+  private ArchiveIndexingSettings mArchiveSettings;
+  /** The configuration of the crawls. */
+  private DummyCrawlerConfig mConfig;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-archive").toFile();
+    mArchiveFile = new File(mDir, "docs.zip");
+    mArchiveUrl = RegainToolkit.fileToUrl(mArchiveFile);
+
+    final String indexDir = new File(mDir, "searchindex").getAbsolutePath();
+    mConfig = new DummyCrawlerConfig() {
+      @Override
+      public String getIndexDir() {
+        return indexDir;
+      }
+      @Override
+      public String[] getUntokenizedFieldNames() {
+        return new String[0];
+      }
+      @Override
+      public boolean getWriteAnalysisFiles() {
+        return false;
+      }
+      @Override
+      public ArchiveIndexingSettings getArchiveIndexingSettings() {
+        return mArchiveSettings;
+      }
+      @Override
+      public PreparatorSettings[] getPreparatorSettingsList() {
+        return new PreparatorSettings[] {
+          new PreparatorSettings(true, 0, ".PlainTextPreparator", null, new PreparatorConfig()),
+          new PreparatorSettings(true, 0, ".ZipPreparator", null, new PreparatorConfig())
+        };
+      }
+    };
+
+    mPreparatorJar = new PreparatorJarFixture(".PlainTextPreparator", ".ZipPreparator");
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    mPreparatorJar.dispose();
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests that the entries of an unchanged archive are added as soon as the
+   * entries of archives are indexed.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testUnchangedArchive() throws Exception {
+    writeArchive(3, "a.txt", "apple", "b.txt", "banana");
+    crawl(false);
+    assertEquals(1, countDocs(null));
+
+    mArchiveSettings = new ArchiveIndexingSettings(1, 100, 1000000);
+    crawl(true);
+    assertEquals(3, countDocs(null));
+    assertEquals(1, countDocs(mArchiveUrl + "!/a.txt"));
+
+    // The entries are not added twice
+    crawl(true);
+    assertEquals(3, countDocs(null));
+  }
+
+
+  /**
+   * Tests indexing a changed archive.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testChangedArchive() throws Exception {
+    mArchiveSettings = new ArchiveIndexingSettings(2, 100, 1000000);
+    writeArchive(3, "a.txt", "apple", "b.txt", "banana", "c.txt", "cherry");
+    crawl(false);
+    assertEquals(4, countDocs(null));
+
+    // NOTE: The entry is larger than the memory limit, so it is spilled into
+    //       a temporary file
+    StringBuilder large = new StringBuilder("apricot");
+    while (large.length() < 10000) {
+      large.append(" lorem ipsum");
+    }
+    writeArchive(2, "a.txt", large.toString(), "b.txt", "banana",
+        "inner.zip", createArchive("d.txt", "date"));
+    int maxContentSizeInMemory = RawDocument.getMaxContentSizeInMemory();
+    RawDocument.setMaxContentSizeInMemory(1000);
+    try {
+      crawl(true);
+    }
+    finally {
+      RawDocument.setMaxContentSizeInMemory(maxContentSizeInMemory);
+    }
+
+    assertEquals(5, countDocs(null));
+    assertEquals(1, countDocs(mArchiveUrl + "!/a.txt"));
+    assertEquals(0, countDocs(mArchiveUrl + "!/c.txt"));
+    assertEquals(1, countDocs(mArchiveUrl + "!/inner.zip!/d.txt"));
+    assertEquals(1, countContentDocs("apricot"));
+    assertEquals(0, countContentDocs("apple"));
+  }
+
+
+  /**
+   * Tests that the old entries are kept if not all entries of an archive were
+   * read.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testIncompleteArchive() throws Exception {
+    mArchiveSettings = new ArchiveIndexingSettings(1, 100, 1000000);
+    writeArchive(3, "a.txt", "apple", "b.txt", "banana", "c.txt", "cherry");
+    crawl(false);
+    assertEquals(4, countDocs(null));
+
+    mArchiveSettings = new ArchiveIndexingSettings(1, 1, 1000000);
+    writeArchive(2, "a.txt", "apricot", "b.txt", "blueberry", "c.txt", "cherry");
+    crawl(true);
+
+    // a.txt was replaced, b.txt and c.txt were not read and are kept
+    assertEquals(4, countDocs(null));
+    assertEquals(1, countContentDocs("apricot"));
+    assertEquals(0, countContentDocs("apple"));
+    assertEquals(1, countContentDocs("banana"));
+    assertEquals(1, countDocs(mArchiveUrl + "!/c.txt"));
+  }
+
+
+  /**
+   * Crawls the archive.
+   *
+   * @param updateIndex Whether the existing index should be updated.
+   * @throws RegainException If crawling failed.
+   */
+  private void crawl(boolean updateIndex) throws RegainException {
+    IndexWriterManager manager = new IndexWriterManager(mConfig, updateIndex, false);
+    RawDocument rawDocument = new RawDocument(mArchiveUrl,
+        RegainToolkit.fileToUrl(mDir), null, null);
+    try {
+      manager.addToIndex(rawDocument, this);
+    }
+    finally {
+      rawDocument.dispose();
+    }
+    manager.removeObsoleteEntries(null);
+    manager.close(false);
+  }
+
+
+  /**
+   * Writes the archive to index.
+   *
+   * @param ageInDays The age of the archive (in days).
+   * @param nameContentPairs The names and the contents of the entries. The
+   *        content is either a String or a byte array.
+   * @throws IOException If writing failed.
+   */
+  private void writeArchive(int ageInDays, Object... nameContentPairs)
+    throws IOException
+  {
+    FileOutputStream out = new FileOutputStream(mArchiveFile);
+    try {
+      out.write(createArchive(nameContentPairs));
+    }
+    finally {
+      out.close();
+    }
+    mArchiveFile.setLastModified(System.currentTimeMillis() - ageInDays * DAY_MILLIS);
+  }
+
+
+  /**
+   * Creates a zip archive.
+   *
+   * @param nameContentPairs The names and the contents of the entries. The
+   *        content is either a String or a byte array.
+   * @return The archive.
+   * @throws IOException If writing failed.
+   */
+  private byte[] createArchive(Object... nameContentPairs) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ZipOutputStream zipOut = new ZipOutputStream(bytes);
+    for (int i = 0; i < nameContentPairs.length; i += 2) {
+      Object content = nameContentPairs[i + 1];
+      zipOut.putNextEntry(new ZipEntry((String) nameContentPairs[i]));
+      zipOut.write((content instanceof String)
+          ? ((String) content).getBytes("UTF-8") : (byte[]) content);
+      zipOut.closeEntry();
+    }
+    zipOut.close();
+    return bytes.toByteArray();
+  }
+
+
+  /**
+   * Counts the documents of the index.
+   *
+   * @param url The URL of the documents to count. If <code>null</code> all
+   *        documents are counted.
+   * @return The number of documents.
+   * @throws Exception If reading the index failed.
+   */
+  private int countDocs(String url) throws Exception {
+    IndexReader reader = IndexReader.open(FSDirectory.open(new File(mDir, "searchindex/new")));
+    try {
+      return (url == null) ? reader.numDocs() : reader.docFreq(new Term("url", url));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+
+  /**
+   * Counts the documents of the index containing a word.
+   *
+   * @param word The word.
+   * @return The number of documents.
+   * @throws Exception If reading the index failed.
+   */
+  private int countContentDocs(String word) throws Exception {
+    IndexReader reader = IndexReader.open(FSDirectory.open(new File(mDir, "searchindex/new")));
+    try {
+      return reader.docFreq(new Term("content", word));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+
+  // overridden
+  public void logError(String msg, Throwable thr, boolean fatal) {
+    fail(msg + ": " + thr);
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.config.AuxiliaryField;
+import net.sf.regain.crawler.config.AuxiliaryField.SourceField;
+import net.sf.regain.crawler.config.IndexFieldSettings;
+import net.sf.regain.crawler.document.AuxiliaryFieldExtractor;
+import net.sf.regain.crawler.document.IndexFieldSchema;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.regexp.RE;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.document.AuxiliaryFieldExtractor}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class AuxiliaryFieldExtractorTest extends TestCase {
+
+  /**
+   * Tests that the extractor gets the same values as the Jakarta regexes.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testSameAsJakartaRegex() throws Exception {
+    AuxiliaryField[] fieldArr = {
+      // Only matches directory components -> Cached by directory
+      createField("project", null, "^file:///projects/([^/]+)/", 1, true),
+      createField("customer", null, "^file:///projects/([^/]+)/", 1, false),
+      // Reaches into the file name -> Not cached
+      createField("extension", null, "\\.([^./]+)$", 1, true),
+      createField("internal", "true", "/internal/", -1, true),
+      // Jakarta only
+      createField("letters", null, "^file:///projects/([:alpha:]+)", 1, true)
+    };
+    AuxiliaryFieldExtractor extractor = new AuxiliaryFieldExtractor(fieldArr);
+
+    String[] urlArr = {
+      "file:///projects/Otto23/internal/Offer.DOC",
+      "file:///projects/Otto23/internal/Plan.pdf",
+      "file:///projects/Otto23/readme",
+      "file:///projects/Karl/Offer.doc",
+      "http://www.example.com/index.html"
+    };
+    for (String url : urlArr) {
+      String[] valueArr = extractor.extractValues(url);
+      for (int i = 0; i < fieldArr.length; i++) {
+        assertEquals(fieldArr[i].getTargetFieldName() + " of " + url,
+            extractWithRegex(fieldArr[i], url), valueArr[i]);
+      }
+    }
+
+    String[] valueArr = extractor.extractValues(urlArr[1]);
+    assertEquals("otto23", valueArr[0]);
+    assertEquals("Otto23", valueArr[1]);
+    assertEquals("pdf", valueArr[2]);
+    assertEquals("true", valueArr[3]);
+    assertEquals("otto", valueArr[4]);
+  }
+
+
+  /**
+   * Tests that the fields are added with the types of the schema.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testAddFields() throws Exception {
+    String regex = "^file:///projects/([^/]+)/";
+    AuxiliaryField[] fieldArr = {
+      new AuxiliaryField(SourceField.URL, "project", null, true,
+          new RE(regex), 1, true, true, false),
+      new AuxiliaryField(SourceField.URL, "customer", null, false,
+          new RE(regex), 1, false, true, true),
+      new AuxiliaryField(SourceField.URL, "owner", null, false,
+          new RE(regex), 1, true, true, false),
+      // Same name as a normal field -> Type of the normal field
+      new AuxiliaryField(SourceField.URL, "url", null, false,
+          new RE(regex), 1, false, true, true)
+    };
+    IndexFieldSettings[] settingsArr = {
+      new IndexFieldSettings("owner", null, null, Boolean.TRUE, null)
+    };
+    IndexFieldSchema schema = new IndexFieldSchema(settingsArr, fieldArr, false);
+    AuxiliaryFieldExtractor extractor = new AuxiliaryFieldExtractor(fieldArr);
+
+    Document doc = new Document();
+    extractor.addFields(doc, "file:///projects/Otto23/Offer.doc", schema);
+
+    Fieldable field = doc.getFieldable("project");
+    assertEquals("otto23", field.stringValue());
+    assertTrue(field.isStored());
+    assertFalse(field.isTokenized());
+
+    field = doc.getFieldable("customer");
+    assertFalse(field.isStored());
+    assertTrue(field.isTokenized());
+
+    // The settings of the configuration override the auxiliary field
+    assertTrue(doc.getFieldable("owner").getOmitNorms());
+
+    field = doc.getFieldable("url");
+    assertTrue(field.isStored());
+    assertFalse(field.isTokenized());
+  }
+
+
+  /**
+   * Creates an auxiliary field on the URL.
+   *
+   * @param name The name of the field.
+   * @param value The value of the field. May be null.
+   * @param regex The regex.
+   * @param group The regex group holding the value.
+   * @param toLowerCase Whether to convert the value to lower case.
+   * @return The field.
+   * @throws Exception If creating the field failed.
+   */
+  private AuxiliaryField createField(String name, String value, String regex,
+    int group, boolean toLowerCase)
+    throws Exception
+  {
+    Pattern pattern = AuxiliaryField.compilePattern(regex, false);
+    return new AuxiliaryField(SourceField.URL, name, value, toLowerCase,
+        new RE(regex, RE.MATCH_CASEINDEPENDENT), pattern, group, true, true, false);
+  }
+
+
+  /**
+   * Extracts the value of a field the way it was done before there was an
+   * extractor.
+   *
+   * @param field The field.
+   * @param url The URL.
+   * @return The value.
+   */
+  private String extractWithRegex(AuxiliaryField field, String url) {
+    RE regex = field.getRegex();
+    if (! regex.match(url)) {
+      return null;
+    }
+    String value = field.getValue();
+    if (value == null) {
+      value = regex.getParen(field.getRegexGroup());
+    }
+    if ((value != null) && field.getToLowerCase()) {
+      value = value.toLowerCase();
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.access.CachingCrawlerAccessController;
+import net.sf.regain.crawler.access.CrawlerAccessController;
+import net.sf.regain.crawler.document.RawDocument;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.access.CachingCrawlerAccessController}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class CachingCrawlerAccessControllerTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-access").toFile();
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests that the groups are cached by directory and interned.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testKeyByDirectory() throws Exception {
+    CountingController controller = new CountingController();
+    CachingCrawlerAccessController cache
+      = new CachingCrawlerAccessController(controller, 2, true);
+
+    String[] groups1 = cache.getDocumentGroups(createDoc("a/1.txt"));
+    String[] groups2 = cache.getDocumentGroups(createDoc("a/2.txt"));
+    assertEquals(1, controller.mCallCount);
+    assertSame(groups1, groups2);
+
+    // Same groups in another directory -> same instance
+    String[] groups3 = cache.getDocumentGroups(createDoc("b/1.txt"));
+    assertEquals(2, controller.mCallCount);
+    assertSame(groups1, groups3);
+
+    // The cache holds 2 directories -> /a/ is removed
+    cache.getDocumentGroups(createDoc("c/1.txt"));
+    cache.getDocumentGroups(createDoc("a/3.txt"));
+    assertEquals(4, controller.mCallCount);
+  }
+
+
+  /**
+   * Tests that the controller is asked for every document if there is no key.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testNoKey() throws Exception {
+    CountingController controller = new CountingController();
+    CachingCrawlerAccessController cache
+      = new CachingCrawlerAccessController(controller, 10, false);
+
+    String[] groups1 = cache.getDocumentGroups(createDoc("a/1.txt"));
+    String[] groups2 = cache.getDocumentGroups(createDoc("a/2.txt"));
+    assertEquals(2, controller.mCallCount);
+    assertSame(groups1, groups2);
+  }
+
+
+  /**
+   * Tests that illegal group names are still detected.
+   */
+  public void testIllegalGroups() throws Exception {
+    CrawlerAccessController controller = new CountingController() {
+      @Override
+      public String[] getDocumentGroups(RawDocument document) {
+        return new String[] { "a b" };
+      }
+    };
+    CachingCrawlerAccessController cache
+      = new CachingCrawlerAccessController(controller, 10, true);
+    try {
+      cache.getDocumentGroups(createDoc("a/1.txt"));
+      fail("Group name with whitespace was accepted");
+    }
+    catch (RegainException exc) {
+      // Expected
+    }
+  }
+
+
+  /**
+   * Tests that the interned group arrays are bounded.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testInternedGroupsBounded() throws Exception {
+    CrawlerAccessController controller = new CountingController() {
+      @Override
+      public String[] getDocumentGroups(RawDocument document) {
+        // Every directory has other groups
+        String url = document.getUrl();
+        String dir = url.substring(0, url.lastIndexOf('/'));
+        return new String[] { dir.substring(dir.lastIndexOf('/') + 1) };
+      }
+    };
+    CachingCrawlerAccessController cache
+      = new CachingCrawlerAccessController(controller, 2, false);
+
+    String[] groups1 = cache.getDocumentGroups(createDoc("a/1.txt"));
+    assertSame(groups1, cache.getDocumentGroups(createDoc("a/2.txt")));
+
+    // The groups of a are removed after two other group sets
+    cache.getDocumentGroups(createDoc("b/1.txt"));
+    cache.getDocumentGroups(createDoc("c/1.txt"));
+    String[] groups2 = cache.getDocumentGroups(createDoc("a/3.txt"));
+    assertNotSame(groups1, groups2);
+    assertEquals("a", groups2[0]);
+  }
+
+
+  /**
+   * Creates a file in the test directory and its raw document.
+   *
+   * @param path The path of the file relative to the test directory.
+   * @return The raw document of the file.
+   * @throws Exception If creating the file failed.
+   */
+  private RawDocument createDoc(String path) throws Exception {
+    File file = new File(mDir, path);
+    file.getParentFile().mkdirs();
+    RegainToolkit.writeToFile("", file);
+    return new RawDocument(RegainToolkit.fileToUrl(file), null, null, null);
+  }
+
+
+  /**
+   * A controller that counts its calls.
+   */
+  private static class CountingController implements CrawlerAccessController {
+
+    int mCallCount;
+
+    @Override
+    public void init(Properties config) {
+    }
+
+    @Override
+    public String[] getDocumentGroups(RawDocument document) {
+      mCallCount++;
+      return new String[] { "users", "admins" };
+    }
+
+  }
+
+}
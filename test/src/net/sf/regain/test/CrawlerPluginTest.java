@@ -1,11 +1,21 @@
 package net.sf.regain.test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import junit.framework.TestCase;
+import net.sf.regain.crawler.Crawler;
+import net.sf.regain.crawler.CrawlerJob;
+import net.sf.regain.crawler.Profiler;
 import net.sf.regain.crawler.plugin.AbstractCrawlerPlugin;
+import net.sf.regain.crawler.plugin.AsynchronousCrawlerPlugin;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
 
 public class CrawlerPluginTest extends TestCase {
 
@@ -102,6 +112,100 @@ public class CrawlerPluginTest extends TestCase {
     assertArrayEquals("The 3 plugins are not all called when throwing exceptions", new int[]{1, 2, 3, 0, 0, 0, 0, 0, 0, 0}, TestPlugin.called);
   }
 
+  public void testAsynchronousPlugin() {
+    AsyncTestPlugin asyncPlugin = new AsyncTestPlugin();
+    pluginManager.registerPlugin(new TestPlugin(1));
+    pluginManager.registerPlugin(asyncPlugin);
+
+    for (int i = 0; i < 20; i++) {
+      pluginManager.eventAcceptURL("url" + i, null);
+    }
+    assertTrue("The blacklist check must be synchronous",
+        pluginManager.eventAskDynamicBlacklist("url", "source", null));
+    assertEquals("checkDynamicBlacklist was not called in the crawler thread",
+        Thread.currentThread(), asyncPlugin.blacklistThread);
+
+    // onFinishCrawling waits until all events are delivered
+    pluginManager.eventFinishCrawling(null);
+    assertEquals(20, asyncPlugin.acceptedUrls.size());
+    assertEquals("url0", asyncPlugin.acceptedUrls.get(0));
+    assertEquals("url19", asyncPlugin.acceptedUrls.get(19));
+    assertTrue(asyncPlugin.finished);
+    assertNotSame(Thread.currentThread(), asyncPlugin.eventThread);
+  }
+
+  public void testAsynchronousPluginWithMutableArguments() {
+    AsyncTestPlugin asyncPlugin = new AsyncTestPlugin();
+    pluginManager.registerPlugin(asyncPlugin);
+
+    for (int i = 0; i < 5; i++) {
+      pluginManager.eventAcceptURL("url" + i, null);
+    }
+
+    // The Document changes after the event, so the plugin gets a copy of its
+    // stored fields
+    Document doc = new Document();
+    doc.add(new Field("url", "file:///a.txt", Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(new Field("content", "not stored", Field.Store.NO, Field.Index.ANALYZED));
+    pluginManager.eventCreateIndexEntry(doc, null);
+    doc.removeField("url");
+
+    pluginManager.eventFinishCrawling(null);
+    assertNotSame(Thread.currentThread(), asyncPlugin.createIndexEntryThread);
+    assertEquals(5, asyncPlugin.acceptedUrlCountOnCreateIndexEntry);
+    assertNotSame(doc, asyncPlugin.createdDoc);
+    assertEquals("file:///a.txt", asyncPlugin.createdDoc.get("url"));
+    assertNull(asyncPlugin.createdDoc.getFieldable("content"));
+  }
+
+  public void testRemovedAsynchronousPlugin() throws InterruptedException {
+    AsyncTestPlugin asyncPlugin = new AsyncTestPlugin();
+    pluginManager.registerPlugin(asyncPlugin);
+    for (int i = 0; i < 5; i++) {
+      pluginManager.eventAcceptURL("url" + i, null);
+    }
+    pluginManager.unregisterPlugin(asyncPlugin);
+
+    // The queued events are still delivered, the new ones not
+    pluginManager.eventAcceptURL("url5", null);
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((asyncPlugin.acceptedUrls.size() < 5) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(50);
+    assertEquals(5, asyncPlugin.acceptedUrls.size());
+  }
+
+  public void testProfilersOfRemovedPlugins() {
+    int profilerCount = Profiler.getRegisteredProfilers().size();
+    for (int i = 0; i < 10; i++) {
+      TestPlugin plugin = new TestPlugin(1);
+      pluginManager.registerPlugin(plugin);
+      pluginManager.unregisterPlugin(plugin);
+    }
+    assertEquals(profilerCount, Profiler.getRegisteredProfilers().size());
+  }
+
+  @SuppressWarnings("deprecation")
+  public void testDeprecatedTriggerEvent() {
+    LegacyPluginManager legacyManager = new LegacyPluginManager();
+    legacyManager.registerPlugin(new AsyncTestPlugin());
+    try {
+      List<Object> returns = legacyManager.triggerEvent("checkDynamicBlacklist",
+          new Class<?>[] { String.class, String.class, String.class }, "url", "source", null);
+      assertEquals(Collections.singletonList((Object) Boolean.TRUE), returns);
+
+      try {
+        legacyManager.checkIfEventExists("onUnknownEvent", new Class<?>[0]);
+        fail("An unknown event was accepted");
+      } catch (RuntimeException exc) {
+        // Expected
+      }
+    } finally {
+      legacyManager.clear();
+    }
+  }
+
   public void testAllEventsWorking() {
     try {
       pluginManager.eventAcceptURL(null, null);
@@ -229,3 +333,64 @@ class TestPlugin extends AbstractCrawlerPlugin {
     }
   }
 }
+
+class LegacyPluginManager extends CrawlerPluginManager {
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public List<Object> triggerEvent(String methodName, Class<?>[] argTypes, Object... args) {
+    return super.triggerEvent(methodName, argTypes, args);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void checkIfEventExists(String methodName, Class<?>[] argTypes) {
+    super.checkIfEventExists(methodName, argTypes);
+  }
+}
+
+class AsyncTestPlugin extends AbstractCrawlerPlugin implements AsynchronousCrawlerPlugin {
+
+  List<String> acceptedUrls = Collections.synchronizedList(new ArrayList<String>());
+  volatile Thread eventThread;
+  volatile Thread blacklistThread;
+  volatile boolean finished;
+  volatile Thread createIndexEntryThread;
+  volatile int acceptedUrlCountOnCreateIndexEntry;
+  volatile Document createdDoc;
+
+  @Override
+  public int getEventQueueCapacity() {
+    // Small, so the crawler has to wait for the plugin
+    return 2;
+  }
+
+  @Override
+  public void onAcceptURL(String url, CrawlerJob job) {
+    try {
+      Thread.sleep(5);
+    } catch (InterruptedException exc) {
+      // Nothing to do
+    }
+    eventThread = Thread.currentThread();
+    acceptedUrls.add(url);
+  }
+
+  @Override
+  public boolean checkDynamicBlacklist(String url, String sourceUrl, String sourceLinkText) {
+    blacklistThread = Thread.currentThread();
+    return true;
+  }
+
+  @Override
+  public void onFinishCrawling(Crawler crawler) {
+    finished = true;
+  }
+
+  @Override
+  public void onCreateIndexEntry(Document doc, IndexWriter index) {
+    createIndexEntryThread = Thread.currentThread();
+    acceptedUrlCountOnCreateIndexEntry = acceptedUrls.size();
+    createdDoc = doc;
+  }
+}
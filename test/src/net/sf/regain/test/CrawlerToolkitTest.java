@@ -112,6 +112,22 @@ public class CrawlerToolkitTest extends TestCase {
 
   }
 
+  /**
+   * Tests {@link CrawlerToolkit#cleanFromHtmlTags(String)}.
+   */
+  public void testCleanFromHtmlTags() {
+    assertEquals("Hello World",
+            CrawlerToolkit.cleanFromHtmlTags("<html><b>Hello</b>  <i> World </i></html>"));
+    assertEquals("Hello",
+            CrawlerToolkit.cleanFromHtmlTags("<!-- <br> --> Hello"));
+    assertEquals("M\u00fcller & S\u00f6hne A",
+            CrawlerToolkit.cleanFromHtmlTags("<p>M&uuml;ller &amp; S&#246;hne</p><p>&#x41;"));
+    assertEquals("AT&T rocks",
+            CrawlerToolkit.cleanFromHtmlTags("<td>AT&T rocks</td><td"));
+    assertEquals("a < b",
+            CrawlerToolkit.replaceHtmlEntities("a &lt; b"));
+  }
+
   public void testExtractCredentialsFromUrl() {
     assertEquals("",
             CrawlerToolkit.extractCredentialsFromProtocolHostFragment("http://www.example.com/"));
@@ -0,0 +1,132 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.DirectoryManifest;
+import net.sf.regain.crawler.FileTreeWalker;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.crawler.DirectoryManifest}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class DirectoryManifestTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+  /** The walker listing the test directory. */
+  private FileTreeWalker mWalker;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-manifest").toFile();
+    RegainToolkit.writeToFile("abc", new File(mDir, "a.txt"));
+    RegainToolkit.writeToFile("defg", new File(mDir, "b.txt"));
+
+    mWalker = new FileTreeWalker(0, 0, null);
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    mWalker.close();
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  public void testFingerprint() throws Exception {
+    List<FileTreeWalker.Entry> entryList = mWalker.listDirectory(mDir.toPath());
+    long fingerprint = DirectoryManifest.getFingerprint(entryList);
+
+    // The order of the entries doesn't matter
+    List<FileTreeWalker.Entry> reversedList = new ArrayList<FileTreeWalker.Entry>(entryList);
+    Collections.reverse(reversedList);
+    assertEquals(fingerprint, DirectoryManifest.getFingerprint(reversedList));
+
+    // A changed size changes the fingerprint
+    RegainToolkit.writeToFile("abcdef", new File(mDir, "a.txt"));
+    entryList = mWalker.listDirectory(mDir.toPath());
+    assertFalse(fingerprint == DirectoryManifest.getFingerprint(entryList));
+
+    // A new file changes the fingerprint
+    fingerprint = DirectoryManifest.getFingerprint(entryList);
+    RegainToolkit.writeToFile("", new File(mDir, "c.txt"));
+    entryList = mWalker.listDirectory(mDir.toPath());
+    assertFalse(fingerprint == DirectoryManifest.getFingerprint(entryList));
+  }
+
+
+  public void testWriteAndLoad() throws Exception {
+    long fingerprint = DirectoryManifest.getFingerprint(
+        mWalker.listDirectory(mDir.toPath()));
+
+    DirectoryManifest manifest = new DirectoryManifest();
+    manifest.setFingerprint("file:///dir1", fingerprint);
+    manifest.setFingerprint("file:///dir2", 42);
+    manifest.invalidate("file:///dir2");
+    manifest.setArchiveEntriesIndexed(true);
+
+    File file = new File(mDir.getParentFile(), mDir.getName() + ".dat");
+    try {
+      manifest.write(file);
+      DirectoryManifest loaded = DirectoryManifest.load(file);
+
+      assertEquals(1, loaded.size());
+      assertTrue(loaded.isUnchanged("file:///dir1", fingerprint));
+      assertFalse(loaded.isUnchanged("file:///dir1", fingerprint + 1));
+      assertFalse(loaded.isUnchanged("file:///dir2", 42));
+      assertTrue(loaded.getArchiveEntriesIndexed());
+    } finally {
+      file.delete();
+    }
+
+    // A missing file gives an empty manifest
+    assertEquals(0, DirectoryManifest.load(file).size());
+  }
+
+
+  public void testInvalidateTree() throws Exception {
+    DirectoryManifest manifest = new DirectoryManifest();
+    manifest.setFingerprint("file:///dir", 1);
+    manifest.setFingerprint("file:///dir/sub", 2);
+    manifest.setFingerprint("file:///dir/sub/deeper", 3);
+    manifest.setFingerprint("file:///dir2", 4);
+
+    manifest.invalidateTree("file:///dir/sub");
+    assertEquals(2, manifest.size());
+    assertTrue(manifest.isUnchanged("file:///dir", 1));
+    assertTrue(manifest.isUnchanged("file:///dir2", 4));
+
+    manifest.invalidateTree("file:///dir");
+    assertEquals(1, manifest.size());
+    assertTrue(manifest.isUnchanged("file:///dir2", 4));
+  }
+
+}
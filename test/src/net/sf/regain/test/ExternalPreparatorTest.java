@@ -0,0 +1,189 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.PreparatorConfig;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.preparator.ExternalPreparator;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.preparator.ExternalPreparator}. The external
+ * commands are shell scripts, so the test only runs on Unix-like systems.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ExternalPreparatorTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+  /** The preparator to test. */
+  private ExternalPreparator mPreparator;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-external").toFile();
+    RegainToolkit.writeToFile("Lorem ipsum dolor", new File(mDir, "a.txt"));
+    RegainToolkit.writeToFile("sit amet", new File(mDir, "b.txt"));
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (mPreparator != null) {
+      mPreparator.close();
+    }
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests a command that is started for every document. The output is cut at
+   * maxOutputLength. The command writes a lot to Standard.err, which must not
+   * block it.
+   */
+  public void testMaxOutputLength() throws Exception {
+    if (! isUnix()) {
+      return;
+    }
+    File script = writeScript("cat.sh",
+        "head -c 200000 /dev/zero >&2\n"
+        + "cat \"$1\"\n");
+    HashMap<String, String> command = createCommand("sh " + script + " ${filename}");
+    command.put("maxOutputLength", "5");
+    mPreparator = createPreparator(command);
+
+    assertEquals("Lorem", prepare("a.txt"));
+  }
+
+
+  /**
+   * Tests that a command taking longer than its timeout is stopped.
+   */
+  public void testTimeout() throws Exception {
+    if (! isUnix()) {
+      return;
+    }
+    File script = writeScript("sleep.sh", "sleep 20\n");
+    HashMap<String, String> command = createCommand("sh " + script + " ${filename}");
+    command.put("timeout", "1");
+    mPreparator = createPreparator(command);
+
+    long startTime = System.currentTimeMillis();
+    try {
+      prepare("a.txt");
+      fail("The timeout was ignored");
+    }
+    catch (RegainException exc) {
+      // Expected
+    }
+    assertTrue(System.currentTimeMillis() - startTime < 10000);
+  }
+
+
+  /**
+   * Tests a persistent command. It prepares several documents, reports an
+   * error for a missing one and exits when the preparator is closed.
+   */
+  public void testPersistent() throws Exception {
+    if (! isUnix()) {
+      return;
+    }
+    File script = writeScript("server.sh",
+        "while read f; do\n"
+        + "  if [ -f \"$f\" ]; then cat \"$f\"; else echo \"<<ERROR>> Not found\"; fi\n"
+        + "  echo \"<<END>>\"\n"
+        + "done\n");
+    HashMap<String, String> command = createCommand("sh " + script);
+    command.put("persistent", "true");
+    mPreparator = createPreparator(command);
+
+    assertEquals("Lorem ipsum dolor", prepare("a.txt").trim());
+    try {
+      prepare("missing.txt");
+      fail("The error of the command was ignored");
+    }
+    catch (RegainException exc) {
+      assertTrue(exc.getMessage().contains("Not found"));
+    }
+    assertEquals("sit amet", prepare("b.txt").trim());
+
+    long startTime = System.currentTimeMillis();
+    mPreparator.close();
+    mPreparator = null;
+    assertTrue(System.currentTimeMillis() - startTime < 5000);
+  }
+
+
+  private boolean isUnix() {
+    return File.separatorChar == '/';
+  }
+
+
+  private File writeScript(String name, String content) throws Exception {
+    File script = new File(mDir, name);
+    RegainToolkit.writeToFile(content, script);
+    return script;
+  }
+
+
+  private HashMap<String, String> createCommand(String commandLine) {
+    HashMap<String, String> command = new HashMap<String, String>();
+    command.put("urlPattern", "\\.txt$");
+    command.put("commandLine", commandLine);
+    command.put("checkExitCode", "false");
+    return command;
+  }
+
+
+  private ExternalPreparator createPreparator(HashMap<String, String> command)
+    throws Exception
+  {
+    PreparatorConfig config = new PreparatorConfig();
+    config.addSection("command", command);
+    ExternalPreparator preparator = new ExternalPreparator();
+    preparator.init(config);
+    return preparator;
+  }
+
+
+  private String prepare(String fileName) throws Exception {
+    RawDocument rawDocument = new RawDocument(
+        RegainToolkit.fileToUrl(new File(mDir, fileName)), null, null, null);
+    try {
+      mPreparator.prepare(rawDocument);
+      return mPreparator.getCleanedContent();
+    }
+    finally {
+      mPreparator.cleanUp();
+      rawDocument.dispose();
+    }
+  }
+
+}
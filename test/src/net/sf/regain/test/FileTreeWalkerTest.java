@@ -0,0 +1,140 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.FileTreeWalker;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.crawler.FileTreeWalker}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FileTreeWalkerTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-walker").toFile();
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        File subDir = new File(mDir, "d" + i + "/s" + j + "/t");
+        subDir.mkdirs();
+        RegainToolkit.writeToFile("abc", new File(subDir, "a.txt"));
+      }
+    }
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests that the listings of the sub directories of a discarded directory
+   * are thrown away, too.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testDiscard() throws Exception {
+    FileTreeWalker walker = new FileTreeWalker(2, 100, new FileTreeWalker.DirectoryFilter() {
+      public boolean shouldBeListed(String url) {
+        return true;
+      }
+    });
+    try {
+      List<FileTreeWalker.Entry> entryList = walker.listDirectory(mDir.toPath());
+      assertEquals(3, entryList.size());
+
+      // Let the walker list the whole tree in advance
+      Thread.sleep(200);
+
+      for (FileTreeWalker.Entry entry : entryList) {
+        walker.discard(entry.getPath());
+      }
+      assertListingCount(walker, 0);
+    }
+    finally {
+      walker.close();
+    }
+  }
+
+
+  /**
+   * Tests that the walker doesn't list more directories in advance than
+   * allowed.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testMaxListingCount() throws Exception {
+    FileTreeWalker walker = new FileTreeWalker(2, 2, new FileTreeWalker.DirectoryFilter() {
+      public boolean shouldBeListed(String url) {
+        return true;
+      }
+    });
+    try {
+      List<FileTreeWalker.Entry> entryList = walker.listDirectory(mDir.toPath());
+      Thread.sleep(200);
+      assertEquals(2, walker.getListingCount());
+
+      // Taking a listing frees a place for the sub directories
+      for (FileTreeWalker.Entry entry : entryList) {
+        assertEquals(3, walker.listDirectory(entry.getPath()).size());
+        Thread.sleep(50);
+        assertTrue(walker.getListingCount() <= 2);
+      }
+    }
+    finally {
+      walker.close();
+    }
+  }
+
+
+  /**
+   * Waits until the walker holds a number of listings in advance.
+   *
+   * @param walker The walker.
+   * @param expected The expected number of listings.
+   * @throws InterruptedException If waiting was interrupted.
+   */
+  private void assertListingCount(FileTreeWalker walker, int expected)
+    throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + 5000;
+    while ((walker.getListingCount() != expected)
+        && (System.currentTimeMillis() < deadline))
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, walker.getListingCount());
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.config.IndexFieldSettings;
+import net.sf.regain.crawler.document.IndexFieldSchema;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.document.IndexFieldSchema}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexFieldSchemaTest extends TestCase {
+
+  /**
+   * Tests the defaults of the schema.
+   */
+  public void testDefaults() {
+    IndexFieldSchema schema = new IndexFieldSchema(null, false);
+    Document doc = new Document();
+
+    // Identifier
+    schema.addField(doc, "url", "file:///a/b.txt");
+    Fieldable field = doc.getFieldable("url");
+    assertTrue(field.isStored());
+    assertFalse(field.isTokenized());
+    assertTrue(field.getOmitNorms());
+    assertEquals(IndexOptions.DOCS_ONLY, field.getIndexOptions());
+
+    // Text
+    schema.addField(doc, "title", "A title");
+    field = doc.getFieldable("title");
+    assertTrue(field.isTokenized());
+    assertFalse(field.getOmitNorms());
+    assertEquals(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS, field.getIndexOptions());
+
+    // Compressed: Indexed once and stored once as binary
+    schema.addField(doc, "summary", "A summary");
+    Fieldable[] fieldArr = doc.getFieldables("summary");
+    assertEquals(2, fieldArr.length);
+    assertFalse(fieldArr[0].isStored());
+    assertTrue(fieldArr[1].isBinary());
+
+    // The content is only stored for the preview
+    schema.addField(doc, "content", "Some content");
+    assertFalse(doc.getFieldable("content").isStored());
+  }
+
+
+  /**
+   * Tests that the settings of the configuration override the defaults.
+   */
+  public void testOverrides() {
+    IndexFieldSettings[] settingsArr = {
+      new IndexFieldSettings("title_sort", Boolean.FALSE, null, null, null),
+      new IndexFieldSettings("summary", null, Boolean.FALSE, Boolean.TRUE,
+          IndexFieldSettings.IndexOptions.FREQS),
+      new IndexFieldSettings("path", Boolean.FALSE, null, null, null),
+      new IndexFieldSettings("author", null, Boolean.FALSE, null, null)
+    };
+    IndexFieldSchema schema = new IndexFieldSchema(settingsArr, true);
+    Document doc = new Document();
+
+    schema.addField(doc, "title_sort", "a title");
+    Fieldable field = doc.getFieldable("title_sort");
+    assertFalse(field.isStored());
+    assertTrue(field.getOmitNorms());
+
+    schema.addField(doc, "summary", "A summary");
+    assertEquals(1, doc.getFieldables("summary").length);
+    field = doc.getFieldable("summary");
+    assertTrue(field.isStored());
+    assertTrue(field.getOmitNorms());
+    assertEquals(IndexOptions.DOCS_AND_FREQS, field.getIndexOptions());
+
+    // Neither stored nor indexed -> dropped
+    schema.addField(doc, "path", "/a/");
+    assertNull(doc.getFieldable("path"));
+
+    // Not declared field
+    schema.addField(doc, "author", "Otto");
+    assertEquals("Otto", doc.get("author"));
+    assertTrue(doc.getFieldable("author").isTokenized());
+  }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.DirectoryManifest;
+import net.sf.regain.crawler.ErrorLogger;
+import net.sf.regain.crawler.IndexWriterManager;
+import net.sf.regain.crawler.config.DummyCrawlerConfig;
+import net.sf.regain.crawler.config.PreparatorConfig;
+import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.document.RawDocument;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.crawler.IndexWriterManager}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexWriterManagerTest extends TestCase implements ErrorLogger {
+
+  /** The directory holding the test files and the index. */
+  private File mDir;
+  /** The directory holding the documents. */
+  private File mDocDir;
+  /** The preparators for the test. */
+  private PreparatorJarFixture mPreparatorJar;
+  /** The IndexWriterManager to test. */
+  private IndexWriterManager mManager;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-writer").toFile();
+    mDocDir = new File(mDir, "docs");
+    new File(mDocDir, "sub").mkdirs();
+    RegainToolkit.writeToFile("apple", new File(mDocDir, "a.txt"));
+    RegainToolkit.writeToFile("banana", new File(mDocDir, "sub/b.txt"));
+    RegainToolkit.writeToFile("cherry", new File(mDocDir, "sub/c.txt"));
+
+    final String indexDir = new File(mDir, "searchindex").getAbsolutePath();
+    DummyCrawlerConfig config = new DummyCrawlerConfig() {
+      @Override
+      public String getIndexDir() {
+        return indexDir;
+      }
+      @Override
+      public String[] getUntokenizedFieldNames() {
+        return new String[0];
+      }
+      @Override
+      public boolean getWriteAnalysisFiles() {
+        return false;
+      }
+      @Override
+      public String[] getValuePrefetchFields() {
+        return new String[] { "mimetype" };
+      }
+      @Override
+      public PreparatorSettings[] getPreparatorSettingsList() {
+        return new PreparatorSettings[] {
+          new PreparatorSettings(true, 0, ".PlainTextPreparator", null, new PreparatorConfig())
+        };
+      }
+    };
+
+    mPreparatorJar = new PreparatorJarFixture(".PlainTextPreparator");
+    mManager = new IndexWriterManager(config, false, false);
+    addFile("a.txt");
+    addFile("sub/b.txt");
+    addFile("sub/c.txt");
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    mManager.discard();
+    mPreparatorJar.dispose();
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests that a published index is not changed by writing the working index.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testPublish() throws Exception {
+    mManager.publish();
+
+    File workingDir = new File(mDir, "searchindex/temp");
+    File publishedDir = new File(mDir, "searchindex/new");
+    File workingValuesFile = new File(workingDir, "field_values_mimetype.txt");
+    File publishedValuesFile = new File(publishedDir, "field_values_mimetype.txt");
+    String publishedValues = RegainToolkit.readStringFromFile(publishedValuesFile);
+    assertTrue(publishedValues.contains("text/plain"));
+
+    // The files that are rewritten in place must be copies
+    assertFalse(Files.isSameFile(workingValuesFile.toPath(), publishedValuesFile.toPath()));
+    RegainToolkit.writeToFile("changed", workingValuesFile);
+    assertEquals(publishedValues, RegainToolkit.readStringFromFile(publishedValuesFile));
+
+    assertEquals(3, countDocs(publishedDir, null));
+  }
+
+
+  /**
+   * Tests removing documents and directories from the index.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testRemoveFromIndex() throws Exception {
+    String dirUrl = RegainToolkit.fileToUrl(new File(mDocDir, "sub"));
+    assertEquals(2, mManager.removeFromIndex(dirUrl));
+    assertEquals(0, mManager.removeFromIndex(dirUrl));
+
+    // Replace a document
+    String fileUrl = RegainToolkit.fileToUrl(new File(mDocDir, "a.txt"));
+    assertEquals(1, mManager.removeFromIndex(fileUrl));
+    addFile("a.txt");
+
+    mManager.publish();
+    File publishedDir = new File(mDir, "searchindex/new");
+    assertEquals(1, countDocs(publishedDir, null));
+    assertEquals(1, countDocs(publishedDir, fileUrl));
+  }
+
+
+  /**
+   * Tests that an incremental update keeps the manifest of the old index and
+   * removes the changed directories only.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testKeepOldDirectoryManifest() throws Exception {
+    String dirUrl = RegainToolkit.fileToUrl(mDocDir);
+    String subDirUrl = RegainToolkit.fileToUrl(new File(mDocDir, "sub"));
+    DirectoryManifest oldManifest = new DirectoryManifest();
+    oldManifest.setFingerprint(dirUrl, 1);
+    oldManifest.setFingerprint(subDirUrl, 2);
+    oldManifest.write(new File(mDir, "searchindex/temp/directoryManifest.dat"));
+
+    mManager.keepOldDirectoryManifest();
+    mManager.invalidateDirectoryFingerprint(subDirUrl);
+    mManager.publish();
+
+    DirectoryManifest published = DirectoryManifest.load(
+        new File(mDir, "searchindex/new/directoryManifest.dat"));
+    assertEquals(1, published.size());
+    assertTrue(published.isUnchanged(dirUrl, 1));
+  }
+
+
+  /**
+   * Adds a document to the index.
+   *
+   * @param fileName The name of the document in the document directory.
+   * @throws RegainException If adding failed.
+   */
+  private void addFile(String fileName) throws RegainException {
+    File file = new File(mDocDir, fileName);
+    RawDocument rawDocument = new RawDocument(RegainToolkit.fileToUrl(file),
+        RegainToolkit.fileToUrl(file.getParentFile()), null, null);
+    try {
+      mManager.createNewIndexEntry(rawDocument, this);
+    }
+    finally {
+      rawDocument.dispose();
+    }
+  }
+
+
+  /**
+   * Counts the documents of an index.
+   *
+   * @param indexDir The directory of the index.
+   * @param url The URL of the documents to count. If <code>null</code> all
+   *        documents are counted.
+   * @return The number of documents.
+   * @throws Exception If reading the index failed.
+   */
+  private int countDocs(File indexDir, String url) throws Exception {
+    IndexReader reader = IndexReader.open(FSDirectory.open(indexDir));
+    try {
+      return (url == null) ? reader.numDocs() : reader.docFreq(new Term("url", url));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+
+  // overridden
+  public void logError(String msg, Throwable thr, boolean fatal) {
+    fail(msg + ": " + thr);
+  }
+
+}
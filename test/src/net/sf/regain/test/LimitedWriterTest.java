@@ -0,0 +1,134 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.LimitedWriter;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.preparator.PlainTextPreparator;
+import net.sf.regain.crawler.preparator.XmlPreparator;
+
+/**
+ * A JUnit test for {@link net.sf.regain.crawler.document.LimitedWriter} and
+ * for the maximum content length of the preparators.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class LimitedWriterTest extends TestCase {
+
+  /**
+   * Tests that the writer keeps the text up to the limit.
+   */
+  public void testWrite() throws Exception {
+    StringBuilder text = new StringBuilder();
+    LimitedWriter writer = new LimitedWriter(text, 10);
+    writer.write("abcde");
+    writer.write('f');
+    try {
+      writer.write("ghijklmn");
+      fail("The limit was not reported");
+    }
+    catch (LimitedWriter.LimitReachedException exc) {
+      // Expected
+    }
+    assertEquals("abcdefghij", text.toString());
+
+    // Reaching the limit exactly is no reason to stop
+    text = new StringBuilder();
+    writer = new LimitedWriter(text, 6);
+    writer.write("abcde");
+    writer.write('f');
+    assertEquals("abcdef", text.toString());
+    try {
+      writer.write('g');
+      fail("The limit was not reported");
+    }
+    catch (LimitedWriter.LimitReachedException exc) {
+      // Expected
+    }
+    assertEquals("abcdef", text.toString());
+
+    text = new StringBuilder();
+    writer = new LimitedWriter(text, 0);
+    writer.write("abcdefghijklmn");
+    assertEquals("abcdefghijklmn", text.toString());
+  }
+
+
+  /**
+   * Tests {@link LimitedWriter#getStricterLimit(int, int)}.
+   */
+  public void testGetStricterLimit() {
+    assertEquals(0, LimitedWriter.getStricterLimit(0, 0));
+    assertEquals(5, LimitedWriter.getStricterLimit(0, 5));
+    assertEquals(5, LimitedWriter.getStricterLimit(5, 0));
+    assertEquals(3, LimitedWriter.getStricterLimit(5, 3));
+    assertEquals(0, LimitedWriter.getStricterLimit(-1, 0));
+  }
+
+
+  /**
+   * Tests that preparators truncate the content at the maximum content
+   * length instead of failing.
+   */
+  public void testPreparatorContentIsTruncated() throws Exception {
+    File xmlFile = File.createTempFile("regain-limit-test", ".xml");
+    File txtFile = File.createTempFile("regain-limit-test", ".txt");
+    try {
+      writeFile(xmlFile, "<doc><a>Lorem ipsum dolor</a><b>sit amet</b></doc>");
+      XmlPreparator xmlPreparator = new XmlPreparator();
+      xmlPreparator.setMaxContentLength(8);
+      RawDocument xmlDoc = new RawDocument(RegainToolkit.fileToUrl(xmlFile), null, null, null);
+      xmlPreparator.prepare(xmlDoc);
+      assertEquals("Lorem ip", xmlPreparator.getCleanedContent());
+      xmlDoc.dispose();
+
+      writeFile(txtFile, "Lorem ipsum dolor sit amet");
+      PlainTextPreparator txtPreparator = new PlainTextPreparator();
+      txtPreparator.setMaxContentLength(11);
+      RawDocument txtDoc = new RawDocument(RegainToolkit.fileToUrl(txtFile), null, null, null);
+      txtPreparator.prepare(txtDoc);
+      assertEquals("Lorem ipsum", txtPreparator.getCleanedContent());
+      txtDoc.dispose();
+    }
+    finally {
+      xmlFile.delete();
+      txtFile.delete();
+    }
+  }
+
+
+  private void writeFile(File file, String text) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
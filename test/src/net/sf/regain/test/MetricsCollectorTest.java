@@ -0,0 +1,91 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.util.metrics.LatencyHistogram;
+import net.sf.regain.util.metrics.MetricsCollector;
+import net.sf.regain.util.metrics.MetricsResponse;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.util.metrics.MetricsCollector}
+ * and the {@link net.sf.regain.util.metrics.MetricsResponse}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MetricsCollectorTest extends TestCase {
+
+  /**
+   * Tests the Prometheus text format.
+   */
+  public void testPrometheusText() {
+    MetricsCollector collector = new MetricsCollector();
+    collector.addCounter("test_total", "A counter", 3, "stage", "a \"b\"");
+    collector.addGauge("test_gauge", "A gauge", 1.5);
+
+    String text = collector.toPrometheusText();
+    assertTrue(text, text.contains("# TYPE test_total counter\n"));
+    assertTrue(text, text.contains("test_total{stage=\"a \\\"b\\\"\"} 3\n"));
+    assertTrue(text, text.contains("# TYPE test_gauge gauge\n"));
+    assertTrue(text, text.contains("test_gauge 1.5\n"));
+  }
+
+
+  /**
+   * Tests that a summary contains the quantiles, the sum and the count.
+   */
+  public void testSummary() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000000L);
+    }
+
+    MetricsCollector collector = new MetricsCollector();
+    collector.addSummary("test_seconds", "A summary", histogram);
+
+    Double median = collector.getValueMap().get("test_seconds{quantile=\"0.5\"}");
+    assertNotNull(median);
+    assertEquals(0.05, median.doubleValue(), 0.01);
+    assertEquals(Double.valueOf(100), collector.getValueMap().get("test_seconds_count"));
+
+    String json = collector.toJson();
+    assertTrue(json, json.startsWith("{\"metrics\":[{\"name\":\"test_seconds\",\"type\":\"summary\""));
+  }
+
+
+
+  /**
+   * Tests that the metrics page selects the format by the request parameter.
+   */
+  public void testMetricsResponse() throws Exception {
+    MetricsCollector collector = new MetricsCollector();
+    collector.addGauge("test_gauge", "A gauge", 1.5);
+
+    MetricsResponse response = new MetricsResponse(collector, null);
+    assertTrue(response.getContentType().startsWith("text/plain"));
+    assertEquals(collector.toPrometheusText(), new String(response.getBody(), "UTF-8"));
+
+    response = new MetricsResponse(collector, "json");
+    assertTrue(response.getContentType().startsWith("application/json"));
+    assertEquals(collector.toJson(), new String(response.getBody(), "UTF-8"));
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Provides preparators to the {@link net.sf.regain.crawler.document.PreparatorFactory}
+ * in tests.
+ * <p>
+ * The factory loads the preparators from the jars in the directory
+ * "preparator" of the working directory. The fixture writes a jar that only
+ * has a manifest naming the preparator classes, the classes themselves are
+ * loaded from the class path.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorJarFixture {
+
+  /** The directory the PreparatorFactory loads the preparators from. */
+  private static final File PREPARATOR_DIR = new File("preparator");
+
+  /** The jar that was written. */
+  private File mJarFile;
+
+  /** Whether the preparator directory was created by this fixture. */
+  private boolean mCreatedDir;
+
+
+  /**
+   * Writes the preparator jar.
+   *
+   * @param classNames The class names of the preparators. Names starting with
+   *        a "." are in the default preparator package.
+   * @throws IOException If writing the jar failed.
+   */
+  public PreparatorJarFixture(String... classNames) throws IOException {
+    if (! PREPARATOR_DIR.exists()) {
+      if (! PREPARATOR_DIR.mkdir()) {
+        throw new IOException("Creating " + PREPARATOR_DIR.getAbsolutePath() + " failed");
+      }
+      mCreatedDir = true;
+    }
+
+    StringBuilder classNameCsv = new StringBuilder();
+    for (String className : classNames) {
+      if (classNameCsv.length() != 0) {
+        classNameCsv.append(';');
+      }
+      classNameCsv.append(className);
+    }
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("Preparator-Classes", classNameCsv.toString());
+
+    mJarFile = new File(PREPARATOR_DIR, "regain-test-preparators.jar");
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(mJarFile), manifest);
+    out.close();
+  }
+
+
+  /**
+   * Removes the preparator jar.
+   */
+  public void dispose() {
+    mJarFile.delete();
+    if (mCreatedDir) {
+      PREPARATOR_DIR.delete();
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.PreparatorConfig;
+import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.config.PreparatorWorkerSettings;
+import net.sf.regain.crawler.document.Preparator;
+import net.sf.regain.crawler.document.PreparatorFactory;
+import net.sf.regain.crawler.document.PreparatorWorkerPool;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.document.WorkerPreparator;
+
+/**
+ * A JUnit test for the class
+ * {@link net.sf.regain.crawler.document.PreparatorWorkerPool}. It prepares
+ * documents in real worker processes.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorWorkerPoolTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+  /** The preparators for the test. */
+  private PreparatorJarFixture mPreparatorJar;
+  /** The pool to test. */
+  private PreparatorWorkerPool mPool;
+  /** The preparators of the crawler, created from the same settings. */
+  private Preparator[] mPreparatorArr;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = Files.createTempDirectory("regain-worker").toFile();
+    mPreparatorJar = new PreparatorJarFixture(".PlainTextPreparator", ".XmlPreparator");
+
+    PreparatorSettings[] settingsArr = new PreparatorSettings[] {
+      new PreparatorSettings(true, 0, ".XmlPreparator", null, new PreparatorConfig()),
+      new PreparatorSettings(true, 0, ".PlainTextPreparator", null, new PreparatorConfig())
+    };
+    mPreparatorArr = PreparatorFactory.getInstance().createPreparatorArr(settingsArr);
+    mPool = new PreparatorWorkerPool(new PreparatorWorkerSettings(1, 0, null,
+        new String[] { ".XmlPreparator", ".PlainTextPreparator" }), settingsArr);
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    mPool.close();
+    mPreparatorJar.dispose();
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests preparing documents whose content is in a file and in memory.
+   */
+  public void testPrepare() throws Exception {
+    WorkerPreparator xmlPreparator = createWorkerPreparator(0);
+    WorkerPreparator txtPreparator = createWorkerPreparator(1);
+
+    File xmlFile = new File(mDir, "a.xml");
+    RegainToolkit.writeToFile("<doc><a>Lorem ipsum</a> <b>dolor</b></doc>", xmlFile);
+    RawDocument xmlDoc = new RawDocument(RegainToolkit.fileToUrl(xmlFile), null, null, null);
+    xmlDoc.setMimeType("text/xml");
+    xmlPreparator.prepare(xmlDoc);
+    assertEquals("Lorem ipsum dolor", xmlPreparator.getCleanedContent().trim());
+    xmlPreparator.cleanUp();
+    xmlDoc.dispose();
+
+    String archiveUrl = RegainToolkit.fileToUrl(new File(mDir, "b.zip"));
+    RawDocument entryDoc = RawDocument.createArchiveEntry(archiveUrl + "!/b.txt",
+        archiveUrl, "sit amet".getBytes("UTF-8"), null);
+    entryDoc.setMimeType("text/plain");
+    txtPreparator.setMaxContentLength(3);
+    txtPreparator.prepare(entryDoc);
+    assertEquals("sit", txtPreparator.getCleanedContent());
+    txtPreparator.cleanUp();
+    entryDoc.dispose();
+  }
+
+
+  /**
+   * Tests that a failed preparation and an interrupted preparation leave the
+   * pool usable.
+   */
+  public void testFailures() throws Exception {
+    WorkerPreparator txtPreparator = createWorkerPreparator(1);
+    File txtFile = new File(mDir, "c.txt");
+    RegainToolkit.writeToFile("consetetur", txtFile);
+    RawDocument txtDoc = new RawDocument(RegainToolkit.fileToUrl(txtFile), null, null, null);
+    txtDoc.setMimeType("text/plain");
+
+    // A wrong index is reported by the worker, the worker stays alive
+    try {
+      mPool.prepare(0, mPreparatorArr[1].getClass().getName(), txtDoc, txtPreparator);
+      fail("Preparing with a wrong preparator index did not fail");
+    }
+    catch (RegainException exc) {
+      // Expected
+    }
+
+    // An interrupted preparation kills the worker
+    Thread.currentThread().interrupt();
+    try {
+      txtPreparator.prepare(txtDoc);
+      fail("The interrupted preparation did not fail");
+    }
+    catch (RegainException exc) {
+      // Expected
+    }
+    assertTrue(Thread.interrupted());
+
+    // A new worker takes over
+    txtPreparator.prepare(txtDoc);
+    assertEquals("consetetur", txtPreparator.getCleanedContent().trim());
+    txtDoc.dispose();
+  }
+
+
+  private WorkerPreparator createWorkerPreparator(int preparatorIdx) {
+    return new WorkerPreparator(mPreparatorArr[preparatorIdx], mPool, preparatorIdx);
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.Profiler;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.crawler.Profiler}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ProfilerTest extends TestCase {
+
+  @Override
+  protected void tearDown() throws Exception {
+    Profiler.clearRegisteredProfilers();
+  }
+
+
+  /**
+   * Tests that measurings of several threads are all counted.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testConcurrentMeasuring() throws Exception {
+    final Profiler profiler = new Profiler("Test", "docs");
+
+    Thread[] threadArr = new Thread[4];
+    for (int i = 0; i < threadArr.length; i++) {
+      threadArr[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            profiler.startMeasuring();
+            if (j % 10 == 0) {
+              profiler.abortMeasuring();
+            } else {
+              profiler.stopMeasuring(2);
+            }
+          }
+        }
+      };
+      threadArr[i].start();
+    }
+    for (Thread thread : threadArr) {
+      thread.join();
+    }
+
+    assertEquals(3600, profiler.getMeasureCount());
+    assertEquals(400, profiler.getAbortedMeasureCount());
+    assertEquals(7200, profiler.getTotalBytes());
+    assertEquals(-1, profiler.getCurrentMeasuringTime());
+  }
+
+
+  /**
+   * Tests nested measurings in one thread.
+   */
+  public void testNestedMeasuring() {
+    Profiler profiler = new Profiler("Test", "docs");
+
+    profiler.startMeasuring();
+    profiler.startMeasuring();
+    profiler.stopMeasuring(1);
+    profiler.stopMeasuring(1);
+
+    assertEquals(2, profiler.getMeasureCount());
+    assertEquals(0, profiler.getAbortedMeasureCount());
+  }
+
+
+  /**
+   * Tests the percentiles.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testPercentiles() throws Exception {
+    Profiler profiler = new Profiler("Test", "docs");
+    assertEquals(0, profiler.getPercentile(0.5));
+
+    for (int i = 0; i < 20; i++) {
+      profiler.startMeasuring();
+      profiler.stopMeasuring(0);
+    }
+    profiler.startMeasuring();
+    Thread.sleep(50);
+    profiler.stopMeasuring(0);
+
+    long median = profiler.getPercentile(0.5);
+    long maxTime = profiler.getMaxTime();
+    assertTrue(median < 50000000L);
+    assertTrue(maxTime >= 50000000L);
+    assertTrue(median <= profiler.getPercentile(0.95));
+    assertEquals(maxTime, profiler.getPercentile(1.0));
+  }
+
+}
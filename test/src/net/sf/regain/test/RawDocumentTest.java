@@ -0,0 +1,169 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.RawDocument;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A JUnit test for the content accessors of
+ * {@link net.sf.regain.crawler.document.RawDocument}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class RawDocumentTest extends TestCase {
+
+  /** The directory holding the test files. */
+  private File mDir;
+
+
+  @Override
+  protected void setUp() throws Exception {
+    mDir = File.createTempFile("regain-rawdocument-test", "");
+    mDir.delete();
+    mDir.mkdir();
+  }
+
+
+  @Override
+  protected void tearDown() throws Exception {
+    RawDocument.setMaxContentSizeInMemory(1024 * 1024);
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+
+  /**
+   * Tests {@link RawDocument#getContent(int)}.
+   */
+  public void testGetLimitedContent() throws Exception {
+    byte[] data = createData(100);
+    File file = new File(mDir, "a.bin");
+    writeFile(file, data);
+
+    RawDocument doc = new RawDocument(RegainToolkit.fileToUrl(file), null, null, null);
+    assertTrue(Arrays.equals(data, doc.getContent(100)));
+    try {
+      doc.getContent(99);
+      fail("Content larger than the limit was returned");
+    }
+    catch (RegainException exc) {
+      // Expected
+    }
+    doc.dispose();
+  }
+
+
+  /**
+   * Tests {@link RawDocument#createSnapshot()}.
+   */
+  public void testSnapshot() throws Exception {
+    File file = new File(mDir, "a.bin");
+    writeFile(file, createData(100));
+
+    RawDocument doc = new RawDocument(RegainToolkit.fileToUrl(file), null, null, null);
+    doc.setMimeType("application/octet-stream");
+    RawDocument snapshot = doc.createSnapshot();
+    doc.setMimeType("text/plain");
+
+    assertEquals(doc.getUrl(), snapshot.getUrl());
+    assertEquals("application/octet-stream", snapshot.getMimeType());
+    assertEquals(100, snapshot.getLength());
+    assertEquals(doc.getLastModified(), snapshot.getLastModified());
+    assertEquals(0, snapshot.getContent().length);
+    doc.dispose();
+  }
+
+
+  /**
+   * Tests that HTTP content larger than the memory limit is written into a
+   * temporary file and that smaller content stays in memory.
+   */
+  public void testHttpContent() throws Exception {
+    final byte[] largeData = createData(50000);
+    final byte[] smallData = createData(500);
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] data = exchange.getRequestURI().getPath().startsWith("/large")
+            ? largeData : smallData;
+        exchange.sendResponseHeaders(200, data.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(data);
+        out.close();
+      }
+    });
+    server.start();
+    try {
+      RawDocument.setMaxContentSizeInMemory(1000);
+      String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+      RawDocument largeDoc = new RawDocument(baseUrl + "large.bin", null, null, null);
+      assertTrue(largeDoc.isContentInFile());
+      File tmpFile = largeDoc.getContentAsFile();
+      assertTrue(Arrays.equals(largeData, largeDoc.getContent(largeData.length)));
+      largeDoc.dispose();
+      assertFalse(tmpFile.exists());
+
+      RawDocument smallDoc = new RawDocument(baseUrl + "small.bin", null, null, null);
+      assertFalse(smallDoc.isContentInFile());
+      assertTrue(Arrays.equals(smallData, smallDoc.getContent()));
+      smallDoc.dispose();
+    }
+    finally {
+      server.stop(0);
+    }
+  }
+
+
+  private byte[] createData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+
+  private void writeFile(File file, byte[] data) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
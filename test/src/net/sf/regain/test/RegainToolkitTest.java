@@ -20,11 +20,20 @@
  */
 package net.sf.regain.test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestCase;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.util.io.PathFilenamePair;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
 /**
  * @author Thomas Tesche (thtesche), https://github.com/thtesche
  */
@@ -65,4 +74,35 @@ public class RegainToolkitTest extends TestCase {
     assertEquals("nsis_license.txt nsis_license nsis license", RegainToolkit.urlToWhitespacedFileName("file:///dir1/dir2/nsis_license.txt"));
 
   }
+
+  public void testReusableTokenStream() throws Exception {
+    Analyzer analyzer = RegainToolkit.createAnalyzer("english",
+        new String[] { "the" }, null, new String[] { "project" });
+
+    String[] textArr = { "The Crawlers are RUNNING", "Indexing the documents", "Otto23 Main" };
+    for (int i = 0; i < 2; i++) {
+      for (String text : textArr) {
+        List<String> expected = getTokens(analyzer.tokenStream("content", new StringReader(text)));
+        assertEquals(expected, getTokens(analyzer.reusableTokenStream("content", new StringReader(text))));
+        assertEquals(getTokens(analyzer.tokenStream("project", new StringReader(text))),
+            getTokens(analyzer.reusableTokenStream("project", new StringReader(text))));
+      }
+    }
+
+    // The stop word is removed, the rest is lowercased and stemmed
+    assertEquals("[crawler, ar, run]", getTokens(analyzer.reusableTokenStream("content",
+        new StringReader("The Crawlers are RUNNING"))).toString());
+  }
+
+  private List<String> getTokens(TokenStream stream) throws IOException {
+    CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+    ArrayList<String> tokenList = new ArrayList<String>();
+    stream.reset();
+    while (stream.incrementToken()) {
+      tokenList.add(termAtt.toString());
+    }
+    stream.end();
+    stream.close();
+    return tokenList;
+  }
 }
@@ -0,0 +1,254 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.util.Calendar;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.IndexFieldSchema;
+import net.sf.regain.search.SearchQueryParser;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * A JUnit test for the class {@link net.sf.regain.search.SearchQueryParser}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SearchQueryParserTest extends TestCase {
+
+  /** The searcher on the test index. */
+  private IndexSearcher mSearcher;
+
+
+  /**
+   * Creates an index with documents of different sizes and dates.
+   *
+   * @throws Exception If creating the index failed.
+   */
+  @Override
+  protected void setUp() throws Exception {
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(
+        RegainToolkit.getLuceneVersion(), new WhitespaceAnalyzer(RegainToolkit.getLuceneVersion())));
+    IndexFieldSchema schema = new IndexFieldSchema(null, false);
+
+    Calendar now = Calendar.getInstance();
+    addDoc(writer, schema, "small", 1000, daysAgo(now, 2));
+    addDoc(writer, schema, "medium", 2 * 1024 * 1024, daysAgo(now, 30));
+    addDoc(writer, schema, "large", 20 * 1024 * 1024, date(2012, 3, 31));
+    writer.close();
+
+    mSearcher = new IndexSearcher(IndexReader.open(dir));
+  }
+
+
+  /**
+   * Closes the test index.
+   *
+   * @throws Exception If closing failed.
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    mSearcher.getIndexReader().close();
+  }
+
+
+  /**
+   * Tests the size queries.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testSize() throws Exception {
+    Query query = parse("size:[1MB TO 10MB]");
+    assertTrue(query instanceof NumericRangeQuery);
+    assertEquals("medium", search(query));
+
+    assertEquals("small", search(parse("size:{* TO 100KB}")));
+    assertEquals("large", search(parse("size:[10mb TO *]")));
+    assertEquals("small", search(parse("size:1000")));
+    assertEquals("medium", search(parse("size:2MB")));
+    assertEquals("medium large", search(parse("size:[1.5MB TO 20MB]")));
+  }
+
+
+  /**
+   * Tests the size choices of the advanced search. Their byte bounds don't
+   * overlap, so a document of exactly 1 MB falls into one choice only.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testSizeChoices() throws Exception {
+    assertEquals("small", search(parse("size:[* TO 102399]")));
+    assertEquals("", search(parse("size:[102400 TO 1048575]")));
+    assertEquals("medium", search(parse("size:[1048576 TO 10485759]")));
+    assertEquals("large", search(parse("size:[10MB TO *]")));
+
+    // The medium document has exactly 2 MB
+    assertEquals("", search(parse("size:[1048576 TO 2097151]")));
+    assertEquals("medium", search(parse("size:[2097152 TO 10485759]")));
+  }
+
+
+  /**
+   * Tests the date queries.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testModified() throws Exception {
+    assertEquals("small", search(parse("modified:last7d")));
+    assertEquals("small", search(parse("modified:last1w")));
+    assertEquals("small medium", search(parse("modified:last2m")));
+    assertEquals("large", search(parse("modified:2012-03-31")));
+    assertEquals("large", search(parse("modified:[20120331 TO 20120331]")));
+    assertEquals("", search(parse("modified:{2012-03-31 TO 2012-04-01}")));
+    assertEquals("large", search(parse("modified:[* TO 2012-12-31]")));
+
+    try {
+      parse("modified:yesterday");
+      fail("A wrong date should be rejected");
+    }
+    catch (ParseException exc) {
+      // Expected
+    }
+  }
+
+
+  /**
+   * Tests that the numeric fields can be sorted.
+   *
+   * @throws Exception If the test failed.
+   */
+  public void testSort() throws Exception {
+    Query query = parse("size:[* TO *]");
+    TopDocs topDocs = mSearcher.search(query, null, 10,
+        new Sort(new SortField("size", SortField.LONG, true)));
+    assertEquals("large", mSearcher.doc(topDocs.scoreDocs[0].doc).get("url"));
+
+    topDocs = mSearcher.search(query, null, 10,
+        new Sort(new SortField(RegainToolkit.FIELD_MODIFIED, SortField.LONG)));
+    assertEquals("large", mSearcher.doc(topDocs.scoreDocs[0].doc).get("url"));
+    assertEquals("small", mSearcher.doc(topDocs.scoreDocs[2].doc).get("url"));
+
+    // The stored size can be read as String
+    assertEquals("1000", mSearcher.doc(topDocs.scoreDocs[2].doc).get("size"));
+  }
+
+
+  /**
+   * Parses a query.
+   *
+   * @param queryText The query text.
+   * @return The query.
+   * @throws ParseException If parsing failed.
+   */
+  private Query parse(String queryText) throws ParseException {
+    return new SearchQueryParser(RegainToolkit.getLuceneVersion(), "content",
+        new WhitespaceAnalyzer(RegainToolkit.getLuceneVersion())).parse(queryText);
+  }
+
+
+  /**
+   * Searches a query.
+   *
+   * @param query The query.
+   * @return The URLs of the hits sorted by size, separated by spaces.
+   * @throws Exception If searching failed.
+   */
+  private String search(Query query) throws Exception {
+    TopDocs topDocs = mSearcher.search(query, null, 10,
+        new Sort(new SortField("size", SortField.LONG)));
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+      if (i != 0) {
+        builder.append(' ');
+      }
+      builder.append(mSearcher.doc(topDocs.scoreDocs[i].doc).get("url"));
+    }
+    return builder.toString();
+  }
+
+
+  /**
+   * Adds a document to the index.
+   *
+   * @param writer The writer of the index.
+   * @param schema The index field schema.
+   * @param url The URL of the document.
+   * @param size The size of the document.
+   * @param lastModified The last-modified time of the document.
+   * @throws Exception If adding failed.
+   */
+  private void addDoc(IndexWriter writer, IndexFieldSchema schema, String url,
+    long size, long lastModified)
+    throws Exception
+  {
+    Document doc = new Document();
+    schema.addField(doc, "url", url);
+    schema.addField(doc, "size", size);
+    schema.addField(doc, RegainToolkit.FIELD_MODIFIED, lastModified);
+    writer.addDocument(doc);
+  }
+
+
+  /**
+   * Gets the time some days ago.
+   *
+   * @param now The current time.
+   * @param days The number of days.
+   * @return The time.
+   */
+  private long daysAgo(Calendar now, int days) {
+    Calendar cal = (Calendar) now.clone();
+    cal.add(Calendar.DAY_OF_YEAR, -days);
+    return cal.getTimeInMillis();
+  }
+
+
+  /**
+   * Gets the time at noon of a day.
+   *
+   * @param year The year.
+   * @param month The month (1 to 12).
+   * @param day The day of the month.
+   * @return The time.
+   */
+  private long date(int year, int month, int day) {
+    Calendar cal = Calendar.getInstance();
+    cal.clear();
+    cal.set(year, month - 1, day, 12, 0);
+    return cal.getTimeInMillis();
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.preparator.poi.SpreadsheetExtractor;
+
+import org.apache.poi.hpsf.SummaryInformation;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * A JUnit test for
+ * {@link net.sf.regain.crawler.preparator.poi.SpreadsheetExtractor}.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SpreadsheetExtractorTest extends TestCase {
+
+  /** The number of rows of the large xlsx workbook. */
+  private static final int LARGE_ROW_COUNT = 100000;
+
+
+  /**
+   * Tests the extraction of a xls workbook using the event API.
+   */
+  public void testExtractXls() throws Exception {
+    File file = File.createTempFile("regain-spreadsheet-test", ".xls");
+    try {
+      HSSFWorkbook workbook = new HSSFWorkbook();
+      HSSFSheet sheet = workbook.createSheet("Lorem");
+      HSSFRow row = sheet.createRow(0);
+      row.createCell(0).setCellValue("ipsum");
+      row.createCell(1).setCellValue(42);
+      sheet.createRow(1).createCell(0).setCellFormula("\"dolor\"&\"sit\"");
+      workbook.createSheet("Amet").createRow(0).createCell(0).setCellValue("consetetur");
+      workbook.createInformationProperties();
+      SummaryInformation info = workbook.getSummaryInformation();
+      info.setTitle("Sadipscing");
+      HSSFFormulaEvaluator.evaluateAllFormulaCells(workbook);
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        workbook.write(out);
+      }
+      finally {
+        out.close();
+      }
+
+      SpreadsheetExtractor extractor = new SpreadsheetExtractor(0);
+      extractor.extractXls(file);
+      assertEquals("Lorem\nipsum\t42\ndolorsit\nAmet\nconsetetur", extractor.getText());
+      assertTrue(extractor.getMetaData(), extractor.getMetaData().contains("Sadipscing"));
+
+      extractor = new SpreadsheetExtractor(12);
+      extractor.extractXls(file);
+      assertEquals("Lorem\nipsum\t", extractor.getText());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+
+  /**
+   * Tests the extraction of a xlsx workbook.
+   */
+  public void testExtractXlsx() throws Exception {
+    File file = File.createTempFile("regain-spreadsheet-test", ".xlsx");
+    try {
+      StringBuilder sheet1 = new StringBuilder();
+      sheet1.append("<row r=\"1\">"
+          + "<c r=\"A1\" t=\"s\"><v>0</v></c>"
+          + "<c r=\"B1\"><v>42</v></c>"
+          + "<c r=\"C1\" t=\"b\"><v>1</v></c>"
+          + "</row>");
+      sheet1.append("<row r=\"3\">"
+          + "<c r=\"A3\" t=\"str\"><f>CONCATENATE(\"dolor\",\"sit\")</f><v>dolorsit</v></c>"
+          + "<c r=\"B3\" t=\"inlineStr\"><is><t>amet</t></is></c>"
+          + "</row>");
+      writeXlsx(file, sheet1.toString(), "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>1</v></c></row>");
+
+      SpreadsheetExtractor extractor = new SpreadsheetExtractor(0);
+      extractor.extractXlsx(file);
+      assertEquals("Lorem\nipsum\t42\tTRUE\ndolorsit\tamet\nAmet\nconsetetur",
+          extractor.getText());
+      assertTrue(extractor.getMetaData(), extractor.getMetaData().contains("Sadipscing"));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+
+  /**
+   * Tests that the extraction of a large xlsx workbook stops at the maximum
+   * number of characters.
+   */
+  public void testExtractLargeXlsx() throws Exception {
+    File file = File.createTempFile("regain-spreadsheet-test", ".xlsx");
+    try {
+      StringBuilder sheet1 = new StringBuilder();
+      for (int row = 1; row <= LARGE_ROW_COUNT; row++) {
+        sheet1.append("<row r=\"").append(row).append("\">"
+            + "<c r=\"A").append(row).append("\" t=\"s\"><v>1</v></c>"
+            + "<c r=\"B").append(row).append("\"><v>").append(row).append("</v></c>"
+            + "</row>");
+      }
+      writeXlsx(file, sheet1.toString(), "");
+
+      SpreadsheetExtractor extractor = new SpreadsheetExtractor(0);
+      extractor.extractXlsx(file);
+      String text = extractor.getText();
+      assertTrue(text.startsWith("Lorem\nconsetetur\t1\nconsetetur\t2\n"));
+      assertTrue(text.endsWith("consetetur\t" + LARGE_ROW_COUNT + "\nAmet\n"));
+
+      extractor = new SpreadsheetExtractor(1000);
+      extractor.extractXlsx(file);
+      assertEquals(1000, extractor.getText().length());
+      assertEquals(text.substring(0, 1000), extractor.getText());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+
+  /**
+   * Writes a xlsx workbook with the two sheets "Lorem" and "Amet" and the
+   * shared strings "ipsum" and "consetetur".
+   *
+   * @param file The file to write to.
+   * @param sheet1Rows The rows of the first sheet.
+   * @param sheet2Rows The rows of the second sheet.
+   * @throws IOException If writing failed.
+   */
+  private void writeXlsx(File file, String sheet1Rows, String sheet2Rows)
+    throws IOException
+  {
+    String xmlHeader = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    String mainNs = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    String relNs = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    String pkgRelNs = "http://schemas.openxmlformats.org/package/2006/relationships";
+    String ctPrefix = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      addZipEntry(out, "[Content_Types].xml", xmlHeader
+          + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+          + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+          + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+          + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + ctPrefix + "sheet.main+xml\"/>"
+          + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"" + ctPrefix + "worksheet+xml\"/>"
+          + "<Override PartName=\"/xl/worksheets/sheet2.xml\" ContentType=\"" + ctPrefix + "worksheet+xml\"/>"
+          + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"" + ctPrefix + "sharedStrings+xml\"/>"
+          + "<Override PartName=\"/docProps/core.xml\" ContentType=\"application/vnd.openxmlformats-package.core-properties+xml\"/>"
+          + "</Types>");
+      addZipEntry(out, "_rels/.rels", xmlHeader
+          + "<Relationships xmlns=\"" + pkgRelNs + "\">"
+          + "<Relationship Id=\"rId1\" Type=\"" + relNs + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+          + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties\" Target=\"docProps/core.xml\"/>"
+          + "</Relationships>");
+      addZipEntry(out, "docProps/core.xml", xmlHeader
+          + "<cp:coreProperties xmlns:cp=\"http://schemas.openxmlformats.org/package/2006/metadata/core-properties\""
+          + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+          + "<dc:title>Sadipscing</dc:title>"
+          + "</cp:coreProperties>");
+      addZipEntry(out, "xl/workbook.xml", xmlHeader
+          + "<workbook xmlns=\"" + mainNs + "\" xmlns:r=\"" + relNs + "\"><sheets>"
+          + "<sheet name=\"Lorem\" sheetId=\"1\" r:id=\"rId1\"/>"
+          + "<sheet name=\"Amet\" sheetId=\"2\" r:id=\"rId2\"/>"
+          + "</sheets></workbook>");
+      addZipEntry(out, "xl/_rels/workbook.xml.rels", xmlHeader
+          + "<Relationships xmlns=\"" + pkgRelNs + "\">"
+          + "<Relationship Id=\"rId1\" Type=\"" + relNs + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+          + "<Relationship Id=\"rId2\" Type=\"" + relNs + "/worksheet\" Target=\"worksheets/sheet2.xml\"/>"
+          + "<Relationship Id=\"rId3\" Type=\"" + relNs + "/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+          + "</Relationships>");
+      addZipEntry(out, "xl/sharedStrings.xml", xmlHeader
+          + "<sst xmlns=\"" + mainNs + "\" count=\"2\" uniqueCount=\"2\">"
+          + "<si><t>ipsum</t></si>"
+          + "<si><r><t>conse</t></r><r><t>tetur</t></r></si>"
+          + "</sst>");
+      addZipEntry(out, "xl/worksheets/sheet1.xml", xmlHeader
+          + "<worksheet xmlns=\"" + mainNs + "\"><sheetData>" + sheet1Rows
+          + "</sheetData></worksheet>");
+      addZipEntry(out, "xl/worksheets/sheet2.xml", xmlHeader
+          + "<worksheet xmlns=\"" + mainNs + "\"><sheetData>" + sheet2Rows
+          + "</sheetData></worksheet>");
+    }
+    finally {
+      out.close();
+    }
+  }
+
+
+  private void addZipEntry(ZipOutputStream out, String name, String content)
+    throws IOException
+  {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(content.getBytes("UTF-8"));
+    out.closeEntry();
+  }
+
+}
@@ -32,6 +32,30 @@
             <td><search:msg key="fileExtension"/>:</td>
             <td><search:input_fieldlist field="mimetype" allMsg="{msg:allItem}"/></td>
           </tr>
+          <tr>
+            <td><search:msg key="lastModified"/>:</td>
+            <td>
+              <select name="fieldNoString.modified" size="1">
+                <option value=""><search:msg key="allItem"/></option>
+                <option value="last1d"><search:msg key="lastModified.day"/></option>
+                <option value="last7d"><search:msg key="lastModified.week"/></option>
+                <option value="last1m"><search:msg key="lastModified.month"/></option>
+                <option value="last1y"><search:msg key="lastModified.year"/></option>
+              </select>
+            </td>
+          </tr>
+          <tr>
+            <td><search:msg key="size"/>:</td>
+            <td>
+              <select name="fieldNoString.size" size="1">
+                <option value=""><search:msg key="allItem"/></option>
+                <option value="[* TO 102399]">&lt; 100 KB</option>
+                <option value="[102400 TO 1048575]">100 KB - 1 MB</option>
+                <option value="[1048576 TO 10485759]">1 MB - 10 MB</option>
+                <option value="[10MB TO *]">&gt; 10 MB</option>
+              </select>
+            </td>
+          </tr>
           <tr>
             <td><search:msg key="resultSorting"/>:</td>
             <td><search:input_order/></td>